@@ -0,0 +1,45 @@
+package com.cordova.plugin;
+
+import java.io.IOException;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Base64 del JPEG di un frame (quality 80), come per la consegna in formato stringa.
+ * java.util.Base64 senza a capo produce lo stesso testo di android.util.Base64.NO_WRAP.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class Base64Benchmark {
+
+    @Param({ BenchFrames.VGA, BenchFrames.HD, BenchFrames.FULL_HD })
+    public String size;
+
+    private byte[] jpeg;
+
+    @Setup
+    public void setup() throws IOException {
+        jpeg = BenchFrames.jpeg(size, 80);
+    }
+
+    @Benchmark
+    public String encodeToString() {
+        return Base64.getEncoder().encodeToString(jpeg);
+    }
+}
@@ -0,0 +1,140 @@
+package com.cordova.plugin;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Frame sintetici per i benchmark: scene NV21 e piani YUV_420_888 con il padding
+ * delle righe tipico dei buffer di un ImageReader.
+ */
+final class BenchFrames {
+
+    /** Risoluzioni misurate: VGA, 720p e 1080p. */
+    static final String VGA = "640x480";
+    static final String HD = "1280x720";
+    static final String FULL_HD = "1920x1080";
+
+    // Allineamento delle righe dei buffer grafici
+    private static final int ROW_ALIGN = 64;
+
+    private BenchFrames() {
+    }
+
+    /** "640x480" -> {640, 480} */
+    static int[] parseSize(String size) {
+        int x = size.indexOf('x');
+        return new int[] { Integer.parseInt(size.substring(0, x)), Integer.parseInt(size.substring(x + 1)) };
+    }
+
+    static int alignRow(int bytes) {
+        return (bytes + ROW_ALIGN - 1) / ROW_ALIGN * ROW_ALIGN;
+    }
+
+    /**
+     * Scena con gradienti, bordi netti, croma variabile e rumore di sensore:
+     * la dimensione dei JPEG e' vicina a quella di un frame di camera reale.
+     */
+    static byte[] scene(int width, int height) {
+        Random random = new Random(width * 31L + height);
+        byte[] nv21 = new byte[YuvConverter.nv21Size(width, height)];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int value = 40 + 120 * x / width + 60 * y / height + random.nextInt(9) - 4;
+                if (((x / 64) + (y / 64)) % 5 == 0) {
+                    value += 30;
+                }
+                nv21[y * width + x] = (byte) value;
+            }
+        }
+        int chromaWidth = (width + 1) / 2;
+        int chromaHeight = (height + 1) / 2;
+        int offset = width * height;
+        for (int y = 0; y < chromaHeight; y++) {
+            for (int x = 0; x < chromaWidth; x++) {
+                nv21[offset + y * 2 * chromaWidth + 2 * x] = (byte) (108 + 40 * x / chromaWidth + random.nextInt(5) - 2);
+                nv21[offset + y * 2 * chromaWidth + 2 * x + 1] = (byte) (148 - 40 * y / chromaHeight + random.nextInt(5) - 2);
+            }
+        }
+        return nv21;
+    }
+
+    /** JPEG della scena {@link #scene} di risoluzione {@code size}, codificato su un solo thread. */
+    static byte[] jpeg(String size, int quality) throws IOException {
+        int[] wh = parseSize(size);
+        ForkJoinPool pool = new ForkJoinPool(1);
+        try {
+            ReusableByteArrayOutputStream out = new ReusableByteArrayOutputStream(256 * 1024);
+            new StripedJpegEncoder(pool).encode(scene(wh[0], wh[1]), wh[0], wh[1], quality, out);
+            return Arrays.copyOf(out.getBuffer(), out.size());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Piani di un'Image YUV_420_888 diretti, con posizione 0 come origine. */
+    static final class Planes {
+        final ByteBuffer y;
+        final ByteBuffer u;
+        final ByteBuffer v;
+        final int yRowStride;
+        final int uvRowStride;
+        final int uvPixelStride;
+
+        private Planes(ByteBuffer y, ByteBuffer u, ByteBuffer v, int yRowStride, int uvRowStride, int uvPixelStride) {
+            this.y = y;
+            this.u = u;
+            this.v = v;
+            this.yRowStride = yRowStride;
+            this.uvRowStride = uvRowStride;
+            this.uvPixelStride = uvPixelStride;
+        }
+    }
+
+    /**
+     * Piani con righe allineate a ROW_ALIGN e contenuto preso da {@link #scene}.
+     * @param semiPlanar true: U e V sono viste sfalsate di un byte dello stesso buffer
+     *                   VU interleaved (pixelStride 2), come su quasi tutti i dispositivi;
+     *                   false: piani separati (pixelStride 1)
+     */
+    static Planes planes(int width, int height, boolean semiPlanar) {
+        byte[] nv21 = scene(width, height);
+        int chromaWidth = (width + 1) / 2;
+        int chromaHeight = (height + 1) / 2;
+        int yRowStride = alignRow(width);
+        // Come in un'Image l'ultima riga non ha padding
+        ByteBuffer y = ByteBuffer.allocateDirect(yRowStride * (height - 1) + width);
+        for (int row = 0; row < height; row++) {
+            y.position(row * yRowStride);
+            y.put(nv21, row * width, width);
+        }
+        y.clear();
+        int offset = width * height;
+        if (semiPlanar) {
+            int rowStride = alignRow(2 * chromaWidth);
+            ByteBuffer vu = ByteBuffer.allocateDirect(rowStride * (chromaHeight - 1) + 2 * chromaWidth);
+            for (int row = 0; row < chromaHeight; row++) {
+                vu.position(row * rowStride);
+                vu.put(nv21, offset + row * 2 * chromaWidth, 2 * chromaWidth);
+            }
+            vu.clear();
+            ByteBuffer v = vu.duplicate();
+            v.limit(vu.capacity() - 1);
+            ByteBuffer u = vu.duplicate();
+            u.position(1);
+            return new Planes(y, u.slice(), v.slice(), yRowStride, rowStride, 2);
+        }
+        int rowStride = alignRow(chromaWidth);
+        ByteBuffer u = ByteBuffer.allocateDirect(rowStride * (chromaHeight - 1) + chromaWidth);
+        ByteBuffer v = ByteBuffer.allocateDirect(rowStride * (chromaHeight - 1) + chromaWidth);
+        for (int row = 0; row < chromaHeight; row++) {
+            for (int x = 0; x < chromaWidth; x++) {
+                v.put(row * rowStride + x, nv21[offset + row * 2 * chromaWidth + 2 * x]);
+                u.put(row * rowStride + x, nv21[offset + row * 2 * chromaWidth + 2 * x + 1]);
+            }
+        }
+        return new Planes(y, u, v, yRowStride, rowStride, 1);
+    }
+}
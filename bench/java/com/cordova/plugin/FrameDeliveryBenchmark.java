@@ -0,0 +1,138 @@
+package com.cordova.plugin;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Costo nativo per frame della consegna al bridge, dal frame YUV_420_888 al payload.
+ *
+ * legacyBase64 e' il percorso originale (array NV21 e ByteArrayOutputStream nuovi a ogni frame,
+ * toByteArray, Base64); base64 e arrayBuffer quello attuale con buffer riutilizzati nei due
+ * formati. Il costruttore PluginResult(Status, byte[]) di cordova-android codifica a sua volta
+ * il payload in Base64 per il bridge: arrayBufferBridge lo include. I contatori payloadBytes e
+ * frames (FrameBytes) sono sommati su tutte le iterazioni: il loro rapporto e' il numero di
+ * byte consegnati al bridge per frame.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FrameDeliveryBenchmark {
+
+    @Param({ BenchFrames.VGA, BenchFrames.HD, BenchFrames.FULL_HD })
+    public String size;
+
+    private int width;
+    private int height;
+    private BenchFrames.Planes planes;
+    private ForkJoinPool pool;
+    private StripedJpegEncoder encoder;
+    private final YuvConverter converter = new YuvConverter();
+    private byte[] nv21;
+    private final ReusableByteArrayOutputStream jpeg = new ReusableByteArrayOutputStream(256 * 1024);
+
+    /** Byte di payload e frame prodotti nell'iterazione. */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class FrameBytes {
+        public long payloadBytes;
+        public long frames;
+
+        @Setup(Level.Iteration)
+        public void clear() {
+            payloadBytes = 0;
+            frames = 0;
+        }
+
+        void add(int bytes) {
+            payloadBytes += bytes;
+            frames++;
+        }
+    }
+
+    @Setup
+    public void setup() {
+        int[] wh = BenchFrames.parseSize(size);
+        width = wh[0];
+        height = wh[1];
+        planes = BenchFrames.planes(width, height, true);
+        pool = new ForkJoinPool(1);
+        encoder = new StripedJpegEncoder(pool);
+        nv21 = new byte[YuvConverter.nv21Size(width, height)];
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public String legacyBase64(FrameBytes bytes) throws IOException {
+        byte[] packed = new byte[YuvConverter.nv21Size(width, height)];
+        converter.toNv21(planes.y, planes.yRowStride, 1, planes.u, planes.v,
+                planes.uvRowStride, planes.uvPixelStride, width, height, packed);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encoder.encode(packed, width, height, 80, out);
+        String payload = Base64.getEncoder().encodeToString(out.toByteArray());
+        bytes.add(payload.length());
+        return payload;
+    }
+
+    @Benchmark
+    public String base64(FrameBytes bytes) throws IOException {
+        encodeFrame();
+        // Come android.util.Base64.encodeToString(buffer, 0, size, NO_WRAP)
+        byte[] encoded = Base64.getEncoder().encode(ByteBuffer.wrap(jpeg.getBuffer(), 0, jpeg.size())).array();
+        String payload = new String(encoded, StandardCharsets.US_ASCII);
+        bytes.add(payload.length());
+        return payload;
+    }
+
+    @Benchmark
+    public byte[] arrayBuffer(FrameBytes bytes) throws IOException {
+        encodeFrame();
+        byte[] payload = Arrays.copyOf(jpeg.getBuffer(), jpeg.size());
+        bytes.add(payload.length);
+        return payload;
+    }
+
+    @Benchmark
+    public String arrayBufferBridge(FrameBytes bytes) throws IOException {
+        encodeFrame();
+        byte[] payload = Arrays.copyOf(jpeg.getBuffer(), jpeg.size());
+        // PluginResult(Status, byte[]): encodedMessage = Base64.encodeToString(data, NO_WRAP)
+        String message = Base64.getEncoder().encodeToString(payload);
+        bytes.add(message.length());
+        return message;
+    }
+
+    private void encodeFrame() throws IOException {
+        converter.toNv21(planes.y, planes.yRowStride, 1, planes.u, planes.v,
+                planes.uvRowStride, planes.uvPixelStride, width, height, nv21);
+        jpeg.reset();
+        encoder.encode(nv21, width, height, 80, jpeg);
+    }
+}
@@ -0,0 +1,69 @@
+package com.cordova.plugin;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Riduzione e trasformazione NV21 -> NV21 a meta' risoluzione (il caso del frame di consegna
+ * ridotto dal controllo di banda), con e senza rotazione.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FrameScalingBenchmark {
+
+    @Param({ BenchFrames.VGA, BenchFrames.HD, BenchFrames.FULL_HD })
+    public String size;
+
+    private byte[] src;
+    private byte[] dst;
+    private final YuvDownscaler downscaler = new YuvDownscaler();
+    private final YuvTransform rotateBilinear = new YuvTransform();
+    private final YuvTransform mirrorNearest = new YuvTransform();
+
+    @Setup
+    public void setup() {
+        int[] wh = BenchFrames.parseSize(size);
+        int width = wh[0];
+        int height = wh[1];
+        src = BenchFrames.scene(width, height);
+        dst = new byte[YuvConverter.nv21Size(width / 2, height / 2)];
+        downscaler.configure(width, height, width / 2, height / 2);
+        rotateBilinear.configure(width, height, 0, 0, width, height, 90, false, false,
+                height / 2, width / 2, YuvTransform.FILTER_BILINEAR);
+        mirrorNearest.configure(width, height, 0, 0, width, height, 0, true, false,
+                width / 2, height / 2, YuvTransform.FILTER_NEAREST);
+    }
+
+    @Benchmark
+    public byte[] downscaleBox() {
+        downscaler.downscale(src, dst);
+        return dst;
+    }
+
+    @Benchmark
+    public byte[] transformRotate90Bilinear() {
+        rotateBilinear.transform(src, dst);
+        return dst;
+    }
+
+    @Benchmark
+    public byte[] transformMirrorNearest() {
+        mirrorNearest.transform(src, dst);
+        return dst;
+    }
+}
@@ -0,0 +1,77 @@
+package com.cordova.plugin;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Codifica JPEG di un frame NV21 su un solo thread.
+ *
+ * YuvImage.compressToJpeg non esiste sulla JVM: si misura StripedJpegEncoder (baseline
+ * sequenziale), che ha lo stesso contratto JpegEncoder. allocatingStream riproduce il vecchio
+ * schema ByteArrayOutputStream + toByteArray per frame, reusableStream quello attuale.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class JpegEncodeBenchmark {
+
+    @Param({ BenchFrames.VGA, BenchFrames.HD, BenchFrames.FULL_HD })
+    public String size;
+
+    @Param({ "80" })
+    public int quality;
+
+    private int width;
+    private int height;
+    private byte[] nv21;
+    private ForkJoinPool pool;
+    private StripedJpegEncoder encoder;
+    private final ReusableByteArrayOutputStream out = new ReusableByteArrayOutputStream(256 * 1024);
+
+    @Setup
+    public void setup() {
+        int[] wh = BenchFrames.parseSize(size);
+        width = wh[0];
+        height = wh[1];
+        nv21 = BenchFrames.scene(width, height);
+        pool = new ForkJoinPool(1);
+        encoder = new StripedJpegEncoder(pool);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public byte[] allocatingStream() throws IOException {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        encoder.encode(nv21, width, height, quality, stream);
+        return stream.toByteArray();
+    }
+
+    @Benchmark
+    public int reusableStream() throws IOException {
+        out.reset();
+        encoder.encode(nv21, width, height, quality, out);
+        return out.size();
+    }
+}
@@ -0,0 +1,55 @@
+package com.cordova.plugin;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Costo della misura di latenza per frame (record) e della lettura dei percentili
+ * fatta a ogni richiesta di statistiche.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LatencyHistogramBenchmark {
+
+    // Latenze da 1 a ~100 ms, distribuite come quelle di una pipeline a 30 fps
+    private final long[] samples = new long[1024];
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private int next = 0;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (long) (Math.exp(random.nextGaussian() * 0.6 + Math.log(15)) * 1_000_000L);
+            histogram.record(samples[i]);
+        }
+    }
+
+    @Benchmark
+    public LatencyHistogram record() {
+        histogram.record(samples[next]);
+        next = (next + 1) & (samples.length - 1);
+        return histogram;
+    }
+
+    @Benchmark
+    public double percentiles() {
+        return histogram.getPercentileMillis(50) + histogram.getPercentileMillis(95)
+                + histogram.getPercentileMillis(99);
+    }
+}
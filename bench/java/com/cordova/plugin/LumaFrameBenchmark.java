@@ -0,0 +1,114 @@
+package com.cordova.plugin;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * CPU nativa e payload per frame di frameFormat "luma" rispetto ai formati JPEG.
+ *
+ * jpegBase64 e jpegArrayBuffer: NV21, JPEG quality 80 e payload per il bridge;
+ * luma e lumaStep2: header di 16 byte e piano Y (intero o un pixel ogni 2), copiato
+ * nel payload come in CameraSession.packLuma. I contatori payloadBytes e frames sono sommati
+ * su tutte le iterazioni: il rapporto e' il numero di byte per frame.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LumaFrameBenchmark {
+
+    private static final int LUMA_HEADER_BYTES = 16;
+
+    @Param({ BenchFrames.VGA, BenchFrames.HD, BenchFrames.FULL_HD })
+    public String size;
+
+    private int width;
+    private int height;
+    private BenchFrames.Planes planes;
+    private ForkJoinPool pool;
+    private StripedJpegEncoder encoder;
+    private final YuvConverter converter = new YuvConverter();
+    private byte[] frame;
+    private final ReusableByteArrayOutputStream jpeg = new ReusableByteArrayOutputStream(256 * 1024);
+
+    @Setup
+    public void setup() {
+        int[] wh = BenchFrames.parseSize(size);
+        width = wh[0];
+        height = wh[1];
+        planes = BenchFrames.planes(width, height, true);
+        pool = new ForkJoinPool(1);
+        encoder = new StripedJpegEncoder(pool);
+        // Come il buffer del frame nella pipeline: NV21, abbastanza anche per header + Y
+        frame = new byte[YuvConverter.nv21Size(width, height)];
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public String jpegBase64(FrameDeliveryBenchmark.FrameBytes bytes) throws IOException {
+        encodeFrame();
+        byte[] encoded = Base64.getEncoder().encode(ByteBuffer.wrap(jpeg.getBuffer(), 0, jpeg.size())).array();
+        String payload = new String(encoded, StandardCharsets.US_ASCII);
+        bytes.add(payload.length());
+        return payload;
+    }
+
+    @Benchmark
+    public byte[] jpegArrayBuffer(FrameDeliveryBenchmark.FrameBytes bytes) throws IOException {
+        encodeFrame();
+        byte[] payload = Arrays.copyOf(jpeg.getBuffer(), jpeg.size());
+        bytes.add(payload.length);
+        return payload;
+    }
+
+    @Benchmark
+    public byte[] luma(FrameDeliveryBenchmark.FrameBytes bytes) {
+        return packLuma(1, bytes);
+    }
+
+    @Benchmark
+    public byte[] lumaStep2(FrameDeliveryBenchmark.FrameBytes bytes) {
+        return packLuma(2, bytes);
+    }
+
+    private void encodeFrame() throws IOException {
+        converter.toNv21(planes.y, planes.yRowStride, 1, planes.u, planes.v,
+                planes.uvRowStride, planes.uvPixelStride, width, height, frame);
+        jpeg.reset();
+        encoder.encode(frame, width, height, 80, jpeg);
+    }
+
+    private byte[] packLuma(int step, FrameDeliveryBenchmark.FrameBytes bytes) {
+        // Header: larghezza, altezza, timestamp (qui costanti)
+        Arrays.fill(frame, 0, LUMA_HEADER_BYTES, (byte) 1);
+        int length = LUMA_HEADER_BYTES + converter.copyLumaRegion(planes.y, planes.yRowStride, 1,
+                0, 0, width, height, step, frame, LUMA_HEADER_BYTES);
+        byte[] payload = Arrays.copyOf(frame, length);
+        bytes.add(payload.length);
+        return payload;
+    }
+}
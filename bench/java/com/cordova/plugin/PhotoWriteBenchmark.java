@@ -0,0 +1,108 @@
+package com.cordova.plugin;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Salvataggio di una foto JPEG: dal submit alla notifica di file scritto.
+ *
+ * legacyStream riproduce il vecchio percorso (copia del buffer in un nuovo array e
+ * FileOutputStream sul thread chiamante); photoWriter quello attuale (FileChannel sul
+ * thread di I/O, buffer scritto senza copie). Con fsync=true entrambi sincronizzano il file.
+ * Ogni file viene cancellato subito per non riempire il disco: la cancellazione e' nel tempo.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PhotoWriteBenchmark {
+
+    @Param({ BenchFrames.VGA, BenchFrames.HD, BenchFrames.FULL_HD })
+    public String size;
+
+    @Param({ "false", "true" })
+    public boolean fsync;
+
+    private File directory;
+    private ByteBuffer jpeg;
+    private PhotoWriter writer;
+    private int sequence = 0;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("photo-bench").toFile();
+        jpeg = ByteBuffer.allocateDirect(BenchFrames.jpeg(size, 95).length);
+        jpeg.put(BenchFrames.jpeg(size, 95)).flip();
+        writer = new PhotoWriter(directory, "IMG_", ".jpg", 2);
+        writer.setFsync(fsync);
+    }
+
+    @TearDown
+    public void tearDown() {
+        writer.shutdown(5000);
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Benchmark
+    public File legacyStream() throws IOException {
+        ByteBuffer buffer = jpeg.duplicate();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        File file = new File(directory, "LEGACY_" + (sequence++) + ".jpg");
+        try (FileOutputStream output = new FileOutputStream(file)) {
+            output.write(bytes);
+            if (fsync) {
+                output.getFD().sync();
+            }
+        }
+        file.delete();
+        return file;
+    }
+
+    @Benchmark
+    public File photoWriter() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        File[] saved = new File[1];
+        writer.submit(jpeg.duplicate(), () -> { }, new PhotoWriter.Callback() {
+            @Override
+            public void onSaved(File file, long latencyNanos) {
+                file.delete();
+                saved[0] = file;
+                done.countDown();
+            }
+
+            @Override
+            public void onError(Exception e) {
+                done.countDown();
+            }
+        });
+        done.await();
+        return saved[0];
+    }
+}
@@ -0,0 +1,167 @@
+package com.cordova.plugin;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Latenza arrivo -> consegna della FramePipeline sotto carico, per frameFormat "base64"
+ * (NV21, JPEG quality 80, Base64) e "luma" (solo piano Y).
+ *
+ * Ogni invocazione simula RUN_SECONDS secondi di camera a {@code fps}: il thread del benchmark
+ * fa da thread camera (acquire, copia dai piani, submit), encoding e consegna girano sui
+ * thread della pipeline. Le latenze finiscono in un LatencyHistogram; i contatori riportano
+ * p50/p90/p99 e i frame consegnati e scartati dell'unica iterazione di misura
+ * (con piu' iterazioni JMH li sommerebbe).
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PipelineLatencyBenchmark {
+
+    private static final int RUN_SECONDS = 3;
+    private static final int LUMA_HEADER_BYTES = 16;
+
+    @Param({ BenchFrames.VGA, BenchFrames.HD, BenchFrames.FULL_HD })
+    public String size;
+
+    @Param({ "base64", "luma" })
+    public String format;
+
+    @Param({ "30" })
+    public int fps;
+
+    private int width;
+    private int height;
+    private boolean luma;
+    private BenchFrames.Planes planes;
+    private ForkJoinPool pool;
+    private StripedJpegEncoder encoder;
+    private final YuvConverter converter = new YuvConverter();
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private FramePipeline pipeline;
+    // Tiene vivo il payload come il passaggio al bridge
+    private volatile Object lastPayload;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Latency {
+        public double p50Millis;
+        public double p90Millis;
+        public double p99Millis;
+        public long deliveredFrames;
+        public long droppedFrames;
+    }
+
+    @Setup
+    public void setup() {
+        int[] wh = BenchFrames.parseSize(size);
+        width = wh[0];
+        height = wh[1];
+        luma = "luma".equals(format);
+        planes = BenchFrames.planes(width, height, true);
+        pool = new ForkJoinPool(1);
+        encoder = new StripedJpegEncoder(pool);
+    }
+
+    @Setup(Level.Iteration)
+    public void startPipeline() {
+        histogram.reset();
+        delivered.set(0);
+        dropped.set(0);
+        pipeline = new FramePipeline(width, height, 2, this::encode, this::deliver);
+        pipeline.setDropListener(frame -> dropped.incrementAndGet());
+        pipeline.start();
+    }
+
+    @TearDown(Level.Iteration)
+    public void stopPipeline() {
+        pipeline.stop();
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public long run(Latency latency) throws InterruptedException {
+        long interval = 1_000_000_000L / fps;
+        long next = System.nanoTime();
+        for (int i = 0; i < RUN_SECONDS * fps; i++) {
+            LockSupport.parkNanos(next - System.nanoTime());
+            next += interval;
+            long arrival = System.nanoTime();
+            PipelineFrame frame = pipeline.acquireFrame();
+            if (frame == null) {
+                dropped.incrementAndGet();
+                continue;
+            }
+            if (luma) {
+                frame.lumaLength = LUMA_HEADER_BYTES + converter.copyLumaRegion(planes.y, planes.yRowStride, 1,
+                        0, 0, width, height, 1, frame.yuv, LUMA_HEADER_BYTES);
+            } else {
+                converter.toNv21(planes.y, planes.yRowStride, 1, planes.u, planes.v,
+                        planes.uvRowStride, planes.uvPixelStride, width, height, frame.yuv);
+            }
+            frame.arrivalNanos = arrival;
+            frame.deliver = true;
+            pipeline.submit(frame, System.nanoTime() - arrival);
+        }
+        // Lascia svuotare le code prima di leggere l'istogramma
+        Thread.sleep(500);
+        latency.p50Millis = histogram.getPercentileMillis(50);
+        latency.p90Millis = histogram.getPercentileMillis(90);
+        latency.p99Millis = histogram.getPercentileMillis(99);
+        latency.deliveredFrames = delivered.get();
+        latency.droppedFrames = dropped.get();
+        return histogram.getCount();
+    }
+
+    private void encode(PipelineFrame frame) throws IOException {
+        if (frame.lumaLength > 0) {
+            return;
+        }
+        frame.jpeg.reset();
+        encoder.encode(frame.yuv, frame.width, frame.height, 80, frame.jpeg);
+    }
+
+    private void deliver(PipelineFrame frame) {
+        Object payload;
+        if (frame.lumaLength > 0) {
+            payload = Arrays.copyOf(frame.yuv, frame.lumaLength);
+        } else {
+            byte[] encoded = Base64.getEncoder().encode(ByteBuffer.wrap(frame.jpeg.getBuffer(), 0, frame.jpeg.size())).array();
+            payload = new String(encoded, StandardCharsets.US_ASCII);
+        }
+        lastPayload = payload;
+        histogram.record(System.nanoTime() - frame.arrivalNanos);
+        delivered.incrementAndGet();
+    }
+}
@@ -0,0 +1,69 @@
+package com.cordova.plugin;
+
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * StripedJpegEncoder a strisce in parallelo rispetto al percorso a un core.
+ *
+ * Con threads = 1 l'encoder scrive un'unica scansione senza restart marker (il percorso
+ * single-core); con piu' thread divide il frame in strisce di MCU codificate sul pool.
+ * Lo speedup dipende dai core disponibili: con meno core che thread misura solo l'overhead.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StripedJpegBenchmark {
+
+    @Param({ BenchFrames.VGA, BenchFrames.HD, BenchFrames.FULL_HD })
+    public String size;
+
+    @Param({ "1", "2", "4" })
+    public int threads;
+
+    private int width;
+    private int height;
+    private byte[] nv21;
+    private ForkJoinPool pool;
+    private StripedJpegEncoder encoder;
+    private final ReusableByteArrayOutputStream out = new ReusableByteArrayOutputStream(256 * 1024);
+
+    @Setup
+    public void setup() {
+        int[] wh = BenchFrames.parseSize(size);
+        width = wh[0];
+        height = wh[1];
+        nv21 = BenchFrames.scene(width, height);
+        pool = new ForkJoinPool(threads);
+        encoder = new StripedJpegEncoder(pool);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public int encode() throws IOException {
+        out.reset();
+        encoder.encode(nv21, width, height, 80, out);
+        return out.size();
+    }
+}
@@ -0,0 +1,87 @@
+package com.cordova.plugin;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Impacchettamento YUV_420_888 -> NV21 per frame.
+ *
+ * legacyAllocating riproduce la vecchia conversione (nuovo array a ogni frame, piani copiati
+ * interi senza guardare gli stride); pooled e' il percorso attuale con FrameBufferPool e
+ * YuvConverter. Con -prof gc la differenza di gc.alloc.rate.norm e' l'allocazione per frame.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class YuvConversionBenchmark {
+
+    @Param({ BenchFrames.VGA, BenchFrames.HD, BenchFrames.FULL_HD })
+    public String size;
+
+    @Param({ "semiplanar", "planar" })
+    public String layout;
+
+    private int width;
+    private int height;
+    private BenchFrames.Planes planes;
+    private FrameBufferPool pool;
+    private final YuvConverter converter = new YuvConverter();
+
+    @Setup
+    public void setup() {
+        int[] wh = BenchFrames.parseSize(size);
+        width = wh[0];
+        height = wh[1];
+        planes = BenchFrames.planes(width, height, "semiplanar".equals(layout));
+        pool = FrameBufferPool.forNv21(width, height, 2);
+    }
+
+    @Benchmark
+    public byte[] legacyAllocating() {
+        ByteBuffer y = planes.y;
+        ByteBuffer u = planes.u;
+        ByteBuffer v = planes.v;
+        int ySize = y.remaining();
+        int uSize = u.remaining();
+        int vSize = v.remaining();
+        byte[] nv21 = new byte[ySize + uSize + vSize];
+        y.get(nv21, 0, ySize);
+        v.get(nv21, ySize, vSize);
+        u.get(nv21, ySize + vSize, uSize);
+        y.rewind();
+        u.rewind();
+        v.rewind();
+        return nv21;
+    }
+
+    @Benchmark
+    public byte[] pooled() {
+        byte[] nv21 = pool.acquire();
+        converter.toNv21(planes.y, planes.yRowStride, 1, planes.u, planes.v,
+                planes.uvRowStride, planes.uvPixelStride, width, height, nv21);
+        pool.release(nv21);
+        return nv21;
+    }
+
+    @Benchmark
+    public byte[] poolAcquireRelease() {
+        byte[] nv21 = pool.acquire();
+        pool.release(nv21);
+        return nv21;
+    }
+}
@@ -0,0 +1,272 @@
+package com.cordova.plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writer streaming per file AVI (RIFF) con un solo stream video MJPEG.
+ *
+ * Gli header vengono scritti all'apertura con valori provvisori e aggiornati in
+ * {@link #close()}, insieme all'indice idx1. Le voci dell'indice vengono accumulate
+ * in blocchi preallocati, quindi la scrittura di un frame non alloca.
+ * Il frame rate finale e' calcolato dai timestamp dei frame, se disponibili.
+ * Non e' thread-safe: va usato da un solo thread.
+ */
+public class AviMjpegWriter {
+    // Limite AVI 1.0 (offset a 32 bit), con margine per idx1
+    private static final long MAX_RIFF_BYTES = 0x7F000000L;
+    private static final int INDEX_ENTRY_BYTES = 16;
+    private static final int INDEX_CHUNK_ENTRIES = 4096;
+    private static final int AVIF_HASINDEX = 0x10;
+    private static final int AVIIF_KEYFRAME = 0x10;
+
+    // Layout fisso degli header: RIFF, LIST hdrl, avih, LIST strl, strh, strf, LIST movi
+    private static final int HEADER_BYTES = 12 + 12 + 8 + 56 + 12 + 8 + 56 + 8 + 40 + 12;
+    private static final int MOVI_SIZE_OFFSET = HEADER_BYTES - 8;
+    private static final int MOVI_FOURCC_OFFSET = HEADER_BYTES - 4;
+
+    private final File file;
+    private final int width;
+    private final int height;
+    private final double nominalFps;
+    private final FileChannel channel;
+    private final RandomAccessFile raf;
+
+    private final ByteBuffer chunkHeader = ByteBuffer.allocateDirect(8).order(ByteOrder.LITTLE_ENDIAN);
+    private final ByteBuffer padding = ByteBuffer.allocateDirect(1);
+    private final ByteBuffer[] gather = new ByteBuffer[3];
+    private final List<ByteBuffer> indexChunks = new ArrayList<>();
+    private ByteBuffer currentIndexChunk;
+
+    private long position;
+    private int frameCount = 0;
+    private int maxFrameBytes = 0;
+    private long firstTimestampNanos = -1;
+    private long lastTimestampNanos = -1;
+    private boolean closed = false;
+
+    public AviMjpegWriter(File file, int width, int height, double fps) throws IOException {
+        if (width <= 0 || height <= 0 || fps <= 0) {
+            throw new IllegalArgumentException("Invalid AVI stream " + width + "x" + height + "@" + fps);
+        }
+        this.file = file;
+        this.width = width;
+        this.height = height;
+        this.nominalFps = fps;
+        this.raf = new RandomAccessFile(file, "rw");
+        this.raf.setLength(0);
+        this.channel = raf.getChannel();
+        this.currentIndexChunk = newIndexChunk();
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        writeHeaders(header, 0, fps);
+        header.flip();
+        writeFully(header, 0);
+        position = HEADER_BYTES;
+        channel.position(position);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    /** Byte scritti finora (header e frame, indice escluso). */
+    public long getBytesWritten() {
+        return position;
+    }
+
+    /**
+     * Accoda un frame JPEG come chunk '00dc'.
+     * @param timestampNanos timestamp del frame, o -1 se non disponibile
+     */
+    public void writeFrame(byte[] jpeg, int offset, int length, long timestampNanos) throws IOException {
+        if (closed) {
+            throw new IOException("AVI writer closed");
+        }
+        int padded = length + (length & 1);
+        if (position + 8 + padded + (long) (frameCount + 1) * INDEX_ENTRY_BYTES + 8 > MAX_RIFF_BYTES) {
+            throw new IOException("AVI file size limit reached");
+        }
+
+        chunkHeader.clear();
+        chunkHeader.put((byte) '0').put((byte) '0').put((byte) 'd').put((byte) 'c');
+        chunkHeader.putInt(length);
+        chunkHeader.flip();
+        gather[0] = chunkHeader;
+        gather[1] = ByteBuffer.wrap(jpeg, offset, length);
+        int parts = 2;
+        if ((length & 1) != 0) {
+            padding.clear();
+            gather[2] = padding;
+            parts = 3;
+        }
+        long chunkStart = position;
+        long expected = 8L + padded;
+        long written = 0;
+        while (written < expected) {
+            written += channel.write(gather, 0, parts);
+        }
+        position += expected;
+
+        addIndexEntry((int) (chunkStart - MOVI_FOURCC_OFFSET), length);
+        frameCount++;
+        if (length > maxFrameBytes) {
+            maxFrameBytes = length;
+        }
+        if (timestampNanos >= 0) {
+            if (firstTimestampNanos < 0) {
+                firstTimestampNanos = timestampNanos;
+            }
+            lastTimestampNanos = timestampNanos;
+        }
+    }
+
+    /** Frame rate effettivo calcolato dai timestamp, o quello nominale. */
+    public double getEffectiveFps() {
+        if (frameCount >= 2 && lastTimestampNanos > firstTimestampNanos) {
+            return (frameCount - 1) * 1_000_000_000.0 / (lastTimestampNanos - firstTimestampNanos);
+        }
+        return nominalFps;
+    }
+
+    /** Scrive l'indice, aggiorna gli header e chiude il file. */
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            long moviEnd = position;
+
+            ByteBuffer idxHeader = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            idxHeader.put((byte) 'i').put((byte) 'd').put((byte) 'x').put((byte) '1');
+            idxHeader.putInt(frameCount * INDEX_ENTRY_BYTES);
+            idxHeader.flip();
+            writeFully(idxHeader, position);
+            position += 8;
+            for (ByteBuffer chunk : indexChunks) {
+                chunk.flip();
+                int size = chunk.remaining();
+                writeFully(chunk, position);
+                position += size;
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            writeHeaders(header, moviEnd, getEffectiveFps());
+            header.flip();
+            writeFully(header, 0);
+            channel.force(true);
+        } finally {
+            channel.close();
+            raf.close();
+        }
+    }
+
+    private void writeHeaders(ByteBuffer b, long moviEnd, double fps) {
+        int rate = (int) Math.round(fps * 1000);
+        int scale = 1000;
+        int microSecPerFrame = (int) Math.round(1_000_000.0 / fps);
+        int suggestedBuffer = maxFrameBytes > 0 ? maxFrameBytes + 8 : width * height;
+        long riffSize = moviEnd > 0 ? position - 8 : HEADER_BYTES - 8;
+        long moviSize = moviEnd > 0 ? moviEnd - (MOVI_SIZE_OFFSET + 4) : 4;
+
+        fourcc(b, "RIFF");
+        b.putInt((int) riffSize);
+        fourcc(b, "AVI ");
+
+        fourcc(b, "LIST");
+        b.putInt(4 + 8 + 56 + 12 + 8 + 56 + 8 + 40);
+        fourcc(b, "hdrl");
+
+        // MainAVIHeader
+        fourcc(b, "avih");
+        b.putInt(56);
+        b.putInt(microSecPerFrame);
+        b.putInt((int) Math.min(Integer.MAX_VALUE, (long) suggestedBuffer * Math.max(1, Math.round(fps))));
+        b.putInt(0);
+        b.putInt(AVIF_HASINDEX);
+        b.putInt(frameCount);
+        b.putInt(0);
+        b.putInt(1);
+        b.putInt(suggestedBuffer);
+        b.putInt(width);
+        b.putInt(height);
+        b.putInt(0).putInt(0).putInt(0).putInt(0);
+
+        fourcc(b, "LIST");
+        b.putInt(4 + 8 + 56 + 8 + 40);
+        fourcc(b, "strl");
+
+        // AVIStreamHeader
+        fourcc(b, "strh");
+        b.putInt(56);
+        fourcc(b, "vids");
+        fourcc(b, "MJPG");
+        b.putInt(0);
+        b.putShort((short) 0);
+        b.putShort((short) 0);
+        b.putInt(0);
+        b.putInt(scale);
+        b.putInt(rate);
+        b.putInt(0);
+        b.putInt(frameCount);
+        b.putInt(suggestedBuffer);
+        b.putInt(-1);
+        b.putInt(0);
+        b.putShort((short) 0).putShort((short) 0).putShort((short) width).putShort((short) height);
+
+        // BITMAPINFOHEADER
+        fourcc(b, "strf");
+        b.putInt(40);
+        b.putInt(40);
+        b.putInt(width);
+        b.putInt(height);
+        b.putShort((short) 1);
+        b.putShort((short) 24);
+        fourcc(b, "MJPG");
+        b.putInt(width * height * 3);
+        b.putInt(0).putInt(0).putInt(0).putInt(0);
+
+        fourcc(b, "LIST");
+        b.putInt((int) moviSize);
+        fourcc(b, "movi");
+    }
+
+    private void addIndexEntry(int offset, int size) {
+        if (!currentIndexChunk.hasRemaining()) {
+            currentIndexChunk = newIndexChunk();
+        }
+        currentIndexChunk.put((byte) '0').put((byte) '0').put((byte) 'd').put((byte) 'c');
+        currentIndexChunk.putInt(AVIIF_KEYFRAME);
+        currentIndexChunk.putInt(offset);
+        currentIndexChunk.putInt(size);
+    }
+
+    private ByteBuffer newIndexChunk() {
+        ByteBuffer chunk = ByteBuffer.allocateDirect(INDEX_CHUNK_ENTRIES * INDEX_ENTRY_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        indexChunks.add(chunk);
+        return chunk;
+    }
+
+    private void writeFully(ByteBuffer buffer, long at) throws IOException {
+        while (buffer.hasRemaining()) {
+            at += channel.write(buffer, at);
+        }
+    }
+
+    private static void fourcc(ByteBuffer b, String code) {
+        for (int i = 0; i < 4; i++) {
+            b.put((byte) code.charAt(i));
+        }
+    }
+}
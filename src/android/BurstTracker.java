@@ -0,0 +1,75 @@
+package com.cordova.plugin;
+
+/**
+ * Stato di una raffica di scatti: conta foto salvate e fallite e calcola
+ * il frame rate ottenuto dai timestamp del sensore.
+ */
+public class BurstTracker {
+    private final int count;
+    private final long startNanos = System.nanoTime();
+    private int saved = 0;
+    private int failed = 0;
+    private long firstSensorTimestamp = Long.MAX_VALUE;
+    private long lastSensorTimestamp = Long.MIN_VALUE;
+    private long endNanos = 0;
+
+    public BurstTracker(int count) {
+        this.count = count;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /** Registra una foto salvata; ritorna true se era l'ultima della raffica. */
+    public synchronized boolean onSaved(long sensorTimestampNanos) {
+        saved++;
+        if (sensorTimestampNanos < firstSensorTimestamp) {
+            firstSensorTimestamp = sensorTimestampNanos;
+        }
+        if (sensorTimestampNanos > lastSensorTimestamp) {
+            lastSensorTimestamp = sensorTimestampNanos;
+        }
+        return complete();
+    }
+
+    /** Registra uno scatto fallito; ritorna true se era l'ultimo della raffica. */
+    public synchronized boolean onFailed() {
+        failed++;
+        return complete();
+    }
+
+    private boolean complete() {
+        if (saved + failed == count) {
+            endNanos = System.nanoTime();
+            return true;
+        }
+        return false;
+    }
+
+    public synchronized boolean isComplete() {
+        return saved + failed >= count;
+    }
+
+    public synchronized int getSaved() {
+        return saved;
+    }
+
+    public synchronized int getFailed() {
+        return failed;
+    }
+
+    /** Frame rate della raffica misurato sui timestamp del sensore. */
+    public synchronized double getAchievedFps() {
+        if (saved < 2 || lastSensorTimestamp <= firstSensorTimestamp) {
+            return 0;
+        }
+        return (saved - 1) * 1_000_000_000.0 / (lastSensorTimestamp - firstSensorTimestamp);
+    }
+
+    /** Durata dalla richiesta all'ultimo salvataggio. */
+    public synchronized long getDurationMillis() {
+        long end = endNanos > 0 ? endNanos : System.nanoTime();
+        return (end - startNanos) / 1_000_000;
+    }
+}
@@ -0,0 +1,381 @@
+package com.cordova.plugin;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.graphics.ImageFormat;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.hardware.usb.UsbDevice;
+import android.hardware.usb.UsbManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.Range;
+import android.util.Size;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Inventario in cache di camere e dispositivi USB video.
+ *
+ * Lo snapshot contiene le characteristics di ogni camera, la loro classificazione
+ * (USB o integrata) e una sola enumerazione di UsbManager condivisa da tutte le camere.
+ * Viene ricostruito solo quando cambia qualcosa: broadcast USB attach/detach
+ * (invalidazione completa) o camere nuove segnalate da CameraManager.AvailabilityCallback.
+ */
+public class CameraInventory {
+    private static final String TAG = "UsbExternalCamera";
+
+    /** Dati in cache di una camera. */
+    public static class CameraEntry {
+        public final String id;
+        public final CameraCharacteristics characteristics;
+        public final Integer lensFacing;
+        /** Classificazione completa (usata per scegliere la camera di default). */
+        public final boolean usbExternal;
+        /** Classificazione semplice (usata da listCameras). */
+        public final boolean simpleUsb;
+        /** Formati, dimensioni e range fps per la negoziazione dello stream. */
+        public final StreamConfigNegotiator.Capabilities streamCapabilities;
+        /** true se Image.getTimestamp() e' confrontabile con SystemClock.elapsedRealtimeNanos(). */
+        public final boolean realtimeTimestamps;
+        /** false per le camere a fuoco fisso (molte UVC): il pre-scatto salta l'AF trigger. */
+        public final boolean hasAutofocus;
+        /** true se l'esposizione automatica supporta il precapture. */
+        public final boolean hasAutoExposure;
+
+        CameraEntry(String id, CameraCharacteristics characteristics) {
+            this.id = id;
+            this.characteristics = characteristics;
+            this.lensFacing = characteristics.get(CameraCharacteristics.LENS_FACING);
+            this.usbExternal = isUsbExternalCamera(characteristics, id);
+            this.simpleUsb = isSimpleUsbCamera(characteristics, id);
+            this.streamCapabilities = readStreamCapabilities(characteristics);
+            Integer timestampSource = characteristics.get(CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE);
+            this.realtimeTimestamps = timestampSource != null
+                    && timestampSource == CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE_REALTIME;
+            this.hasAutofocus = hasModeOtherThan(characteristics.get(CameraCharacteristics.CONTROL_AF_AVAILABLE_MODES),
+                    CameraCharacteristics.CONTROL_AF_MODE_OFF);
+            this.hasAutoExposure = hasModeOtherThan(characteristics.get(CameraCharacteristics.CONTROL_AE_AVAILABLE_MODES),
+                    CameraCharacteristics.CONTROL_AE_MODE_OFF);
+        }
+    }
+
+    /** Snapshot immutabile dell'inventario. */
+    public static class Snapshot {
+        public final String[] cameraIds;
+        public final Map<String, CameraEntry> cameras;
+        /** Informazioni sul dispositivo USB video collegato (vuoto se nessuno). */
+        public final JSONObject usbInfo;
+
+        Snapshot(String[] cameraIds, Map<String, CameraEntry> cameras, JSONObject usbInfo) {
+            this.cameraIds = cameraIds;
+            this.cameras = Collections.unmodifiableMap(cameras);
+            this.usbInfo = usbInfo;
+        }
+
+        public CameraEntry get(String cameraId) {
+            return cameras.get(cameraId);
+        }
+    }
+
+    private final Context context;
+    private final CameraManager cameraManager;
+    private final UsbManager usbManager;
+    private final Handler callbackHandler = new Handler(Looper.getMainLooper());
+
+    private Snapshot snapshot;
+    // Lista id da rileggere (nuova camera), characteristics riutilizzabili
+    private volatile boolean idsStale = true;
+    // Tutto da rileggere (USB collegato/scollegato)
+    private volatile boolean fullyStale = true;
+    private boolean started = false;
+
+    private final CameraManager.AvailabilityCallback availabilityCallback = new CameraManager.AvailabilityCallback() {
+        @Override
+        public void onCameraAvailable(String cameraId) {
+            Snapshot current = snapshot;
+            // Le camere gia' note tornano disponibili anche dopo una nostra close(): ignora
+            if (current == null || !current.cameras.containsKey(cameraId)) {
+                idsStale = true;
+            }
+        }
+    };
+
+    private final BroadcastReceiver usbReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context c, Intent intent) {
+            Log.d(TAG, "USB device change: " + intent.getAction() + ", invalidating camera inventory");
+            invalidate();
+        }
+    };
+
+    public CameraInventory(Context context) {
+        this.context = context.getApplicationContext();
+        this.cameraManager = (CameraManager) this.context.getSystemService(Context.CAMERA_SERVICE);
+        this.usbManager = (UsbManager) this.context.getSystemService(Context.USB_SERVICE);
+    }
+
+    public CameraManager getCameraManager() {
+        return cameraManager;
+    }
+
+    /** Registra i listener di invalidazione. */
+    public synchronized void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        cameraManager.registerAvailabilityCallback(availabilityCallback, callbackHandler);
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(UsbManager.ACTION_USB_DEVICE_ATTACHED);
+        filter.addAction(UsbManager.ACTION_USB_DEVICE_DETACHED);
+        context.registerReceiver(usbReceiver, filter);
+    }
+
+    public synchronized void stop() {
+        if (!started) {
+            return;
+        }
+        started = false;
+        cameraManager.unregisterAvailabilityCallback(availabilityCallback);
+        try {
+            context.unregisterReceiver(usbReceiver);
+        } catch (IllegalArgumentException e) {
+            // Non registrato
+        }
+    }
+
+    public void invalidate() {
+        fullyStale = true;
+        idsStale = true;
+    }
+
+    /** Snapshot corrente, ricostruito se invalidato. */
+    public synchronized Snapshot getSnapshot() throws CameraAccessException {
+        if (snapshot != null && !idsStale && !fullyStale) {
+            return snapshot;
+        }
+        boolean reuseCharacteristics = snapshot != null && !fullyStale;
+        idsStale = false;
+        fullyStale = false;
+
+        String[] cameraIds = cameraManager.getCameraIdList();
+        Map<String, CameraEntry> cameras = new LinkedHashMap<>();
+        for (String cameraId : cameraIds) {
+            CameraEntry entry = reuseCharacteristics ? snapshot.get(cameraId) : null;
+            if (entry == null) {
+                entry = new CameraEntry(cameraId, cameraManager.getCameraCharacteristics(cameraId));
+            }
+            cameras.put(cameraId, entry);
+        }
+        JSONObject usbInfo = reuseCharacteristics ? snapshot.usbInfo : readUsbDeviceInfo();
+        snapshot = new Snapshot(cameraIds, cameras, usbInfo);
+        Log.d(TAG, "Camera inventory rebuilt: " + Arrays.toString(cameraIds));
+        return snapshot;
+    }
+
+    // Enumerazione unica dei dispositivi USB video
+    private JSONObject readUsbDeviceInfo() {
+        JSONObject usbInfo = new JSONObject();
+        try {
+            if (usbManager == null) {
+                return usbInfo;
+            }
+            HashMap<String, UsbDevice> deviceList = usbManager.getDeviceList();
+
+            // Cerca dispositivi video USB
+            for (UsbDevice device : deviceList.values()) {
+                // Controlla se è un dispositivo video (classe 14 = Video)
+                if (device.getDeviceClass() == 14 ||
+                    device.getDeviceClass() == 239 || // Miscellaneous Device
+                    hasVideoInterface(device)) {
+
+                    String deviceName = device.getProductName();
+                    String manufacturerName = device.getManufacturerName();
+
+                    if (deviceName != null && manufacturerName != null) {
+                        usbInfo.put("productName", deviceName);
+                        usbInfo.put("manufacturerName", manufacturerName);
+                        usbInfo.put("vendorId", device.getVendorId());
+                        usbInfo.put("productId", device.getProductId());
+                        usbInfo.put("deviceName", device.getDeviceName());
+                        usbInfo.put("fullName", manufacturerName + " " + deviceName);
+
+                        // Identifica specificamente Logitech
+                        if (manufacturerName.toLowerCase().contains("logitech") ||
+                            deviceName.toLowerCase().contains("logitech")) {
+                            usbInfo.put("isLogitech", true);
+                            usbInfo.put("displayName", "Logitech " + deviceName);
+                        } else {
+                            usbInfo.put("isLogitech", false);
+                            usbInfo.put("displayName", manufacturerName + " " + deviceName);
+                        }
+
+                        Log.d(TAG, "Found USB camera: " + manufacturerName + " " + deviceName);
+                        break;
+                    }
+                }
+            }
+        } catch (JSONException e) {
+            Log.e(TAG, "Error getting USB device info", e);
+        }
+        return usbInfo;
+    }
+
+    // Copia le capacita' di stream in una tabella indipendente da Android
+    static StreamConfigNegotiator.Capabilities readStreamCapabilities(CameraCharacteristics characteristics) {
+        StreamConfigNegotiator.Capabilities caps = new StreamConfigNegotiator.Capabilities();
+        StreamConfigurationMap configMap = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+        if (configMap != null) {
+            for (int format : new int[] { ImageFormat.YUV_420_888, ImageFormat.JPEG }) {
+                Size[] sizes = configMap.getOutputSizes(format);
+                if (sizes == null) {
+                    continue;
+                }
+                for (Size size : sizes) {
+                    caps.addOutput(format, size.getWidth(), size.getHeight(),
+                            configMap.getOutputMinFrameDuration(format, size),
+                            configMap.getOutputStallDuration(format, size));
+                }
+            }
+        }
+        Range<Integer>[] fpsRanges = characteristics.get(CameraCharacteristics.CONTROL_AE_AVAILABLE_TARGET_FPS_RANGES);
+        if (fpsRanges != null) {
+            for (Range<Integer> range : fpsRanges) {
+                caps.addFpsRange(range.getLower(), range.getUpper());
+            }
+        }
+        return caps;
+    }
+
+    private static boolean hasModeOtherThan(int[] modes, int off) {
+        if (modes != null) {
+            for (int mode : modes) {
+                if (mode != off) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // Controlla se ha interfaccia video
+    private static boolean hasVideoInterface(UsbDevice device) {
+        for (int i = 0; i < device.getInterfaceCount(); i++) {
+            android.hardware.usb.UsbInterface usbInterface = device.getInterface(i);
+            // Classe 14 = Video, Sottoclasse 1 = Video Control, 2 = Video Streaming
+            if (usbInterface.getInterfaceClass() == 14) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Identificazione affidabile USB camera
+    static boolean isUsbExternalCamera(CameraCharacteristics characteristics, String cameraId) {
+        try {
+            // 1. Controlla se è esplicitamente EXTERNAL
+            Integer lensFacing = characteristics.get(CameraCharacteristics.LENS_FACING);
+            if (lensFacing != null && lensFacing == CameraCharacteristics.LENS_FACING_EXTERNAL) {
+                return true;
+            }
+
+            // 2. Controlla le capacità hardware tipiche delle USB camere
+            int[] capabilities = characteristics.get(CameraCharacteristics.REQUEST_AVAILABLE_CAPABILITIES);
+            if (capabilities != null) {
+                // USB camere spesso NON hanno certe capacità avanzate
+                boolean hasAdvancedFeatures = false;
+                for (int capability : capabilities) {
+                    if (capability == CameraCharacteristics.REQUEST_AVAILABLE_CAPABILITIES_MANUAL_SENSOR ||
+                        capability == CameraCharacteristics.REQUEST_AVAILABLE_CAPABILITIES_MANUAL_POST_PROCESSING ||
+                        capability == CameraCharacteristics.REQUEST_AVAILABLE_CAPABILITIES_RAW) {
+                        hasAdvancedFeatures = true;
+                        break;
+                    }
+                }
+                // Se NON ha funzioni avanzate, probabilmente è USB
+                if (!hasAdvancedFeatures && capabilities.length <= 2) {
+                    Log.d(TAG, "Camera " + cameraId + " identified as USB (limited capabilities)");
+                    return true;
+                }
+            }
+
+            // 3. Controlla i formati supportati
+            StreamConfigurationMap configMap = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+            if (configMap != null) {
+                Size[] jpegSizes = configMap.getOutputSizes(ImageFormat.JPEG);
+                Size[] yuvSizes = configMap.getOutputSizes(ImageFormat.YUV_420_888);
+
+                // USB camere spesso hanno limitazioni sui formati
+                if (jpegSizes != null && yuvSizes != null) {
+                    // Se ha pochi formati o risoluzioni limitate, probabilmente è USB
+                    if (jpegSizes.length < 10 || yuvSizes.length < 5) {
+                        Log.d(TAG, "Camera " + cameraId + " identified as USB (limited formats)");
+                        return true;
+                    }
+                }
+            }
+
+            // 4. Controlla il supporto autofocus
+            int[] afModes = characteristics.get(CameraCharacteristics.CONTROL_AF_AVAILABLE_MODES);
+            if (afModes != null && afModes.length <= 1) {
+                // USB camere spesso hanno autofocus limitato o assente
+                Log.d(TAG, "Camera " + cameraId + " identified as USB (limited autofocus)");
+                return true;
+            }
+
+            // 5. Controlla l'ID numerico alto (USB camere spesso hanno ID > 1)
+            try {
+                int numericId = Integer.parseInt(cameraId);
+                if (numericId >= 2) {
+                    Log.d(TAG, "Camera " + cameraId + " possibly USB (high ID number)");
+                    return true;
+                }
+            } catch (NumberFormatException e) {
+                // ID non numerico, potrebbe essere USB
+                return true;
+            }
+
+            return false;
+
+        } catch (Exception e) {
+            Log.e(TAG, "Error analyzing camera " + cameraId, e);
+            return false;
+        }
+    }
+
+    static boolean isSimpleUsbCamera(CameraCharacteristics characteristics, String cameraId) {
+        try {
+            // 1. Controlla se è esplicitamente EXTERNAL
+            Integer lensFacing = characteristics.get(CameraCharacteristics.LENS_FACING);
+            if (lensFacing != null && lensFacing == CameraCharacteristics.LENS_FACING_EXTERNAL) {
+                return true;
+            }
+
+            // 2. Se l'ID è >= 2, probabilmente è USB
+            try {
+                int numericId = Integer.parseInt(cameraId);
+                return numericId >= 2;
+            } catch (NumberFormatException e) {
+                // ID non numerico, potrebbe essere USB
+                return true;
+            }
+
+        } catch (Exception e) {
+            Log.e(TAG, "Error checking USB camera: " + cameraId, e);
+            return false;
+        }
+    }
+}
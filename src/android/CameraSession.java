@@ -0,0 +1,1622 @@
+package com.cordova.plugin;
+
+import android.Manifest;
+import android.content.pm.PackageManager;
+import android.graphics.ImageFormat;
+import android.hardware.camera2.*;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Environment;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.util.Base64;
+import android.util.Log;
+import android.util.Range;
+import android.view.Surface;
+import androidx.annotation.NonNull;
+import androidx.core.app.ActivityCompat;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.CordovaInterface;
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Sessione di una camera: device, ImageReader, thread camera, pipeline, callback e statistiche.
+ * Il plugin tiene una sessione per cameraId, cosi' piu' camere USB possono lavorare insieme.
+ */
+public class CameraSession {
+    private static final String TAG = "UsbExternalCamera";
+    
+    private final CordovaInterface cordova;
+    private final CameraInventory cameraInventory;
+    private final PixelBudget pixelBudget;
+    // Subscriber nativi di altri plugin; condivisa tra le sessioni della stessa camera
+    private final FrameSource frameSource;
+    
+    private CameraManager cameraManager;
+    private CameraDevice cameraDevice;
+    private CameraCaptureSession captureSession;
+    private ImageReader imageReader;
+    private HandlerThread backgroundThread;
+    private Handler backgroundHandler;
+    
+    private final String externalCameraId;
+    private CallbackContext frameCallback;
+    
+    private int previewWidth = 1280;
+    private int previewHeight = 720;
+    private int previewFps = 30;
+    
+    // Formato di consegna dei frame a JS: "base64" (default), "arraybuffer" o "luma"
+    private static final String FRAME_FORMAT_BASE64 = "base64";
+    private static final String FRAME_FORMAT_ARRAYBUFFER = "arraybuffer";
+    private static final String FRAME_FORMAT_LUMA = "luma";
+    private volatile String frameFormat = FRAME_FORMAT_BASE64;
+    
+    // Modalita' luma: solo piano Y (ritaglio opzionale, un pixel ogni lumaStep) con header
+    // little-endian: int32 width, int32 height, int64 timestamp del sensore (ns)
+    private static final int LUMA_HEADER_BYTES = 16;
+    private int lumaCropX = 0;
+    private int lumaCropY = 0;
+    private int lumaCropWidth = 0;
+    private int lumaCropHeight = 0;
+    private int lumaStep = 1;
+    
+    // Modalita' streaming: "bridge" (default, frame su frameCallback) o "mjpeg" (server HTTP locale)
+    private static final String STREAM_MODE_BRIDGE = "bridge";
+    private static final String STREAM_MODE_MJPEG = "mjpeg";
+    private String streamMode = STREAM_MODE_BRIDGE;
+    private MjpegStreamServer mjpegServer;
+    
+    // Controllo di flusso: cap FPS di consegna e finestra di frame senza ack
+    private final FrameFlowController flowController = new FrameFlowController();
+    private int maxDeliveryFps = 0;
+    private int maxFramesInFlight = 0;
+    
+    private volatile boolean isPreviewActive = false;
+    
+    // Pausa/ripresa a caldo: device, reader e sessione restano configurati
+    private static final long RESUME_TIMEOUT_MS = 3000;
+    private CaptureRequest previewRequest;
+    private CallbackContext resumeCallback; // solo thread camera
+    private long resumeRequestNanos;
+    private final Runnable resumeTimeout = new Runnable() {
+        @Override
+        public void run() {
+            CallbackContext callback = resumeCallback;
+            resumeCallback = null;
+            if (callback != null) {
+                callback.error("No frame within " + RESUME_TIMEOUT_MS + " ms after resume");
+            }
+        }
+    };
+    
+    // Pixel al secondo riservati nel budget globale (0 = nessuna prenotazione)
+    private long reservedPixelsPerSecond = 0;
+    
+    // Avvio a freddo: scoperta in parallelo all'apertura del device e tempi delle fasi
+    private volatile Future<StreamConfigNegotiator.StreamConfig> pendingDiscovery;
+    private HandlerThread prewarmedThread;
+    private volatile boolean startupPrewarmed = false;
+    private volatile long startupBeginNanos;
+    private volatile long discoveryDoneNanos;
+    private volatile long deviceOpenedNanos;
+    private volatile long sessionConfiguredNanos;
+    private volatile long firstImageNanos;
+    
+    // Scatti singoli, raffiche e salvataggio delle foto
+    private final StillCapture stillCapture;
+    
+    private boolean isCameraReady = false;
+    
+    // Conversione frame senza allocazioni per frame (usata solo dal thread camera)
+    private final YuvConverter yuvConverter = new YuvConverter();
+    
+    // Encoder JPEG dello stadio encode (usato solo dal thread di encoding)
+    private static final int PREVIEW_JPEG_QUALITY = 80;
+    private static final String JPEG_ENCODER_PLATFORM = "platform";
+    private static final String JPEG_ENCODER_STRIPED = "striped";
+    private String jpegEncoderName = JPEG_ENCODER_PLATFORM;
+    private JpegEncoder jpegEncoder = new YuvImageJpegEncoder();
+    private volatile int previewJpegQuality = PREVIEW_JPEG_QUALITY;
+    
+    // Qualita' e risoluzione adattive per restare nel budget di banda e di codifica
+    private static final int MIN_ADAPTIVE_JPEG_QUALITY = 40;
+    private long targetBytesPerSecond = 0;
+    private float maxEncodeLoad = 0;
+    private boolean adaptiveResolution = false;
+    private volatile JpegRateController rateController;
+    
+    // Risoluzione di consegna separata da quella di cattura (0 = uguale alla cattura)
+    private volatile int deliveryWidth = 0;
+    private volatile int deliveryHeight = 0;
+    // Trasformazione dei frame consegnati: ritaglio, rotazione, specchiatura (solo da open())
+    private int cropX = 0;
+    private int cropY = 0;
+    private int cropWidth = 0;
+    private int cropHeight = 0;
+    private int rotation = 0;
+    private boolean mirrorHorizontal = false;
+    private boolean mirrorVertical = false;
+    private int transformFilter = YuvTransform.FILTER_BILINEAR;
+    // Riduzione YUV prima della codifica (usati solo dal thread di encoding)
+    private final YuvDownscaler yuvDownscaler = new YuvDownscaler();
+    private final YuvTransform yuvTransform = new YuvTransform();
+    private byte[] scaledYuv = new byte[0];
+    private int downscaleSrcWidth = -1;
+    private int downscaleSrcHeight = -1;
+    private boolean downscaleActive = false;
+    private float downscaleScale = 1f;
+    // Impostato da reconfigure: il thread di encoding ricalcola la riduzione
+    private volatile boolean downscaleDirty = false;
+    
+    // Pipeline capture -> encode -> deliver su thread dedicati
+    private static final int PIPELINE_QUEUE_CAPACITY = 1;
+    private FramePipeline framePipeline;
+    
+    // Registrazione AVI (MJPEG) dei frame di anteprima
+    private final RecordingController recording = new RecordingController(
+            new File(Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_MOVIES), "UsbCamera"));
+    
+    // Zero-shutter-lag: takePhoto salva un frame recente dell'anteprima invece di uno still
+    // (anello solo thread camera)
+    private static final int MAX_ZSL_FRAMES = 8;
+    private int zslFrames = 0;
+    private ZslFrameRing zslRing;
+    
+    // Rilevamento movimento sul piano Y: i frame senza cambiamenti non vengono codificati
+    // ne' consegnati (detector e stato degli eventi solo thread camera)
+    private static final long MOTION_EVENT_INTERVAL_MS = 250;
+    private boolean motionDetection = false;
+    private int motionPixelThreshold = 25;
+    private float motionThreshold = 0.01f;
+    private long motionKeepAliveMs = 10000;
+    private volatile MotionDetector motionDetector;
+    private boolean motionActive = false;
+    private long lastMotionEventNanos = 0;
+    
+    // Passthrough MJPEG: se la camera emette JPEG alla risoluzione/fps richiesti
+    // l'anteprima legge direttamente i JPEG, senza YUV -> JPEG
+    private boolean jpegPassthroughEnabled = true;
+    private int previewImageFormat = ImageFormat.YUV_420_888;
+    
+    // Configurazione di stream negoziata all'apertura della sessione
+    private volatile StreamConfigNegotiator.StreamConfig streamConfig;
+    
+    // Statistiche di runtime (getStats/resetStats)
+    private final PerformanceStats stats = new PerformanceStats();
+    private volatile boolean realtimeTimestamps = false;
+    
+    // Risultati dell'anteprima: avanzano il pre-scatto in corso
+    private final CameraCaptureSession.CaptureCallback previewCaptureCallback = new CameraCaptureSession.CaptureCallback() {
+        @Override
+        public void onCaptureCompleted(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request,
+                                       @NonNull TotalCaptureResult result) {
+            stillCapture.onPreviewResult(result);
+        }
+    };
+
+    public CameraSession(String cameraId, CordovaInterface cordova, CameraInventory cameraInventory,
+                         PixelBudget pixelBudget, FrameSource frameSource) {
+        this.externalCameraId = cameraId;
+        this.cordova = cordova;
+        this.cameraInventory = cameraInventory;
+        this.pixelBudget = pixelBudget;
+        this.frameSource = frameSource;
+        this.stillCapture = new StillCapture(new CaptureHost(), stats, cordova.getThreadPool());
+    }
+
+    public String getCameraId() {
+        return externalCameraId;
+    }
+
+    // Thread camera gia' avviato dal prewarm del plugin; va passato prima di openCamera
+    void adoptBackgroundThread(HandlerThread thread) {
+        prewarmedThread = thread;
+        startupPrewarmed = true;
+    }
+
+    /**
+     * Chiamato dal thread pool: apre device e sessione con le opzioni di open().
+     * Ritorna false se l'apertura e' fallita (errore gia' inviato a callbackContext).
+     */
+    boolean openCamera(JSONObject options, CallbackContext callbackContext) {
+        startupBeginNanos = System.nanoTime();
+        if (options != null) {
+            previewWidth = options.optInt("width", 1280);
+            previewHeight = options.optInt("height", 720);
+            previewFps = options.optInt("fps", 30);
+            deliveryWidth = options.optInt("deliveryWidth", 0);
+            deliveryHeight = options.optInt("deliveryHeight", 0);
+            frameFormat = options.optString("frameFormat", FRAME_FORMAT_BASE64);
+            streamMode = options.optString("streamMode", STREAM_MODE_BRIDGE);
+            JSONObject crop = options.optJSONObject("lumaCrop");
+            lumaCropX = crop != null ? Math.max(crop.optInt("x", 0), 0) : 0;
+            lumaCropY = crop != null ? Math.max(crop.optInt("y", 0), 0) : 0;
+            lumaCropWidth = crop != null ? Math.max(crop.optInt("width", 0), 0) : 0;
+            lumaCropHeight = crop != null ? Math.max(crop.optInt("height", 0), 0) : 0;
+            lumaStep = Math.max(options.optInt("lumaStep", 1), 1);
+            maxDeliveryFps = options.optInt("maxDeliveryFps", 0);
+            maxFramesInFlight = options.optInt("maxFramesInFlight", 0);
+            jpegPassthroughEnabled = options.optBoolean("jpegPassthrough", true);
+            zslFrames = Math.max(0, Math.min(options.optInt("zslFrames", 0), MAX_ZSL_FRAMES));
+            motionDetection = options.optBoolean("motionDetection", false);
+            motionPixelThreshold = options.optInt("motionPixelThreshold", 25);
+            motionThreshold = (float) options.optDouble("motionThreshold", 0.01);
+            motionKeepAliveMs = options.optLong("motionKeepAliveMs", 10000);
+            previewJpegQuality = Math.max(1, Math.min(options.optInt("jpegQuality", PREVIEW_JPEG_QUALITY), 100));
+            targetBytesPerSecond = options.optLong("targetBytesPerSecond", 0);
+            maxEncodeLoad = (float) options.optDouble("maxEncodeLoad", 0);
+            adaptiveResolution = options.optBoolean("adaptiveResolution", false);
+            // "platform" (default): YuvImage; "striped": encoder Java multi-core a strisce
+            jpegEncoderName = JPEG_ENCODER_STRIPED.equals(options.optString("jpegEncoder", JPEG_ENCODER_PLATFORM))
+                    ? JPEG_ENCODER_STRIPED : JPEG_ENCODER_PLATFORM;
+            jpegEncoder = JPEG_ENCODER_STRIPED.equals(jpegEncoderName)
+                    ? new StripedJpegEncoder() : new YuvImageJpegEncoder();
+            JSONObject roi = options.optJSONObject("crop");
+            cropX = roi != null ? Math.max(roi.optInt("x", 0), 0) : 0;
+            cropY = roi != null ? Math.max(roi.optInt("y", 0), 0) : 0;
+            cropWidth = roi != null ? Math.max(roi.optInt("width", 0), 0) : 0;
+            cropHeight = roi != null ? Math.max(roi.optInt("height", 0), 0) : 0;
+            rotation = options.optInt("rotation", 0);
+            mirrorHorizontal = options.optBoolean("mirrorHorizontal", false);
+            mirrorVertical = options.optBoolean("mirrorVertical", false);
+            transformFilter = "nearest".equals(options.optString("transformFilter", "bilinear"))
+                    ? YuvTransform.FILTER_NEAREST : YuvTransform.FILTER_BILINEAR;
+            // Durabilita' delle foto, ZSL, fuoco
+            stillCapture.configure(options);
+        }
+        
+        if (FRAME_FORMAT_LUMA.equals(frameFormat) && STREAM_MODE_MJPEG.equals(streamMode)) {
+            callbackContext.error("frameFormat 'luma' is not supported with streamMode 'mjpeg'");
+            return false;
+        }
+        if (rotation != 0 && rotation != 90 && rotation != 180 && rotation != 270) {
+            callbackContext.error("rotation must be 0, 90, 180 or 270");
+            return false;
+        }
+        
+        zslRing = zslFrames > 0 ? new ZslFrameRing(zslFrames) : null;
+        motionDetector = motionDetection
+                ? new MotionDetector(motionPixelThreshold, motionThreshold, motionKeepAliveMs) : null;
+        motionActive = false;
+        rateController = createRateController();
+        frameCallback = callbackContext;
+        // Gli ack hanno senso solo sul bridge: lo stream MJPEG gestisce da se' i client lenti
+        flowController.configure(maxDeliveryFps, STREAM_MODE_MJPEG.equals(streamMode) ? 0 : maxFramesInFlight);
+        flowController.resetCounters();
+        
+        try {
+            if (STREAM_MODE_MJPEG.equals(streamMode)) {
+                startMjpegServer();
+            }
+            initializeCamera();
+            return true;
+        } catch (Exception e) {
+            Log.e(TAG, "Error opening camera", e);
+            pendingDiscovery = null;
+            closeBackgroundThread();
+            stopMjpegServer();
+            releasePixelBudget();
+            if (frameCallback != null) {
+                frameCallback.error("Failed to open camera: " + e.getMessage());
+            }
+            return false;
+        }
+    }
+    
+    // Prenota w*h*fps dello stream di cattura nel budget globale (config null: la richiesta)
+    private boolean reservePixelBudget(StreamConfigNegotiator.StreamConfig config) {
+        long pixelsPerSecond = pixelsPerSecond(config);
+        if (!pixelBudget.reserve(externalCameraId, pixelsPerSecond)) {
+            return false;
+        }
+        reservedPixelsPerSecond = pixelsPerSecond;
+        return true;
+    }
+
+    // Sessione gia' ammessa: la quota segue la configurazione negoziata
+    private void updatePixelBudget(StreamConfigNegotiator.StreamConfig config) {
+        long pixelsPerSecond = pixelsPerSecond(config);
+        if (pixelBudget.update(externalCameraId, pixelsPerSecond)) {
+            reservedPixelsPerSecond = pixelsPerSecond;
+        }
+    }
+
+    private long pixelsPerSecond(StreamConfigNegotiator.StreamConfig config) {
+        int width = config != null ? config.width : previewWidth;
+        int height = config != null ? config.height : previewHeight;
+        int fps = config != null && config.fpsMax > 0 ? config.fpsMax : previewFps;
+        return (long) width * height * Math.max(fps, 1);
+    }
+    
+    private void releasePixelBudget() {
+        pixelBudget.release(externalCameraId);
+        reservedPixelsPerSecond = 0;
+    }
+    
+    long getReservedPixelsPerSecond() {
+        return reservedPixelsPerSecond;
+    }
+    
+    // Avvia il server MJPEG locale e comunica a JS URL, porta e token
+    private void startMjpegServer() throws IOException, JSONException {
+        if (mjpegServer == null) {
+            mjpegServer = new MjpegStreamServer();
+        }
+        mjpegServer.start();
+        
+        JSONObject info = new JSONObject();
+        info.put("type", "stream");
+        info.put("streamUrl", mjpegServer.getStreamUrl());
+        info.put("port", mjpegServer.getPort());
+        info.put("token", mjpegServer.getToken());
+        PluginResult result = new PluginResult(PluginResult.Status.OK, info);
+        result.setKeepCallback(true);
+        frameCallback.sendPluginResult(result);
+        Log.d(TAG, "MJPEG stream server listening on port " + mjpegServer.getPort());
+    }
+
+    private void stopMjpegServer() {
+        if (mjpegServer != null) {
+            mjpegServer.stop();
+            mjpegServer = null;
+        }
+    }
+    
+    boolean ackFrame(int count, CallbackContext callbackContext) {
+        flowController.ack(count);
+        callbackContext.success();
+        return true;
+    }
+
+    boolean getFlowStats(CallbackContext callbackContext) {
+        try {
+            JSONObject stats = new JSONObject();
+            stats.put("delivered", flowController.getDelivered());
+            stats.put("droppedByRate", flowController.getDroppedByRate());
+            stats.put("droppedByCredit", flowController.getDroppedByCredit());
+            putMotionStats(stats);
+            stats.put("inFlight", flowController.getInFlight());
+            stats.put("maxDeliveryFps", maxDeliveryFps);
+            stats.put("maxFramesInFlight", maxFramesInFlight);
+            stats.put("previewPath", previewPathName());
+            
+            stillCapture.putStats(stats);
+            
+            FramePipeline pipeline = framePipeline;
+            if (pipeline != null) {
+                JSONObject stages = new JSONObject();
+                stages.put("capture", stageStatsToJson(pipeline.getCaptureStats(), -1));
+                stages.put("encode", stageStatsToJson(pipeline.getEncodeStats(), pipeline.getEncodeQueueDepth()));
+                stages.put("delivery", stageStatsToJson(pipeline.getDeliveryStats(), pipeline.getDeliveryQueueDepth()));
+                stats.put("pipeline", stages);
+            }
+            callbackContext.success(stats);
+        } catch (JSONException e) {
+            callbackContext.error("Error reading flow stats: " + e.getMessage());
+        }
+        return true;
+    }
+    
+    private boolean isAdaptive() {
+        return targetBytesPerSecond > 0 || maxEncodeLoad > 0;
+    }
+    
+    // Durante la registrazione la risoluzione resta fissa: l'AVI ha una sola dimensione dei frame
+    private float adaptiveScale() {
+        JpegRateController controller = rateController;
+        return controller != null && !recording.isActive() ? controller.getScale() : 1f;
+    }
+    
+    private JpegRateController createRateController() {
+        if (!isAdaptive()) {
+            return null;
+        }
+        JpegRateController controller = new JpegRateController(
+                Math.min(MIN_ADAPTIVE_JPEG_QUALITY, previewJpegQuality), previewJpegQuality);
+        controller.configure(targetBytesPerSecond, maxEncodeLoad, adaptiveResolution);
+        return controller;
+    }
+    
+    private void putMotionStats(JSONObject json) throws JSONException {
+        MotionDetector detector = motionDetector;
+        if (detector != null) {
+            json.put("droppedByMotion", detector.getSuppressedFrames());
+            json.put("motionFrames", detector.getMotionFrames());
+            json.put("keepAliveFrames", detector.getKeepAliveFrames());
+        }
+    }
+    
+    private JSONObject stageStatsToJson(FramePipeline.StageStats stageStats, int queueDepth) throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("processed", stageStats.getProcessed());
+        json.put("dropped", stageStats.getDropped());
+        json.put("failed", stageStats.getFailed());
+        json.put("avgMs", stageStats.getAverageMillis());
+        json.put("maxMs", stageStats.getMaxMillis());
+        if (queueDepth >= 0) {
+            json.put("queueDepth", queueDepth);
+        }
+        return json;
+    }
+    
+    void resetStats() {
+        stats.reset();
+        flowController.resetCounters();
+        MotionDetector detector = motionDetector;
+        if (detector != null) {
+            detector.resetCounters();
+        }
+        FramePipeline pipeline = framePipeline;
+        if (pipeline != null) {
+            pipeline.getCaptureStats().reset();
+            pipeline.getEncodeStats().reset();
+            pipeline.getDeliveryStats().reset();
+        }
+    }
+
+    JSONObject buildStats() throws JSONException {
+        JSONObject json = new JSONObject();
+        long elapsedNanos = stats.getElapsedNanos();
+        long delivered = flowController.getDelivered();
+        json.put("cameraId", externalCameraId);
+        json.put("elapsedMs", elapsedNanos / 1_000_000);
+        json.put("framesArrived", stats.getFramesArrived());
+        json.put("delivered", delivered);
+        json.put("deliveredFps", elapsedNanos > 0 ? delivered * 1_000_000_000.0 / elapsedNanos : 0);
+        json.put("droppedByRate", flowController.getDroppedByRate());
+        json.put("droppedByCredit", flowController.getDroppedByCredit());
+        putMotionStats(json);
+        FramePipeline pipeline = framePipeline;
+        if (pipeline != null) {
+            json.put("droppedInPipeline", pipeline.getEncodeStats().getDropped()
+                    + pipeline.getDeliveryStats().getDropped());
+        }
+        json.put("previewPath", previewPathName());
+        json.put("jpeg", jpegStatsToJson());
+        JSONObject subscribers = new JSONObject();
+        subscribers.put("count", frameSource.getSubscriberCount());
+        subscribers.put("published", frameSource.getPublished());
+        subscribers.put("droppedNoBuffer", frameSource.getDroppedNoBuffer());
+        json.put("nativeSubscribers", subscribers);
+        
+        JSONObject latency = new JSONObject();
+        if (realtimeTimestamps) {
+            latency.put("arrival", histogramToJson(stats.arrival));
+        }
+        latency.put("encode", histogramToJson(stats.encode));
+        latency.put("send", histogramToJson(stats.send));
+        latency.put("still", histogramToJson(stats.still));
+        latency.put("focusLock", histogramToJson(stats.focusLock));
+        latency.put("shutter", histogramToJson(stats.shutter));
+        latency.put("resume", histogramToJson(stats.resume));
+        json.put("latency", latency);
+        json.put("startup", startupToJson());
+        return json;
+    }
+
+    // Qualita' e livello di risoluzione correnti dell'anteprima
+    private JSONObject jpegStatsToJson() throws JSONException {
+        JSONObject json = new JSONObject();
+        JpegRateController controller = rateController;
+        json.put("encoder", jpegEncoderName);
+        json.put("adaptive", controller != null);
+        json.put("quality", controller != null ? controller.getQuality() : previewJpegQuality);
+        if (controller != null) {
+            json.put("level", controller.getLevel());
+            json.put("scale", controller.getScale());
+            json.put("bytesPerSecond", controller.getBytesPerSecond());
+            json.put("encodeLoad", controller.getEncodeLoad());
+            json.put("adjustments", controller.getAdjustments());
+        }
+        return json;
+    }
+
+    // Time-to-first-frame da open(): scoperta e apertura del device si sovrappongono
+    private JSONObject startupToJson() {
+        JSONObject json = new JSONObject();
+        try {
+            json.put("prewarmed", startupPrewarmed);
+            putPhase(json, "discoveryMs", startupBeginNanos, discoveryDoneNanos);
+            putPhase(json, "openMs", startupBeginNanos, deviceOpenedNanos);
+            // La configurazione parte quando device e negoziazione sono entrambi pronti
+            putPhase(json, "configureMs", Math.max(deviceOpenedNanos, discoveryDoneNanos), sessionConfiguredNanos);
+            putPhase(json, "firstImageMs", sessionConfiguredNanos, firstImageNanos);
+            putPhase(json, "totalMs", startupBeginNanos, firstImageNanos);
+        } catch (JSONException e) {
+            Log.e(TAG, "Error reading startup times", e);
+        }
+        return json;
+    }
+
+    private static void putPhase(JSONObject json, String name, long fromNanos, long toNanos) throws JSONException {
+        if (fromNanos > 0 && toNanos > 0) {
+            json.put(name, (toNanos - fromNanos) / 1_000_000.0);
+        }
+    }
+
+    private JSONObject histogramToJson(LatencyHistogram histogram) throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("count", histogram.getCount());
+        json.put("meanMs", histogram.getMeanMillis());
+        json.put("p50Ms", histogram.getPercentileMillis(50));
+        json.put("p90Ms", histogram.getPercentileMillis(90));
+        json.put("p99Ms", histogram.getPercentileMillis(99));
+        json.put("maxMs", histogram.getMaxMillis());
+        return json;
+    }
+    
+    boolean startRecording(JSONArray args, CallbackContext callbackContext) {
+        if (cameraDevice == null) {
+            callbackContext.error("Camera not opened");
+            return true;
+        }
+        if (FRAME_FORMAT_LUMA.equals(frameFormat)) {
+            callbackContext.error("Recording is not available with frameFormat 'luma'");
+            return true;
+        }
+        // Prenotazione atomica: una seconda richiesta prima che il file sia creato viene rifiutata
+        long reservation = recording.reserve();
+        if (reservation == 0) {
+            callbackContext.error("Recording already in progress");
+            return true;
+        }
+        JSONObject options = args.optJSONObject(0);
+        String fileName = options != null ? options.optString("fileName", null) : null;
+        
+        cordova.getThreadPool().execute(() -> {
+            try {
+                FramePipeline pipeline = framePipeline;
+                int width = pipeline != null ? pipeline.getWidth() : previewWidth;
+                int height = pipeline != null ? pipeline.getHeight() : previewHeight;
+                // I JPEG registrati sono quelli consegnati, alla risoluzione di consegna
+                int[] delivered = outputSize(width, height, 1f);
+                if (delivered != null) {
+                    width = delivered[0];
+                    height = delivered[1];
+                }
+                StreamConfigNegotiator.StreamConfig config = streamConfig;
+                int fps = config != null && config.fpsMax > 0 ? config.fpsMax : previewFps;
+                FrameRecorder recorder = recording.start(reservation, fileName, width, height, fps);
+                Log.d(TAG, "Recording started: " + recorder.getFile().getAbsolutePath());
+                callbackContext.success(recorder.getFile().getAbsolutePath());
+            } catch (Exception e) {
+                recording.cancel(reservation);
+                Log.e(TAG, "Error starting recording", e);
+                callbackContext.error("Failed to start recording: " + e.getMessage());
+            }
+        });
+        return true;
+    }
+
+    boolean stopRecording(CallbackContext callbackContext) {
+        FrameRecorder recorder = recording.detach();
+        if (recorder == null) {
+            callbackContext.error("No recording in progress");
+            return true;
+        }
+        
+        cordova.getThreadPool().execute(() -> {
+            try {
+                recorder.stop();
+                JSONObject info = new JSONObject();
+                info.put("filePath", recorder.getFile().getAbsolutePath());
+                info.put("frames", recorder.getFrameCount());
+                info.put("droppedFrames", recorder.getDroppedFrames());
+                info.put("durationMs", recorder.getDurationMillis());
+                info.put("fps", recorder.getEffectiveFps());
+                callbackContext.success(info);
+            } catch (Exception e) {
+                Log.e(TAG, "Error stopping recording", e);
+                callbackContext.error("Failed to stop recording: " + e.getMessage());
+            }
+        });
+        return true;
+    }
+
+    private void stopFrameRecorder() {
+        FrameRecorder recorder = recording.detach();
+        if (recorder != null) {
+            try {
+                recorder.stop();
+            } catch (IOException e) {
+                Log.e(TAG, "Error closing recording", e);
+            }
+        }
+    }
+    
+    // Negozia formato, dimensione e range fps con le capacita' della camera
+    private StreamConfigNegotiator.StreamConfig negotiateStreamConfig() {
+        try {
+            CameraInventory.CameraEntry entry = cameraInventory.getSnapshot().get(externalCameraId);
+            if (entry != null) {
+                // Riduzione, trasformazione, ZSL, rilevamento movimento, qualita' adattiva,
+                // subscriber nativi e encoder a strisce richiedono lo YUV: niente passthrough
+                boolean allowJpeg = jpegPassthroughEnabled && deliveryWidth <= 0 && deliveryHeight <= 0 && zslFrames <= 0
+                        && !motionDetection && !isAdaptive() && !FRAME_FORMAT_LUMA.equals(frameFormat)
+                        && !frameSource.hasSubscribers() && !isTransformActive()
+                        && !JPEG_ENCODER_STRIPED.equals(jpegEncoderName);
+                return StreamConfigNegotiator.negotiate(entry.streamCapabilities,
+                        previewWidth, previewHeight, previewFps, allowJpeg);
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Unable to negotiate stream configuration", e);
+        }
+        return null;
+    }
+
+    // Timestamp del sensore confrontabili con elapsedRealtimeNanos (latenza di arrivo misurabile)
+    private boolean isRealtimeTimebase() {
+        try {
+            CameraInventory.CameraEntry entry = cameraInventory.getSnapshot().get(externalCameraId);
+            return entry != null && entry.realtimeTimestamps;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    boolean getStreamConfig(CallbackContext callbackContext) {
+        StreamConfigNegotiator.StreamConfig config = streamConfig;
+        if (config == null) {
+            callbackContext.error("Camera not configured");
+            return true;
+        }
+        try {
+            callbackContext.success(streamConfigToJson(config));
+        } catch (JSONException e) {
+            callbackContext.error("Failed to get stream config: " + e.getMessage());
+        }
+        return true;
+    }
+
+    private JSONObject streamConfigToJson(StreamConfigNegotiator.StreamConfig config) throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("cameraId", externalCameraId);
+        json.put("format", config.format == ImageFormat.JPEG ? "jpeg" : "yuv");
+        json.put("width", config.width);
+        json.put("height", config.height);
+        int[] delivered = outputSize(config.width, config.height, adaptiveScale());
+        json.put("deliveryWidth", delivered != null ? delivered[0] : config.width);
+        json.put("deliveryHeight", delivered != null ? delivered[1] : config.height);
+        json.put("fpsMin", config.fpsMin);
+        json.put("fpsMax", config.fpsMax);
+        json.put("stillWidth", config.stillWidth);
+        json.put("stillHeight", config.stillHeight);
+        json.put("exact", config.exact);
+        JSONObject requested = new JSONObject();
+        requested.put("width", previewWidth);
+        requested.put("height", previewHeight);
+        requested.put("fps", previewFps);
+        json.put("requested", requested);
+        return json;
+    }
+
+    private String previewPathName() {
+        return previewImageFormat == ImageFormat.JPEG ? "jpeg-passthrough" : "yuv-transcode";
+    }
+
+    boolean stopPreview(CallbackContext callbackContext) {
+        try {
+            isPreviewActive = false;
+            if (captureSession != null) {
+                captureSession.stopRepeating();
+            }
+            callbackContext.success("Preview stopped");
+        } catch (Exception e) {
+            Log.e(TAG, "Error stopping preview", e);
+            callbackContext.error("Failed to stop preview: " + e.getMessage());
+        }
+        return true;
+    }
+
+    // Ferma la richiesta ripetuta lasciando device, reader, sessione e pipeline pronti per resumePreview
+    boolean pausePreview(CallbackContext callbackContext) {
+        Handler handler = backgroundHandler;
+        if (captureSession == null || handler == null) {
+            callbackContext.error("Camera not opened");
+            return true;
+        }
+        handler.post(() -> {
+            try {
+                isPreviewActive = false;
+                cancelPendingResume("Preview paused");
+                if (captureSession != null) {
+                    captureSession.stopRepeating();
+                }
+                callbackContext.success("Preview paused");
+            } catch (Exception e) {
+                Log.e(TAG, "Error pausing preview", e);
+                callbackContext.error("Failed to pause preview: " + e.getMessage());
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Riavvia la richiesta ripetuta sulla sessione esistente. La callback riceve il
+     * time-to-first-frame, misurato dalla richiesta all'arrivo del primo frame nel plugin.
+     */
+    boolean resumePreview(CallbackContext callbackContext) {
+        Handler handler = backgroundHandler;
+        if (captureSession == null || previewRequest == null || handler == null) {
+            callbackContext.error("Camera not opened");
+            return true;
+        }
+        handler.post(() -> {
+            if (captureSession == null) {
+                callbackContext.error("Camera not opened");
+                return;
+            }
+            if (isPreviewActive) {
+                callbackContext.error("Preview already active");
+                return;
+            }
+            try {
+                cancelPendingResume("Preview resumed again");
+                resumeRequestNanos = System.nanoTime();
+                resumeCallback = callbackContext;
+                isPreviewActive = true;
+                captureSession.setRepeatingRequest(previewRequest, previewCaptureCallback, backgroundHandler);
+                backgroundHandler.postDelayed(resumeTimeout, RESUME_TIMEOUT_MS);
+            } catch (Exception e) {
+                Log.e(TAG, "Error resuming preview", e);
+                isPreviewActive = false;
+                resumeCallback = null;
+                callbackContext.error("Failed to resume preview: " + e.getMessage());
+            }
+        });
+        return true;
+    }
+
+    // Thread camera: primo frame dopo resumePreview
+    private void onFirstFrameAfterResume() throws JSONException {
+        long ttffNanos = System.nanoTime() - resumeRequestNanos;
+        CallbackContext callback = resumeCallback;
+        resumeCallback = null;
+        backgroundHandler.removeCallbacks(resumeTimeout);
+        stats.resume.record(ttffNanos);
+        
+        JSONObject result = new JSONObject();
+        result.put("timeToFirstFrameMs", ttffNanos / 1_000_000.0);
+        StreamConfigNegotiator.StreamConfig config = streamConfig;
+        if (config != null && config.fpsMax > 0) {
+            // Confronto con la cadenza attesa: a caldo bastano pochi intervalli di frame
+            result.put("frameIntervalMs", 1000.0 / config.fpsMax);
+        }
+        callback.success(result);
+    }
+
+    // Thread camera
+    private void cancelPendingResume(String reason) {
+        CallbackContext callback = resumeCallback;
+        resumeCallback = null;
+        if (backgroundHandler != null) {
+            backgroundHandler.removeCallbacks(resumeTimeout);
+        }
+        if (callback != null) {
+            callback.error(reason);
+        }
+    }
+
+    /**
+     * Cambia le opzioni di consegna senza riaprire il device: maxDeliveryFps, maxFramesInFlight,
+     * frameFormat, lumaCrop/lumaStep, deliveryWidth/deliveryHeight, le opzioni motion* e quelle
+     * di qualita' JPEG (jpegQuality, targetBytesPerSecond, maxEncodeLoad, adaptiveResolution). Dimensione, fps e
+     * formato di cattura restano quelli negoziati da open().
+     */
+    boolean reconfigure(JSONObject options, CallbackContext callbackContext) {
+        Handler handler = backgroundHandler;
+        if (captureSession == null || handler == null) {
+            callbackContext.error("Camera not opened");
+            return true;
+        }
+        if (options == null) {
+            options = new JSONObject();
+        }
+        String newFrameFormat = options.optString("frameFormat", frameFormat);
+        int newDeliveryWidth = options.optInt("deliveryWidth", deliveryWidth);
+        int newDeliveryHeight = options.optInt("deliveryHeight", deliveryHeight);
+        boolean newMotionDetection = options.optBoolean("motionDetection", motionDetection);
+        long newTargetBytesPerSecond = options.optLong("targetBytesPerSecond", targetBytesPerSecond);
+        float newMaxEncodeLoad = (float) options.optDouble("maxEncodeLoad", maxEncodeLoad);
+        boolean needsYuv = FRAME_FORMAT_LUMA.equals(newFrameFormat) || newDeliveryWidth > 0 || newDeliveryHeight > 0
+                || newMotionDetection || newTargetBytesPerSecond > 0 || newMaxEncodeLoad > 0;
+        if (needsYuv && previewImageFormat == ImageFormat.JPEG) {
+            // Lo stream JPEG nativo non si riduce ne' fornisce la luminanza: serve una nuova open()
+            callbackContext.error("Options require the YUV capture path: close and open the camera with jpegPassthrough false");
+            return true;
+        }
+        if (FRAME_FORMAT_LUMA.equals(newFrameFormat) && (STREAM_MODE_MJPEG.equals(streamMode) || recording.isActive())) {
+            callbackContext.error("frameFormat 'luma' is not supported with streamMode 'mjpeg' or while recording");
+            return true;
+        }
+        if (recording.isActive() && (newDeliveryWidth != deliveryWidth || newDeliveryHeight != deliveryHeight)) {
+            // Il file AVI ha dimensioni fisse, decise all'avvio della registrazione
+            callbackContext.error("deliveryWidth/deliveryHeight cannot change while recording");
+            return true;
+        }
+        JSONObject opts = options;
+        handler.post(() -> {
+            frameFormat = newFrameFormat;
+            deliveryWidth = newDeliveryWidth;
+            deliveryHeight = newDeliveryHeight;
+            downscaleDirty = true;
+            JSONObject crop = opts.optJSONObject("lumaCrop");
+            if (crop != null) {
+                lumaCropX = Math.max(crop.optInt("x", 0), 0);
+                lumaCropY = Math.max(crop.optInt("y", 0), 0);
+                lumaCropWidth = Math.max(crop.optInt("width", 0), 0);
+                lumaCropHeight = Math.max(crop.optInt("height", 0), 0);
+            }
+            lumaStep = Math.max(opts.optInt("lumaStep", lumaStep), 1);
+            maxDeliveryFps = opts.optInt("maxDeliveryFps", maxDeliveryFps);
+            maxFramesInFlight = opts.optInt("maxFramesInFlight", maxFramesInFlight);
+            flowController.configure(maxDeliveryFps, STREAM_MODE_MJPEG.equals(streamMode) ? 0 : maxFramesInFlight);
+            motionDetection = newMotionDetection;
+            motionPixelThreshold = opts.optInt("motionPixelThreshold", motionPixelThreshold);
+            motionThreshold = (float) opts.optDouble("motionThreshold", motionThreshold);
+            motionKeepAliveMs = opts.optLong("motionKeepAliveMs", motionKeepAliveMs);
+            if (!motionDetection) {
+                motionDetector = null;
+                motionActive = false;
+            } else if (motionDetector == null) {
+                motionDetector = new MotionDetector(motionPixelThreshold, motionThreshold, motionKeepAliveMs);
+            } else {
+                motionDetector.configure(motionPixelThreshold, motionThreshold, motionKeepAliveMs);
+            }
+            if (opts.has("jpegQuality") || opts.has("targetBytesPerSecond") || opts.has("maxEncodeLoad")
+                    || opts.has("adaptiveResolution")) {
+                previewJpegQuality = Math.max(1, Math.min(opts.optInt("jpegQuality", previewJpegQuality), 100));
+                targetBytesPerSecond = newTargetBytesPerSecond;
+                maxEncodeLoad = newMaxEncodeLoad;
+                adaptiveResolution = opts.optBoolean("adaptiveResolution", adaptiveResolution);
+                // Il controllo riparte dalla qualita' massima con i nuovi budget
+                rateController = createRateController();
+            }
+            try {
+                StreamConfigNegotiator.StreamConfig config = streamConfig;
+                callbackContext.success(config != null ? streamConfigToJson(config) : new JSONObject());
+            } catch (JSONException e) {
+                callbackContext.error("Failed to reconfigure: " + e.getMessage());
+            }
+        });
+        return true;
+    }
+
+    boolean takePhoto(CallbackContext callbackContext) {
+        if (cameraDevice == null) {
+            callbackContext.error("Camera not opened");
+            return true;
+        }
+    
+        Handler handler = backgroundHandler;
+        if (handler == null) {
+            callbackContext.error("Camera not opened");
+            return true;
+        }
+        long requestNanos = System.nanoTime();
+        handler.post(() -> stillCapture.takePhoto(callbackContext, requestNanos));
+        return true;
+    }
+
+    boolean closeCamera(CallbackContext callbackContext) {
+        try {
+            close();
+            callbackContext.success("Camera closed");
+        } catch (Exception e) {
+            Log.e(TAG, "Error closing camera", e);
+            callbackContext.error("Failed to close camera: " + e.getMessage());
+        }
+        return true;
+    }
+
+    // Chiude device, reader e thread e libera la quota del budget
+    void close() {
+        try {
+            if (prewarmedThread != null) {
+                prewarmedThread.quitSafely();
+                prewarmedThread = null;
+            }
+            closeBackgroundThread();
+            if (captureSession != null) {
+                captureSession.close();
+                captureSession = null;
+            }
+            if (cameraDevice != null) {
+                cameraDevice.close();
+                cameraDevice = null;
+            }
+            // Prima gli scatti: in passthrough il writer trattiene Image del reader di anteprima
+            boolean stillImagesReleased = stillCapture.close();
+            if (imageReader != null) {
+                if (stillImagesReleased || previewImageFormat != ImageFormat.JPEG) {
+                    imageReader.close();
+                }
+                imageReader = null;
+            }
+            stopMjpegServer();
+            stopFrameRecorder();
+            isPreviewActive = false;
+            resumeCallback = null;
+            previewRequest = null;
+            frameCallback = null;
+            streamConfig = null;
+            zslRing = null;
+            motionDetector = null;
+            rateController = null;
+            stopFramePipeline();
+        } finally {
+            releasePixelBudget();
+        }
+    }
+
+    /**
+     * Avvia la scoperta (snapshot dell'inventario + negoziazione) sul thread pool e intanto
+     * apre il device: l'id e' gia' noto, le characteristics servono solo per configurare la sessione.
+     * Con un budget di pixel attivo la prenotazione deve precedere l'apertura, quindi si attende.
+     * Senza limite la sessione prenota subito la quota richiesta, cosi' un limite impostato
+     * prima di onOpened la conta; la configurazione negoziata la sostituisce.
+     */
+    private void initializeCamera() throws Exception {
+        cameraManager = cameraInventory.getCameraManager();
+        Future<StreamConfigNegotiator.StreamConfig> discovery = cordova.getThreadPool().submit(this::discoverStreamConfig);
+        if (pixelBudget.getLimit() == 0 && reservePixelBudget(null)) {
+            pendingDiscovery = discovery;
+        } else {
+            applyDiscovery(discovery, false);
+        }
+        
+        Log.d(TAG, "Selected camera: " + externalCameraId);
+        startBackgroundThread();
+        openCameraDevice();
+    }
+
+    private StreamConfigNegotiator.StreamConfig discoverStreamConfig() throws CameraAccessException {
+        CameraInventory.Snapshot snapshot = cameraInventory.getSnapshot();
+        if (snapshot.get(externalCameraId) == null) {
+            String[] cameraIds = snapshot.cameraIds;
+            Log.w(TAG, "Specified camera ID " + externalCameraId + " not found. Available IDs: " + Arrays.toString(cameraIds));
+            throw new RuntimeException("Camera ID " + externalCameraId + " not found. Available cameras: " + Arrays.toString(cameraIds));
+        }
+        // Configurazione supportata piu' vicina alla richiesta (senza capacita' note: richiesta invariata)
+        StreamConfigNegotiator.StreamConfig config = negotiateStreamConfig();
+        discoveryDoneNanos = System.nanoTime();
+        return config;
+    }
+
+    // Attende la scoperta e prenota il budget per la configurazione negoziata
+    // (admitted: quota gia' prenotata all'apertura, solo aggiornata)
+    private void applyDiscovery(Future<StreamConfigNegotiator.StreamConfig> discovery, boolean admitted) throws Exception {
+        StreamConfigNegotiator.StreamConfig config;
+        try {
+            config = discovery.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
+        if (admitted) {
+            updatePixelBudget(config);
+        } else if (!reservePixelBudget(config)) {
+            throw new IllegalStateException("Pixel budget exceeded: " + pixelBudget.getUsed() + " of "
+                    + pixelBudget.getLimit() + " pixels/s in use");
+        }
+        streamConfig = config;
+    }
+
+    private void startBackgroundThread() {
+        backgroundThread = prewarmedThread;
+        prewarmedThread = null;
+        if (backgroundThread == null) {
+            backgroundThread = new HandlerThread("CameraBackground-" + externalCameraId);
+            backgroundThread.start();
+        }
+        backgroundHandler = new Handler(backgroundThread.getLooper());
+    }
+
+    private void closeBackgroundThread() {
+        if (backgroundThread != null) {
+            backgroundThread.quitSafely();
+            try {
+                backgroundThread.join();
+                backgroundThread = null;
+                backgroundHandler = null;
+            } catch (InterruptedException e) {
+                Log.e(TAG, "Error closing background thread", e);
+            }
+        }
+    }
+
+    private void openCameraDevice() throws CameraAccessException {
+        if (ActivityCompat.checkSelfPermission(cordova.getActivity(), Manifest.permission.CAMERA) != PackageManager.PERMISSION_GRANTED) {
+            return;
+        }
+        
+        cameraManager.openCamera(externalCameraId, new CameraDevice.StateCallback() {
+            @Override
+            public void onOpened(@NonNull CameraDevice camera) {
+                cameraDevice = camera;
+                deviceOpenedNanos = System.nanoTime();
+                try {
+                    Future<StreamConfigNegotiator.StreamConfig> discovery = pendingDiscovery;
+                    if (discovery != null) {
+                        pendingDiscovery = null;
+                        applyDiscovery(discovery, true);
+                    }
+                    createCameraPreviewSession();
+                } catch (Exception e) {
+                    Log.e(TAG, "Error creating preview session", e);
+                    if (frameCallback != null) {
+                        frameCallback.error("Failed to create preview session: " + e.getMessage());
+                    }
+                }
+            }
+
+            @Override
+            public void onDisconnected(@NonNull CameraDevice camera) {
+                camera.close();
+                cameraDevice = null;
+            }
+
+            @Override
+            public void onError(@NonNull CameraDevice camera, int error) {
+                camera.close();
+                cameraDevice = null;
+                if (frameCallback != null) {
+                    frameCallback.error("Camera error: " + error);
+                }
+            }
+        }, backgroundHandler);
+    }
+
+    private void createCameraPreviewSession() throws CameraAccessException {
+        StreamConfigNegotiator.StreamConfig config = streamConfig;
+        realtimeTimestamps = isRealtimeTimebase();
+        int streamWidth = config != null ? config.width : previewWidth;
+        int streamHeight = config != null ? config.height : previewHeight;
+        if (config != null) {
+            Log.d(TAG, "Stream config: " + streamWidth + "x" + streamHeight + " fps [" + config.fpsMin + ","
+                    + config.fpsMax + "], still " + config.stillWidth + "x" + config.stillHeight
+                    + (config.exact ? "" : " (requested " + previewWidth + "x" + previewHeight + "@" + previewFps + ")"));
+        }
+        
+        // Pipeline con buffer NV21 dimensionati sulla risoluzione di anteprima
+        startFramePipeline(streamWidth, streamHeight);
+        
+        // Crea ImageReader per preview: JPEG nativo se negoziato, altrimenti YUV
+        previewImageFormat = config != null ? config.format : ImageFormat.YUV_420_888;
+        Log.d(TAG, "Preview path: " + previewPathName());
+        boolean passthrough = previewImageFormat == ImageFormat.JPEG;
+        // In passthrough il reader di anteprima riceve anche gli scatti, trattenuti fino alla scrittura
+        imageReader = ImageReader.newInstance(streamWidth, streamHeight, previewImageFormat,
+                passthrough ? 2 + StillCapture.STILL_READER_MAX_IMAGES : 2);
+        imageReader.setOnImageAvailableListener(new ImageReader.OnImageAvailableListener() {
+            @Override
+            public void onImageAvailable(ImageReader reader) {
+                Image image = passthrough ? acquirePassthroughImage(reader) : reader.acquireLatestImage();
+                if (image == null) {
+                    return;
+                }
+                if (firstImageNanos == 0) {
+                    firstImageNanos = System.nanoTime();
+                    Log.d(TAG, "Startup " + externalCameraId + ": " + startupToJson());
+                }
+                try {
+                    // In pausa i frame ancora in volo vengono scartati: alla ripresa arriva un frame nuovo
+                    if (isPreviewActive && frameCallback != null) {
+                        if (resumeCallback != null) {
+                            onFirstFrameAfterResume();
+                        }
+                        processPreviewFrame(image);
+                    }
+                } catch (Exception e) {
+                    Log.e(TAG, "Error processing frame", e);
+                } finally {
+                    image.close();
+                }
+            }
+        }, backgroundHandler);
+    
+        // Crea ImageReader per still capture (JPEG), tranne in passthrough
+        Surface stillSurface = stillCapture.createStillReader(passthrough,
+                config != null ? config.stillWidth : streamWidth, config != null ? config.stillHeight : streamHeight);
+        List<Surface> outputs = stillSurface != null
+                ? Arrays.asList(imageReader.getSurface(), stillSurface)
+                : Collections.singletonList(imageReader.getSurface());
+        cameraDevice.createCaptureSession(outputs,
+                new CameraCaptureSession.StateCallback() {
+                    @Override
+                    public void onConfigured(@NonNull CameraCaptureSession session) {
+                        if (cameraDevice == null) return;
+                        
+                        captureSession = session;
+                        sessionConfiguredNanos = System.nanoTime();
+                        try {
+                            previewRequest = createPreviewRequestBuilder().build();
+                            captureSession.setRepeatingRequest(previewRequest, previewCaptureCallback, backgroundHandler);
+                            isPreviewActive = true;
+                        } catch (CameraAccessException e) {
+                            Log.e(TAG, "Error starting preview", e);
+                            if (frameCallback != null) {
+                                frameCallback.error("Failed to start preview: " + e.getMessage());
+                            }
+                        }
+                    }
+
+                    @Override
+                    public void onConfigureFailed(@NonNull CameraCaptureSession session) {
+                        if (frameCallback != null) {
+                            frameCallback.error("Failed to configure camera session");
+                        }
+                    }
+                }, null);
+    }
+
+    // Thread camera, passthrough: come acquireLatestImage, ma gli scatti in coda
+    // vanno al writer invece di essere scartati dai frame successivi
+    private Image acquirePassthroughImage(ImageReader reader) {
+        Image latest = null;
+        Image image;
+        while ((image = reader.acquireNextImage()) != null) {
+            if (stillCapture.routeStillImage(image)) {
+                continue;
+            }
+            if (latest != null) {
+                latest.close();
+            }
+            latest = image;
+        }
+        return latest;
+    }
+
+    // Richiesta di anteprima; usata anche per i trigger del pre-scatto, con le stesse impostazioni
+    private CaptureRequest.Builder createPreviewRequestBuilder() throws CameraAccessException {
+        CaptureRequest.Builder builder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
+        builder.addTarget(imageReader.getSurface());
+        builder.set(CaptureRequest.CONTROL_AF_MODE, CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE);
+        StreamConfigNegotiator.StreamConfig config = streamConfig;
+        if (config != null && config.fpsMax > 0) {
+            builder.set(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE, new Range<>(config.fpsMin, config.fpsMax));
+        }
+        return builder;
+    }
+
+    private void startFramePipeline(int width, int height) {
+        stopFramePipeline();
+        // Il nuovo thread di encoding ricalcola la riduzione con le opzioni correnti
+        downscaleSrcWidth = -1;
+        downscaleSrcHeight = -1;
+        framePipeline = new FramePipeline(width, height, PIPELINE_QUEUE_CAPACITY,
+                this::encodeFrameToJpeg, this::deliverFrame);
+        // Un frame scartato dentro la pipeline non arriva al consumer: restituisce il credito
+        framePipeline.setDropListener(frame -> {
+            if (frame.deliver) {
+                flowController.cancel();
+            }
+        });
+        framePipeline.start();
+    }
+
+    private void stopFramePipeline() {
+        if (framePipeline != null) {
+            framePipeline.stop();
+            framePipeline = null;
+        }
+    }
+
+    // Stadio capture (thread camera): decide se tenere il frame e ne copia i pixel
+    private void processPreviewFrame(Image image) {
+        stats.onFrameArrived();
+        if (realtimeTimestamps) {
+            stats.arrival.record(SystemClock.elapsedRealtimeNanos() - image.getTimestamp());
+        }
+        long start = System.nanoTime();
+        int width = image.getWidth();
+        int height = image.getHeight();
+        // ZSL: ogni frame YUV entra nell'anello, anche se non viene consegnato
+        ZslFrameRing.Frame zslFrame = null;
+        if (zslRing != null && image.getFormat() != ImageFormat.JPEG) {
+            zslFrame = zslRing.acquireForWrite(width, height);
+            copyToNv21(image, zslFrame.nv21);
+            zslRing.commit(image.getTimestamp(), start);
+        }
+        // Subscriber nativi: una copia condivisa, alla propria cadenza e prima dei filtri per JS
+        if (frameSource.hasSubscribers() && image.getFormat() != ImageFormat.JPEG) {
+            publishToSubscribers(image, zslFrame, start);
+        }
+        // Scena ferma: il frame non viene consegnato (il keep-alive ne lascia passare uno ogni tanto)
+        boolean changed = true;
+        MotionDetector detector = motionDetector;
+        if (detector != null && image.getFormat() != ImageFormat.JPEG) {
+            Image.Plane plane = image.getPlanes()[0];
+            changed = detector.process(plane.getBuffer(), plane.getRowStride(), plane.getPixelStride(),
+                    width, height, start);
+            sendMotionEvent(detector, image.getTimestamp(), start);
+        }
+        // In streaming senza client non si consegna nulla; il consumer indietro
+        // o oltre il cap FPS fa scartare il frame prima di qualsiasi copia
+        boolean deliver = changed && (mjpegServer == null || mjpegServer.hasClients())
+                && flowController.tryAcquire(System.nanoTime());
+        boolean record = recording.isRecording();
+        if (!deliver && !record) {
+            return;
+        }
+        
+        FramePipeline pipeline = framePipeline;
+        if (pipeline == null || pipeline.getWidth() != width || pipeline.getHeight() != height) {
+            // La camera ha scelto una risoluzione diversa da quella richiesta
+            startFramePipeline(width, height);
+            pipeline = framePipeline;
+        }
+        
+        PipelineFrame frame = pipeline.acquireFrame();
+        if (frame == null) {
+            if (deliver) {
+                flowController.cancel();
+            }
+            return;
+        }
+        frame.deliver = deliver;
+        try {
+            if (FRAME_FORMAT_LUMA.equals(frameFormat) && image.getFormat() != ImageFormat.JPEG) {
+                // Solo luminanza: niente croma, niente JPEG
+                frame.lumaLength = packLuma(image, frame.yuv);
+            } else if (image.getFormat() == ImageFormat.JPEG) {
+                // Passthrough: i byte compressi dalla camera vanno avanti invariati
+                frame.jpeg.reset();
+                frame.jpeg.write(image.getPlanes()[0].getBuffer());
+                frame.jpegReady = true;
+            } else if (zslFrame != null) {
+                // Gia' convertito nell'anello ZSL
+                System.arraycopy(zslFrame.nv21, 0, frame.yuv, 0, YuvConverter.nv21Size(width, height));
+            } else {
+                copyToNv21(image, frame.yuv);
+            }
+        } catch (RuntimeException e) {
+            pipeline.recycle(frame);
+            if (deliver) {
+                flowController.cancel();
+            }
+            throw e;
+        }
+        frame.timestampNanos = image.getTimestamp();
+        frame.arrivalNanos = start;
+        pipeline.submit(frame, System.nanoTime() - start);
+    }
+
+    /**
+     * Thread camera: evento {type: 'motion'} sul callback dei frame. Durante il movimento
+     * al massimo uno ogni MOTION_EVENT_INTERVAL_MS con il riquadro cambiato, poi uno con
+     * active false quando la scena torna ferma.
+     */
+    private void sendMotionEvent(MotionDetector detector, long timestampNanos, long nowNanos) {
+        boolean motion = detector.isMotion();
+        if (motion && motionActive && nowNanos - lastMotionEventNanos < MOTION_EVENT_INTERVAL_MS * 1_000_000L) {
+            return;
+        }
+        if (!motion && !motionActive) {
+            return;
+        }
+        motionActive = motion;
+        lastMotionEventNanos = nowNanos;
+        CallbackContext callback = frameCallback;
+        if (callback == null) {
+            return;
+        }
+        try {
+            JSONObject event = new JSONObject();
+            event.put("type", "motion");
+            event.put("active", motion);
+            event.put("timestamp", timestampNanos);
+            if (motion) {
+                event.put("x", detector.getBoxX());
+                event.put("y", detector.getBoxY());
+                event.put("width", detector.getBoxWidth());
+                event.put("height", detector.getBoxHeight());
+                event.put("changed", detector.getChangedFraction());
+            }
+            PluginResult result = new PluginResult(PluginResult.Status.OK, event);
+            result.setKeepCallback(true);
+            callback.sendPluginResult(result);
+        } catch (JSONException e) {
+            Log.e(TAG, "Error sending motion event", e);
+        }
+    }
+
+    // Thread camera: copia NV21 o solo Y secondo i subscriber in scadenza
+    private void publishToSubscribers(Image image, ZslFrameRing.Frame zslFrame, long arrivalNanos) {
+        long now = System.nanoTime();
+        int format = frameSource.dueFormat(now);
+        if (format == 0) {
+            return;
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        SharedFrame shared = frameSource.acquireFrame(format, width, height);
+        if (shared == null) {
+            return;
+        }
+        try {
+            if (format == SharedFrame.FORMAT_NV21) {
+                if (zslFrame != null) {
+                    System.arraycopy(zslFrame.nv21, 0, shared.data, 0, YuvConverter.nv21Size(width, height));
+                } else {
+                    copyToNv21(image, shared.data);
+                }
+            } else {
+                Image.Plane plane = image.getPlanes()[0];
+                yuvConverter.copyLumaRegion(plane.getBuffer(), plane.getRowStride(), plane.getPixelStride(),
+                        0, 0, width, height, 1, shared.data, 0);
+            }
+        } catch (RuntimeException e) {
+            shared.release();
+            throw e;
+        }
+        frameSource.publish(shared, image.getTimestamp(), arrivalNanos, now);
+    }
+
+    private void copyToNv21(Image image, byte[] out) {
+        Image.Plane[] planes = image.getPlanes();
+        yuvConverter.toNv21(
+                planes[0].getBuffer(), planes[0].getRowStride(), planes[0].getPixelStride(),
+                planes[1].getBuffer(), planes[2].getBuffer(), planes[1].getRowStride(), planes[1].getPixelStride(),
+                image.getWidth(), image.getHeight(), out);
+    }
+
+    // Header + piano Y del ritaglio in out; ritorna la lunghezza del payload
+    private int packLuma(Image image, byte[] out) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int x = Math.min(lumaCropX, width - 1);
+        int y = Math.min(lumaCropY, height - 1);
+        int cropWidth = lumaCropWidth > 0 ? Math.min(lumaCropWidth, width - x) : width - x;
+        int cropHeight = lumaCropHeight > 0 ? Math.min(lumaCropHeight, height - y) : height - y;
+        int outWidth = (cropWidth + lumaStep - 1) / lumaStep;
+        int outHeight = (cropHeight + lumaStep - 1) / lumaStep;
+        
+        putIntLE(out, 0, outWidth);
+        putIntLE(out, 4, outHeight);
+        long timestamp = image.getTimestamp();
+        putIntLE(out, 8, (int) timestamp);
+        putIntLE(out, 12, (int) (timestamp >>> 32));
+        Image.Plane plane = image.getPlanes()[0];
+        return LUMA_HEADER_BYTES + yuvConverter.copyLumaRegion(plane.getBuffer(), plane.getRowStride(),
+                plane.getPixelStride(), x, y, cropWidth, cropHeight, lumaStep, out, LUMA_HEADER_BYTES);
+    }
+
+    private static void putIntLE(byte[] out, int offset, int value) {
+        out[offset] = (byte) value;
+        out[offset + 1] = (byte) (value >>> 8);
+        out[offset + 2] = (byte) (value >>> 16);
+        out[offset + 3] = (byte) (value >>> 24);
+    }
+
+    // Stadio encode: NV21 -> JPEG nel buffer del frame
+    private void encodeFrameToJpeg(PipelineFrame frame) throws IOException {
+        if (frame.jpegReady || frame.lumaLength > 0) {
+            return;
+        }
+        long start = System.nanoTime();
+        JpegRateController controller = rateController;
+        int quality = controller != null ? controller.getQuality() : previewJpegQuality;
+        frame.jpeg.reset();
+        if (prepareDownscaler(frame.width, frame.height, adaptiveScale())) {
+            // Meno pixel da comprimere e da inviare: la cattura resta a piena risoluzione
+            if (isTransformActive()) {
+                yuvTransform.transform(frame.yuv, scaledYuv);
+                jpegEncoder.encode(scaledYuv, yuvTransform.getDstWidth(), yuvTransform.getDstHeight(),
+                        quality, frame.jpeg);
+            } else {
+                yuvDownscaler.downscale(frame.yuv, scaledYuv);
+                jpegEncoder.encode(scaledYuv, yuvDownscaler.getDstWidth(), yuvDownscaler.getDstHeight(),
+                        quality, frame.jpeg);
+            }
+        } else {
+            jpegEncoder.encode(frame.yuv, frame.width, frame.height, quality, frame.jpeg);
+        }
+        long end = System.nanoTime();
+        stats.encode.record(end - start);
+        if (controller != null) {
+            controller.onFrameEncoded(end - start, frame.deliver ? frame.jpeg.size() : 0, end);
+        }
+    }
+
+    // Riconfigura la riduzione solo quando cambia la risoluzione di cattura, il livello adattivo
+    // o dopo reconfigure (thread di encoding). Con ritaglio/rotazione/specchiatura un solo
+    // passaggio YuvTransform sostituisce la riduzione box.
+    private boolean prepareDownscaler(int width, int height, float scale) {
+        if (downscaleDirty || width != downscaleSrcWidth || height != downscaleSrcHeight || scale != downscaleScale) {
+            downscaleDirty = false;
+            downscaleSrcWidth = width;
+            downscaleSrcHeight = height;
+            downscaleScale = scale;
+            int[] size = outputSize(width, height, scale);
+            downscaleActive = size != null;
+            if (downscaleActive) {
+                if (isTransformActive()) {
+                    int[] crop = cropRect(width, height);
+                    yuvTransform.configure(width, height, crop[0], crop[1], crop[2], crop[3],
+                            rotation, mirrorHorizontal, mirrorVertical, size[0], size[1], transformFilter);
+                } else {
+                    yuvDownscaler.configure(width, height, size[0], size[1]);
+                }
+                int bytes = YuvConverter.nv21Size(size[0], size[1]);
+                if (scaledYuv.length < bytes) {
+                    scaledYuv = new byte[bytes];
+                }
+                Log.d(TAG, "Delivery transform " + width + "x" + height + " -> " + size[0] + "x" + size[1]);
+            }
+        }
+        return downscaleActive;
+    }
+
+    private boolean isTransformActive() {
+        return rotation != 0 || mirrorHorizontal || mirrorVertical || cropWidth > 0 || cropHeight > 0
+                || cropX > 0 || cropY > 0;
+    }
+
+    // Ritaglio {x, y, w, h} limitato al frame e allineato a valori pari (0 = fino al bordo)
+    private int[] cropRect(int width, int height) {
+        int x = Math.min(cropX, width - 2) & ~1;
+        int y = Math.min(cropY, height - 2) & ~1;
+        int w = cropWidth > 0 ? Math.min(cropWidth, width - x) : width - x;
+        int h = cropHeight > 0 ? Math.min(cropHeight, height - y) : height - y;
+        return new int[] { x, y, Math.max(w & ~1, 2), Math.max(h & ~1, 2) };
+    }
+
+    /**
+     * Dimensione dei frame consegnati per una cattura width x height: ritaglio e rotazione,
+     * poi deliveryWidth/deliveryHeight e la scala adattiva. null se il frame passa invariato.
+     */
+    private int[] outputSize(int width, int height, float scale) {
+        if (!isTransformActive()) {
+            return deliverySize(width, height, scale);
+        }
+        int[] crop = cropRect(width, height);
+        int[] oriented = YuvTransform.orientedSize(crop[2], crop[3], rotation);
+        int[] size = deliverySize(oriented[0], oriented[1], scale);
+        return size != null ? size : oriented;
+    }
+
+    // Risoluzione di consegna per una cattura width x height, ridotta di scale dal controllo
+    // adattivo; null se non serve ridurre
+    private int[] deliverySize(int width, int height, float scale) {
+        if (deliveryWidth <= 0 && deliveryHeight <= 0 && scale >= 1f) {
+            return null;
+        }
+        int w = width;
+        int h = height;
+        if (deliveryWidth > 0 || deliveryHeight > 0) {
+            // Con una sola dimensione l'altra segue l'aspetto della cattura
+            w = deliveryWidth > 0 ? deliveryWidth : (int) ((long) width * deliveryHeight / height);
+            h = deliveryHeight > 0 ? deliveryHeight : (int) ((long) height * deliveryWidth / width);
+        }
+        // NV21 richiede valori pari
+        w = (int) (w * scale) & ~1;
+        h = (int) (h * scale) & ~1;
+        if (w <= 0 || h <= 0 || w > width || h > height || (w == width && h == height)) {
+            return null;
+        }
+        return new int[] { w, h };
+    }
+
+    // Stadio deliver: consegna il JPEG al trasporto configurato
+    private void deliverFrame(PipelineFrame frame) {
+        if (frame.lumaLength == 0) {
+            // Copia nel buffer del recorder: la scrittura avviene sul suo thread di I/O
+            recording.offer(frame.jpeg.getBuffer(), 0, frame.jpeg.size(), frame.timestampNanos);
+        }
+        if (!frame.deliver) {
+            return;
+        }
+        
+        MjpegStreamServer server = mjpegServer;
+        if (server != null) {
+            // In streaming i frame non passano dal bridge
+            long start = System.nanoTime();
+            server.publishFrame(frame.jpeg.getBuffer(), 0, frame.jpeg.size());
+            stats.send.record(System.nanoTime() - start);
+            return;
+        }
+        CallbackContext callback = frameCallback;
+        if (callback == null || !isPreviewActive) {
+            flowController.cancel();
+            return;
+        }
+        
+        long start = System.nanoTime();
+        PluginResult result;
+        if (frame.lumaLength > 0) {
+            result = new PluginResult(PluginResult.Status.OK, Arrays.copyOf(frame.yuv, frame.lumaLength));
+        } else if (FRAME_FORMAT_ARRAYBUFFER.equals(frameFormat)) {
+            // Payload binario: in JS onFrame riceve un ArrayBuffer
+            result = new PluginResult(PluginResult.Status.OK, convertFrameToJpegBytes(frame));
+        } else {
+            result = new PluginResult(PluginResult.Status.OK, convertFrameToBase64(frame));
+        }
+        result.setKeepCallback(true);
+        callback.sendPluginResult(result);
+        stats.send.record(System.nanoTime() - start);
+    }
+
+    private String convertFrameToBase64(PipelineFrame frame) {
+        return Base64.encodeToString(frame.jpeg.getBuffer(), 0, frame.jpeg.size(), Base64.NO_WRAP);
+    }
+
+    private byte[] convertFrameToJpegBytes(PipelineFrame frame) {
+        return Arrays.copyOf(frame.jpeg.getBuffer(), frame.jpeg.size());
+    }
+
+    boolean takeBurst(JSONArray args, CallbackContext callbackContext) {
+        return stillCapture.takeBurst(args, callbackContext);
+    }
+
+    // Stato della sessione per gli scatti (thread camera)
+    private final class CaptureHost implements StillCapture.Host {
+        @Override
+        public CameraDevice getCameraDevice() {
+            return cameraDevice;
+        }
+
+        @Override
+        public CameraCaptureSession getCaptureSession() {
+            return captureSession;
+        }
+
+        @Override
+        public Handler getHandler() {
+            return backgroundHandler;
+        }
+
+        @Override
+        public boolean isPreviewActive() {
+            return isPreviewActive;
+        }
+
+        @Override
+        public CaptureRequest.Builder createPreviewRequestBuilder() throws CameraAccessException {
+            return CameraSession.this.createPreviewRequestBuilder();
+        }
+
+        @Override
+        public boolean startRepeatingPreview() throws CameraAccessException {
+            if (previewRequest == null) {
+                return false;
+            }
+            captureSession.setRepeatingRequest(previewRequest, previewCaptureCallback, backgroundHandler);
+            return true;
+        }
+
+        @Override
+        public Surface getPreviewSurface() {
+            return imageReader.getSurface();
+        }
+
+        @Override
+        public ZslFrameRing getZslRing() {
+            return zslRing;
+        }
+
+        @Override
+        public CameraInventory.CameraEntry getCameraEntry() {
+            try {
+                return cameraInventory.getSnapshot().get(externalCameraId);
+            } catch (CameraAccessException e) {
+                Log.w(TAG, "Unable to read camera capabilities", e);
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.cordova.plugin;
+
+import java.util.ArrayDeque;
+
+/**
+ * Pool di buffer byte[] di dimensione fissa per i frame di anteprima.
+ * I buffer vengono creati alla prima richiesta e poi riciclati: a regime non alloca.
+ */
+public class FrameBufferPool {
+    private final int bufferSize;
+    private final int capacity;
+    private final ArrayDeque<byte[]> free;
+    private int created = 0;
+
+    public FrameBufferPool(int bufferSize, int capacity) {
+        if (bufferSize <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("Invalid pool size: " + bufferSize + " x " + capacity);
+        }
+        this.bufferSize = bufferSize;
+        this.capacity = capacity;
+        this.free = new ArrayDeque<>(capacity);
+    }
+
+    /** Pool dimensionato per frame NV21 width x height. */
+    public static FrameBufferPool forNv21(int width, int height, int capacity) {
+        return new FrameBufferPool(YuvConverter.nv21Size(width, height), capacity);
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Restituisce un buffer libero, o null se tutti i {@code capacity} buffer sono in uso.
+     */
+    public synchronized byte[] acquire() {
+        byte[] buffer = free.pollFirst();
+        if (buffer == null && created < capacity) {
+            created++;
+            buffer = new byte[bufferSize];
+        }
+        return buffer;
+    }
+
+    public synchronized void release(byte[] buffer) {
+        if (buffer == null || buffer.length != bufferSize || free.size() >= capacity) {
+            return;
+        }
+        free.addFirst(buffer);
+    }
+
+    public synchronized int available() {
+        return free.size() + (capacity - created);
+    }
+}
@@ -0,0 +1,97 @@
+package com.cordova.plugin;
+
+/**
+ * Controllo di flusso dei frame verso il consumer JS.
+ *
+ * Due limiti indipendenti, verificati prima di qualsiasi codifica:
+ * - maxDeliveryFps: cadenza massima di consegna (0 = nessun limite);
+ * - finestra di credito: al massimo maxFramesInFlight frame senza ack (0 = auto-ack).
+ * I frame che non passano vengono contati come scartati.
+ */
+public class FrameFlowController {
+    private long minIntervalNanos;
+    private long toleranceNanos;
+    private long nextDueNanos = Long.MIN_VALUE;
+
+    private int maxFramesInFlight;
+    private int inFlight = 0;
+
+    private long delivered = 0;
+    private long droppedByRate = 0;
+    private long droppedByCredit = 0;
+
+    public FrameFlowController() {
+        configure(0, 0);
+    }
+
+    public synchronized void configure(int maxDeliveryFps, int maxFramesInFlight) {
+        this.minIntervalNanos = maxDeliveryFps > 0 ? 1_000_000_000L / maxDeliveryFps : 0;
+        // Tolleranza per il jitter dei timestamp camera, evita di dimezzare il frame rate
+        this.toleranceNanos = minIntervalNanos / 4;
+        this.maxFramesInFlight = Math.max(0, maxFramesInFlight);
+        this.nextDueNanos = Long.MIN_VALUE;
+        this.inFlight = 0;
+    }
+
+    /**
+     * Decide se il frame arrivato a {@code nowNanos} va consegnato.
+     * In caso positivo consuma un credito e aggiorna la prossima scadenza.
+     */
+    public synchronized boolean tryAcquire(long nowNanos) {
+        if (minIntervalNanos > 0 && nextDueNanos != Long.MIN_VALUE && nowNanos + toleranceNanos < nextDueNanos) {
+            droppedByRate++;
+            return false;
+        }
+        if (maxFramesInFlight > 0 && inFlight >= maxFramesInFlight) {
+            droppedByCredit++;
+            return false;
+        }
+        if (minIntervalNanos > 0) {
+            // Cadenza regolare; se siamo in ritardo si riparte da adesso
+            long next = nextDueNanos == Long.MIN_VALUE ? nowNanos : nextDueNanos;
+            nextDueNanos = Math.max(next + minIntervalNanos, nowNanos);
+        }
+        if (maxFramesInFlight > 0) {
+            inFlight++;
+        }
+        delivered++;
+        return true;
+    }
+
+    /** Restituisce un credito per un frame consegnato che non e' stato inviato (es. errore). */
+    public synchronized void cancel() {
+        if (maxFramesInFlight > 0 && inFlight > 0) {
+            inFlight--;
+        }
+        if (delivered > 0) {
+            delivered--;
+        }
+    }
+
+    /** Il consumer ha finito di gestire {@code count} frame. */
+    public synchronized void ack(int count) {
+        inFlight = Math.max(0, inFlight - Math.max(1, count));
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized long getDelivered() {
+        return delivered;
+    }
+
+    public synchronized long getDroppedByRate() {
+        return droppedByRate;
+    }
+
+    public synchronized long getDroppedByCredit() {
+        return droppedByCredit;
+    }
+
+    public synchronized void resetCounters() {
+        delivered = 0;
+        droppedByRate = 0;
+        droppedByCredit = 0;
+    }
+}
@@ -0,0 +1,13 @@
+package com.cordova.plugin;
+
+/**
+ * Subscriber nativo dei frame di anteprima di un {@link FrameSource}.
+ *
+ * Viene chiamato sul thread della propria sottoscrizione, mai sul thread camera.
+ * Il frame resta valido fino al ritorno di {@link #onFrame}; per usarlo dopo
+ * (es. su un altro thread) chiamare {@link SharedFrame#retain()} e poi
+ * {@link SharedFrame#release()} quando non serve piu'.
+ */
+public interface FrameListener {
+    void onFrame(SharedFrame frame);
+}
@@ -0,0 +1,263 @@
+package com.cordova.plugin;
+
+import java.util.ArrayDeque;
+
+/**
+ * Pipeline a stadi per i frame di anteprima:
+ * il thread camera copia il frame e lo accoda ({@link #submit}), un thread di encoding
+ * lo comprime e un thread di consegna lo invia al consumer.
+ * Tra gli stadi ci sono code {@link LatestFrameRing}: se uno stadio e' lento
+ * si scartano i frame piu' vecchi, senza mai bloccare il thread camera.
+ */
+public class FramePipeline {
+
+    /** Lavoro di uno stadio; un'eccezione scarta il frame. */
+    public interface Stage {
+        void process(PipelineFrame frame) throws Exception;
+    }
+
+    /** Notifica dei frame scartati (coda piena o errore dello stadio). */
+    public interface DropListener {
+        void onFrameDropped(PipelineFrame frame);
+    }
+
+    /** Contatori di uno stadio. */
+    public static class StageStats {
+        private long processed;
+        private long dropped;
+        private long failed;
+        private long totalNanos;
+        private long maxNanos;
+
+        synchronized void record(long nanos) {
+            processed++;
+            totalNanos += nanos;
+            if (nanos > maxNanos) {
+                maxNanos = nanos;
+            }
+        }
+
+        synchronized void dropped() {
+            dropped++;
+        }
+
+        synchronized void failed() {
+            failed++;
+        }
+
+        public synchronized long getProcessed() {
+            return processed;
+        }
+
+        public synchronized long getDropped() {
+            return dropped;
+        }
+
+        public synchronized long getFailed() {
+            return failed;
+        }
+
+        public synchronized double getAverageMillis() {
+            return processed > 0 ? totalNanos / (double) processed / 1_000_000.0 : 0;
+        }
+
+        public synchronized double getMaxMillis() {
+            return maxNanos / 1_000_000.0;
+        }
+
+        public synchronized void reset() {
+            processed = 0;
+            dropped = 0;
+            failed = 0;
+            totalNanos = 0;
+            maxNanos = 0;
+        }
+    }
+
+    private final int width;
+    private final int height;
+    private final FrameBufferPool bufferPool;
+    private final ArrayDeque<PipelineFrame> freeFrames = new ArrayDeque<>();
+    private final LatestFrameRing<PipelineFrame> encodeQueue;
+    private final LatestFrameRing<PipelineFrame> deliveryQueue;
+    private final Stage encoder;
+    private final Stage deliverer;
+    private volatile DropListener dropListener;
+
+    private final StageStats captureStats = new StageStats();
+    private final StageStats encodeStats = new StageStats();
+    private final StageStats deliveryStats = new StageStats();
+
+    private Thread encodeThread;
+    private Thread deliveryThread;
+    private volatile boolean running = false;
+
+    public FramePipeline(int width, int height, int queueCapacity, Stage encoder, Stage deliverer) {
+        this.width = width;
+        this.height = height;
+        this.encodeQueue = new LatestFrameRing<>(queueCapacity);
+        this.deliveryQueue = new LatestFrameRing<>(queueCapacity);
+        // Un frame in cattura, uno per stadio in lavorazione, piu' quelli in coda
+        this.bufferPool = FrameBufferPool.forNv21(width, height, 3 + 2 * queueCapacity);
+        this.encoder = encoder;
+        this.deliverer = deliverer;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public void setDropListener(DropListener listener) {
+        this.dropListener = listener;
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        encodeThread = new Thread(() -> runStage(encodeQueue, encoder, encodeStats, deliveryQueue, deliveryStats), "FrameEncoder");
+        deliveryThread = new Thread(() -> runStage(deliveryQueue, deliverer, deliveryStats, null, null), "FrameDelivery");
+        encodeThread.start();
+        deliveryThread.start();
+    }
+
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        encodeThread.interrupt();
+        deliveryThread.interrupt();
+        try {
+            encodeThread.join(1000);
+            deliveryThread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        encodeThread = null;
+        deliveryThread = null;
+        PipelineFrame frame;
+        while ((frame = encodeQueue.poll()) != null) {
+            recycle(frame);
+        }
+        while ((frame = deliveryQueue.poll()) != null) {
+            recycle(frame);
+        }
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Frame libero in cui copiare i pixel, o null se sono tutti in uso
+     * (il frame in arrivo va scartato).
+     */
+    public PipelineFrame acquireFrame() {
+        byte[] yuv = bufferPool.acquire();
+        if (yuv == null) {
+            captureStats.dropped();
+            return null;
+        }
+        PipelineFrame frame;
+        synchronized (freeFrames) {
+            frame = freeFrames.pollFirst();
+        }
+        if (frame == null) {
+            frame = new PipelineFrame();
+        }
+        frame.yuv = yuv;
+        frame.width = width;
+        frame.height = height;
+        return frame;
+    }
+
+    /** Accoda un frame acquisito con {@link #acquireFrame()} per l'encoding. */
+    public void submit(PipelineFrame frame, long captureNanos) {
+        captureStats.record(captureNanos);
+        if (!running) {
+            recycle(frame);
+            return;
+        }
+        PipelineFrame evicted = encodeQueue.offer(frame);
+        if (evicted != null) {
+            drop(evicted, encodeStats);
+        }
+    }
+
+    /** Restituisce al pool un frame non accodato. */
+    public void recycle(PipelineFrame frame) {
+        bufferPool.release(frame.yuv);
+        frame.yuv = null;
+        frame.reset();
+        synchronized (freeFrames) {
+            freeFrames.addFirst(frame);
+        }
+    }
+
+    private void drop(PipelineFrame frame, StageStats stats) {
+        stats.dropped();
+        DropListener listener = dropListener;
+        if (listener != null) {
+            listener.onFrameDropped(frame);
+        }
+        recycle(frame);
+    }
+
+    private void runStage(LatestFrameRing<PipelineFrame> in, Stage stage, StageStats stats,
+                          LatestFrameRing<PipelineFrame> out, StageStats outStats) {
+        while (running) {
+            PipelineFrame frame;
+            try {
+                frame = in.take();
+            } catch (InterruptedException e) {
+                break;
+            }
+            long start = System.nanoTime();
+            try {
+                stage.process(frame);
+            } catch (InterruptedException e) {
+                recycle(frame);
+                break;
+            } catch (Exception e) {
+                stats.failed();
+                drop(frame, stats);
+                continue;
+            }
+            stats.record(System.nanoTime() - start);
+            if (out == null) {
+                recycle(frame);
+            } else {
+                PipelineFrame evicted = out.offer(frame);
+                if (evicted != null) {
+                    drop(evicted, outStats);
+                }
+            }
+        }
+    }
+
+    public StageStats getCaptureStats() {
+        return captureStats;
+    }
+
+    public StageStats getEncodeStats() {
+        return encodeStats;
+    }
+
+    public StageStats getDeliveryStats() {
+        return deliveryStats;
+    }
+
+    public int getEncodeQueueDepth() {
+        return encodeQueue.size();
+    }
+
+    public int getDeliveryQueueDepth() {
+        return deliveryQueue.size();
+    }
+}
@@ -0,0 +1,143 @@
+package com.cordova.plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Registrazione dei JPEG di anteprima in un file AVI (MJPEG) su un thread di I/O dedicato.
+ * {@link #offer} copia il frame in un buffer riciclato e ritorna subito: se il disco
+ * non tiene il passo e i buffer sono esauriti il frame viene scartato, mai atteso.
+ */
+public class FrameRecorder {
+    private static final int DEFAULT_QUEUE_FRAMES = 8;
+
+    private static final class RecordedFrame {
+        byte[] data = new byte[0];
+        int length;
+        long timestampNanos;
+    }
+
+    private final AviMjpegWriter writer;
+    private final ArrayBlockingQueue<RecordedFrame> queue;
+    private final ArrayDeque<RecordedFrame> freeFrames;
+    private final Thread ioThread;
+    private volatile boolean stopping = false;
+    private volatile IOException failure;
+    private volatile long droppedFrames = 0;
+    private final long startNanos = System.nanoTime();
+    private long stopNanos;
+
+    public FrameRecorder(File file, int width, int height, double fps) throws IOException {
+        this(file, width, height, fps, DEFAULT_QUEUE_FRAMES);
+    }
+
+    public FrameRecorder(File file, int width, int height, double fps, int queueFrames) throws IOException {
+        this.writer = new AviMjpegWriter(file, width, height, fps);
+        this.queue = new ArrayBlockingQueue<>(queueFrames);
+        this.freeFrames = new ArrayDeque<>(queueFrames);
+        for (int i = 0; i < queueFrames; i++) {
+            freeFrames.add(new RecordedFrame());
+        }
+        this.ioThread = new Thread(this::runLoop, "FrameRecorder");
+        this.ioThread.start();
+    }
+
+    public File getFile() {
+        return writer.getFile();
+    }
+
+    /** Accoda un JPEG; ritorna false se il frame e' stato scartato. */
+    public boolean offer(byte[] jpeg, int offset, int length, long timestampNanos) {
+        if (stopping || failure != null) {
+            return false;
+        }
+        RecordedFrame frame;
+        synchronized (freeFrames) {
+            frame = freeFrames.pollFirst();
+        }
+        if (frame == null) {
+            droppedFrames++;
+            return false;
+        }
+        if (frame.data.length < length) {
+            frame.data = new byte[length + length / 4];
+        }
+        System.arraycopy(jpeg, offset, frame.data, 0, length);
+        frame.length = length;
+        frame.timestampNanos = timestampNanos;
+        // Non puo' fallire: la coda ha la stessa capacita' del pool
+        queue.offer(frame);
+        return true;
+    }
+
+    private void runLoop() {
+        while (true) {
+            RecordedFrame frame;
+            try {
+                frame = queue.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (frame == null) {
+                if (stopping) {
+                    break;
+                }
+                continue;
+            }
+            try {
+                if (failure == null) {
+                    writer.writeFrame(frame.data, 0, frame.length, frame.timestampNanos);
+                }
+            } catch (IOException e) {
+                failure = e;
+            } finally {
+                synchronized (freeFrames) {
+                    freeFrames.addFirst(frame);
+                }
+            }
+        }
+    }
+
+    /** Scrive i frame in coda, chiude il file e ritorna l'eventuale errore di scrittura. */
+    public void stop() throws IOException {
+        stopping = true;
+        stopNanos = System.nanoTime();
+        try {
+            ioThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writer.close();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    public boolean isFailed() {
+        return failure != null;
+    }
+
+    public int getFrameCount() {
+        return writer.getFrameCount();
+    }
+
+    public long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    public long getBytesWritten() {
+        return writer.getBytesWritten();
+    }
+
+    public double getEffectiveFps() {
+        return writer.getEffectiveFps();
+    }
+
+    public long getDurationMillis() {
+        long end = stopNanos > 0 ? stopNanos : System.nanoTime();
+        return (end - startNanos) / 1_000_000;
+    }
+}
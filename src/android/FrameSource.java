@@ -0,0 +1,262 @@
+package com.cordova.plugin;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Sorgente dei frame di anteprima di una camera per altri plugin nativi, senza passare da JS.
+ *
+ * Si ottiene con {@code UsbExternalCamera.getFrameSource(cameraId)} e sopravvive a
+ * open/close della camera. Ogni sottoscrizione sceglie formato ({@link SharedFrame#FORMAT_NV21}
+ * o {@link SharedFrame#FORMAT_LUMA}) e frame rate massimo e riceve i frame su un thread
+ * proprio tramite una coda "latest wins" di un elemento: un subscriber lento perde frame
+ * ma non blocca mai la cattura ne' gli altri subscriber. I frame sono copiati una volta
+ * sola in buffer del pool condivisi da tutti i subscriber (conteggio dei riferimenti);
+ * se il pool e' esaurito (subscriber che trattengono frame) il frame viene saltato.
+ * I frame arrivano solo con l'anteprima YUV (senza passthrough JPEG).
+ */
+public class FrameSource {
+
+    // Frame in circolazione per sottoscrizione: uno in coda e uno in elaborazione
+    private static final int FRAMES_PER_SUBSCRIPTION = 2;
+    private static final int SPARE_FRAMES = 1;
+
+    /** Sottoscrizione attiva; {@link #close()} la termina. */
+    public static class Subscription {
+        private final FrameSource source;
+        private final FrameListener listener;
+        private final int format;
+        private final int maxFps;
+        private final long minIntervalNanos;
+        private final long toleranceNanos;
+        // Solo thread camera
+        private long nextDueNanos = Long.MIN_VALUE;
+
+        private final LatestFrameRing<SharedFrame> queue = new LatestFrameRing<>(1);
+        private final Thread thread;
+        private boolean running = true;
+
+        private long delivered = 0;
+        private long dropped = 0;
+        private long failed = 0;
+
+        Subscription(FrameSource source, FrameListener listener, int format, int maxFps) {
+            this.source = source;
+            this.listener = listener;
+            this.format = format;
+            this.maxFps = Math.max(maxFps, 0);
+            this.minIntervalNanos = this.maxFps > 0 ? 1_000_000_000L / this.maxFps : 0;
+            // Tolleranza per il jitter dei timestamp camera, come nel controllo di flusso
+            this.toleranceNanos = minIntervalNanos / 4;
+            this.thread = new Thread(this::run, "FrameSubscriber-" + source.getCameraId());
+        }
+
+        public int getFormat() {
+            return format;
+        }
+
+        public int getMaxFps() {
+            return maxFps;
+        }
+
+        /** Frame passati al listener. */
+        public synchronized long getDelivered() {
+            return delivered;
+        }
+
+        /** Frame scartati perche' il listener era ancora occupato col precedente. */
+        public synchronized long getDropped() {
+            return dropped;
+        }
+
+        /** Chiamate al listener terminate con un'eccezione. */
+        public synchronized long getFailed() {
+            return failed;
+        }
+
+        public void close() {
+            source.unsubscribe(this);
+        }
+
+        boolean isDue(long nowNanos) {
+            return minIntervalNanos <= 0 || nextDueNanos == Long.MIN_VALUE || nowNanos + toleranceNanos >= nextDueNanos;
+        }
+
+        void markDue(long nowNanos) {
+            if (minIntervalNanos > 0) {
+                long next = nextDueNanos == Long.MIN_VALUE ? nowNanos : nextDueNanos;
+                nextDueNanos = Math.max(next + minIntervalNanos, nowNanos);
+            }
+        }
+
+        // Accoda un riferimento al frame; quello ancora in coda viene rilasciato
+        synchronized void offer(SharedFrame frame) {
+            if (!running) {
+                return;
+            }
+            SharedFrame evicted = queue.offer(frame.retain());
+            if (evicted != null) {
+                dropped++;
+                evicted.release();
+            }
+        }
+
+        void start() {
+            thread.start();
+        }
+
+        synchronized void stop() {
+            running = false;
+            thread.interrupt();
+            SharedFrame frame;
+            while ((frame = queue.poll()) != null) {
+                frame.release();
+            }
+        }
+
+        private synchronized boolean isRunning() {
+            return running;
+        }
+
+        private void run() {
+            while (isRunning()) {
+                SharedFrame frame;
+                try {
+                    frame = queue.take();
+                } catch (InterruptedException e) {
+                    break;
+                }
+                try {
+                    listener.onFrame(frame);
+                    synchronized (this) {
+                        delivered++;
+                    }
+                } catch (RuntimeException e) {
+                    synchronized (this) {
+                        failed++;
+                    }
+                } finally {
+                    frame.release();
+                }
+            }
+        }
+    }
+
+    private final String cameraId;
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final ArrayDeque<SharedFrame> freeFrames = new ArrayDeque<>();
+    private int createdFrames = 0;
+    private long published = 0;
+    private long droppedNoBuffer = 0;
+
+    public FrameSource(String cameraId) {
+        this.cameraId = cameraId;
+    }
+
+    public String getCameraId() {
+        return cameraId;
+    }
+
+    /**
+     * Registra {@code listener}.
+     * @param format {@link SharedFrame#FORMAT_NV21} o {@link SharedFrame#FORMAT_LUMA}
+     * @param maxFps frame al secondo massimi per questo subscriber (0 = tutti)
+     */
+    public Subscription subscribe(FrameListener listener, int format, int maxFps) {
+        if (listener == null) {
+            throw new IllegalArgumentException("listener is null");
+        }
+        if (format != SharedFrame.FORMAT_NV21 && format != SharedFrame.FORMAT_LUMA) {
+            throw new IllegalArgumentException("Invalid format: " + format);
+        }
+        Subscription subscription = new Subscription(this, listener, format, maxFps);
+        subscription.start();
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    public void unsubscribe(Subscription subscription) {
+        if (subscriptions.remove(subscription)) {
+            subscription.stop();
+        }
+    }
+
+    public boolean hasSubscribers() {
+        return !subscriptions.isEmpty();
+    }
+
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    /** Termina tutte le sottoscrizioni. */
+    public void close() {
+        for (Subscription subscription : subscriptions) {
+            unsubscribe(subscription);
+        }
+    }
+
+    /**
+     * Thread camera: formato da copiare per i subscriber in scadenza a {@code nowNanos},
+     * 0 se nessuno vuole questo frame. Basta un subscriber NV21 per copiare l'NV21 completo.
+     */
+    int dueFormat(long nowNanos) {
+        int format = 0;
+        for (Subscription subscription : subscriptions) {
+            if (subscription.isDue(nowNanos)) {
+                if (subscription.format == SharedFrame.FORMAT_NV21) {
+                    return SharedFrame.FORMAT_NV21;
+                }
+                format = SharedFrame.FORMAT_LUMA;
+            }
+        }
+        return format;
+    }
+
+    /** Thread camera: frame dal pool da riempire e passare a {@link #publish}, null se esaurito. */
+    synchronized SharedFrame acquireFrame(int format, int width, int height) {
+        SharedFrame frame = freeFrames.pollFirst();
+        if (frame == null) {
+            if (createdFrames >= subscriptions.size() * FRAMES_PER_SUBSCRIPTION + SPARE_FRAMES) {
+                droppedNoBuffer++;
+                return null;
+            }
+            createdFrames++;
+            frame = new SharedFrame(this);
+        }
+        frame.prepare(format, width, height);
+        frame.setRefCount(1);
+        return frame;
+    }
+
+    /** Thread camera: consegna il frame ai subscriber in scadenza e ne cede il riferimento. */
+    void publish(SharedFrame frame, long timestampNanos, long arrivalNanos, long nowNanos) {
+        frame.setTimes(timestampNanos, arrivalNanos);
+        for (Subscription subscription : subscriptions) {
+            // Un subscriber NV21 arrivato dopo dueFormat() aspetta il prossimo frame
+            if (subscription.isDue(nowNanos)
+                    && (subscription.format == SharedFrame.FORMAT_LUMA || frame.getFormat() == SharedFrame.FORMAT_NV21)) {
+                subscription.markDue(nowNanos);
+                subscription.offer(frame);
+            }
+        }
+        synchronized (this) {
+            published++;
+        }
+        frame.release();
+    }
+
+    synchronized void recycle(SharedFrame frame) {
+        freeFrames.addFirst(frame);
+    }
+
+    public synchronized long getPublished() {
+        return published;
+    }
+
+    /** Frame saltati perche' tutti i buffer erano trattenuti dai subscriber. */
+    public synchronized long getDroppedNoBuffer() {
+        return droppedNoBuffer;
+    }
+}
@@ -0,0 +1,16 @@
+package com.cordova.plugin;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Codifica di un frame NV21 in JPEG.
+ *
+ * Separa lo stadio di encoding dalle API Android, cosi' il percorso frame
+ * (YuvConverter -> JpegEncoder -> trasporto) puo' essere misurato anche su una JVM normale.
+ */
+public interface JpegEncoder {
+
+    /** Scrive in {@code out} il JPEG dei primi YuvConverter.nv21Size(width, height) byte di {@code nv21}. */
+    void encode(byte[] nv21, int width, int height, int quality, OutputStream out) throws IOException;
+}
@@ -0,0 +1,159 @@
+package com.cordova.plugin;
+
+/**
+ * Controllo ad anello chiuso di qualita' JPEG e risoluzione di consegna dell'anteprima.
+ *
+ * Ogni frame codificato riporta tempo di codifica e byte consegnati; a fine finestra
+ * (WINDOW_NANOS) si confrontano byte al secondo con targetBytesPerSecond e la frazione di
+ * tempo spesa a codificare (carico del thread di encoding) con maxEncodeLoad:
+ * - oltre il budget si scende: con il carico la risoluzione (il costo scala con i pixel),
+ *   con la banda prima la qualita' e poi la risoluzione;
+ * - si risale solo con margine (isteresi): la qualita' sotto QUALITY_UP_MARGIN del budget,
+ *   la risoluzione se il consumo previsto al livello superiore resta sotto LEVEL_UP_MARGIN.
+ * Un cambio per finestra. La logica e' pura e deterministica: il tempo arriva dal chiamante.
+ */
+public class JpegRateController {
+
+    /** Scala della risoluzione di consegna per livello (0 = piena). */
+    public static final float[] LEVEL_SCALES = { 1f, 0.75f, 0.5f, 0.25f };
+
+    private static final long WINDOW_NANOS = 1_000_000_000L;
+    private static final int MIN_WINDOW_FRAMES = 5;
+    private static final int QUALITY_STEP = 5;
+    private static final float QUALITY_UP_MARGIN = 0.8f;
+    private static final float LEVEL_UP_MARGIN = 0.9f;
+
+    private final int minQuality;
+    private final int maxQuality;
+    private long targetBytesPerSecond;
+    private float maxEncodeLoad;
+    private boolean adaptResolution;
+
+    private int quality;
+    private int level = 0;
+    private long adjustments = 0;
+
+    private long windowStartNanos = Long.MIN_VALUE;
+    private long windowBytes = 0;
+    private long windowEncodeNanos = 0;
+    private int windowFrames = 0;
+    private double bytesPerSecond = 0;
+    private double encodeLoad = 0;
+
+    /**
+     * @param minQuality qualita' minima raggiungibile
+     * @param maxQuality qualita' iniziale e massima
+     */
+    public JpegRateController(int minQuality, int maxQuality) {
+        this.maxQuality = Math.max(1, Math.min(maxQuality, 100));
+        this.minQuality = Math.max(1, Math.min(minQuality, this.maxQuality));
+        this.quality = this.maxQuality;
+    }
+
+    /**
+     * @param targetBytesPerSecond banda massima dei frame consegnati (0 = nessun limite)
+     * @param maxEncodeLoad frazione massima di tempo del thread di encoding (0 = nessun limite)
+     * @param adaptResolution se false la risoluzione resta piena e si agisce solo sulla qualita'
+     */
+    public synchronized void configure(long targetBytesPerSecond, float maxEncodeLoad, boolean adaptResolution) {
+        this.targetBytesPerSecond = Math.max(targetBytesPerSecond, 0);
+        this.maxEncodeLoad = Math.max(maxEncodeLoad, 0f);
+        this.adaptResolution = adaptResolution;
+        if (!adaptResolution) {
+            level = 0;
+        }
+        resetWindow(Long.MIN_VALUE);
+    }
+
+    /**
+     * Frame codificato in {@code encodeNanos}, di cui {@code deliveredBytes} consegnati
+     * (0 se il frame era solo da registrare).
+     */
+    public synchronized void onFrameEncoded(long encodeNanos, int deliveredBytes, long nowNanos) {
+        if (windowStartNanos == Long.MIN_VALUE) {
+            resetWindow(nowNanos);
+            return;
+        }
+        windowBytes += deliveredBytes;
+        windowEncodeNanos += encodeNanos;
+        windowFrames++;
+        long elapsed = nowNanos - windowStartNanos;
+        if (elapsed < WINDOW_NANOS || windowFrames < MIN_WINDOW_FRAMES) {
+            return;
+        }
+        bytesPerSecond = windowBytes * 1e9 / elapsed;
+        encodeLoad = (double) windowEncodeNanos / elapsed;
+        adjust();
+        resetWindow(nowNanos);
+    }
+
+    private void adjust() {
+        boolean overBytes = targetBytesPerSecond > 0 && bytesPerSecond > targetBytesPerSecond;
+        boolean overLoad = maxEncodeLoad > 0 && encodeLoad > maxEncodeLoad;
+        int maxLevel = adaptResolution ? LEVEL_SCALES.length - 1 : 0;
+        if (overLoad && level < maxLevel) {
+            level++;
+        } else if (overBytes || overLoad) {
+            if (quality > minQuality) {
+                quality = Math.max(minQuality, quality - QUALITY_STEP);
+            } else if (level < maxLevel) {
+                level++;
+            } else {
+                return;
+            }
+        } else if (level > 0 && fits(areaRatio(level - 1, level), LEVEL_UP_MARGIN)) {
+            level--;
+        } else if (quality < maxQuality && fits(1, QUALITY_UP_MARGIN)) {
+            quality = Math.min(maxQuality, quality + QUALITY_STEP);
+        } else {
+            return;
+        }
+        adjustments++;
+    }
+
+    // true se banda e carico, moltiplicati per factor, restano sotto margin dei rispettivi budget
+    private boolean fits(double factor, float margin) {
+        boolean bytesOk = targetBytesPerSecond <= 0 || bytesPerSecond * factor < targetBytesPerSecond * margin;
+        boolean loadOk = maxEncodeLoad <= 0 || encodeLoad * factor < maxEncodeLoad * margin;
+        return bytesOk && loadOk;
+    }
+
+    private static double areaRatio(int toLevel, int fromLevel) {
+        double ratio = LEVEL_SCALES[toLevel] / LEVEL_SCALES[fromLevel];
+        return ratio * ratio;
+    }
+
+    private void resetWindow(long nowNanos) {
+        windowStartNanos = nowNanos;
+        windowBytes = 0;
+        windowEncodeNanos = 0;
+        windowFrames = 0;
+    }
+
+    public synchronized int getQuality() {
+        return quality;
+    }
+
+    public synchronized int getLevel() {
+        return level;
+    }
+
+    public synchronized float getScale() {
+        return LEVEL_SCALES[level];
+    }
+
+    /** Byte al secondo consegnati nell'ultima finestra completa. */
+    public synchronized double getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    /** Frazione di tempo spesa a codificare nell'ultima finestra completa. */
+    public synchronized double getEncodeLoad() {
+        return encodeLoad;
+    }
+
+    /** Cambi di qualita' o livello dall'avvio. */
+    public synchronized long getAdjustments() {
+        return adjustments;
+    }
+}
@@ -0,0 +1,71 @@
+package com.cordova.plugin;
+
+/**
+ * Coda circolare limitata con politica "latest wins": quando e' piena,
+ * l'inserimento scarta l'elemento piu' vecchio e lo restituisce al chiamante
+ * (che lo ricicla). Il consumer si blocca in {@link #take()} finche' non arriva un elemento.
+ */
+public class LatestFrameRing<T> {
+    private final Object[] items;
+    private int head = 0;
+    private int size = 0;
+    private long evicted = 0;
+
+    public LatestFrameRing(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid ring capacity: " + capacity);
+        }
+        items = new Object[capacity];
+    }
+
+    /** Accoda {@code item}; ritorna l'elemento scartato se la coda era piena, altrimenti null. */
+    @SuppressWarnings("unchecked")
+    public synchronized T offer(T item) {
+        T dropped = null;
+        if (size == items.length) {
+            dropped = (T) items[head];
+            items[head] = null;
+            head = (head + 1) % items.length;
+            size--;
+            evicted++;
+        }
+        items[(head + size) % items.length] = item;
+        size++;
+        notifyAll();
+        return dropped;
+    }
+
+    /** Estrae l'elemento piu' vecchio, attendendo se la coda e' vuota. */
+    public synchronized T take() throws InterruptedException {
+        while (size == 0) {
+            wait();
+        }
+        return poll();
+    }
+
+    /** Estrae l'elemento piu' vecchio o ritorna null se la coda e' vuota. */
+    @SuppressWarnings("unchecked")
+    public synchronized T poll() {
+        if (size == 0) {
+            return null;
+        }
+        T item = (T) items[head];
+        items[head] = null;
+        head = (head + 1) % items.length;
+        size--;
+        return item;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return items.length;
+    }
+
+    /** Numero di elementi scartati perche' la coda era piena. */
+    public synchronized long getEvicted() {
+        return evicted;
+    }
+}
@@ -0,0 +1,499 @@
+package com.cordova.plugin;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Server HTTP minimale (NIO, singolo thread) su 127.0.0.1 che serve l'anteprima
+ * come MJPEG multipart/x-mixed-replace, visualizzabile con un semplice &lt;img src&gt;.
+ *
+ * I frame vengono pubblicati con {@link #publishFrame(byte[], int, int)} da qualsiasi thread.
+ * Le scritture sui socket sono non bloccanti: un client lento resta sul frame che sta
+ * inviando e riceve direttamente il piu' recente quando ha finito (i frame intermedi
+ * vengono scartati). L'accesso richiede il token generato all'avvio.
+ */
+public class MjpegStreamServer {
+    private static final String BOUNDARY = "usbcamframe";
+    private static final int MAX_REQUEST_BYTES = 4096;
+    private static final int DEFAULT_MAX_CLIENTS = 8;
+
+    private static final byte[] STREAM_HEADERS = ("HTTP/1.1 200 OK\r\n"
+            + "Content-Type: multipart/x-mixed-replace; boundary=" + BOUNDARY + "\r\n"
+            + "Cache-Control: no-cache, no-store, must-revalidate\r\n"
+            + "Pragma: no-cache\r\n"
+            + "Connection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FORBIDDEN = ("HTTP/1.1 403 Forbidden\r\n"
+            + "Content-Length: 0\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+    // Il CRLF prima del delimitatore fa parte del delimitatore (RFC 2046): chiude il corpo
+    // del frame precedente, o il preambolo vuoto prima del primo
+    private static final byte[] PART_PREFIX = ("\r\n--" + BOUNDARY + "\r\n"
+            + "Content-Type: image/jpeg\r\n"
+            + "Content-Length: ").getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NOT_FOUND = ("HTTP/1.1 404 Not Found\r\n"
+            + "Content-Length: 0\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+
+    private final int maxClients;
+    private final String token;
+    private final byte[] tokenBytes;
+    private final List<Client> clients = new ArrayList<>();
+
+    // Frame riciclati: il thread del selector gestisce i reference count
+    private final ArrayDeque<Frame> freeFrames = new ArrayDeque<>();
+    private Frame pendingFrame;
+    private Frame currentFrame;
+    private long frameSequence = 0;
+
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private Thread selectorThread;
+    private volatile boolean running = false;
+    private volatile int clientCount = 0;
+    private volatile long framesPublished = 0;
+    private volatile long framesSent = 0;
+    private volatile long framesDropped = 0;
+
+    public MjpegStreamServer() {
+        this(DEFAULT_MAX_CLIENTS);
+    }
+
+    public MjpegStreamServer(int maxClients) {
+        this.maxClients = maxClients;
+        this.token = generateToken();
+        this.tokenBytes = token.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /** Avvia il server su una porta casuale di loopback. */
+    public synchronized void start() throws IOException {
+        if (running) {
+            return;
+        }
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.configureBlocking(false);
+        serverChannel.socket().bind(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0));
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        running = true;
+        selectorThread = new Thread(this::runLoop, "MjpegStreamServer");
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+    }
+
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        selector.wakeup();
+        try {
+            selectorThread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        selectorThread = null;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public int getPort() {
+        return serverChannel != null ? serverChannel.socket().getLocalPort() : -1;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    /** URL da usare come src di un elemento &lt;img&gt;. */
+    public String getStreamUrl() {
+        return "http://127.0.0.1:" + getPort() + "/stream?token=" + token;
+    }
+
+    public boolean hasClients() {
+        return clientCount > 0;
+    }
+
+    public int getClientCount() {
+        return clientCount;
+    }
+
+    public long getFramesPublished() {
+        return framesPublished;
+    }
+
+    public long getFramesSent() {
+        return framesSent;
+    }
+
+    public long getFramesDropped() {
+        return framesDropped;
+    }
+
+    /**
+     * Pubblica un JPEG: i byte vengono copiati in un buffer riciclato, quindi
+     * il chiamante puo' riusare {@code data} appena il metodo ritorna.
+     */
+    public void publishFrame(byte[] data, int offset, int length) {
+        if (!running) {
+            return;
+        }
+        Frame frame;
+        synchronized (freeFrames) {
+            frame = freeFrames.pollFirst();
+        }
+        if (frame == null) {
+            frame = new Frame();
+        }
+        frame.set(data, offset, length);
+
+        Frame replaced;
+        synchronized (this) {
+            replaced = pendingFrame;
+            pendingFrame = frame;
+        }
+        if (replaced != null) {
+            // Il selector non ha fatto in tempo a prenderlo: mai inviato
+            recycle(replaced);
+            framesDropped++;
+        }
+        framesPublished++;
+        Selector s = selector;
+        if (s != null) {
+            s.wakeup();
+        }
+    }
+
+    private void recycle(Frame frame) {
+        synchronized (freeFrames) {
+            freeFrames.addFirst(frame);
+        }
+    }
+
+    private void release(Frame frame) {
+        if (--frame.refs == 0) {
+            recycle(frame);
+        }
+    }
+
+    private void runLoop() {
+        try {
+            while (running) {
+                selector.select();
+                if (!running) {
+                    break;
+                }
+                takePendingFrame();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    try {
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else {
+                            Client client = (Client) key.attachment();
+                            if (key.isReadable()) {
+                                client.read();
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                client.write();
+                            }
+                        }
+                    } catch (IOException e) {
+                        Object attachment = key.attachment();
+                        if (attachment instanceof Client) {
+                            ((Client) attachment).close();
+                        }
+                    }
+                }
+
+                // I client inattivi ricevono subito l'ultimo frame
+                for (int i = clients.size() - 1; i >= 0; i--) {
+                    Client client = clients.get(i);
+                    try {
+                        client.startNextFrameIfIdle();
+                    } catch (IOException e) {
+                        client.close();
+                    }
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            // Chiusura del server
+        } finally {
+            shutdown();
+        }
+    }
+
+    private void takePendingFrame() {
+        Frame frame;
+        synchronized (this) {
+            frame = pendingFrame;
+            pendingFrame = null;
+        }
+        if (frame != null) {
+            frame.refs = 1;
+            frame.sequence = ++frameSequence;
+            if (currentFrame != null) {
+                release(currentFrame);
+            }
+            currentFrame = frame;
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        if (clients.size() >= maxClients) {
+            channel.close();
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        Client client = new Client(channel);
+        client.key = channel.register(selector, SelectionKey.OP_READ, client);
+        clients.add(client);
+        clientCount = clients.size();
+    }
+
+    private void shutdown() {
+        for (int i = clients.size() - 1; i >= 0; i--) {
+            clients.get(i).close();
+        }
+        try {
+            if (serverChannel != null) {
+                serverChannel.close();
+            }
+            if (selector != null) {
+                selector.close();
+            }
+        } catch (IOException e) {
+            // Ignore
+        }
+        synchronized (this) {
+            pendingFrame = null;
+        }
+        currentFrame = null;
+        running = false;
+    }
+
+    // Confronto a tempo costante: il tempo di risposta non rivela i caratteri corretti
+    private boolean isValidToken(String candidate) {
+        return candidate != null
+                && MessageDigest.isEqual(tokenBytes, candidate.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static String generateToken() {
+        byte[] bytes = new byte[16];
+        new SecureRandom().nextBytes(bytes);
+        StringBuilder sb = new StringBuilder(32);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    private static final class Frame {
+        byte[] data = new byte[0];
+        int length;
+        int refs;
+        long sequence;
+
+        void set(byte[] src, int offset, int len) {
+            if (data.length < len) {
+                // Margine per evitare riallocazioni al variare della dimensione JPEG
+                data = new byte[len + len / 4];
+            }
+            System.arraycopy(src, offset, data, 0, len);
+            length = len;
+            refs = 0;
+        }
+    }
+
+    private final class Client {
+        final SocketChannel channel;
+        SelectionKey key;
+        final ByteBuffer request = ByteBuffer.allocate(MAX_REQUEST_BYTES);
+        final ByteBuffer partHeader = ByteBuffer.allocate(128);
+        final ByteBuffer[] parts = new ByteBuffer[2];
+        ByteBuffer response;
+        boolean streaming = false;
+        boolean closeAfterResponse = false;
+        Frame sending;
+        long lastSentSequence = 0;
+
+        Client(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void read() throws IOException {
+            int n = channel.read(request);
+            if (n < 0) {
+                close();
+                return;
+            }
+            if (streaming || response != null) {
+                // Dopo la richiesta il client non invia altro: scarta
+                request.clear();
+                return;
+            }
+            String head = requestHead();
+            if (head == null) {
+                if (!request.hasRemaining()) {
+                    respond(NOT_FOUND);
+                }
+                return;
+            }
+            String line = head.substring(0, head.indexOf("\r\n"));
+            String[] tokens = line.split(" ");
+            if (tokens.length < 2 || !"GET".equals(tokens[0]) || !tokens[1].startsWith("/stream")) {
+                respond(NOT_FOUND);
+            } else if (!isValidToken(queryParam(tokens[1], "token"))) {
+                respond(FORBIDDEN);
+            } else {
+                response = ByteBuffer.wrap(STREAM_HEADERS);
+                streaming = true;
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            }
+        }
+
+        private String requestHead() {
+            byte[] bytes = request.array();
+            int end = request.position();
+            for (int i = 3; i < end; i++) {
+                if (bytes[i - 3] == '\r' && bytes[i - 2] == '\n' && bytes[i - 1] == '\r' && bytes[i] == '\n') {
+                    return new String(bytes, 0, i + 1, StandardCharsets.US_ASCII);
+                }
+            }
+            return null;
+        }
+
+        private void respond(byte[] bytes) {
+            response = ByteBuffer.wrap(bytes);
+            closeAfterResponse = true;
+            key.interestOps(SelectionKey.OP_WRITE);
+        }
+
+        void write() throws IOException {
+            if (response != null) {
+                channel.write(response);
+                if (response.hasRemaining()) {
+                    return;
+                }
+                response = null;
+                if (closeAfterResponse) {
+                    close();
+                    return;
+                }
+            }
+            if (sending != null) {
+                channel.write(parts);
+                if (parts[1].hasRemaining()) {
+                    return;
+                }
+                finishFrame();
+            }
+            if (!startNextFrameIfIdle()) {
+                key.interestOps(SelectionKey.OP_READ);
+            }
+        }
+
+        /**
+         * Inizia l'invio del frame corrente se il client non sta gia' inviando.
+         * Ritorna true se resta un frame in invio (in attesa di OP_WRITE).
+         */
+        boolean startNextFrameIfIdle() throws IOException {
+            if (!streaming || response != null || sending != null || !channel.isOpen()) {
+                return sending != null;
+            }
+            Frame frame = currentFrame;
+            if (frame == null || frame.sequence == lastSentSequence) {
+                return false;
+            }
+            frame.refs++;
+            sending = frame;
+            partHeader.clear();
+            partHeader.put(PART_PREFIX);
+            putDecimal(partHeader, frame.length);
+            partHeader.put((byte) '\r').put((byte) '\n').put((byte) '\r').put((byte) '\n');
+            partHeader.flip();
+            parts[0] = partHeader;
+            parts[1] = ByteBuffer.wrap(frame.data, 0, frame.length);
+            // Prova a scrivere subito; il resto viene completato su OP_WRITE
+            channel.write(parts);
+            if (parts[1].hasRemaining()) {
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                return true;
+            }
+            finishFrame();
+            return false;
+        }
+
+        private void finishFrame() {
+            framesSent++;
+            lastSentSequence = sending.sequence;
+            release(sending);
+            sending = null;
+        }
+
+        void close() {
+            if (sending != null) {
+                release(sending);
+                sending = null;
+            }
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+            clients.remove(this);
+            clientCount = clients.size();
+        }
+    }
+
+    private static void putDecimal(ByteBuffer buffer, int value) {
+        int divisor = 1;
+        while (value / divisor >= 10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            buffer.put((byte) ('0' + (value / divisor) % 10));
+        }
+    }
+
+    private static String queryParam(String path, String name) {
+        int q = path.indexOf('?');
+        if (q < 0) {
+            return null;
+        }
+        for (String pair : path.substring(q + 1).split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0 && pair.substring(0, eq).equals(name)) {
+                return pair.substring(eq + 1);
+            }
+        }
+        return null;
+    }
+}
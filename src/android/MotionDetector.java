@@ -0,0 +1,192 @@
+package com.cordova.plugin;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Rilevatore di cambiamenti sul piano Y, eseguito prima di qualsiasi copia o codifica.
+ *
+ * Il frame viene ridotto a una griglia GRID_WIDTH x GRID_HEIGHT di medie di luminanza
+ * (campionate) e confrontato con un modello di sfondo a media mobile. Una cella e' cambiata
+ * se si discosta dallo sfondo piu' di pixelThreshold livelli; c'e' movimento se la frazione
+ * di celle cambiate raggiunge areaThreshold. Il frame passa se c'e' movimento o se e' scaduto
+ * il keep-alive. Nessuna allocazione dopo il costruttore; la logica e' pura (verificabile
+ * sulla JVM con scene sintetiche). {@link #process} va chiamato da un solo thread, i
+ * contatori si possono leggere da qualsiasi thread.
+ */
+public class MotionDetector {
+    public static final int GRID_WIDTH = 32;
+    public static final int GRID_HEIGHT = 24;
+    private static final int CELLS = GRID_WIDTH * GRID_HEIGHT;
+    // Punti campionati per lato di ogni cella
+    private static final int CELL_SAMPLES = 4;
+    // Medie in virgola fissa a 8 bit; lo sfondo recupera 1/16 della differenza per frame
+    private static final int FIXED_SHIFT = 8;
+    private static final int LEARN_DIVISOR = 16;
+
+    private final int[] background = new int[CELLS];
+    private boolean hasBackground = false;
+    private int frameWidth = -1;
+    private int frameHeight = -1;
+
+    private int pixelThreshold;
+    private float areaThreshold;
+    private long keepAliveNanos;
+    private long lastPassedNanos = 0;
+
+    // Esito dell'ultimo frame
+    private boolean motion = false;
+    private int changedCells = 0;
+    private int boxX;
+    private int boxY;
+    private int boxWidth;
+    private int boxHeight;
+
+    private long motionFrames = 0;
+    private long keepAliveFrames = 0;
+    private long suppressedFrames = 0;
+
+    /**
+     * @param pixelThreshold differenza di luminanza media (0-255) oltre la quale una cella e' cambiata
+     * @param areaThreshold frazione di celle cambiate (0-1) che conta come movimento
+     * @param keepAliveMs intervallo massimo tra due frame lasciati passare (0 = nessun keep-alive)
+     */
+    public MotionDetector(int pixelThreshold, float areaThreshold, long keepAliveMs) {
+        configure(pixelThreshold, areaThreshold, keepAliveMs);
+    }
+
+    public synchronized void configure(int pixelThreshold, float areaThreshold, long keepAliveMs) {
+        this.pixelThreshold = Math.max(0, Math.min(pixelThreshold, 255));
+        this.areaThreshold = Math.max(0f, Math.min(areaThreshold, 1f));
+        this.keepAliveNanos = Math.max(keepAliveMs, 0) * 1_000_000L;
+    }
+
+    /**
+     * Analizza il piano Y e aggiorna lo sfondo.
+     * Il primo frame (o il primo dopo un cambio di risoluzione) inizializza lo sfondo e passa.
+     * @return true se il frame va lasciato passare (movimento o keep-alive)
+     */
+    public synchronized boolean process(ByteBuffer yPlane, int rowStride, int pixelStride,
+                                        int width, int height, long nowNanos) {
+        if (width != frameWidth || height != frameHeight) {
+            frameWidth = width;
+            frameHeight = height;
+            hasBackground = false;
+        }
+        int threshold = pixelThreshold << FIXED_SHIFT;
+        int minX = GRID_WIDTH;
+        int minY = GRID_HEIGHT;
+        int maxX = -1;
+        int maxY = -1;
+        int changed = 0;
+        for (int gy = 0; gy < GRID_HEIGHT; gy++) {
+            int y0 = gy * height / GRID_HEIGHT;
+            int cellHeight = (gy + 1) * height / GRID_HEIGHT - y0;
+            for (int gx = 0; gx < GRID_WIDTH; gx++) {
+                int x0 = gx * width / GRID_WIDTH;
+                int cellWidth = (gx + 1) * width / GRID_WIDTH - x0;
+                int sum = 0;
+                // Punti al centro delle sotto-celle
+                for (int sy = 0; sy < CELL_SAMPLES; sy++) {
+                    int row = (y0 + (2 * sy + 1) * cellHeight / (2 * CELL_SAMPLES)) * rowStride;
+                    for (int sx = 0; sx < CELL_SAMPLES; sx++) {
+                        int x = x0 + (2 * sx + 1) * cellWidth / (2 * CELL_SAMPLES);
+                        sum += yPlane.get(row + x * pixelStride) & 0xFF;
+                    }
+                }
+                int mean = (sum << FIXED_SHIFT) / (CELL_SAMPLES * CELL_SAMPLES);
+                int cell = gy * GRID_WIDTH + gx;
+                if (!hasBackground) {
+                    background[cell] = mean;
+                    continue;
+                }
+                int diff = mean - background[cell];
+                if (Math.abs(diff) > threshold) {
+                    changed++;
+                    minX = Math.min(minX, gx);
+                    maxX = Math.max(maxX, gx);
+                    minY = Math.min(minY, gy);
+                    maxY = Math.max(maxY, gy);
+                }
+                // Lo sfondo assorbe lentamente anche i cambiamenti persistenti (luce, oggetti spostati)
+                background[cell] += diff / LEARN_DIVISOR;
+            }
+        }
+
+        boolean first = !hasBackground;
+        hasBackground = true;
+        changedCells = changed;
+        motion = changed > 0 && changed >= areaThreshold * CELLS;
+        if (motion) {
+            boxX = minX * width / GRID_WIDTH;
+            boxY = minY * height / GRID_HEIGHT;
+            boxWidth = (maxX + 1) * width / GRID_WIDTH - boxX;
+            boxHeight = (maxY + 1) * height / GRID_HEIGHT - boxY;
+            motionFrames++;
+        } else {
+            boxX = boxY = boxWidth = boxHeight = 0;
+        }
+
+        boolean keepAlive = !motion && (first
+                || (keepAliveNanos > 0 && nowNanos - lastPassedNanos >= keepAliveNanos));
+        if (motion || keepAlive) {
+            if (keepAlive) {
+                keepAliveFrames++;
+            }
+            lastPassedNanos = nowNanos;
+            return true;
+        }
+        suppressedFrames++;
+        return false;
+    }
+
+    /** Dimentica lo sfondo: il prossimo frame lo reinizializza. */
+    public synchronized void reset() {
+        hasBackground = false;
+        motion = false;
+        changedCells = 0;
+    }
+
+    public synchronized boolean isMotion() {
+        return motion;
+    }
+
+    /** Frazione di celle cambiate nell'ultimo frame. */
+    public synchronized float getChangedFraction() {
+        return (float) changedCells / CELLS;
+    }
+
+    /** Riquadro delle celle cambiate in pixel del frame (0 senza movimento). */
+    public synchronized int getBoxX() {
+        return boxX;
+    }
+
+    public synchronized int getBoxY() {
+        return boxY;
+    }
+
+    public synchronized int getBoxWidth() {
+        return boxWidth;
+    }
+
+    public synchronized int getBoxHeight() {
+        return boxHeight;
+    }
+
+    public synchronized long getMotionFrames() {
+        return motionFrames;
+    }
+
+    public synchronized long getKeepAliveFrames() {
+        return keepAliveFrames;
+    }
+
+    public synchronized long getSuppressedFrames() {
+        return suppressedFrames;
+    }
+
+    public synchronized void resetCounters() {
+        motionFrames = 0;
+        keepAliveFrames = 0;
+        suppressedFrames = 0;
+    }
+}
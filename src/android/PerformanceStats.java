@@ -0,0 +1,51 @@
+package com.cordova.plugin;
+
+/**
+ * Statistiche di runtime del plugin: istogrammi di latenza per i punti caldi
+ * del percorso frame e dello scatto. Ogni metrica viene registrata dal thread
+ * che la misura, senza allocazioni.
+ */
+public class PerformanceStats {
+    /** Dal timestamp del sensore (Image.getTimestamp()) all'arrivo nel listener. */
+    public final LatencyHistogram arrival = new LatencyHistogram();
+    /** Codifica NV21 -> JPEG. */
+    public final LatencyHistogram encode = new LatencyHistogram();
+    /** Invio al consumer: Base64/copia + bridge, oppure pubblicazione MJPEG. */
+    public final LatencyHistogram send = new LatencyHistogram();
+    /** Da takePhoto al file scritto. */
+    public final LatencyHistogram still = new LatencyHistogram();
+    /** Pre-scatto AF/AE prima dello scatto. */
+    public final LatencyHistogram focusLock = new LatencyHistogram();
+    /** Da takePhoto all'inizio dell'esposizione dello scatto (onCaptureStarted). */
+    public final LatencyHistogram shutter = new LatencyHistogram();
+    /** Da resumePreview al primo frame ricevuto. */
+    public final LatencyHistogram resume = new LatencyHistogram();
+
+    // Scritto solo dal thread camera
+    private volatile long framesArrived;
+    private volatile long startNanos = System.nanoTime();
+
+    public void onFrameArrived() {
+        framesArrived++;
+    }
+
+    public long getFramesArrived() {
+        return framesArrived;
+    }
+
+    public long getElapsedNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    public void reset() {
+        arrival.reset();
+        encode.reset();
+        send.reset();
+        still.reset();
+        focusLock.reset();
+        shutter.reset();
+        resume.reset();
+        framesArrived = 0;
+        startNanos = System.nanoTime();
+    }
+}
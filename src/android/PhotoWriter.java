@@ -0,0 +1,225 @@
+package com.cordova.plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Salvataggio write-behind delle foto su un executor di I/O dedicato con coda limitata.
+ *
+ * I byte vengono scritti direttamente dal ByteBuffer sorgente (es. piano dell'Image JPEG)
+ * su un FileChannel; il buffer viene rilasciato solo a scrittura completata.
+ * I nomi file hanno risoluzione al millisecondo e vengono creati con createNewFile(),
+ * quindi scatti ravvicinati non si sovrascrivono mai.
+ * Con fsync attivo viene sincronizzata anche la directory, cosi' la voce del file
+ * appena creato sopravvive a un crash o a un distacco di corrente.
+ */
+public class PhotoWriter {
+
+    public interface Callback {
+        /** File scritto (e sincronizzato su disco se fsync e' attivo). */
+        void onSaved(File file, long latencyNanos);
+
+        void onError(Exception e);
+    }
+
+    /** fsync di una directory: su Android richiede android.system.Os, fuori dalla JVM standard. */
+    public interface DirectorySync {
+        void sync(File directory) throws IOException;
+    }
+
+    // Margine concesso alla scrittura in corso dopo l'interruzione
+    private static final long INTERRUPT_WAIT_MS = 1000;
+
+    private final File directory;
+    private final String prefix;
+    private final String extension;
+    private final ArrayBlockingQueue<Runnable> queue;
+    private final ThreadPoolExecutor executor;
+    // Usato solo dal thread di I/O
+    private final SimpleDateFormat timeFormat = new SimpleDateFormat("yyyyMMdd_HHmmss_SSS", Locale.US);
+    private volatile boolean fsync = true;
+    private volatile DirectorySync directorySync;
+
+    private long written = 0;
+    private long failed = 0;
+    private long totalLatencyNanos = 0;
+    private long maxLatencyNanos = 0;
+
+    public PhotoWriter(File directory, String prefix, String extension, int queueCapacity) {
+        this.directory = directory;
+        this.prefix = prefix;
+        this.extension = extension;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, queue,
+                r -> new Thread(r, "PhotoWriter"));
+    }
+
+    /** Politica di durabilita': true = fsync prima di notificare il salvataggio. */
+    public void setFsync(boolean fsync) {
+        this.fsync = fsync;
+    }
+
+    public boolean isFsync() {
+        return fsync;
+    }
+
+    /** Sincronizzazione della directory dopo ogni file creato, se fsync e' attivo. */
+    public void setDirectorySync(DirectorySync directorySync) {
+        this.directorySync = directorySync;
+    }
+
+    /**
+     * Accoda la scrittura di {@code data}. {@code release} viene sempre eseguito
+     * (anche in caso di errore) quando il buffer non serve piu'.
+     * @return false se la coda e' piena: il chiamante deve gestire il rifiuto
+     */
+    public boolean submit(ByteBuffer data, Runnable release, Callback callback) {
+        try {
+            executor.execute(new WriteTask(data, release, callback));
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    private final class WriteTask implements Runnable {
+        private final long submitted = System.nanoTime();
+        private final ByteBuffer data;
+        private final Runnable release;
+        private final Callback callback;
+
+        WriteTask(ByteBuffer data, Runnable release, Callback callback) {
+            this.data = data;
+            this.release = release;
+            this.callback = callback;
+        }
+
+        @Override
+        public void run() {
+            File file = null;
+            try {
+                file = createUniqueFile();
+                writeFully(file, data);
+                long latency = System.nanoTime() - submitted;
+                recordWrite(latency);
+                callback.onSaved(file, latency);
+            } catch (IOException | RuntimeException e) {
+                if (file != null) {
+                    file.delete();
+                }
+                fail(e);
+                return;
+            }
+            release.run();
+        }
+
+        // Scrittura mai eseguita o interrotta: il buffer torna al proprietario
+        void fail(Exception e) {
+            recordFailure();
+            try {
+                callback.onError(e);
+            } finally {
+                release.run();
+            }
+        }
+    }
+
+    private File createUniqueFile() throws IOException {
+        if (!directory.exists() && !directory.mkdirs() && !directory.exists()) {
+            throw new IOException("Cannot create directory " + directory);
+        }
+        String base = prefix + timeFormat.format(new Date());
+        File file = new File(directory, base + extension);
+        for (int i = 1; !file.createNewFile(); i++) {
+            file = new File(directory, base + "_" + i + extension);
+        }
+        return file;
+    }
+
+    private void writeFully(File file, ByteBuffer data) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+             FileChannel channel = raf.getChannel()) {
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+            if (fsync) {
+                channel.force(true);
+            }
+        }
+        DirectorySync sync = directorySync;
+        if (fsync && sync != null) {
+            sync.sync(directory);
+        }
+    }
+
+    private synchronized void recordWrite(long latencyNanos) {
+        written++;
+        totalLatencyNanos += latencyNanos;
+        if (latencyNanos > maxLatencyNanos) {
+            maxLatencyNanos = latencyNanos;
+        }
+    }
+
+    private synchronized void recordFailure() {
+        failed++;
+    }
+
+    public int getQueueDepth() {
+        return queue.size() + executor.getActiveCount();
+    }
+
+    public synchronized long getWritten() {
+        return written;
+    }
+
+    public synchronized long getFailed() {
+        return failed;
+    }
+
+    public synchronized double getAverageLatencyMillis() {
+        return written > 0 ? totalLatencyNanos / (double) written / 1_000_000.0 : 0;
+    }
+
+    public synchronized double getMaxLatencyMillis() {
+        return maxLatencyNanos / 1_000_000.0;
+    }
+
+    /**
+     * Completa le scritture in coda entro {@code timeoutMs} e ferma il thread di I/O.
+     * Allo scadere le scritture non ancora iniziate falliscono con onError, quella in corso
+     * viene interrotta; in entrambi i casi {@code release} viene eseguito.
+     * @return true se nessuna scrittura e' piu' in corso: i buffer sorgente sono liberi
+     */
+    public boolean shutdown(long timeoutMs) {
+        executor.shutdown();
+        try {
+            if (executor.awaitTermination(timeoutMs, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+            failPending();
+            return executor.awaitTermination(INTERRUPT_WAIT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failPending();
+            return executor.isTerminated();
+        }
+    }
+
+    private void failPending() {
+        List<Runnable> pending = executor.shutdownNow();
+        for (Runnable task : pending) {
+            ((WriteTask) task).fail(new IOException("Photo writer closed"));
+        }
+    }
+}
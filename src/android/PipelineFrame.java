@@ -0,0 +1,35 @@
+package com.cordova.plugin;
+
+/**
+ * Frame che attraversa la pipeline capture -> encode -> deliver.
+ * Gli oggetti e i relativi buffer sono riciclati da {@link FramePipeline}.
+ */
+public class PipelineFrame {
+    /** Pixel NV21 copiati dal thread camera (byte validi: YuvConverter.nv21Size(width, height)). */
+    public byte[] yuv;
+    public int width;
+    public int height;
+    /** Timestamp del sensore (Image.getTimestamp()). */
+    public long timestampNanos;
+    /** System.nanoTime() all'arrivo nel listener. */
+    public long arrivalNanos;
+    /** true se il frame va consegnato al consumer (false: serve solo alla registrazione). */
+    public boolean deliver;
+    /** true se {@link #jpeg} e' gia' compresso dalla camera (passthrough MJPEG): niente encoding. */
+    public boolean jpegReady;
+    /** Se > 0 {@link #yuv} contiene il payload luma (header + piano Y) di questa lunghezza: niente encoding. */
+    public int lumaLength;
+    /** JPEG prodotto dallo stadio di encoding (byte validi: [0, jpeg.size())). */
+    public final ReusableByteArrayOutputStream jpeg = new ReusableByteArrayOutputStream(64 * 1024);
+
+    void reset() {
+        width = 0;
+        height = 0;
+        timestampNanos = 0;
+        arrivalNanos = 0;
+        deliver = false;
+        jpegReady = false;
+        lumaLength = 0;
+        jpeg.reset();
+    }
+}
@@ -0,0 +1,68 @@
+package com.cordova.plugin;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Budget globale di pixel al secondo condiviso dalle sessioni camera.
+ *
+ * Ogni sessione prenota w*h*fps del proprio stream di cattura prima di aprire il device;
+ * se la somma supera il limite la prenotazione viene rifiutata. Limite 0 = illimitato, ma le
+ * prenotazioni vengono comunque contate: un limite impostato dopo vede tutte le sessioni aperte.
+ */
+public class PixelBudget {
+    private final Map<String, Long> reservations = new HashMap<>();
+    private long limit;
+    private long used;
+
+    public PixelBudget(long limit) {
+        this.limit = Math.max(limit, 0);
+    }
+
+    /** Prenota (o sostituisce) la quota di {@code id}; ritorna false se supererebbe il limite. */
+    public synchronized boolean reserve(String id, long pixelsPerSecond) {
+        Long previous = reservations.get(id);
+        long others = used - (previous != null ? previous : 0);
+        if (limit > 0 && others + pixelsPerSecond > limit) {
+            return false;
+        }
+        reservations.put(id, pixelsPerSecond);
+        used = others + pixelsPerSecond;
+        return true;
+    }
+
+    /**
+     * Aggiorna la quota di una sessione gia' ammessa (es. dalla richiesta alla configurazione
+     * negoziata) senza verificare il limite: come per setLimit, la sessione resta attiva.
+     * @return false se {@code id} non ha una prenotazione
+     */
+    public synchronized boolean update(String id, long pixelsPerSecond) {
+        Long previous = reservations.get(id);
+        if (previous == null) {
+            return false;
+        }
+        reservations.put(id, pixelsPerSecond);
+        used += pixelsPerSecond - previous;
+        return true;
+    }
+
+    public synchronized void release(String id) {
+        Long previous = reservations.remove(id);
+        if (previous != null) {
+            used -= previous;
+        }
+    }
+
+    public synchronized long getUsed() {
+        return used;
+    }
+
+    public synchronized long getLimit() {
+        return limit;
+    }
+
+    /** Il nuovo limite vale per le prossime prenotazioni; le sessioni gia' aperte restano attive. */
+    public synchronized void setLimit(long limit) {
+        this.limit = Math.max(limit, 0);
+    }
+}
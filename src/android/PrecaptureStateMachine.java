@@ -0,0 +1,169 @@
+package com.cordova.plugin;
+
+/**
+ * Sequenza di pre-scatto AF trigger -> AE precapture -> convergenza -> scatto,
+ * guidata dagli stati AF/AE dei risultati di cattura.
+ *
+ * La logica e' pura (nessuna dipendenza Android): gli stati hanno gli stessi valori di
+ * CaptureResult.CONTROL_AF_STATE_* / CONTROL_AE_STATE_*. Ogni evento ritorna l'azione
+ * da eseguire; il timeout e' gestito dal chiamante con {@link #onTimeout()}.
+ * Non e' thread-safe: va usata dal thread camera.
+ */
+public class PrecaptureStateMachine {
+
+    /** Stessi valori di CaptureResult.CONTROL_AF_STATE_*. */
+    public static final int AF_STATE_INACTIVE = 0;
+    public static final int AF_STATE_FOCUSED_LOCKED = 4;
+    public static final int AF_STATE_NOT_FOCUSED_LOCKED = 5;
+
+    /** Stessi valori di CaptureResult.CONTROL_AE_STATE_*. */
+    public static final int AE_STATE_SEARCHING = 1;
+    public static final int AE_STATE_PRECAPTURE = 5;
+
+    // Risultati dopo il trigger senza reazione prima di considerare lo stadio non supportato
+    private static final int MAX_IDLE_RESULTS = 3;
+
+    public enum Action {
+        NONE,
+        TRIGGER_AF,
+        TRIGGER_AE_PRECAPTURE,
+        CAPTURE
+    }
+
+    public enum State {
+        IDLE,
+        WAITING_AF_LOCK,
+        WAITING_AE_PRECAPTURE,
+        WAITING_AE_CONVERGED,
+        DONE
+    }
+
+    private final boolean useAf;
+    private final boolean useAe;
+    private State state = State.IDLE;
+    // Primo frame del trigger corrente: i risultati precedenti non ne riflettono l'effetto
+    private long triggerFrame = -1;
+    private int idleResults = 0;
+    private boolean afTriggered = false;
+    private boolean timedOut = false;
+
+    /**
+     * @param useAf false per camere a fuoco fisso o fuoco manuale
+     * @param useAe false senza esposizione automatica
+     */
+    public PrecaptureStateMachine(boolean useAf, boolean useAe) {
+        this.useAf = useAf;
+        this.useAe = useAe;
+    }
+
+    public Action start() {
+        if (useAf) {
+            return enter(State.WAITING_AF_LOCK, Action.TRIGGER_AF);
+        }
+        if (useAe) {
+            return enter(State.WAITING_AE_PRECAPTURE, Action.TRIGGER_AE_PRECAPTURE);
+        }
+        return finish();
+    }
+
+    /** Risultato della richiesta di trigger appena inviata: da qui in poi i risultati contano. */
+    public Action onTriggerResult(long frameNumber, Integer afState, Integer aeState) {
+        if (state == State.DONE) {
+            return Action.NONE;
+        }
+        triggerFrame = frameNumber;
+        return onResult(frameNumber, afState, aeState);
+    }
+
+    /** Risultato della richiesta ripetuta di anteprima. */
+    public Action onResult(long frameNumber, Integer afState, Integer aeState) {
+        if (state == State.DONE || state == State.IDLE || triggerFrame < 0 || frameNumber < triggerFrame) {
+            return Action.NONE;
+        }
+        switch (state) {
+            case WAITING_AF_LOCK:
+                // Senza stato AF o con fuoco bloccato (anche non a fuoco) si passa all'esposizione
+                if (afState == null || afState == AF_STATE_FOCUSED_LOCKED || afState == AF_STATE_NOT_FOCUSED_LOCKED
+                        || (afState == AF_STATE_INACTIVE && ++idleResults >= MAX_IDLE_RESULTS)) {
+                    return afterAf();
+                }
+                return Action.NONE;
+            case WAITING_AE_PRECAPTURE:
+                if (aeState == null) {
+                    return finish();
+                }
+                if (aeState == AE_STATE_PRECAPTURE) {
+                    state = State.WAITING_AE_CONVERGED;
+                    return Action.NONE;
+                }
+                // Alcune camere convergono senza mai riportare PRECAPTURE
+                if (aeState != AE_STATE_SEARCHING && ++idleResults >= MAX_IDLE_RESULTS) {
+                    return finish();
+                }
+                return Action.NONE;
+            case WAITING_AE_CONVERGED:
+                if (aeState == null || (aeState != AE_STATE_PRECAPTURE && aeState != AE_STATE_SEARCHING)) {
+                    return finish();
+                }
+                return Action.NONE;
+            default:
+                return Action.NONE;
+        }
+    }
+
+    /** Trigger fallito: si prosegue con lo stadio successivo. */
+    public Action onTriggerFailed() {
+        if (state == State.WAITING_AF_LOCK) {
+            return afterAf();
+        }
+        return state == State.DONE ? Action.NONE : finish();
+    }
+
+    /** Timeout complessivo: si scatta comunque. */
+    public Action onTimeout() {
+        if (state == State.DONE) {
+            return Action.NONE;
+        }
+        timedOut = true;
+        return finish();
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public boolean isDone() {
+        return state == State.DONE;
+    }
+
+    /** true se e' stato inviato un AF trigger da annullare dopo lo scatto. */
+    public boolean isAfTriggered() {
+        return afTriggered;
+    }
+
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    private Action afterAf() {
+        if (useAe) {
+            return enter(State.WAITING_AE_PRECAPTURE, Action.TRIGGER_AE_PRECAPTURE);
+        }
+        return finish();
+    }
+
+    private Action enter(State next, Action trigger) {
+        state = next;
+        triggerFrame = -1;
+        idleResults = 0;
+        if (trigger == Action.TRIGGER_AF) {
+            afTriggered = true;
+        }
+        return trigger;
+    }
+
+    private Action finish() {
+        state = State.DONE;
+        return Action.CAPTURE;
+    }
+}
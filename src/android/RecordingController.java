@@ -0,0 +1,128 @@
+package com.cordova.plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Registrazione di una sessione: al piu' un {@link FrameRecorder} attivo.
+ *
+ * L'avvio e' in due tempi: {@link #reserve} prenota il posto sul thread che riceve la richiesta,
+ * {@link #start} crea il file sul thread pool. Due richieste ravvicinate non possono quindi
+ * superare entrambe il controllo. Uno stop o una chiusura durante l'avvio annullano la
+ * prenotazione: il recorder creato nel frattempo viene chiuso invece di restare orfano.
+ */
+public class RecordingController {
+
+    private final File directory;
+    private volatile FrameRecorder recorder;
+    // Prenotazione in attesa di start(), 0 = nessuna
+    private long pending;
+    private long lastReservation;
+
+    /** @param directory cartella dei file senza percorso esplicito */
+    public RecordingController(File directory) {
+        this.directory = directory;
+    }
+
+    /** Prenota l'avvio; 0 se una registrazione e' gia' attiva o in avvio. */
+    public synchronized long reserve() {
+        if (recorder != null || pending != 0) {
+            return 0;
+        }
+        pending = ++lastReservation;
+        return pending;
+    }
+
+    /** Rinuncia a una prenotazione non avviata (es. errore prima di start). */
+    public synchronized void cancel(long reservation) {
+        if (pending == reservation) {
+            pending = 0;
+        }
+    }
+
+    /**
+     * Crea il file e avvia il recorder per {@code reservation}.
+     * @param fileName nome nella cartella di registrazione (senza separatori ne' ".."),
+     *                 null per USB_CAM_&lt;data&gt;.avi; se esiste gia' si aggiunge un suffisso _N
+     * @throws IOException se il file non si crea o la prenotazione e' stata annullata
+     * @throws IllegalArgumentException se fileName indica un percorso
+     */
+    public FrameRecorder start(long reservation, String fileName, int width, int height, double fps) throws IOException {
+        FrameRecorder created;
+        File file = null;
+        try {
+            file = resolveFile(fileName);
+            created = new FrameRecorder(file, width, height, fps);
+        } catch (IOException | RuntimeException e) {
+            cancel(reservation);
+            if (file != null) {
+                file.delete();
+            }
+            throw e;
+        }
+        synchronized (this) {
+            if (pending == reservation) {
+                pending = 0;
+                recorder = created;
+                return created;
+            }
+        }
+        try {
+            created.stop();
+        } finally {
+            created.getFile().delete();
+        }
+        throw new IOException("Recording cancelled");
+    }
+
+    // Crea il file con createNewFile: un nome gia' usato riceve un suffisso _1, _2... invece di
+    // troncare la registrazione esistente (il nome di default ha risoluzione al secondo)
+    private File resolveFile(String fileName) throws IOException {
+        if (fileName != null && (fileName.indexOf('/') >= 0 || fileName.indexOf('\\') >= 0
+                || fileName.indexOf(File.separatorChar) >= 0 || fileName.contains(".."))) {
+            throw new IllegalArgumentException("Invalid file name: " + fileName);
+        }
+        if (!directory.exists() && !directory.mkdirs() && !directory.exists()) {
+            throw new IOException("Cannot create directory " + directory);
+        }
+        if (fileName == null || fileName.isEmpty()) {
+            String timeStamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date());
+            fileName = "USB_CAM_" + timeStamp + ".avi";
+        }
+        int dot = fileName.lastIndexOf('.');
+        String base = dot > 0 ? fileName.substring(0, dot) : fileName;
+        String extension = dot > 0 ? fileName.substring(dot) : "";
+        File file = new File(directory, fileName);
+        for (int i = 1; !file.createNewFile(); i++) {
+            file = new File(directory, base + "_" + i + extension);
+        }
+        return file;
+    }
+
+    /** Stacca il recorder attivo (da fermare a cura del chiamante) e annulla un avvio in corso. */
+    public synchronized FrameRecorder detach() {
+        pending = 0;
+        FrameRecorder current = recorder;
+        recorder = null;
+        return current;
+    }
+
+    /** true se una registrazione e' attiva o in avvio: la dimensione dei frame e' fissata. */
+    public synchronized boolean isActive() {
+        return recorder != null || pending != 0;
+    }
+
+    /** true se i frame vanno copiati nel recorder. */
+    public boolean isRecording() {
+        return recorder != null;
+    }
+
+    /** Accoda un JPEG al recorder attivo; false se non si registra o il frame e' scartato. */
+    public boolean offer(byte[] jpeg, int offset, int length, long timestampNanos) {
+        FrameRecorder current = recorder;
+        return current != null && current.offer(jpeg, offset, length, timestampNanos);
+    }
+}
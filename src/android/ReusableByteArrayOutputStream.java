@@ -0,0 +1,31 @@
+package com.cordova.plugin;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * ByteArrayOutputStream che espone il buffer interno, cosi' il JPEG codificato
+ * puo' essere letto senza la copia di toByteArray(). Dopo reset() il buffer viene riusato.
+ */
+public class ReusableByteArrayOutputStream extends ByteArrayOutputStream {
+
+    public ReusableByteArrayOutputStream(int initialSize) {
+        super(initialSize);
+    }
+
+    /** Buffer interno: i byte validi sono [0, size()). */
+    public byte[] getBuffer() {
+        return buf;
+    }
+
+    /** Accoda i byte rimanenti di {@code src} senza array intermedi. */
+    public synchronized void write(ByteBuffer src) {
+        int length = src.remaining();
+        if (buf.length - count < length) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length * 2, count + length));
+        }
+        src.get(buf, count, length);
+        count += length;
+    }
+}
@@ -0,0 +1,111 @@
+package com.cordova.plugin;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Frame di anteprima condiviso tra i subscriber di un {@link FrameSource}, con conteggio
+ * dei riferimenti: il buffer torna al pool quando tutti i detentori lo hanno rilasciato.
+ *
+ * I dati sono esposti solo come ByteBuffer in sola lettura. Con formato
+ * {@link #FORMAT_NV21} sono disponibili sia {@link #getNv21()} sia {@link #getLuma()};
+ * con {@link #FORMAT_LUMA} solo il piano Y.
+ */
+public final class SharedFrame {
+    /** NV21 completo (Y seguito da VU interleaved). */
+    public static final int FORMAT_NV21 = 1;
+    /** Solo piano Y, width x height byte. */
+    public static final int FORMAT_LUMA = 2;
+
+    private final FrameSource owner;
+    byte[] data = new byte[0];
+    private int format;
+    private int width;
+    private int height;
+    private long timestampNanos;
+    private long arrivalNanos;
+    private int refCount = 0;
+
+    SharedFrame(FrameSource owner) {
+        this.owner = owner;
+    }
+
+    // Chiamato dal FrameSource con il frame fuori dal pool
+    void prepare(int format, int width, int height) {
+        int bytes = format == FORMAT_NV21 ? YuvConverter.nv21Size(width, height) : width * height;
+        if (data.length < bytes) {
+            data = new byte[bytes];
+        }
+        this.format = format;
+        this.width = width;
+        this.height = height;
+    }
+
+    void setTimes(long timestampNanos, long arrivalNanos) {
+        this.timestampNanos = timestampNanos;
+        this.arrivalNanos = arrivalNanos;
+    }
+
+    synchronized void setRefCount(int refCount) {
+        this.refCount = refCount;
+    }
+
+    public int getFormat() {
+        return format;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /** Timestamp del sensore (Image.getTimestamp()). */
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    /** System.nanoTime() all'arrivo nel plugin. */
+    public long getArrivalNanos() {
+        return arrivalNanos;
+    }
+
+    /** Vista in sola lettura del piano Y (width x height byte, stride = width). */
+    public ByteBuffer getLuma() {
+        return view(width * height);
+    }
+
+    /** Vista in sola lettura dell'NV21 completo; solo con {@link #FORMAT_NV21}. */
+    public ByteBuffer getNv21() {
+        if (format != FORMAT_NV21) {
+            throw new IllegalStateException("Frame has only the luma plane");
+        }
+        return view(YuvConverter.nv21Size(width, height));
+    }
+
+    private ByteBuffer view(int length) {
+        return ByteBuffer.wrap(data, 0, length).slice().asReadOnlyBuffer();
+    }
+
+    /** Tiene il frame oltre la callback; ogni retain va bilanciato da un {@link #release()}. */
+    public synchronized SharedFrame retain() {
+        if (refCount <= 0) {
+            throw new IllegalStateException("Frame already released");
+        }
+        refCount++;
+        return this;
+    }
+
+    public void release() {
+        synchronized (this) {
+            if (refCount <= 0) {
+                throw new IllegalStateException("Frame already released");
+            }
+            if (--refCount > 0) {
+                return;
+            }
+        }
+        owner.recycle(this);
+    }
+}
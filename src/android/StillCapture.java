@@ -0,0 +1,897 @@
+package com.cordova.plugin;
+
+import android.graphics.ImageFormat;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CameraDevice;
+import android.hardware.camera2.CaptureFailure;
+import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.CaptureResult;
+import android.hardware.camera2.TotalCaptureResult;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Environment;
+import android.os.Handler;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.util.Log;
+import android.view.Surface;
+import androidx.annotation.NonNull;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Scatti di una sessione: takePhoto (pre-scatto AF/AE, still o ZSL), raffiche e salvataggio
+ * write-behind con {@link PhotoWriter}.
+ *
+ * Tutto lo stato vive sul thread camera della sessione, salvo il writer (creato anche dal
+ * thread pool per gli scatti ZSL). Device, sessione di cattura e anteprima restano di
+ * CameraSession e si leggono tramite {@link Host}.
+ */
+public class StillCapture {
+    private static final String TAG = "UsbExternalCamera";
+
+    /** Stato della sessione usato dagli scatti, letto sul thread camera. */
+    public interface Host {
+        CameraDevice getCameraDevice();
+
+        CameraCaptureSession getCaptureSession();
+
+        Handler getHandler();
+
+        boolean isPreviewActive();
+
+        /** Richiesta di anteprima con le stesse impostazioni, per i trigger del pre-scatto. */
+        CaptureRequest.Builder createPreviewRequestBuilder() throws CameraAccessException;
+
+        /** Riavvia la richiesta ripetuta con anteprima in pausa; false se non e' configurata. */
+        boolean startRepeatingPreview() throws CameraAccessException;
+
+        /** Surface dello stream di anteprima: in passthrough riceve anche gli scatti. */
+        Surface getPreviewSurface();
+
+        ZslFrameRing getZslRing();
+
+        CameraInventory.CameraEntry getCameraEntry();
+    }
+
+    // Immagini still trattenute dal writer + una libera per il prossimo scatto
+    static final int STILL_READER_MAX_IMAGES = 4;
+    private static final int PHOTO_QUEUE_CAPACITY = 32;
+    private static final long PHOTO_DRAIN_TIMEOUT_MS = 5000;
+    private static final int MAX_BURST_COUNT = 30;
+    private static final long STILL_IMAGE_TIMEOUT_MS = 5000;
+    private static final long PRECAPTURE_TIMEOUT_MS = 1500;
+    private static final long ZSL_MAX_AGE_MS = 500;
+    private static final int ZSL_JPEG_QUALITY = 95;
+    private static final int ZSL_PHOTO_BUFFERS = 2;
+    private static final String ZSL_SELECT_SHARPEST = "sharpest";
+
+    private final Host host;
+    private final PerformanceStats stats;
+    // Codifica e accodamento degli scatti ZSL, fuori dal thread camera
+    private final Executor executor;
+
+    private ImageReader stillReader;
+    private PhotoWriter photoWriter;
+    // Dopo close() nessun nuovo writer: le Image dello stillReader non sopravvivono alla sessione
+    private boolean photoWriterClosed = false;
+    private final AtomicInteger heldStillImages = new AtomicInteger();
+    private boolean photoFsync = true;
+
+    // Raffiche: scatti in attesa dell'Image, per timestamp del sensore
+    private final Map<Long, BurstShot> pendingBurstShots = new HashMap<>();
+    // Raffiche con scatti non ancora consegnati al writer, e loro sequenze di cattura
+    private final List<Burst> activeBursts = new ArrayList<>();
+    private final Map<Integer, List<BurstShot>> burstSequences = new HashMap<>();
+    // Scatto singolo in corso, dalla richiesta all'arrivo dell'Image o al fallimento:
+    // fino ad allora takePhoto rifiuta nuovi scatti
+    private PhotoShot activePhotoShot;
+    // Scatti singoli in attesa dell'Image, per timestamp del sensore
+    private final Map<Long, PhotoShot> pendingPhotoShots = new HashMap<>();
+
+    // Zero-shutter-lag: l'anello e' riempito dall'anteprima di CameraSession
+    private String zslSelect = "closest";
+    private FrameBufferPool zslPhotoPool;
+    private final JpegEncoder stillJpegEncoder = new YuvImageJpegEncoder();
+
+    // Fuoco ed esposizione dello scatto
+    private int autofocusMode = CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE;
+    private boolean manualFocusEnabled = false;
+    private float focusDistance = 0.0f;
+    private int exposureMode = CaptureRequest.CONTROL_AE_MODE_ON;
+    private boolean manualExposureEnabled = false;
+    private long exposureTime = 0;
+    private int iso = 0;
+    private int exposureCompensation = 0;
+
+    // Pre-scatto AF/AE guidato dai risultati della richiesta ripetuta
+    private PrecaptureStateMachine precapture;
+    private boolean precaptureRestartedPreview = false;
+    private long focusLockStartNanos;
+    private final Runnable precaptureTimeout = new Runnable() {
+        @Override
+        public void run() {
+            PrecaptureStateMachine machine = precapture;
+            if (machine != null) {
+                Log.w(TAG, "Precapture timeout after " + PRECAPTURE_TIMEOUT_MS + " ms in state " + machine.getState() + ", taking photo anyway");
+                handlePrecaptureAction(machine, machine.onTimeout());
+            }
+        }
+    };
+
+    public StillCapture(Host host, PerformanceStats stats, Executor executor) {
+        this.host = host;
+        this.stats = stats;
+        this.executor = executor;
+    }
+
+    /** Opzioni di open() che riguardano gli scatti. */
+    void configure(JSONObject options) {
+        // "fsync" (default): takePhoto risolve a dati su disco; "async": senza fsync
+        photoFsync = !"async".equals(options.optString("photoDurability", "fsync"));
+        zslSelect = options.optString("zslSelect", "closest");
+        String afMode = options.optString("autofocusMode", "continuous");
+        switch (afMode) {
+            case "manual":
+                autofocusMode = CaptureRequest.CONTROL_AF_MODE_OFF;
+                manualFocusEnabled = true;
+                focusDistance = (float) options.optDouble("focusDistance", 0.0);
+                break;
+            case "single":
+                autofocusMode = CaptureRequest.CONTROL_AF_MODE_AUTO;
+                break;
+            case "continuous":
+            default:
+                autofocusMode = CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE;
+                break;
+        }
+    }
+
+    /**
+     * Thread camera: crea lo stillReader JPEG. In passthrough lo stream di anteprima e' gia'
+     * JPEG e un secondo stream JPEG non e' garantito (le camere esterne ne accettano uno solo):
+     * gli scatti usano allora la surface di anteprima e il risultato e' null.
+     */
+    Surface createStillReader(boolean passthrough, int width, int height) {
+        if (passthrough) {
+            stillReader = null;
+            return null;
+        }
+        stillReader = ImageReader.newInstance(width, height, ImageFormat.JPEG, STILL_READER_MAX_IMAGES);
+        stillReader.setOnImageAvailableListener(new ImageReader.OnImageAvailableListener() {
+            @Override
+            public void onImageAvailable(ImageReader reader) {
+                Image image = reader.acquireNextImage();
+                if (image != null && !routeStillImage(image)) {
+                    // Scatto gia' fallito o scaduto
+                    image.close();
+                }
+            }
+        }, host.getHandler());
+        return stillReader.getSurface();
+    }
+
+    // Surface degli scatti: lo stillReader, o lo stream di anteprima in passthrough
+    private Surface stillSurface() {
+        return stillReader != null ? stillReader.getSurface() : host.getPreviewSurface();
+    }
+
+    /**
+     * Thread camera: consegna l'Image allo scatto o alla raffica che l'ha richiesta.
+     * false se nessuno la attende: resta al chiamante.
+     */
+    boolean routeStillImage(Image image) {
+        BurstShot burstShot = pendingBurstShots.remove(image.getTimestamp());
+        if (burstShot != null) {
+            settleBurstShot(burstShot);
+            saveBurstShot(image, burstShot);
+            return true;
+        }
+        PhotoShot photoShot = pendingPhotoShots.get(image.getTimestamp());
+        if (photoShot == null) {
+            return false;
+        }
+        finishPhotoShot(photoShot);
+        // Salvataggio write-behind: il thread camera accoda e torna subito libero
+        submitStillImage(image, photoCallback(photoShot.callback, photoShot.requestNanos));
+        return true;
+    }
+
+    /** Thread camera: risultato della richiesta ripetuta, avanza il pre-scatto in corso. */
+    void onPreviewResult(TotalCaptureResult result) {
+        PrecaptureStateMachine machine = precapture;
+        if (machine != null) {
+            handlePrecaptureAction(machine, machine.onResult(result.getFrameNumber(),
+                    result.get(CaptureResult.CONTROL_AF_STATE), result.get(CaptureResult.CONTROL_AE_STATE)));
+        }
+    }
+
+    void putStats(JSONObject stats) throws JSONException {
+        PhotoWriter writer;
+        synchronized (this) {
+            writer = photoWriter;
+        }
+        if (writer != null) {
+            JSONObject photos = new JSONObject();
+            photos.put("queueDepth", writer.getQueueDepth());
+            photos.put("written", writer.getWritten());
+            photos.put("failed", writer.getFailed());
+            photos.put("avgWriteMs", writer.getAverageLatencyMillis());
+            photos.put("maxWriteMs", writer.getMaxLatencyMillis());
+            photos.put("fsync", writer.isFsync());
+            stats.put("photoWriter", photos);
+        }
+    }
+
+    /**
+     * Con il thread camera fermo: annulla pre-scatto e scatti in attesa (le raffiche ricevono
+     * l'esito degli scatti mancanti), completa o fa fallire le scritture in coda e chiude lo stillReader.
+     * @return true se il writer non trattiene piu' Image: anche il reader di anteprima
+     *         (passthrough) si puo' chiudere
+     */
+    boolean close() {
+        precapture = null;
+        precaptureRestartedPreview = false;
+        for (Burst burst : new ArrayList<>(activeBursts)) {
+            for (BurstShot shot : burst.shots) {
+                failBurstShot(shot, "camera closed");
+            }
+        }
+        burstSequences.clear();
+        pendingBurstShots.clear();
+        pendingPhotoShots.clear();
+        PhotoWriter writer;
+        synchronized (this) {
+            writer = photoWriter;
+            photoWriter = null;
+            photoWriterClosed = true;
+        }
+        // Le Image in scrittura appartengono allo stillReader (al reader di anteprima in
+        // passthrough): prima si completano o falliscono
+        boolean stillImagesReleased = writer == null || writer.shutdown(PHOTO_DRAIN_TIMEOUT_MS);
+        if (!stillImagesReleased) {
+            Log.w(TAG, "Photo write still running, still images left to the GC");
+        }
+        if (stillReader != null) {
+            if (stillImagesReleased) {
+                stillReader.close();
+            }
+            stillReader = null;
+        }
+        zslPhotoPool = null;
+        PhotoShot shot = activePhotoShot;
+        activePhotoShot = null;
+        if (shot != null) {
+            shot.callback.error("Camera closed before the photo was captured");
+        }
+        return stillImagesReleased;
+    }
+
+    private PhotoWriter.Callback photoCallback(CallbackContext callback, long requestNanos) {
+        return new PhotoWriter.Callback() {
+            @Override
+            public void onSaved(File file, long latencyNanos) {
+                stats.still.record(System.nanoTime() - requestNanos);
+                Log.d(TAG, "Photo saved in " + (latencyNanos / 1_000_000) + "ms: " + file.getAbsolutePath());
+                callback.success(file.getAbsolutePath());
+            }
+
+            @Override
+            public void onError(Exception e) {
+                Log.e(TAG, "Error saving photo", e);
+                callback.error("Failed to save photo: " + e.getMessage());
+            }
+        };
+    }
+
+    // Accoda l'Image al writer. Se il reader degli scatti sta per esaurire le Image
+    // (raffiche), copia il JPEG in memoria e la chiude subito.
+    private void submitStillImage(Image image, PhotoWriter.Callback callback) {
+        PhotoWriter writer = getPhotoWriter();
+        if (writer == null) {
+            image.close();
+            callback.onError(new IOException("Camera closed"));
+            return;
+        }
+        ByteBuffer jpeg = image.getPlanes()[0].getBuffer();
+        Runnable release;
+        if (heldStillImages.incrementAndGet() < STILL_READER_MAX_IMAGES) {
+            release = () -> {
+                image.close();
+                heldStillImages.decrementAndGet();
+            };
+        } else {
+            heldStillImages.decrementAndGet();
+            ByteBuffer copy = ByteBuffer.allocate(jpeg.remaining());
+            copy.put(jpeg);
+            copy.flip();
+            image.close();
+            jpeg = copy;
+            release = () -> { };
+        }
+        if (!writer.submit(jpeg, release, callback)) {
+            release.run();
+            callback.onError(new IOException("write queue full"));
+        }
+    }
+
+    // null dopo close()
+    private synchronized PhotoWriter getPhotoWriter() {
+        if (photoWriterClosed) {
+            return null;
+        }
+        if (photoWriter == null) {
+            File storageDir = new File(Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_PICTURES), "UsbCamera");
+            photoWriter = new PhotoWriter(storageDir, "USB_CAM_", ".jpg", PHOTO_QUEUE_CAPACITY);
+            photoWriter.setDirectorySync(StillCapture::syncDirectory);
+        }
+        photoWriter.setFsync(photoFsync);
+        return photoWriter;
+    }
+
+    private static void syncDirectory(File directory) throws IOException {
+        try {
+            FileDescriptor fd = Os.open(directory.getPath(), OsConstants.O_RDONLY, 0);
+            try {
+                Os.fsync(fd);
+            } finally {
+                Os.close(fd);
+            }
+        } catch (ErrnoException e) {
+            throw new IOException("fsync " + directory + " failed", e);
+        }
+    }
+
+    /** Thread camera: avvia AF trigger -> AE precapture -> scatto, saltando gli stadi non supportati. */
+    void takePhoto(CallbackContext callbackContext, long requestNanos) {
+        CameraCaptureSession captureSession = host.getCaptureSession();
+        if (captureSession == null || host.getCameraDevice() == null) {
+            callbackContext.error("Camera not opened");
+            return;
+        }
+        ZslFrameRing zslRing = host.getZslRing();
+        if (zslRing != null && takeZslPhoto(zslRing, callbackContext, requestNanos)) {
+            return;
+        }
+        if (activePhotoShot != null) {
+            callbackContext.error("Photo capture already in progress");
+            return;
+        }
+        activePhotoShot = new PhotoShot(callbackContext, requestNanos);
+        focusLockStartNanos = System.nanoTime();
+
+        CameraInventory.CameraEntry entry = host.getCameraEntry();
+        // Le UVC a fuoco fisso non dichiarano modalita' AF: si passa subito all'esposizione
+        boolean useAf = entry != null && entry.hasAutofocus && !manualFocusEnabled;
+        boolean useAe = entry != null && entry.hasAutoExposure && !manualExposureEnabled;
+        PrecaptureStateMachine machine = new PrecaptureStateMachine(useAf, useAe);
+        precapture = machine;
+
+        if ((useAf || useAe) && !host.isPreviewActive()) {
+            // In pausa servono comunque i risultati della richiesta ripetuta
+            try {
+                precaptureRestartedPreview = host.startRepeatingPreview();
+            } catch (CameraAccessException e) {
+                Log.w(TAG, "Unable to restart preview for precapture", e);
+            }
+        }
+        host.getHandler().postDelayed(precaptureTimeout, PRECAPTURE_TIMEOUT_MS);
+        handlePrecaptureAction(machine, machine.start());
+    }
+
+    /**
+     * Thread camera: salva il frame dell'anello piu' vicino all'istante della richiesta
+     * (o il piu' nitido degli ultimi ZSL_MAX_AGE_MS). Ritorna false se non ci sono frame
+     * recenti (anteprima in pausa): si usa allora lo scatto normale.
+     */
+    private boolean takeZslPhoto(ZslFrameRing zslRing, CallbackContext callbackContext, long requestNanos) {
+        ZslFrameRing.Frame latest = zslRing.latest();
+        long maxAgeNanos = ZSL_MAX_AGE_MS * 1_000_000L;
+        if (latest == null || requestNanos - latest.arrivalNanos > maxAgeNanos) {
+            return false;
+        }
+        ZslFrameRing.Frame frame;
+        if (ZSL_SELECT_SHARPEST.equals(zslSelect)) {
+            frame = zslRing.sharpest(requestNanos - maxAgeNanos);
+        } else {
+            // Istante della richiesta nella base tempi del sensore, tramite la latenza di arrivo dell'ultimo frame
+            frame = zslRing.closestTo(latest.timestampNanos - (latest.arrivalNanos - requestNanos));
+        }
+        if (frame == null) {
+            return false;
+        }
+
+        int width = frame.width;
+        int height = frame.height;
+        int bytes = YuvConverter.nv21Size(width, height);
+        if (zslPhotoPool == null || zslPhotoPool.getBufferSize() != bytes) {
+            zslPhotoPool = new FrameBufferPool(bytes, ZSL_PHOTO_BUFFERS);
+        }
+        FrameBufferPool pool = zslPhotoPool;
+        byte[] acquired = pool.acquire();
+        byte[] nv21 = acquired != null ? acquired : new byte[bytes];
+        System.arraycopy(frame.nv21, 0, nv21, 0, bytes);
+        Log.d(TAG, "ZSL photo from frame " + (frame.arrivalNanos - requestNanos) / 1_000_000 + " ms from request");
+
+        PhotoWriter.Callback callback = photoCallback(callbackContext, requestNanos);
+        // Codifica e scrittura fuori dal thread camera
+        executor.execute(() -> {
+            ReusableByteArrayOutputStream jpeg = new ReusableByteArrayOutputStream(bytes / 4);
+            try {
+                stillJpegEncoder.encode(nv21, width, height, ZSL_JPEG_QUALITY, jpeg);
+            } catch (IOException | RuntimeException e) {
+                callback.onError(e);
+                return;
+            } finally {
+                pool.release(acquired);
+            }
+            PhotoWriter writer = getPhotoWriter();
+            if (writer == null) {
+                callback.onError(new IOException("Camera closed"));
+            } else if (!writer.submit(ByteBuffer.wrap(jpeg.getBuffer(), 0, jpeg.size()), () -> { }, callback)) {
+                callback.onError(new IOException("write queue full"));
+            }
+        });
+        return true;
+    }
+
+    // Thread camera: esegue l'azione richiesta dalla macchina a stati
+    private void handlePrecaptureAction(PrecaptureStateMachine machine, PrecaptureStateMachine.Action action) {
+        if (machine != precapture) {
+            return;
+        }
+        switch (action) {
+            case TRIGGER_AF:
+                submitPrecaptureTrigger(machine, CaptureRequest.CONTROL_AF_TRIGGER, CaptureRequest.CONTROL_AF_TRIGGER_START);
+                break;
+            case TRIGGER_AE_PRECAPTURE:
+                submitPrecaptureTrigger(machine, CaptureRequest.CONTROL_AE_PRECAPTURE_TRIGGER,
+                        CaptureRequest.CONTROL_AE_PRECAPTURE_TRIGGER_START);
+                break;
+            case CAPTURE:
+                finishPrecapture(machine);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void submitPrecaptureTrigger(PrecaptureStateMachine machine, CaptureRequest.Key<Integer> key, int value) {
+        try {
+            CaptureRequest.Builder trigger = host.createPreviewRequestBuilder();
+            trigger.set(key, value);
+            host.getCaptureSession().capture(trigger.build(), new CameraCaptureSession.CaptureCallback() {
+                @Override
+                public void onCaptureCompleted(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request,
+                                               @NonNull TotalCaptureResult result) {
+                    handlePrecaptureAction(machine, machine.onTriggerResult(result.getFrameNumber(),
+                            result.get(CaptureResult.CONTROL_AF_STATE), result.get(CaptureResult.CONTROL_AE_STATE)));
+                }
+
+                @Override
+                public void onCaptureFailed(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request,
+                                            @NonNull CaptureFailure failure) {
+                    Log.w(TAG, "Precapture trigger failed: " + failure.getReason());
+                    handlePrecaptureAction(machine, machine.onTriggerFailed());
+                }
+            }, host.getHandler());
+        } catch (CameraAccessException | IllegalStateException e) {
+            Log.w(TAG, "Error sending precapture trigger", e);
+            handlePrecaptureAction(machine, machine.onTriggerFailed());
+        }
+    }
+
+    private void finishPrecapture(PrecaptureStateMachine machine) {
+        precapture = null;
+        host.getHandler().removeCallbacks(precaptureTimeout);
+        performActualCapture(activePhotoShot);
+
+        try {
+            CameraCaptureSession captureSession = host.getCaptureSession();
+            if (machine.isAfTriggered()) {
+                // Sblocca il fuoco: l'anteprima torna all'AF continuo
+                CaptureRequest.Builder cancel = host.createPreviewRequestBuilder();
+                cancel.set(CaptureRequest.CONTROL_AF_TRIGGER, CaptureRequest.CONTROL_AF_TRIGGER_CANCEL);
+                captureSession.capture(cancel.build(), null, host.getHandler());
+            }
+            if (precaptureRestartedPreview) {
+                precaptureRestartedPreview = false;
+                if (!host.isPreviewActive()) {
+                    captureSession.stopRepeating();
+                }
+            }
+        } catch (CameraAccessException | IllegalStateException e) {
+            Log.w(TAG, "Error restoring preview after capture", e);
+        }
+    }
+
+    // Scatto dopo il pre-scatto: la CaptureCallback di questa richiesta lega l'Image allo scatto
+    private void performActualCapture(PhotoShot shot) {
+        if (shot == null) {
+            Log.w(TAG, "performActualCapture called without a photo in progress");
+            return;
+        }
+
+        if (focusLockStartNanos != 0) {
+            stats.focusLock.record(System.nanoTime() - focusLockStartNanos);
+            focusLockStartNanos = 0;
+        }
+        try {
+            CaptureRequest.Builder captureBuilder = buildStillCaptureRequest();
+
+            // Esegui la cattura
+            host.getCaptureSession().capture(captureBuilder.build(), new CameraCaptureSession.CaptureCallback() {
+                @Override
+                public void onCaptureStarted(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request,
+                                             long timestamp, long frameNumber) {
+                    // Shutter lag: da takePhoto all'inizio dell'esposizione dello scatto
+                    stats.shutter.record(System.nanoTime() - shot.requestNanos);
+                    // Il timestamp di inizio esposizione coincide con Image.getTimestamp()
+                    if (shot == activePhotoShot) {
+                        pendingPhotoShots.put(timestamp, shot);
+                    }
+                }
+
+                @Override
+                public void onCaptureCompleted(@NonNull CameraCaptureSession session,
+                                              @NonNull CaptureRequest request,
+                                              @NonNull TotalCaptureResult result) {
+                    Log.d(TAG, "Photo capture completed successfully");
+                    // Il salvataggio dell'immagine viene gestito da routeStillImage
+                }
+
+                @Override
+                public void onCaptureFailed(@NonNull CameraCaptureSession session,
+                                           @NonNull CaptureRequest request,
+                                           @NonNull CaptureFailure failure) {
+                    failPhotoShot(shot, "Photo capture failed: " + failure.getReason());
+                }
+            }, host.getHandler());
+            shot.imageTimeout = () -> failPhotoShot(shot, "Photo capture timed out after " + STILL_IMAGE_TIMEOUT_MS + " ms");
+            host.getHandler().postDelayed(shot.imageTimeout, STILL_IMAGE_TIMEOUT_MS);
+        } catch (CameraAccessException | IllegalStateException e) {
+            Log.e(TAG, "Error performing actual capture", e);
+            failPhotoShot(shot, "Failed to capture photo: " + e.getMessage());
+        }
+    }
+
+    // Thread camera: lo scatto non attende piu' l'Image, takePhoto torna disponibile
+    private void finishPhotoShot(PhotoShot shot) {
+        Handler handler = host.getHandler();
+        if (handler != null && shot.imageTimeout != null) {
+            handler.removeCallbacks(shot.imageTimeout);
+        }
+        pendingPhotoShots.values().remove(shot);
+        if (activePhotoShot == shot) {
+            activePhotoShot = null;
+        }
+    }
+
+    // Thread camera: chiude lo scatto con un errore, se non e' gia' concluso
+    private void failPhotoShot(PhotoShot shot, String reason) {
+        if (shot != activePhotoShot) {
+            return;
+        }
+        Log.e(TAG, reason);
+        finishPhotoShot(shot);
+        shot.callback.error(reason);
+    }
+
+    // Richiesta still con i parametri di focus/esposizione configurati
+    private CaptureRequest.Builder buildStillCaptureRequest() throws CameraAccessException {
+        CaptureRequest.Builder captureBuilder = host.getCameraDevice().createCaptureRequest(CameraDevice.TEMPLATE_STILL_CAPTURE);
+        captureBuilder.addTarget(stillSurface());
+
+        // Configura i parametri di cattura
+        captureBuilder.set(CaptureRequest.CONTROL_AF_MODE, autofocusMode);
+        captureBuilder.set(CaptureRequest.CONTROL_AE_MODE, exposureMode);
+        captureBuilder.set(CaptureRequest.JPEG_QUALITY, (byte) 95);
+
+        // Se è abilitato il focus manuale
+        if (manualFocusEnabled) {
+            captureBuilder.set(CaptureRequest.LENS_FOCUS_DISTANCE, focusDistance);
+        }
+
+        // Se è abilitata l'esposizione manuale
+        if (manualExposureEnabled) {
+            if (exposureTime > 0) {
+                captureBuilder.set(CaptureRequest.SENSOR_EXPOSURE_TIME, exposureTime);
+            }
+            if (iso > 0) {
+                captureBuilder.set(CaptureRequest.SENSOR_SENSITIVITY, iso);
+            }
+        }
+
+        // Imposta compensazione esposizione se specificata
+        if (exposureCompensation != 0) {
+            captureBuilder.set(CaptureRequest.CONTROL_AE_EXPOSURE_COMPENSATION, exposureCompensation);
+        }
+        return captureBuilder;
+    }
+
+    // Scatto singolo: callback e istante della richiesta viaggiano con la cattura
+    private static final class PhotoShot {
+        final CallbackContext callback;
+        final long requestNanos;
+        // Scadenza dell'attesa dell'Image, avviata con la richiesta di cattura
+        Runnable imageTimeout;
+
+        PhotoShot(CallbackContext callback, long requestNanos) {
+            this.callback = callback;
+            this.requestNanos = requestNanos;
+        }
+    }
+
+    // Scatto di una raffica: il tag della CaptureRequest permette di associare l'Image
+    private static final class BurstShot {
+        final Burst burst;
+        final CallbackContext callback;
+        final BurstTracker tracker;
+        final int index;
+        // Richiesta inviata alla camera
+        boolean submitted;
+        // Image consegnata al writer o scatto fallito: non conta piu' lato camera
+        boolean settled;
+
+        BurstShot(Burst burst, int index) {
+            this.burst = burst;
+            this.callback = burst.callback;
+            this.tracker = burst.tracker;
+            this.index = index;
+        }
+    }
+
+    // Raffica in corso lato camera: scatti, catture differite (intervalMs) e scadenza delle Image
+    private static final class Burst {
+        final CallbackContext callback;
+        final BurstTracker tracker;
+        final List<BurstShot> shots = new ArrayList<>();
+        final List<Runnable> delayedCaptures = new ArrayList<>();
+        Runnable imageTimeout;
+        int unsettled;
+
+        Burst(CallbackContext callback, BurstTracker tracker) {
+            this.callback = callback;
+            this.tracker = tracker;
+        }
+    }
+
+    boolean takeBurst(JSONArray args, CallbackContext callbackContext) {
+        Handler handler = host.getHandler();
+        if (host.getCameraDevice() == null || host.getCaptureSession() == null || handler == null) {
+            callbackContext.error("Camera not opened");
+            return true;
+        }
+        JSONObject options = args.optJSONObject(0);
+        int count = options != null ? options.optInt("count", 5) : 5;
+        long intervalMs = options != null ? options.optLong("intervalMs", 0) : 0;
+        if (count < 1 || count > MAX_BURST_COUNT) {
+            callbackContext.error("Burst count must be between 1 and " + MAX_BURST_COUNT);
+            return true;
+        }
+
+        handler.post(() -> {
+            Burst burst = new Burst(callbackContext, new BurstTracker(count));
+            List<CaptureRequest> requests = new ArrayList<>(count);
+            try {
+                for (int i = 0; i < count; i++) {
+                    BurstShot shot = new BurstShot(burst, i);
+                    CaptureRequest.Builder builder = buildStillCaptureRequest();
+                    builder.setTag(shot);
+                    requests.add(builder.build());
+                    burst.shots.add(shot);
+                }
+                if (intervalMs <= 0) {
+                    // Tutte le richieste in pipeline: la camera scatta alla massima cadenza
+                    int sequenceId = host.getCaptureSession().captureBurst(requests, burstCaptureCallback, handler);
+                    burstSequences.put(sequenceId, burst.shots);
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error starting burst", e);
+                callbackContext.error("Failed to start burst: " + e.getMessage());
+                return;
+            }
+            burst.unsettled = count;
+            burst.imageTimeout = () -> timeOutBurst(burst);
+            activeBursts.add(burst);
+            if (intervalMs <= 0) {
+                for (BurstShot shot : burst.shots) {
+                    shot.submitted = true;
+                }
+                armBurstTimeout(burst);
+                return;
+            }
+            for (int i = 0; i < count; i++) {
+                CaptureRequest request = requests.get(i);
+                BurstShot shot = burst.shots.get(i);
+                Runnable capture = () -> submitBurstShot(request, shot);
+                burst.delayedCaptures.add(capture);
+                handler.postDelayed(capture, i * intervalMs);
+            }
+        });
+        return true;
+    }
+
+    // Thread camera: cattura differita di uno scatto (intervalMs > 0)
+    private void submitBurstShot(CaptureRequest request, BurstShot shot) {
+        if (shot.settled) {
+            return;
+        }
+        try {
+            int sequenceId = host.getCaptureSession().capture(request, burstCaptureCallback, host.getHandler());
+            burstSequences.put(sequenceId, Collections.singletonList(shot));
+            shot.submitted = true;
+            armBurstTimeout(shot.burst);
+        } catch (CameraAccessException | IllegalStateException e) {
+            failBurstShot(shot, e.getMessage());
+        }
+    }
+
+    // Thread camera: la scadenza riparte a ogni richiesta inviata e a ogni Image ricevuta
+    private void armBurstTimeout(Burst burst) {
+        Handler handler = host.getHandler();
+        if (handler == null) {
+            return;
+        }
+        handler.removeCallbacks(burst.imageTimeout);
+        handler.postDelayed(burst.imageTimeout, STILL_IMAGE_TIMEOUT_MS);
+    }
+
+    // Thread camera: nessuna Image per STILL_IMAGE_TIMEOUT_MS, falliscono gli scatti gia' richiesti
+    private void timeOutBurst(Burst burst) {
+        for (BurstShot shot : new ArrayList<>(burst.shots)) {
+            if (shot.submitted) {
+                failBurstShot(shot, "image timed out after " + STILL_IMAGE_TIMEOUT_MS + " ms");
+            }
+        }
+    }
+
+    // Thread camera: lo scatto non attende piu' l'Image; l'ultimo chiude la raffica lato camera
+    private void settleBurstShot(BurstShot shot) {
+        shot.settled = true;
+        Burst burst = shot.burst;
+        if (--burst.unsettled > 0) {
+            armBurstTimeout(burst);
+            return;
+        }
+        activeBursts.remove(burst);
+        Handler handler = host.getHandler();
+        if (handler != null) {
+            handler.removeCallbacks(burst.imageTimeout);
+            for (Runnable capture : burst.delayedCaptures) {
+                handler.removeCallbacks(capture);
+            }
+        }
+    }
+
+    // Thread camera: chiude lo scatto con un errore, se non e' gia' concluso
+    private void failBurstShot(BurstShot shot, String reason) {
+        if (shot.settled) {
+            return;
+        }
+        pendingBurstShots.values().remove(shot);
+        settleBurstShot(shot);
+        onBurstShotFailed(shot, reason);
+    }
+
+    private final CameraCaptureSession.CaptureCallback burstCaptureCallback = new CameraCaptureSession.CaptureCallback() {
+        @Override
+        public void onCaptureStarted(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request,
+                                     long timestamp, long frameNumber) {
+            // Il timestamp di inizio esposizione coincide con Image.getTimestamp()
+            Object tag = request.getTag();
+            if (tag instanceof BurstShot && !((BurstShot) tag).settled) {
+                pendingBurstShots.put(timestamp, (BurstShot) tag);
+            }
+        }
+
+        @Override
+        public void onCaptureFailed(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request,
+                                    @NonNull CaptureFailure failure) {
+            Object tag = request.getTag();
+            if (tag instanceof BurstShot) {
+                failBurstShot((BurstShot) tag, "capture failed: " + failure.getReason());
+            }
+        }
+
+        @Override
+        public void onCaptureBufferLost(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request,
+                                        @NonNull Surface target, long frameNumber) {
+            Object tag = request.getTag();
+            // Le richieste della raffica hanno un solo target: l'Image non arrivera'
+            if (tag instanceof BurstShot) {
+                failBurstShot((BurstShot) tag, "image buffer lost");
+            }
+        }
+
+        @Override
+        public void onCaptureSequenceCompleted(@NonNull CameraCaptureSession session, int sequenceId, long frameNumber) {
+            burstSequences.remove(sequenceId);
+        }
+
+        @Override
+        public void onCaptureSequenceAborted(@NonNull CameraCaptureSession session, int sequenceId) {
+            // Nessuno scatto della sequenza e' stato esposto: niente onCaptureStarted ne' Image
+            List<BurstShot> shots = burstSequences.remove(sequenceId);
+            if (shots != null) {
+                for (BurstShot shot : shots) {
+                    failBurstShot(shot, "capture aborted");
+                }
+            }
+        }
+    };
+
+    private void saveBurstShot(Image image, BurstShot shot) {
+        long timestamp = image.getTimestamp();
+        submitStillImage(image, new PhotoWriter.Callback() {
+            @Override
+            public void onSaved(File file, long latencyNanos) {
+                try {
+                    JSONObject result = new JSONObject();
+                    result.put("index", shot.index);
+                    result.put("filePath", file.getAbsolutePath());
+                    result.put("timestamp", timestamp);
+                    PluginResult pluginResult = new PluginResult(PluginResult.Status.OK, result);
+                    pluginResult.setKeepCallback(true);
+                    shot.callback.sendPluginResult(pluginResult);
+                } catch (JSONException e) {
+                    Log.e(TAG, "Error reporting burst shot", e);
+                }
+                if (shot.tracker.onSaved(timestamp)) {
+                    finishBurst(shot);
+                }
+            }
+
+            @Override
+            public void onError(Exception e) {
+                onBurstShotFailed(shot, e.getMessage());
+            }
+        });
+    }
+
+    private void onBurstShotFailed(BurstShot shot, String reason) {
+        Log.e(TAG, "Burst shot " + shot.index + " failed: " + reason);
+        if (shot.tracker.onFailed()) {
+            finishBurst(shot);
+        }
+    }
+
+    private void finishBurst(BurstShot shot) {
+        BurstTracker tracker = shot.tracker;
+        if (tracker.getSaved() == 0) {
+            shot.callback.error("Burst failed: no photo saved");
+            return;
+        }
+        try {
+            JSONObject summary = new JSONObject();
+            summary.put("done", true);
+            summary.put("count", tracker.getCount());
+            summary.put("saved", tracker.getSaved());
+            summary.put("failed", tracker.getFailed());
+            summary.put("fps", tracker.getAchievedFps());
+            summary.put("durationMs", tracker.getDurationMillis());
+            Log.d(TAG, "Burst completed: " + tracker.getSaved() + " photos at " + tracker.getAchievedFps() + " fps");
+            shot.callback.success(summary);
+        } catch (JSONException e) {
+            shot.callback.error("Burst failed: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package com.cordova.plugin;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Negoziazione della configurazione di stream (formato, dimensione, range fps)
+ * a partire dalle capacita' dichiarate dalla camera.
+ *
+ * La logica e' pura (nessuna dipendenza Android): le capacita' vengono copiate da
+ * StreamConfigurationMap / CONTROL_AE_AVAILABLE_TARGET_FPS_RANGES in {@link Capabilities},
+ * quindi la selezione si puo' verificare su tabelle registrate da camere reali.
+ */
+public class StreamConfigNegotiator {
+
+    /** Stessi valori di android.graphics.ImageFormat. */
+    public static final int FORMAT_YUV_420_888 = 0x23;
+    public static final int FORMAT_JPEG = 0x100;
+
+    // Costo relativo per pixel: il JPEG nativo non richiede copia YUV ne' codifica
+    private static final double YUV_COST_PER_PIXEL = 1.0;
+    private static final double JPEG_COST_PER_PIXEL = 0.25;
+    // Tolleranza sul rapporto d'aspetto (es. 1920x1088 vs 16:9)
+    private static final double ASPECT_TOLERANCE = 0.02;
+
+    /** Una dimensione di output con le durate minime dichiarate. */
+    public static class Output {
+        public final int format;
+        public final int width;
+        public final int height;
+        public final long minFrameDurationNanos;
+        public final long stallDurationNanos;
+
+        public Output(int format, int width, int height, long minFrameDurationNanos, long stallDurationNanos) {
+            this.format = format;
+            this.width = width;
+            this.height = height;
+            this.minFrameDurationNanos = minFrameDurationNanos;
+            this.stallDurationNanos = stallDurationNanos;
+        }
+
+        /** Frame rate massimo sostenibile (0 se la camera non dichiara la durata). */
+        public int maxFps() {
+            return minFrameDurationNanos > 0 ? (int) (1_000_000_000L / minFrameDurationNanos) : 0;
+        }
+
+        long pixels() {
+            return (long) width * height;
+        }
+    }
+
+    /** Tabella delle capacita' di una camera. */
+    public static class Capabilities {
+        final List<Output> outputs = new ArrayList<>();
+        final List<int[]> fpsRanges = new ArrayList<>();
+
+        public Capabilities addOutput(int format, int width, int height, long minFrameDurationNanos, long stallDurationNanos) {
+            outputs.add(new Output(format, width, height, minFrameDurationNanos, stallDurationNanos));
+            return this;
+        }
+
+        public Capabilities addFpsRange(int lower, int upper) {
+            fpsRanges.add(new int[] { lower, upper });
+            return this;
+        }
+    }
+
+    /** Configurazione scelta. */
+    public static class StreamConfig {
+        public final int format;
+        public final int width;
+        public final int height;
+        /** Range per CONTROL_AE_TARGET_FPS_RANGE; entrambi 0 se la camera non ne dichiara. */
+        public final int fpsMin;
+        public final int fpsMax;
+        /** Dimensione del JPEG per takePhoto; in passthrough coincide con lo stream. */
+        public final int stillWidth;
+        public final int stillHeight;
+        /** true se dimensione e fps coincidono con la richiesta. */
+        public final boolean exact;
+
+        StreamConfig(int format, int width, int height, int fpsMin, int fpsMax,
+                     int stillWidth, int stillHeight, boolean exact) {
+            this.format = format;
+            this.width = width;
+            this.height = height;
+            this.fpsMin = fpsMin;
+            this.fpsMax = fpsMax;
+            this.stillWidth = stillWidth;
+            this.stillHeight = stillHeight;
+            this.exact = exact;
+        }
+    }
+
+    private StreamConfigNegotiator() {
+    }
+
+    /**
+     * Sceglie la combinazione piu' economica che soddisfa la richiesta.
+     * Se nessuna la soddisfa si rinuncia prima agli fps e poi alla dimensione.
+     *
+     * @param allowJpeg true per considerare lo stream JPEG nativo (passthrough)
+     * @return null se la camera non dichiara alcun output utilizzabile
+     */
+    public static StreamConfig negotiate(Capabilities caps, int width, int height, int fps, boolean allowJpeg) {
+        List<Output> candidates = new ArrayList<>();
+        for (Output output : caps.outputs) {
+            if (output.format == FORMAT_YUV_420_888
+                    // Una durata di stallo indica un JPEG prodotto dall'ISP come still, non uno stream
+                    || (allowJpeg && output.format == FORMAT_JPEG && output.stallDurationNanos == 0)) {
+                candidates.add(output);
+            }
+        }
+
+        Output best = null;
+        // 1. Dimensione esatta a fps raggiungibili: il formato piu' economico
+        for (Output o : candidates) {
+            if (o.width == width && o.height == height && reachesFps(o, fps)) {
+                best = cheaper(best, o);
+            }
+        }
+        // 2. Copre la dimensione richiesta, stesso aspetto, fps raggiungibili
+        if (best == null) {
+            for (Output o : candidates) {
+                if (covers(o, width, height) && sameAspect(o, width, height) && reachesFps(o, fps)) {
+                    best = cheaper(best, o);
+                }
+            }
+        }
+        // 3. Copre la dimensione richiesta, fps raggiungibili
+        if (best == null) {
+            for (Output o : candidates) {
+                if (covers(o, width, height) && reachesFps(o, fps)) {
+                    best = cheaper(best, o);
+                }
+            }
+        }
+        // 4. Copre la dimensione richiesta a fps ridotti: il piu' veloce
+        if (best == null) {
+            for (Output o : candidates) {
+                if (covers(o, width, height) && (best == null || o.maxFps() > best.maxFps()
+                        || (o.maxFps() == best.maxFps() && cost(o) < cost(best)))) {
+                    best = o;
+                }
+            }
+        }
+        // 5. Nessuna dimensione sufficiente: la piu' grande che raggiunge gli fps, altrimenti la piu' grande
+        if (best == null) {
+            for (Output o : candidates) {
+                if (reachesFps(o, fps) && (best == null || o.pixels() > best.pixels())) {
+                    best = o;
+                }
+            }
+        }
+        if (best == null) {
+            for (Output o : candidates) {
+                if (best == null || o.pixels() > best.pixels()
+                        || (o.pixels() == best.pixels() && o.maxFps() > best.maxFps())) {
+                    best = o;
+                }
+            }
+        }
+        if (best == null) {
+            return null;
+        }
+
+        int targetFps = fps;
+        if (best.maxFps() > 0 && (targetFps <= 0 || targetFps > best.maxFps())) {
+            targetFps = best.maxFps();
+        }
+        int[] range = chooseFpsRange(caps.fpsRanges, targetFps);
+        // Un solo stream JPEG per sessione: in passthrough lo scatto usa quello di anteprima
+        int[] still = best.format == FORMAT_JPEG ? new int[] { best.width, best.height }
+                : chooseStillSize(caps, best.width, best.height);
+        boolean exact = best.width == width && best.height == height && reachesFps(best, fps)
+                && (range == null || fps <= 0 || range[1] == fps);
+        return new StreamConfig(best.format, best.width, best.height,
+                range != null ? range[0] : 0, range != null ? range[1] : 0,
+                still[0], still[1], exact);
+    }
+
+    /**
+     * Range AE per uno stream a {@code fps}: massimo pari al target (cadenza stabile)
+     * con il minimo piu' alto possibile; altrimenti il range piu' vicino che lo contiene,
+     * altrimenti quello con il massimo piu' alto sotto il target.
+     */
+    static int[] chooseFpsRange(List<int[]> ranges, int fps) {
+        int[] best = null;
+        if (fps <= 0) {
+            for (int[] r : ranges) {
+                if (best == null || r[1] > best[1] || (r[1] == best[1] && r[0] > best[0])) {
+                    best = r;
+                }
+            }
+            return best;
+        }
+        for (int[] r : ranges) {
+            if (r[1] == fps && (best == null || r[0] > best[0])) {
+                best = r;
+            }
+        }
+        if (best != null) {
+            return best;
+        }
+        for (int[] r : ranges) {
+            if (r[0] <= fps && r[1] > fps && (best == null || r[1] < best[1]
+                    || (r[1] == best[1] && r[0] > best[0]))) {
+                best = r;
+            }
+        }
+        if (best != null) {
+            return best;
+        }
+        for (int[] r : ranges) {
+            if (r[1] < fps && (best == null || r[1] > best[1] || (r[1] == best[1] && r[0] > best[0]))) {
+                best = r;
+            }
+        }
+        return best;
+    }
+
+    /** JPEG piu' grande con lo stesso aspetto dell'anteprima (o il piu' grande in assoluto). */
+    static int[] chooseStillSize(Capabilities caps, int previewWidth, int previewHeight) {
+        Output sameAspect = null;
+        Output largest = null;
+        for (Output o : caps.outputs) {
+            if (o.format != FORMAT_JPEG) {
+                continue;
+            }
+            if (largest == null || o.pixels() > largest.pixels()) {
+                largest = o;
+            }
+            if (sameAspect(o, previewWidth, previewHeight) && (sameAspect == null || o.pixels() > sameAspect.pixels())) {
+                sameAspect = o;
+            }
+        }
+        Output still = sameAspect != null ? sameAspect : largest;
+        return still != null ? new int[] { still.width, still.height } : new int[] { previewWidth, previewHeight };
+    }
+
+    private static boolean covers(Output o, int width, int height) {
+        return o.width >= width && o.height >= height;
+    }
+
+    private static boolean sameAspect(Output o, int width, int height) {
+        if (width <= 0 || height <= 0) {
+            return true;
+        }
+        double requested = (double) width / height;
+        return Math.abs((double) o.width / o.height - requested) <= requested * ASPECT_TOLERANCE;
+    }
+
+    private static boolean reachesFps(Output o, int fps) {
+        // Durata non dichiarata: nessun vincolo noto
+        return fps <= 0 || o.minFrameDurationNanos <= 0 || o.minFrameDurationNanos <= 1_000_000_000L / fps;
+    }
+
+    private static double cost(Output o) {
+        return o.pixels() * (o.format == FORMAT_JPEG ? JPEG_COST_PER_PIXEL : YUV_COST_PER_PIXEL);
+    }
+
+    private static Output cheaper(Output current, Output candidate) {
+        return current == null || cost(candidate) < cost(current) ? candidate : current;
+    }
+}
@@ -0,0 +1,456 @@
+package com.cordova.plugin;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Encoder JPEG baseline in Java puro che codifica il frame su piu' core.
+ *
+ * L'NV21 e' gia' YCbCr 4:2:0, quindi non serve conversione colore: l'immagine viene divisa
+ * in strisce orizzontali di righe di MCU 16x16 e ogni striscia e' un intervallo di restart
+ * (DRI), codificabile in modo indipendente (predittori DC azzerati). Le strisce vengono
+ * codificate in parallelo su un ForkJoinPool e concatenate, separate dai marker RSTn, in un
+ * unico JPEG valido per qualsiasi decoder. Tabelle Huffman standard (Annex K) precalcolate;
+ * tabelle di quantizzazione ricalcolate solo al cambio di qualita'; buffer delle strisce e
+ * blocchi DCT riutilizzati tra i frame. Un'istanza va usata da un thread alla volta.
+ */
+public class StripedJpegEncoder implements JpegEncoder {
+
+    // Strisce per thread: bilancia il carico se alcune strisce sono piu' costose
+    private static final int STRIPES_PER_THREAD = 2;
+    // Sotto questa soglia di pixel il fork costa piu' di quanto fa risparmiare
+    private static final int MIN_PARALLEL_PIXELS = 320 * 240;
+    private static final int MAX_RESTART_INTERVAL = 65535;
+
+    // Posizione naturale (riga * 8 + colonna) dell'i-esimo coefficiente in ordine zig-zag
+    private static final int[] ZIGZAG = {
+            0, 1, 8, 16, 9, 2, 3, 10, 17, 24, 32, 25, 18, 11, 4, 5,
+            12, 19, 26, 33, 40, 48, 41, 34, 27, 20, 13, 6, 7, 14, 21, 28,
+            35, 42, 49, 56, 57, 50, 43, 36, 29, 22, 15, 23, 30, 37, 44, 51,
+            58, 59, 52, 45, 38, 31, 39, 46, 53, 60, 61, 54, 47, 55, 62, 63
+    };
+
+    // Tabelle di quantizzazione Annex K (ordine naturale), scalate con la formula IJG
+    private static final int[] LUMA_QUANT = {
+            16, 11, 10, 16, 24, 40, 51, 61,
+            12, 12, 14, 19, 26, 58, 60, 55,
+            14, 13, 16, 24, 40, 57, 69, 56,
+            14, 17, 22, 29, 51, 87, 80, 62,
+            18, 22, 37, 56, 68, 109, 103, 77,
+            24, 35, 55, 64, 81, 104, 113, 92,
+            49, 64, 78, 87, 103, 121, 120, 101,
+            72, 92, 95, 98, 112, 100, 103, 99
+    };
+    private static final int[] CHROMA_QUANT = {
+            17, 18, 24, 47, 99, 99, 99, 99,
+            18, 21, 26, 66, 99, 99, 99, 99,
+            24, 26, 56, 99, 99, 99, 99, 99,
+            47, 66, 99, 99, 99, 99, 99, 99,
+            99, 99, 99, 99, 99, 99, 99, 99,
+            99, 99, 99, 99, 99, 99, 99, 99,
+            99, 99, 99, 99, 99, 99, 99, 99,
+            99, 99, 99, 99, 99, 99, 99, 99
+    };
+
+    // Fattori di scala della DCT float AAN (jfdctflt di libjpeg)
+    private static final double[] AAN_SCALE = {
+            1.0, 1.387039845, 1.306562965, 1.175875602, 1.0, 0.785694958, 0.541196100, 0.275899379
+    };
+
+    // Tabelle Huffman standard Annex K: numero di codici per lunghezza 1..16 e simboli
+    private static final int[] DC_LUMA_BITS = { 0, 1, 5, 1, 1, 1, 1, 1, 1, 0, 0, 0, 0, 0, 0, 0 };
+    private static final int[] DC_CHROMA_BITS = { 0, 3, 1, 1, 1, 1, 1, 1, 1, 1, 1, 0, 0, 0, 0, 0 };
+    private static final int[] DC_VALUES = { 0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11 };
+    private static final int[] AC_LUMA_BITS = { 0, 2, 1, 3, 3, 2, 4, 3, 5, 5, 4, 4, 0, 0, 1, 0x7d };
+    private static final int[] AC_LUMA_VALUES = {
+            0x01, 0x02, 0x03, 0x00, 0x04, 0x11, 0x05, 0x12, 0x21, 0x31, 0x41, 0x06, 0x13, 0x51, 0x61, 0x07,
+            0x22, 0x71, 0x14, 0x32, 0x81, 0x91, 0xa1, 0x08, 0x23, 0x42, 0xb1, 0xc1, 0x15, 0x52, 0xd1, 0xf0,
+            0x24, 0x33, 0x62, 0x72, 0x82, 0x09, 0x0a, 0x16, 0x17, 0x18, 0x19, 0x1a, 0x25, 0x26, 0x27, 0x28,
+            0x29, 0x2a, 0x34, 0x35, 0x36, 0x37, 0x38, 0x39, 0x3a, 0x43, 0x44, 0x45, 0x46, 0x47, 0x48, 0x49,
+            0x4a, 0x53, 0x54, 0x55, 0x56, 0x57, 0x58, 0x59, 0x5a, 0x63, 0x64, 0x65, 0x66, 0x67, 0x68, 0x69,
+            0x6a, 0x73, 0x74, 0x75, 0x76, 0x77, 0x78, 0x79, 0x7a, 0x83, 0x84, 0x85, 0x86, 0x87, 0x88, 0x89,
+            0x8a, 0x92, 0x93, 0x94, 0x95, 0x96, 0x97, 0x98, 0x99, 0x9a, 0xa2, 0xa3, 0xa4, 0xa5, 0xa6, 0xa7,
+            0xa8, 0xa9, 0xaa, 0xb2, 0xb3, 0xb4, 0xb5, 0xb6, 0xb7, 0xb8, 0xb9, 0xba, 0xc2, 0xc3, 0xc4, 0xc5,
+            0xc6, 0xc7, 0xc8, 0xc9, 0xca, 0xd2, 0xd3, 0xd4, 0xd5, 0xd6, 0xd7, 0xd8, 0xd9, 0xda, 0xe1, 0xe2,
+            0xe3, 0xe4, 0xe5, 0xe6, 0xe7, 0xe8, 0xe9, 0xea, 0xf1, 0xf2, 0xf3, 0xf4, 0xf5, 0xf6, 0xf7, 0xf8,
+            0xf9, 0xfa
+    };
+    private static final int[] AC_CHROMA_BITS = { 0, 2, 1, 2, 4, 4, 3, 4, 7, 5, 4, 4, 0, 1, 2, 0x77 };
+    private static final int[] AC_CHROMA_VALUES = {
+            0x00, 0x01, 0x02, 0x03, 0x11, 0x04, 0x05, 0x21, 0x31, 0x06, 0x12, 0x41, 0x51, 0x07, 0x61, 0x71,
+            0x13, 0x22, 0x32, 0x81, 0x08, 0x14, 0x42, 0x91, 0xa1, 0xb1, 0xc1, 0x09, 0x23, 0x33, 0x52, 0xf0,
+            0x15, 0x62, 0x72, 0xd1, 0x0a, 0x16, 0x24, 0x34, 0xe1, 0x25, 0xf1, 0x17, 0x18, 0x19, 0x1a, 0x26,
+            0x27, 0x28, 0x29, 0x2a, 0x35, 0x36, 0x37, 0x38, 0x39, 0x3a, 0x43, 0x44, 0x45, 0x46, 0x47, 0x48,
+            0x49, 0x4a, 0x53, 0x54, 0x55, 0x56, 0x57, 0x58, 0x59, 0x5a, 0x63, 0x64, 0x65, 0x66, 0x67, 0x68,
+            0x69, 0x6a, 0x73, 0x74, 0x75, 0x76, 0x77, 0x78, 0x79, 0x7a, 0x82, 0x83, 0x84, 0x85, 0x86, 0x87,
+            0x88, 0x89, 0x8a, 0x92, 0x93, 0x94, 0x95, 0x96, 0x97, 0x98, 0x99, 0x9a, 0xa2, 0xa3, 0xa4, 0xa5,
+            0xa6, 0xa7, 0xa8, 0xa9, 0xaa, 0xb2, 0xb3, 0xb4, 0xb5, 0xb6, 0xb7, 0xb8, 0xb9, 0xba, 0xc2, 0xc3,
+            0xc4, 0xc5, 0xc6, 0xc7, 0xc8, 0xc9, 0xca, 0xd2, 0xd3, 0xd4, 0xd5, 0xd6, 0xd7, 0xd8, 0xd9, 0xda,
+            0xe2, 0xe3, 0xe4, 0xe5, 0xe6, 0xe7, 0xe8, 0xe9, 0xea, 0xf2, 0xf3, 0xf4, 0xf5, 0xf6, 0xf7, 0xf8,
+            0xf9, 0xfa
+    };
+
+    // Codici e lunghezze per simbolo, indicizzati dal simbolo (0-255)
+    private static final int[][] DC_LUMA_HUFFMAN = buildHuffman(DC_LUMA_BITS, DC_VALUES);
+    private static final int[][] DC_CHROMA_HUFFMAN = buildHuffman(DC_CHROMA_BITS, DC_VALUES);
+    private static final int[][] AC_LUMA_HUFFMAN = buildHuffman(AC_LUMA_BITS, AC_LUMA_VALUES);
+    private static final int[][] AC_CHROMA_HUFFMAN = buildHuffman(AC_CHROMA_BITS, AC_CHROMA_VALUES);
+
+    private static ForkJoinPool sharedPool;
+
+    private final ForkJoinPool pool;
+
+    // Tabelle della qualita' corrente
+    private int tablesQuality = -1;
+    private final int[] lumaQuant = new int[64];
+    private final int[] chromaQuant = new int[64];
+    private final float[] lumaDivisors = new float[64];
+    private final float[] chromaDivisors = new float[64];
+
+    // Frame corrente, letto dalle strisce
+    private byte[] nv21;
+    private int width;
+    private int height;
+    private int mcusPerRow;
+    private int rowsPerStripe;
+    private int stripeCount;
+
+    private Stripe[] stripes = new Stripe[0];
+    private final RecursiveAction root = new RecursiveAction() {
+        // I task non vengono mai serializzati
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected void compute() {
+            for (int i = 1; i < stripeCount; i++) {
+                stripes[i].fork();
+            }
+            stripes[0].invoke();
+            for (int i = 1; i < stripeCount; i++) {
+                stripes[i].join();
+            }
+        }
+    };
+
+    /** Usa un pool condiviso con un thread per core. */
+    public StripedJpegEncoder() {
+        this(getSharedPool());
+    }
+
+    public StripedJpegEncoder(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    private static synchronized ForkJoinPool getSharedPool() {
+        if (sharedPool == null) {
+            sharedPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        }
+        return sharedPool;
+    }
+
+    @Override
+    public void encode(byte[] nv21, int width, int height, int quality, OutputStream out) throws IOException {
+        // SOF0 ha dimensioni a 16 bit
+        if (width <= 0 || height <= 0 || width > 65535 || height > 65535
+                || nv21.length < YuvConverter.nv21Size(width, height)) {
+            throw new IllegalArgumentException("Invalid NV21 frame " + width + "x" + height);
+        }
+        if (quality != tablesQuality) {
+            buildQuantTables(Math.max(1, Math.min(quality, 100)));
+            tablesQuality = quality;
+        }
+        this.nv21 = nv21;
+        this.width = width;
+        this.height = height;
+        mcusPerRow = (width + 15) / 16;
+        int mcuRows = (height + 15) / 16;
+        int threads = (long) width * height >= MIN_PARALLEL_PIXELS ? pool.getParallelism() : 1;
+        // Con un solo thread le strisce aggiungerebbero solo marker di restart
+        int targetStripes = threads > 1 ? Math.min(mcuRows, threads * STRIPES_PER_THREAD) : 1;
+        rowsPerStripe = (mcuRows + targetStripes - 1) / targetStripes;
+        rowsPerStripe = Math.max(1, Math.min(rowsPerStripe, MAX_RESTART_INTERVAL / mcusPerRow));
+        stripeCount = (mcuRows + rowsPerStripe - 1) / rowsPerStripe;
+        if (stripes.length < stripeCount) {
+            Stripe[] grown = Arrays.copyOf(stripes, stripeCount);
+            for (int i = stripes.length; i < stripeCount; i++) {
+                grown[i] = new Stripe();
+            }
+            stripes = grown;
+        }
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i].reinitialize();
+            stripes[i].firstMcuRow = i * rowsPerStripe;
+            stripes[i].endMcuRow = Math.min(mcuRows, (i + 1) * rowsPerStripe);
+        }
+
+        try {
+            if (stripeCount == 1) {
+                stripes[0].invoke();
+            } else {
+                root.reinitialize();
+                pool.invoke(root);
+            }
+        } finally {
+            this.nv21 = null;
+        }
+
+        writeHeaders(out, stripeCount > 1 ? mcusPerRow * rowsPerStripe : 0);
+        for (int i = 0; i < stripeCount; i++) {
+            out.write(stripes[i].data, 0, stripes[i].length);
+            if (i < stripeCount - 1) {
+                out.write(0xFF);
+                out.write(0xD0 + (i & 7));
+            }
+        }
+        out.write(0xFF);
+        out.write(0xD9);
+    }
+
+    // Striscia di righe di MCU con buffer di uscita e blocchi propri
+    private final class Stripe extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        int firstMcuRow;
+        int endMcuRow;
+        byte[] data = new byte[16 * 1024];
+        int length;
+        private long bitBuffer;
+        private int bitCount;
+        private final float[] block = new float[64];
+        private final int[] coefficients = new int[64];
+        private int predY;
+        private int predCb;
+        private int predCr;
+
+        @Override
+        protected void compute() {
+            length = 0;
+            bitBuffer = 0;
+            bitCount = 0;
+            predY = 0;
+            predCb = 0;
+            predCr = 0;
+            int chromaOffset = width * height;
+            int chromaStride = 2 * ((width + 1) / 2);
+            for (int mcuRow = firstMcuRow; mcuRow < endMcuRow; mcuRow++) {
+                int y = mcuRow * 16;
+                for (int mcu = 0; mcu < mcusPerRow; mcu++) {
+                    int x = mcu * 16;
+                    predY = encodeLumaBlock(x, y, predY);
+                    predY = encodeLumaBlock(x + 8, y, predY);
+                    predY = encodeLumaBlock(x, y + 8, predY);
+                    predY = encodeLumaBlock(x + 8, y + 8, predY);
+                    // NV21: V (Cr) nei byte pari, U (Cb) nei dispari
+                    loadChromaBlock(chromaOffset, chromaStride, x / 2, y / 2, 1);
+                    predCb = encodeBlock(chromaDivisors, DC_CHROMA_HUFFMAN, AC_CHROMA_HUFFMAN, predCb);
+                    loadChromaBlock(chromaOffset, chromaStride, x / 2, y / 2, 0);
+                    predCr = encodeBlock(chromaDivisors, DC_CHROMA_HUFFMAN, AC_CHROMA_HUFFMAN, predCr);
+                }
+            }
+            // Fine dell'intervallo di restart: bit restanti completati con 1
+            if (bitCount > 0) {
+                writeBits((1 << (8 - bitCount)) - 1, 8 - bitCount);
+            }
+        }
+
+        private int encodeLumaBlock(int x, int y, int pred) {
+            // Fuori dall'immagine si replicano i pixel del bordo
+            for (int r = 0; r < 8; r++) {
+                int row = Math.min(y + r, height - 1) * width;
+                for (int c = 0; c < 8; c++) {
+                    block[r * 8 + c] = (nv21[row + Math.min(x + c, width - 1)] & 0xFF) - 128;
+                }
+            }
+            return encodeBlock(lumaDivisors, DC_LUMA_HUFFMAN, AC_LUMA_HUFFMAN, pred);
+        }
+
+        private void loadChromaBlock(int offset, int stride, int x, int y, int channel) {
+            int chromaWidth = (width + 1) / 2;
+            int chromaHeight = (height + 1) / 2;
+            for (int r = 0; r < 8; r++) {
+                int row = offset + Math.min(y + r, chromaHeight - 1) * stride + channel;
+                for (int c = 0; c < 8; c++) {
+                    block[r * 8 + c] = (nv21[row + 2 * Math.min(x + c, chromaWidth - 1)] & 0xFF) - 128;
+                }
+            }
+        }
+
+        // DCT, quantizzazione e codifica Huffman del blocco; ritorna il nuovo predittore DC
+        private int encodeBlock(float[] divisors, int[][] dcTable, int[][] acTable, int pred) {
+            forwardDct(block);
+            for (int i = 0; i < 64; i++) {
+                coefficients[i] = Math.round(block[i] * divisors[i]);
+            }
+            int dc = coefficients[0];
+            int diff = dc - pred;
+            int size = bitLength(diff);
+            writeBits(dcTable[0][size], dcTable[1][size]);
+            if (size > 0) {
+                writeBits(diff < 0 ? diff - 1 : diff, size);
+            }
+            int run = 0;
+            for (int k = 1; k < 64; k++) {
+                int value = coefficients[ZIGZAG[k]];
+                if (value == 0) {
+                    run++;
+                    continue;
+                }
+                while (run > 15) {
+                    // ZRL: 16 zeri
+                    writeBits(acTable[0][0xF0], acTable[1][0xF0]);
+                    run -= 16;
+                }
+                size = bitLength(value);
+                int symbol = (run << 4) | size;
+                writeBits(acTable[0][symbol], acTable[1][symbol]);
+                writeBits(value < 0 ? value - 1 : value, size);
+                run = 0;
+            }
+            if (run > 0) {
+                // EOB
+                writeBits(acTable[0][0], acTable[1][0]);
+            }
+            return dc;
+        }
+
+        private void writeBits(int bits, int count) {
+            bitBuffer = (bitBuffer << count) | (bits & ((1 << count) - 1));
+            bitCount += count;
+            while (bitCount >= 8) {
+                int b = (int) (bitBuffer >>> (bitCount - 8)) & 0xFF;
+                if (length + 2 > data.length) {
+                    data = Arrays.copyOf(data, data.length * 2);
+                }
+                data[length++] = (byte) b;
+                if (b == 0xFF) {
+                    // Byte stuffing
+                    data[length++] = 0;
+                }
+                bitCount -= 8;
+            }
+            bitBuffer &= (1L << bitCount) - 1;
+        }
+    }
+
+    private static int bitLength(int value) {
+        return value == 0 ? 0 : 32 - Integer.numberOfLeadingZeros(Math.abs(value));
+    }
+
+    private void buildQuantTables(int quality) {
+        int scale = quality < 50 ? 5000 / quality : 200 - quality * 2;
+        for (int i = 0; i < 64; i++) {
+            lumaQuant[i] = Math.max(1, Math.min((LUMA_QUANT[i] * scale + 50) / 100, 255));
+            chromaQuant[i] = Math.max(1, Math.min((CHROMA_QUANT[i] * scale + 50) / 100, 255));
+            // La DCT AAN lascia i coefficienti scalati: il fattore entra nel divisore
+            double aan = AAN_SCALE[i / 8] * AAN_SCALE[i % 8] * 8;
+            lumaDivisors[i] = (float) (1.0 / (lumaQuant[i] * aan));
+            chromaDivisors[i] = (float) (1.0 / (chromaQuant[i] * aan));
+        }
+    }
+
+    // DCT 8x8 float AAN in place (jfdctflt di libjpeg): righe poi colonne
+    private static void forwardDct(float[] d) {
+        for (int pass = 0; pass < 2; pass++) {
+            int step = pass == 0 ? 1 : 8;
+            int lineStep = pass == 0 ? 8 : 1;
+            for (int line = 0; line < 8; line++) {
+                int o = line * lineStep;
+                float tmp0 = d[o] + d[o + 7 * step];
+                float tmp7 = d[o] - d[o + 7 * step];
+                float tmp1 = d[o + step] + d[o + 6 * step];
+                float tmp6 = d[o + step] - d[o + 6 * step];
+                float tmp2 = d[o + 2 * step] + d[o + 5 * step];
+                float tmp5 = d[o + 2 * step] - d[o + 5 * step];
+                float tmp3 = d[o + 3 * step] + d[o + 4 * step];
+                float tmp4 = d[o + 3 * step] - d[o + 4 * step];
+
+                float tmp10 = tmp0 + tmp3;
+                float tmp13 = tmp0 - tmp3;
+                float tmp11 = tmp1 + tmp2;
+                float tmp12 = tmp1 - tmp2;
+                d[o] = tmp10 + tmp11;
+                d[o + 4 * step] = tmp10 - tmp11;
+                float z1 = (tmp12 + tmp13) * 0.707106781f;
+                d[o + 2 * step] = tmp13 + z1;
+                d[o + 6 * step] = tmp13 - z1;
+
+                tmp10 = tmp4 + tmp5;
+                tmp11 = tmp5 + tmp6;
+                tmp12 = tmp6 + tmp7;
+                float z5 = (tmp10 - tmp12) * 0.382683433f;
+                float z2 = 0.541196100f * tmp10 + z5;
+                float z4 = 1.306562965f * tmp12 + z5;
+                float z3 = tmp11 * 0.707106781f;
+                float z11 = tmp7 + z3;
+                float z13 = tmp7 - z3;
+                d[o + 5 * step] = z13 + z2;
+                d[o + 3 * step] = z13 - z2;
+                d[o + step] = z11 + z4;
+                d[o + 7 * step] = z11 - z4;
+            }
+        }
+    }
+
+    private void writeHeaders(OutputStream out, int restartInterval) throws IOException {
+        // SOI + APP0 JFIF 1.01
+        writeBytes(out, 0xFF, 0xD8, 0xFF, 0xE0, 0, 16, 'J', 'F', 'I', 'F', 0, 1, 1, 0, 0, 1, 0, 1, 0, 0);
+        // DQT: due tabelle a 8 bit in ordine zig-zag
+        writeBytes(out, 0xFF, 0xDB, 0, 2 + 2 * 65);
+        out.write(0);
+        for (int k = 0; k < 64; k++) {
+            out.write(lumaQuant[ZIGZAG[k]]);
+        }
+        out.write(1);
+        for (int k = 0; k < 64; k++) {
+            out.write(chromaQuant[ZIGZAG[k]]);
+        }
+        // SOF0: Y 2x2 con tabella 0, Cb e Cr 1x1 con tabella 1
+        writeBytes(out, 0xFF, 0xC0, 0, 17, 8, height >> 8, height & 0xFF, width >> 8, width & 0xFF, 3,
+                1, 0x22, 0, 2, 0x11, 1, 3, 0x11, 1);
+        writeHuffmanTable(out, 0x00, DC_LUMA_BITS, DC_VALUES);
+        writeHuffmanTable(out, 0x10, AC_LUMA_BITS, AC_LUMA_VALUES);
+        writeHuffmanTable(out, 0x01, DC_CHROMA_BITS, DC_VALUES);
+        writeHuffmanTable(out, 0x11, AC_CHROMA_BITS, AC_CHROMA_VALUES);
+        if (restartInterval > 0) {
+            writeBytes(out, 0xFF, 0xDD, 0, 4, restartInterval >> 8, restartInterval & 0xFF);
+        }
+        // SOS: tre componenti, baseline (Ss=0, Se=63, Ah/Al=0)
+        writeBytes(out, 0xFF, 0xDA, 0, 12, 3, 1, 0x00, 2, 0x11, 3, 0x11, 0, 63, 0);
+    }
+
+    private static void writeHuffmanTable(OutputStream out, int classAndId, int[] bits, int[] values) throws IOException {
+        int length = 2 + 1 + 16 + values.length;
+        writeBytes(out, 0xFF, 0xC4, length >> 8, length & 0xFF, classAndId);
+        for (int count : bits) {
+            out.write(count);
+        }
+        for (int value : values) {
+            out.write(value);
+        }
+    }
+
+    private static void writeBytes(OutputStream out, int... bytes) throws IOException {
+        for (int b : bytes) {
+            out.write(b);
+        }
+    }
+
+    // Codici canonici: [0][simbolo] = codice, [1][simbolo] = lunghezza
+    private static int[][] buildHuffman(int[] bits, int[] values) {
+        int[][] table = new int[2][256];
+        int code = 0;
+        int k = 0;
+        for (int length = 1; length <= 16; length++) {
+            for (int i = 0; i < bits[length - 1]; i++) {
+                table[0][values[k]] = code++;
+                table[1][values[k]] = length;
+                k++;
+            }
+            code <<= 1;
+        }
+        return table;
+    }
+}
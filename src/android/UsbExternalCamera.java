@@ -1,30 +1,18 @@
 package com.cordova.plugin;
 
 // Aggiungi questo importo in cima al file
-import android.hardware.usb.UsbDevice;
 import android.hardware.usb.UsbManager;
-import java.util.HashMap;
-import java.util.List;
-import android.view.Surface;
 import android.Manifest;
 import android.content.Context;
 import android.content.pm.PackageManager;
 import android.graphics.ImageFormat;
-import android.graphics.Rect;
-import android.graphics.YuvImage;
 import android.hardware.camera2.*;
 import android.hardware.camera2.params.StreamConfigurationMap;
-import android.hardware.camera2.CaptureFailure;
-import android.media.Image;
-import android.media.ImageReader;
-import android.os.Environment;
 import android.os.Handler;
 import android.os.HandlerThread;
-import android.util.Base64;
+import android.os.Looper;
 import android.util.Log;
 import android.util.Size;
-import androidx.annotation.NonNull;
-import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 
 import org.apache.cordova.CallbackContext;
@@ -34,419 +22,447 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.ByteArrayOutputStream;
-import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Date;
-import java.util.Locale;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 public class UsbExternalCamera extends CordovaPlugin {
     private static final String TAG = "UsbExternalCamera";
     private static final int PERMISSION_REQUEST_CODE = 1001;
     
-    private CameraManager cameraManager;
-    private CameraDevice cameraDevice;
-    private CameraCaptureSession captureSession;
-    private ImageReader imageReader;
-    private HandlerThread backgroundThread;
-    private Handler backgroundHandler;
-    
-    private String externalCameraId;
-    private CallbackContext frameCallback;
-    private CallbackContext errorCallback;
+    // Preferenza config.xml: budget globale di pixel al secondo (0 = illimitato)
+    private static final String PREF_MAX_PIXELS_PER_SECOND = "UsbCameraMaxPixelsPerSecond";
+    // Preferenza config.xml: scoperta della camera e thread camera pronti prima della prima open
+    private static final String PREF_PREWARM = "UsbCameraPrewarm";
     
-    private int previewWidth = 1280;
-    private int previewHeight = 720;
-    private int previewFps = 30;
+    private CameraInventory cameraInventory;
     
-    private boolean isPreviewActive = false;
-    private CallbackContext pendingOpenCallback;
-    private JSONArray pendingOpenArgs;
+    // Sessioni aperte per cameraId, ognuna con thread, reader, callback e statistiche propri
+    private final Map<String, CameraSession> sessions = Collections.synchronizedMap(new LinkedHashMap<>());
+    private PixelBudget pixelBudget = new PixelBudget(0);
+    // Lock per cameraId: open concorrenti della stessa camera si sostituiscono in ordine.
+    // La voce resta finche' c'e' una open in corso o una sessione aperta della camera
+    private final Map<String, OpenLock> openLocks = new HashMap<>();
+    // Sorgenti dei frame per i plugin nativi, per cameraId; restano valide tra open e close
+    private final Map<String, FrameSource> frameSources = new HashMap<>();
     
-    // Nuovi campi per single-session capture
-    private ImageReader stillReader;
-    private CallbackContext pendingPhotoCallback;
-    
-    private boolean isCameraReady = false;
-    
-    // Variabili per autofocus - CORREGGI I TIPI
-    private int autofocusMode = CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE; // int invece di String
-    private boolean manualFocusEnabled = false;
-    private float focusDistance = 0.0f;
-    
-    // Variabili per esposizione - CORREGGI I TIPI  
-    private int exposureMode = CaptureRequest.CONTROL_AE_MODE_ON; // int invece di String
-    private boolean manualExposureEnabled = false;
-    private long exposureTime = 0;
-    private int iso = 0;
-    private int exposureCompensation = 0;
+    // Thread camera avviato dal prewarm, ceduto alla prima sessione se e' della stessa camera,
+    // altrimenti fermato: dopo la prima open il prewarm non serve piu'
+    private String prewarmedCameraId;
+    private HandlerThread prewarmedThread;
+    private boolean prewarmTaken = false;
     
+    // Streaming periodico delle statistiche di una sessione (solo main thread)
+    private final Handler statsHandler = new Handler(Looper.getMainLooper());
+    private CallbackContext statsCallback;
+    private CameraSession statsSession;
+    private long statsIntervalMs;
+    private final Runnable statsTicker = new Runnable() {
+        @Override
+        public void run() {
+            CallbackContext callback = statsCallback;
+            if (callback == null) {
+                return;
+            }
+            try {
+                PluginResult result = new PluginResult(PluginResult.Status.OK, statsSession.buildStats());
+                result.setKeepCallback(true);
+                callback.sendPluginResult(result);
+            } catch (JSONException e) {
+                Log.e(TAG, "Error streaming stats", e);
+            }
+            statsHandler.postDelayed(this, statsIntervalMs);
+        }
+    };
+
+    @Override
+    protected void pluginInitialize() {
+        pixelBudget = new PixelBudget(preferences.getInteger(PREF_MAX_PIXELS_PER_SECOND, 0));
+        getCameraInventory();
+        if (preferences.getBoolean(PREF_PREWARM, false)) {
+            cordova.getThreadPool().execute(this::prewarm);
+        }
+    }
+
+    // Costruisce lo snapshot dell'inventario, risolve la camera USB e avvia il suo thread
+    private void prewarm() {
+        long start = System.nanoTime();
+        try {
+            String cameraId = resolveCameraId(null);
+            HandlerThread thread = new HandlerThread("CameraBackground-" + cameraId);
+            thread.start();
+            synchronized (this) {
+                if (prewarmTaken || prewarmedThread != null) {
+                    // Una open e' arrivata prima: il thread non serve piu'
+                    thread.quitSafely();
+                    return;
+                }
+                prewarmedCameraId = cameraId;
+                prewarmedThread = thread;
+            }
+            Log.d(TAG, "Prewarmed camera " + cameraId + " in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        } catch (Exception e) {
+            Log.w(TAG, "Camera prewarm failed", e);
+        }
+    }
+
+    private synchronized HandlerThread takePrewarmedThread(String cameraId) {
+        prewarmTaken = true;
+        HandlerThread thread = prewarmedThread;
+        prewarmedThread = null;
+        if (thread != null && !cameraId.equals(prewarmedCameraId)) {
+            Log.d(TAG, "Prewarmed camera " + prewarmedCameraId + " not opened, stopping its thread");
+            thread.quitSafely();
+            thread = null;
+        }
+        prewarmedCameraId = null;
+        return thread;
+    }
+
+    /**
+     * Sorgente dei frame di anteprima di {@code cameraId} per altri plugin nativi, ottenuta con
+     * {@code ((UsbExternalCamera) webView.getPluginManager().getPlugin("UsbExternalCamera")).getFrameSource(id)}.
+     * Ci si puo' iscrivere anche prima di open(); i frame arrivano mentre la camera e' aperta.
+     */
+    public FrameSource getFrameSource(String cameraId) {
+        if (cameraId == null || cameraId.isEmpty()) {
+            throw new IllegalArgumentException("cameraId required");
+        }
+        synchronized (frameSources) {
+            FrameSource source = frameSources.get(cameraId);
+            if (source == null) {
+                source = new FrameSource(cameraId);
+                frameSources.put(cameraId, source);
+            }
+            return source;
+        }
+    }
+
+    @Override
+    public void onDestroy() {
+        stopStatsStream();
+        for (CameraSession session : snapshotSessions()) {
+            session.close();
+        }
+        sessions.clear();
+        synchronized (frameSources) {
+            for (FrameSource source : frameSources.values()) {
+                source.close();
+            }
+            frameSources.clear();
+        }
+        synchronized (this) {
+            prewarmTaken = true;
+            if (prewarmedThread != null) {
+                prewarmedThread.quitSafely();
+                prewarmedThread = null;
+            }
+        }
+        if (cameraInventory != null) {
+            cameraInventory.stop();
+        }
+        super.onDestroy();
+    }
+
+    // Inventario camere condiviso da listCameras e dalle sessioni
+    private synchronized CameraInventory getCameraInventory() {
+        if (cameraInventory == null) {
+            cameraInventory = new CameraInventory(cordova.getActivity());
+            cameraInventory.start();
+        }
+        return cameraInventory;
+    }
+
     @Override
     public boolean execute(String action, JSONArray args, CallbackContext callbackContext) throws JSONException {
         switch (action) {
             case "open":
                 return openCamera(args, callbackContext);
+            case "listCameras":  // ← NUOVO COMANDO
+                return listCameras(callbackContext);
+            case "setPixelBudget":
+                return setPixelBudget(args, callbackContext);
+            case "resetStats":
+                return resetStats(args, callbackContext);
+            case "stopStats":
+                return stopStats(callbackContext);
+            default:
+                break;
+        }
+        
+        // Azioni di sessione: [options] con options.cameraId, [cameraId] o [count, cameraId]
+        CameraSession session;
+        switch (action) {
+            case "takeBurst":
+            case "startRecording":
+            case "reconfigure":
+            case "getStats": {
+                JSONObject options = args.optJSONObject(0);
+                session = findSession(options != null ? options.optString("cameraId", null) : null, callbackContext);
+                break;
+            }
+            case "ackFrame":
+                session = findSession(args.isNull(1) ? null : args.optString(1, null), callbackContext);
+                break;
             case "stopPreview":
-                return stopPreview(callbackContext);
+            case "pausePreview":
+            case "resumePreview":
             case "takePhoto":
-                return takePhoto(callbackContext);
             case "close":
-                return closeCamera(callbackContext);
-            case "listCameras":  // ← NUOVO COMANDO
-                return listCameras(callbackContext);
+            case "getFlowStats":
+            case "stopRecording":
+            case "getStreamConfig":
+                session = findSession(args.isNull(0) ? null : args.optString(0, null), callbackContext);
+                break;
+            default:
+                return false;
+        }
+        if (session == null) {
+            return true;
+        }
+        
+        switch (action) {
+            case "stopPreview":
+                return session.stopPreview(callbackContext);
+            case "pausePreview":
+                return session.pausePreview(callbackContext);
+            case "resumePreview":
+                return session.resumePreview(callbackContext);
+            case "reconfigure":
+                return session.reconfigure(args.optJSONObject(0), callbackContext);
+            case "takePhoto":
+                return session.takePhoto(callbackContext);
+            case "takeBurst":
+                return session.takeBurst(args, callbackContext);
+            case "close":
+                // Solo questa sessione: una open successiva puo' averla gia' sostituita
+                sessions.remove(session.getCameraId(), session);
+                pruneOpenLock(session.getCameraId());
+                return session.closeCamera(callbackContext);
+            case "ackFrame":
+                return session.ackFrame(args.optInt(0, 1), callbackContext);
+            case "getFlowStats":
+                return session.getFlowStats(callbackContext);
+            case "startRecording":
+                return session.startRecording(args, callbackContext);
+            case "stopRecording":
+                return session.stopRecording(callbackContext);
+            case "getStreamConfig":
+                return session.getStreamConfig(callbackContext);
+            case "getStats":
+                return getStats(session, args, callbackContext);
             default:
                 return false;
         }
     }
 
-    private boolean openCamera(JSONArray args, CallbackContext callbackContext) throws JSONException {
-        JSONObject options = args.optJSONObject(0);
-        if (options != null) {
-            previewWidth = options.optInt("width", 1280);
-            previewHeight = options.optInt("height", 720);
-            previewFps = options.optInt("fps", 30);
-            
-            String requestedCameraId = options.optString("cameraId", null);
-            if (requestedCameraId != null && !requestedCameraId.isEmpty()) {
-                externalCameraId = requestedCameraId;
-            }
-            
-            // ← AGGIUNTA: Parametri autofocus
-            String afMode = options.optString("autofocusMode", "continuous");
-            switch (afMode) {
-                case "manual":
-                    autofocusMode = CaptureRequest.CONTROL_AF_MODE_OFF;
-                    manualFocusEnabled = true;
-                    focusDistance = (float) options.optDouble("focusDistance", 0.0);
-                    break;
-                case "single":
-                    autofocusMode = CaptureRequest.CONTROL_AF_MODE_AUTO;
-                    break;
-                case "continuous":
-                default:
-                    autofocusMode = CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE;
-                    break;
+    // Sessione per cameraId; senza id va bene solo se ne e' aperta una
+    private CameraSession findSession(String cameraId, CallbackContext callbackContext) {
+        if (cameraId != null && !cameraId.isEmpty()) {
+            CameraSession session = sessions.get(cameraId);
+            if (session == null) {
+                callbackContext.error("Camera " + cameraId + " not opened");
             }
+            return session;
         }
-        
-        frameCallback = callbackContext;
+        List<CameraSession> open = snapshotSessions();
+        if (open.size() == 1) {
+            return open.get(0);
+        }
+        callbackContext.error(open.isEmpty() ? "Camera not opened" : "cameraId required: " + open.size() + " cameras are open");
+        return null;
+    }
+
+    private List<CameraSession> snapshotSessions() {
+        synchronized (sessions) {
+            return new ArrayList<>(sessions.values());
+        }
+    }
+
+    private boolean openCamera(JSONArray args, CallbackContext callbackContext) {
+        JSONObject options = args.optJSONObject(0);
+        String requestedCameraId = options != null ? options.optString("cameraId", null) : null;
         
         cordova.getThreadPool().execute(() -> {
             try {
-                initializeCamera();
+                String cameraId = resolveCameraId(requestedCameraId);
+                OpenLock lock = acquireOpenLock(cameraId);
+                try {
+                    synchronized (lock) {
+                        // Una nuova open sulla stessa camera sostituisce la sessione precedente
+                        CameraSession previous = sessions.remove(cameraId);
+                        if (previous != null) {
+                            previous.close();
+                        }
+                        CameraSession session = new CameraSession(cameraId, cordova, getCameraInventory(), pixelBudget,
+                                getFrameSource(cameraId));
+                        HandlerThread warmThread = takePrewarmedThread(cameraId);
+                        if (warmThread != null) {
+                            session.adoptBackgroundThread(warmThread);
+                        }
+                        sessions.put(cameraId, session);
+                        if (!session.openCamera(options, callbackContext)) {
+                            sessions.remove(cameraId, session);
+                        }
+                    }
+                } finally {
+                    releaseOpenLock(cameraId, lock);
+                }
             } catch (Exception e) {
                 Log.e(TAG, "Error opening camera", e);
-                if (frameCallback != null) {
-                    frameCallback.error("Failed to open camera: " + e.getMessage());
-                }
+                callbackContext.error("Failed to open camera: " + e.getMessage());
             }
         });
-        
         return true;
     }
-    
-    // Metodo semplificato per controllo permessi USB
-    private boolean checkUsbPermissions() {
-        // Per fotocamere USB esterne, controlla solo i permessi USB
-        UsbManager usbManager = (UsbManager) cordova.getActivity().getSystemService(Context.USB_SERVICE);
-        return usbManager != null;
+
+    // Lock di open per una camera, con il numero di open che lo usano
+    private static final class OpenLock {
+        int users;
     }
-    
-    // RIMUOVI o commenta questi metodi se non servono più
-    // private boolean checkPermissions() { ... }
-    // private void requestPermissions() { ... }
-    // @Override onRequestPermissionResult() { ... }
 
-    
-    private boolean stopPreview(CallbackContext callbackContext) {
-        try {
-            isPreviewActive = false;
-            if (captureSession != null) {
-                captureSession.stopRepeating();
+    private OpenLock acquireOpenLock(String cameraId) {
+        synchronized (openLocks) {
+            OpenLock lock = openLocks.get(cameraId);
+            if (lock == null) {
+                lock = new OpenLock();
+                openLocks.put(cameraId, lock);
             }
-            callbackContext.success("Preview stopped");
-        } catch (Exception e) {
-            Log.e(TAG, "Error stopping preview", e);
-            callbackContext.error("Failed to stop preview: " + e.getMessage());
+            lock.users++;
+            return lock;
         }
-        return true;
     }
 
-    private boolean takePhoto(CallbackContext callbackContext) {
-        if (cameraDevice == null) {
-            callbackContext.error("Camera not opened");
-            return true;
+    private void releaseOpenLock(String cameraId, OpenLock lock) {
+        synchronized (openLocks) {
+            lock.users--;
+            pruneOpenLock(cameraId);
         }
-    
-        pendingPhotoCallback = callbackContext;
-        cordova.getThreadPool().execute(() -> {
-            lockFocusThenCapture();
-        });
-        
-        return true;
     }
 
-    private boolean closeCamera(CallbackContext callbackContext) {
-        try {
-            closeBackgroundThread();
-            if (captureSession != null) {
-                captureSession.close();
-                captureSession = null;
-            }
-            if (cameraDevice != null) {
-                cameraDevice.close();
-                cameraDevice = null;
-            }
-            if (imageReader != null) {
-                imageReader.close();
-                imageReader = null;
-            }
-            if (stillReader != null) {
-                stillReader.close();
-                stillReader = null;
+    // Rimuove il lock se nessuna open lo usa e la camera non ha piu' sessioni; una open in
+    // attesa lo tiene in vita, quindi due open della stessa camera non hanno mai lock diversi
+    private void pruneOpenLock(String cameraId) {
+        synchronized (openLocks) {
+            OpenLock lock = openLocks.get(cameraId);
+            if (lock != null && lock.users == 0 && !sessions.containsKey(cameraId)) {
+                openLocks.remove(cameraId);
             }
-            isPreviewActive = false;
-            frameCallback = null;
-            pendingPhotoCallback = null;
-            callbackContext.success("Camera closed");
-        } catch (Exception e) {
-            Log.e(TAG, "Error closing camera", e);
-            callbackContext.error("Failed to close camera: " + e.getMessage());
         }
-        return true;
     }
 
-    private void initializeCamera() throws CameraAccessException {
-        cameraManager = (CameraManager) cordova.getActivity().getSystemService(Context.CAMERA_SERVICE);
-        
-        String[] cameraIds = cameraManager.getCameraIdList();
-        Log.d(TAG, "Found " + cameraIds.length + " cameras: " + Arrays.toString(cameraIds));
-        
-        // Se è specificato un cameraId, validalo prima di usarlo
-        if (externalCameraId != null && !externalCameraId.isEmpty()) {
-            // Verifica che l'ID esista
-            boolean cameraExists = false;
-            for (String id : cameraIds) {
-                if (id.equals(externalCameraId)) {
-                    cameraExists = true;
-                    break;
-                }
-            }
-            
-            if (cameraExists) {
-                Log.d(TAG, "Using specified camera ID: " + externalCameraId);
-                startBackgroundThread();
-                openCameraDevice();
-                return;
-            } else {
-                Log.w(TAG, "Specified camera ID " + externalCameraId + " not found. Available IDs: " + Arrays.toString(cameraIds));
-                throw new RuntimeException("Camera ID " + externalCameraId + " not found. Available cameras: " + Arrays.toString(cameraIds));
-            }
+    // cameraId richiesto oppure la prima camera USB esterna dell'inventario
+    private String resolveCameraId(String requestedCameraId) throws CameraAccessException {
+        CameraInventory.Snapshot snapshot = getCameraInventory().getSnapshot();
+        if (requestedCameraId != null && !requestedCameraId.isEmpty()) {
+            return requestedCameraId;
         }
-        
-        // ← NUOVO: Cerca USB camere con il metodo avanzato
-        for (String cameraId : cameraIds) {
-            CameraCharacteristics characteristics = cameraManager.getCameraCharacteristics(cameraId);
-            
-            if (isUsbExternalCamera(characteristics, cameraId)) {
-                externalCameraId = cameraId;
-                Log.d(TAG, "Found USB external camera: " + cameraId);
-                break;
+        for (CameraInventory.CameraEntry entry : snapshot.cameras.values()) {
+            if (entry.usbExternal) {
+                Log.d(TAG, "Found USB external camera: " + entry.id);
+                return entry.id;
             }
         }
-        
-        if (externalCameraId == null) {
-            throw new RuntimeException("No USB external camera found. Available cameras: " + Arrays.toString(cameraIds) + ". Use listCameras() to see detailed info and specify cameraId in options.");
-        }
-
-        Log.d(TAG, "Selected camera: " + externalCameraId);
-        startBackgroundThread();
-        openCameraDevice();
+        throw new RuntimeException("No USB external camera found. Available cameras: " + Arrays.toString(snapshot.cameraIds) + ". Use listCameras() to see detailed info and specify cameraId in options.");
     }
 
-    private void startBackgroundThread() {
-        backgroundThread = new HandlerThread("CameraBackground");
-        backgroundThread.start();
-        backgroundHandler = new Handler(backgroundThread.getLooper());
+    private boolean setPixelBudget(JSONArray args, CallbackContext callbackContext) {
+        try {
+            if (!args.isNull(0)) {
+                pixelBudget.setLimit(args.getLong(0));
+            }
+            JSONObject json = new JSONObject();
+            json.put("limit", pixelBudget.getLimit());
+            json.put("used", pixelBudget.getUsed());
+            JSONObject reservations = new JSONObject();
+            for (CameraSession session : snapshotSessions()) {
+                reservations.put(session.getCameraId(), session.getReservedPixelsPerSecond());
+            }
+            json.put("sessions", reservations);
+            callbackContext.success(json);
+        } catch (JSONException e) {
+            callbackContext.error("Invalid pixel budget: " + e.getMessage());
+        }
+        return true;
     }
 
-    private void closeBackgroundThread() {
-        if (backgroundThread != null) {
-            backgroundThread.quitSafely();
+    // getStats(): un solo risultato; getStats({intervalMs}): risultati periodici fino a stopStats
+    private boolean getStats(CameraSession session, JSONArray args, CallbackContext callbackContext) {
+        JSONObject options = args.optJSONObject(0);
+        long intervalMs = options != null ? options.optLong("intervalMs", 0) : 0;
+        if (intervalMs <= 0) {
             try {
-                backgroundThread.join();
-                backgroundThread = null;
-                backgroundHandler = null;
-            } catch (InterruptedException e) {
-                Log.e(TAG, "Error closing background thread", e);
+                callbackContext.success(session.buildStats());
+            } catch (JSONException e) {
+                callbackContext.error("Error reading stats: " + e.getMessage());
             }
+            return true;
         }
+        statsHandler.post(() -> {
+            stopStatsStream();
+            statsCallback = callbackContext;
+            statsSession = session;
+            statsIntervalMs = Math.max(intervalMs, 100);
+            statsHandler.post(statsTicker);
+        });
+        return true;
     }
 
-    private void openCameraDevice() throws CameraAccessException {
-        if (ActivityCompat.checkSelfPermission(cordova.getActivity(), Manifest.permission.CAMERA) != PackageManager.PERMISSION_GRANTED) {
-            return;
-        }
-        
-        cameraManager.openCamera(externalCameraId, new CameraDevice.StateCallback() {
-            @Override
-            public void onOpened(@NonNull CameraDevice camera) {
-                cameraDevice = camera;
-                try {
-                    createCameraPreviewSession();
-                } catch (Exception e) {
-                    Log.e(TAG, "Error creating preview session", e);
-                    if (frameCallback != null) {
-                        frameCallback.error("Failed to create preview session: " + e.getMessage());
-                    }
-                }
-            }
-
-            @Override
-            public void onDisconnected(@NonNull CameraDevice camera) {
-                camera.close();
-                cameraDevice = null;
-            }
+    private boolean stopStats(CallbackContext callbackContext) {
+        statsHandler.post(() -> {
+            stopStatsStream();
+            callbackContext.success();
+        });
+        return true;
+    }
 
-            @Override
-            public void onError(@NonNull CameraDevice camera, int error) {
-                camera.close();
-                cameraDevice = null;
-                if (frameCallback != null) {
-                    frameCallback.error("Camera error: " + error);
-                }
-            }
-        }, backgroundHandler);
+    // Solo main thread (o onDestroy)
+    private void stopStatsStream() {
+        statsHandler.removeCallbacks(statsTicker);
+        CallbackContext callback = statsCallback;
+        statsCallback = null;
+        statsSession = null;
+        if (callback != null) {
+            PluginResult result = new PluginResult(PluginResult.Status.NO_RESULT);
+            result.setKeepCallback(false);
+            callback.sendPluginResult(result);
+        }
     }
 
-    private void createCameraPreviewSession() throws CameraAccessException {
-        // Crea ImageReader per preview (YUV)
-        imageReader = ImageReader.newInstance(previewWidth, previewHeight, ImageFormat.YUV_420_888, 2);
-        imageReader.setOnImageAvailableListener(new ImageReader.OnImageAvailableListener() {
-            @Override
-            public void onImageAvailable(ImageReader reader) {
-                if (isPreviewActive && frameCallback != null) {
-                    Image image = reader.acquireLatestImage();
-                    if (image != null) {
-                        try {
-                            String base64 = convertImageToBase64(image);
-                            PluginResult result = new PluginResult(PluginResult.Status.OK, base64);
-                            result.setKeepCallback(true);
-                            frameCallback.sendPluginResult(result);
-                        } catch (Exception e) {
-                            Log.e(TAG, "Error processing frame", e);
-                        } finally {
-                            image.close();
-                        }
-                    }
-                }
+    // resetStats(cameraId); senza cameraId azzera tutte le sessioni
+    private boolean resetStats(JSONArray args, CallbackContext callbackContext) {
+        String cameraId = args.isNull(0) ? null : args.optString(0, null);
+        if (cameraId == null || cameraId.isEmpty()) {
+            for (CameraSession session : snapshotSessions()) {
+                session.resetStats();
             }
-        }, backgroundHandler);
-    
-        // Crea ImageReader per still capture (JPEG)
-        stillReader = ImageReader.newInstance(previewWidth, previewHeight, ImageFormat.JPEG, 1);
-        stillReader.setOnImageAvailableListener(new ImageReader.OnImageAvailableListener() {
-            @Override
-            public void onImageAvailable(ImageReader reader) {
-                Image image = reader.acquireLatestImage();
-                if (image != null && pendingPhotoCallback != null) {
-                    try {
-                        String filePath = saveImageToFile(image);
-                        pendingPhotoCallback.success(filePath);
-                    } catch (Exception e) {
-                        Log.e(TAG, "Error saving photo", e);
-                        pendingPhotoCallback.error("Failed to save photo: " + e.getMessage());
-                    } finally {
-                        image.close();
-                        pendingPhotoCallback = null;
-                    }
-                }
+        } else {
+            CameraSession session = findSession(cameraId, callbackContext);
+            if (session == null) {
+                return true;
             }
-        }, backgroundHandler);
-    
-        CaptureRequest.Builder previewRequestBuilder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
-        previewRequestBuilder.addTarget(imageReader.getSurface());
-    
-        // Crea sessione con entrambe le surface
-        List<Surface> outputs = Arrays.asList(imageReader.getSurface(), stillReader.getSurface());
-        cameraDevice.createCaptureSession(outputs,
-                new CameraCaptureSession.StateCallback() {
-                    @Override
-                    public void onConfigured(@NonNull CameraCaptureSession session) {
-                        if (cameraDevice == null) return;
-                        
-                        captureSession = session;
-                        try {
-                            previewRequestBuilder.set(CaptureRequest.CONTROL_AF_MODE, CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE);
-                            CaptureRequest previewRequest = previewRequestBuilder.build();
-                            captureSession.setRepeatingRequest(previewRequest, null, backgroundHandler);
-                            isPreviewActive = true;
-                        } catch (CameraAccessException e) {
-                            Log.e(TAG, "Error starting preview", e);
-                            if (frameCallback != null) {
-                                frameCallback.error("Failed to start preview: " + e.getMessage());
-                            }
-                        }
-                    }
-
-                    @Override
-                    public void onConfigureFailed(@NonNull CameraCaptureSession session) {
-                        if (frameCallback != null) {
-                            frameCallback.error("Failed to configure camera session");
-                        }
-                    }
-                }, null);
+            session.resetStats();
+        }
+        callbackContext.success();
+        return true;
     }
-
-
-    private String convertImageToBase64(Image image) throws IOException {
-        Image.Plane[] planes = image.getPlanes();
-        ByteBuffer yBuffer = planes[0].getBuffer();
-        ByteBuffer uBuffer = planes[1].getBuffer();
-        ByteBuffer vBuffer = planes[2].getBuffer();
-
-        int ySize = yBuffer.remaining();
-        int uSize = uBuffer.remaining();
-        int vSize = vBuffer.remaining();
-
-        byte[] nv21 = new byte[ySize + uSize + vSize];
-        yBuffer.get(nv21, 0, ySize);
-        vBuffer.get(nv21, ySize, vSize);
-        uBuffer.get(nv21, ySize + vSize, uSize);
-
-        YuvImage yuvImage = new YuvImage(nv21, ImageFormat.NV21, image.getWidth(), image.getHeight(), null);
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        yuvImage.compressToJpeg(new Rect(0, 0, image.getWidth(), image.getHeight()), 80, out);
-        byte[] jpegBytes = out.toByteArray();
-        
-        return Base64.encodeToString(jpegBytes, Base64.NO_WRAP);
+    
+    // Metodo semplificato per controllo permessi USB
+    private boolean checkUsbPermissions() {
+        // Per fotocamere USB esterne, controlla solo i permessi USB
+        UsbManager usbManager = (UsbManager) cordova.getActivity().getSystemService(Context.USB_SERVICE);
+        return usbManager != null;
     }
+    
+    // RIMUOVI o commenta questi metodi se non servono più
+    // private boolean checkPermissions() { ... }
+    // private void requestPermissions() { ... }
+    // @Override onRequestPermissionResult() { ... }
 
-    private String saveImageToFile(Image image) throws IOException {
-        ByteBuffer buffer = image.getPlanes()[0].getBuffer();
-        byte[] bytes = new byte[buffer.remaining()];
-        buffer.get(bytes);
-
-        String timeStamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date());
-        String fileName = "USB_CAM_" + timeStamp + ".jpg";
-        
-        File storageDir = new File(Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_PICTURES), "UsbCamera");
-        if (!storageDir.exists()) {
-            storageDir.mkdirs();
-        }
-        
-        File photoFile = new File(storageDir, fileName);
-        
-        try (FileOutputStream output = new FileOutputStream(photoFile)) {
-            output.write(bytes);
-        }
-        
-        return photoFile.getAbsolutePath();
-    }
 
     private boolean checkPermissions() {
         return ContextCompat.checkSelfPermission(cordova.getActivity(), Manifest.permission.CAMERA) == PackageManager.PERMISSION_GRANTED &&
@@ -472,79 +488,6 @@ public class UsbExternalCamera extends CordovaPlugin {
             default: return "OTHER(" + lensFacing + ")";
         }
     }
-    // ← NUOVO METODO: Identificazione affidabile USB camera
-    private boolean isUsbExternalCamera(CameraCharacteristics characteristics, String cameraId) {
-        try {
-            // 1. Controlla se è esplicitamente EXTERNAL
-            Integer lensFacing = characteristics.get(CameraCharacteristics.LENS_FACING);
-            if (lensFacing != null && lensFacing == CameraCharacteristics.LENS_FACING_EXTERNAL) {
-                return true;
-            }
-            
-            // 2. Controlla le capacità hardware tipiche delle USB camere
-            int[] capabilities = characteristics.get(CameraCharacteristics.REQUEST_AVAILABLE_CAPABILITIES);
-            if (capabilities != null) {
-                // USB camere spesso NON hanno certe capacità avanzate
-                boolean hasAdvancedFeatures = false;
-                for (int capability : capabilities) {
-                    if (capability == CameraCharacteristics.REQUEST_AVAILABLE_CAPABILITIES_MANUAL_SENSOR ||
-                        capability == CameraCharacteristics.REQUEST_AVAILABLE_CAPABILITIES_MANUAL_POST_PROCESSING ||
-                        capability == CameraCharacteristics.REQUEST_AVAILABLE_CAPABILITIES_RAW) {
-                        hasAdvancedFeatures = true;
-                        break;
-                    }
-                }
-                // Se NON ha funzioni avanzate, probabilmente è USB
-                if (!hasAdvancedFeatures && capabilities.length <= 2) {
-                    Log.d(TAG, "Camera " + cameraId + " identified as USB (limited capabilities)");
-                    return true;
-                }
-            }
-            
-            // 3. Controlla i formati supportati
-            StreamConfigurationMap configMap = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
-            if (configMap != null) {
-                Size[] jpegSizes = configMap.getOutputSizes(ImageFormat.JPEG);
-                Size[] yuvSizes = configMap.getOutputSizes(ImageFormat.YUV_420_888);
-                
-                // USB camere spesso hanno limitazioni sui formati
-                if (jpegSizes != null && yuvSizes != null) {
-                    // Se ha pochi formati o risoluzioni limitate, probabilmente è USB
-                    if (jpegSizes.length < 10 || yuvSizes.length < 5) {
-                        Log.d(TAG, "Camera " + cameraId + " identified as USB (limited formats)");
-                        return true;
-                    }
-                }
-            }
-            
-            // 4. Controlla il supporto autofocus
-            int[] afModes = characteristics.get(CameraCharacteristics.CONTROL_AF_AVAILABLE_MODES);
-            if (afModes != null && afModes.length <= 1) {
-                // USB camere spesso hanno autofocus limitato o assente
-                Log.d(TAG, "Camera " + cameraId + " identified as USB (limited autofocus)");
-                return true;
-            }
-            
-            // 5. Controlla l'ID numerico alto (USB camere spesso hanno ID > 1)
-            try {
-                int numericId = Integer.parseInt(cameraId);
-                if (numericId >= 2) {
-                    Log.d(TAG, "Camera " + cameraId + " possibly USB (high ID number)");
-                    return true;
-                }
-            } catch (NumberFormatException e) {
-                // ID non numerico, potrebbe essere USB
-                return true;
-            }
-            
-            return false;
-            
-        } catch (Exception e) {
-            Log.e(TAG, "Error analyzing camera " + cameraId, e);
-            return false;
-        }
-    }
-
     // ← NUOVO METODO: Informazioni dettagliate per debug
     private JSONObject getDeviceInfo(CameraCharacteristics characteristics) {
         JSONObject info = new JSONObject();
@@ -582,30 +525,6 @@ public class UsbExternalCamera extends CordovaPlugin {
         return info;
     }
 
-    // ← AGGIUNGI QUESTO METODO MANCANTE
-    private boolean isSimpleUsbCamera(CameraCharacteristics characteristics, String cameraId) {
-        try {
-            // 1. Controlla se è esplicitamente EXTERNAL
-            Integer lensFacing = characteristics.get(CameraCharacteristics.LENS_FACING);
-            if (lensFacing != null && lensFacing == CameraCharacteristics.LENS_FACING_EXTERNAL) {
-                return true;
-            }
-            
-            // 2. Se l'ID è >= 2, probabilmente è USB
-            try {
-                int numericId = Integer.parseInt(cameraId);
-                return numericId >= 2;
-            } catch (NumberFormatException e) {
-                // ID non numerico, potrebbe essere USB
-                return true;
-            }
-            
-        } catch (Exception e) {
-            Log.e(TAG, "Error checking USB camera: " + cameraId, e);
-            return false;
-        }
-    }
-
     // ← AGGIUNGI ANCHE QUESTO METODO
     private String getDeviceName(CameraCharacteristics characteristics, String cameraId) {
         try {
@@ -631,95 +550,23 @@ public class UsbExternalCamera extends CordovaPlugin {
         }
     }
     
-    // ← NUOVO METODO: Ottieni informazioni dettagliate USB
-    private JSONObject getUsbDeviceInfo(String cameraId) {
-        JSONObject usbInfo = new JSONObject();
-        try {
-            UsbManager usbManager = (UsbManager) cordova.getActivity().getSystemService(Context.USB_SERVICE);
-            HashMap<String, UsbDevice> deviceList = usbManager.getDeviceList();
-            
-            // Cerca dispositivi video USB
-            for (UsbDevice device : deviceList.values()) {
-                // Controlla se è un dispositivo video (classe 14 = Video)
-                if (device.getDeviceClass() == 14 || 
-                    device.getDeviceClass() == 239 || // Miscellaneous Device
-                    hasVideoInterface(device)) {
-                    
-                    String deviceName = device.getProductName();
-                    String manufacturerName = device.getManufacturerName();
-                    
-                    // Se troviamo una corrispondenza con l'ID camera
-                    if (deviceName != null && manufacturerName != null) {
-                        usbInfo.put("productName", deviceName);
-                        usbInfo.put("manufacturerName", manufacturerName);
-                        usbInfo.put("vendorId", device.getVendorId());
-                        usbInfo.put("productId", device.getProductId());
-                        usbInfo.put("deviceName", device.getDeviceName());
-                        usbInfo.put("fullName", manufacturerName + " " + deviceName);
-                        
-                        // Identifica specificamente Logitech
-                        if (manufacturerName.toLowerCase().contains("logitech") || 
-                            deviceName.toLowerCase().contains("logitech")) {
-                            usbInfo.put("isLogitech", true);
-                            usbInfo.put("displayName", "Logitech " + deviceName);
-                        } else {
-                            usbInfo.put("isLogitech", false);
-                            usbInfo.put("displayName", manufacturerName + " " + deviceName);
-                        }
-                        
-                        Log.d(TAG, "Found USB camera: " + manufacturerName + " " + deviceName);
-                        break;
-                    }
-                }
-            }
-            
-            // Se non troviamo info USB, usa fallback
-            if (!usbInfo.has("productName")) {
-                usbInfo.put("displayName", "USB Camera " + cameraId);
-                usbInfo.put("isLogitech", false);
-            }
-            
-        } catch (Exception e) {
-            Log.e(TAG, "Error getting USB device info", e);
-            try {
-                usbInfo.put("displayName", "USB Camera " + cameraId);
-                usbInfo.put("isLogitech", false);
-            } catch (JSONException je) {
-                // Ignore
-            }
-        }
-        return usbInfo;
-    }
-
-    // ← METODO HELPER: Controlla se ha interfaccia video
-    private boolean hasVideoInterface(UsbDevice device) {
-        for (int i = 0; i < device.getInterfaceCount(); i++) {
-            android.hardware.usb.UsbInterface usbInterface = device.getInterface(i);
-            // Classe 14 = Video, Sottoclasse 1 = Video Control, 2 = Video Streaming
-            if (usbInterface.getInterfaceClass() == 14) {
-                return true;
-            }
-        }
-        return false;
-    }
-
     // ← AGGIORNA IL METODO listCameras
     private boolean listCameras(CallbackContext callbackContext) {
         try {
-            CameraManager manager = (CameraManager) cordova.getActivity().getSystemService(Context.CAMERA_SERVICE);
-            String[] cameraIds = manager.getCameraIdList();
+            // Inventario in cache: characteristics e enumerazione USB solo dopo un cambiamento
+            CameraInventory.Snapshot inventory = getCameraInventory().getSnapshot();
             
             JSONArray cameras = new JSONArray();
-            for (String cameraId : cameraIds) {
-                CameraCharacteristics characteristics = manager.getCameraCharacteristics(cameraId);
+            for (CameraInventory.CameraEntry entry : inventory.cameras.values()) {
+                String cameraId = entry.id;
                 
                 JSONObject camera = new JSONObject();
                 camera.put("id", cameraId);
-                camera.put("isUsbCamera", isSimpleUsbCamera(characteristics, cameraId));
+                camera.put("isUsbCamera", entry.simpleUsb);
                 
-                if (isSimpleUsbCamera(characteristics, cameraId)) {
+                if (entry.simpleUsb) {
                     // ← NUOVO: Ottieni info USB dettagliate
-                    JSONObject usbInfo = getUsbDeviceInfo(cameraId);
+                    JSONObject usbInfo = inventory.usbInfo;
                     camera.put("name", usbInfo.optString("displayName", "USB Camera " + cameraId));
                     camera.put("manufacturer", usbInfo.optString("manufacturerName", "Unknown"));
                     camera.put("product", usbInfo.optString("productName", "Unknown"));
@@ -727,13 +574,12 @@ public class UsbExternalCamera extends CordovaPlugin {
                     camera.put("vendorId", usbInfo.optInt("vendorId", 0));
                     camera.put("productId", usbInfo.optInt("productId", 0));
                 } else {
-                    camera.put("name", getDeviceName(characteristics, cameraId));
+                    camera.put("name", getDeviceName(entry.characteristics, cameraId));
                     camera.put("isLogitech", false);
                 }
                 
-                Integer lensFacing = characteristics.get(CameraCharacteristics.LENS_FACING);
-                camera.put("lensFacing", lensFacing);
-                camera.put("facingName", getFacingName(lensFacing));
+                camera.put("lensFacing", entry.lensFacing);
+                camera.put("facingName", getFacingName(entry.lensFacing));
                 
                 cameras.put(camera);
             }
@@ -744,157 +590,4 @@ public class UsbExternalCamera extends CordovaPlugin {
         }
         return true;
     }
-
-        private void waitForFocusLock(CallbackContext callbackContext, int attemptCount) {
-        final int MAX_ATTEMPTS = 20; // 2 secondi massimo (20 x 100ms)
-        
-        if (attemptCount >= MAX_ATTEMPTS) {
-            Log.w(TAG, "Focus lock timeout after " + (MAX_ATTEMPTS * 100) + "ms, taking photo anyway");
-            performActualCapture(callbackContext);
-            return;
-        }
-        
-        try {
-            CaptureRequest.Builder builder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
-            builder.addTarget(imageReader.getSurface());
-            builder.set(CaptureRequest.CONTROL_AF_MODE, CaptureRequest.CONTROL_AF_MODE_AUTO);
-            
-            captureSession.capture(builder.build(), new CameraCaptureSession.CaptureCallback() {
-                @Override
-                public void onCaptureCompleted(@NonNull CameraCaptureSession session, 
-                                            @NonNull CaptureRequest request, 
-                                            @NonNull TotalCaptureResult result) {
-                    Integer afState = result.get(CaptureResult.CONTROL_AF_STATE);
-                    Log.d(TAG, "Waiting for focus lock, attempt " + (attemptCount + 1) + ", AF state: " + afState);
-                    
-                    if (afState != null && 
-                        (afState == CaptureResult.CONTROL_AF_STATE_FOCUSED_LOCKED ||
-                        afState == CaptureResult.CONTROL_AF_STATE_NOT_FOCUSED_LOCKED)) {
-                        
-                        Log.d(TAG, "Focus locked! State: " + afState + ", taking photo now");
-                        performActualCapture(callbackContext);
-                        
-                    } else if (afState != null && afState == CaptureResult.CONTROL_AF_STATE_INACTIVE) {
-                        Log.w(TAG, "AF inactive, taking photo anyway");
-                        performActualCapture(callbackContext);
-                        
-                    } else {
-                        // Focus ancora in corso, riprova dopo 100ms
-                        backgroundHandler.postDelayed(() -> {
-                            waitForFocusLock(callbackContext, attemptCount + 1);
-                        }, 100);
-                    }
-                }
-                
-                @Override
-                public void onCaptureFailed(@NonNull CameraCaptureSession session, 
-                                        @NonNull CaptureRequest request, 
-                                        @NonNull CaptureFailure failure) {
-                    Log.e(TAG, "Focus lock capture failed: " + failure.getReason());
-                    performActualCapture(callbackContext);
-                }
-            }, backgroundHandler);
-            
-        } catch (CameraAccessException e) {
-            Log.e(TAG, "Error waiting for focus lock", e);
-            performActualCapture(callbackContext);
-        }
-    }
-    private void lockFocusThenCapture() {
-        try {
-            CaptureRequest.Builder focus = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
-            focus.addTarget(imageReader.getSurface());
-            focus.set(CaptureRequest.CONTROL_AF_TRIGGER, CaptureRequest.CONTROL_AF_TRIGGER_START);
-            captureSession.capture(focus.build(), new CameraCaptureSession.CaptureCallback() {
-                @Override
-                public void onCaptureCompleted(@NonNull CameraCaptureSession s, @NonNull CaptureRequest r, @NonNull TotalCaptureResult res) {
-                    Integer st = res.get(CaptureResult.CONTROL_AF_STATE);
-                    if (st == null ||
-                        st == CaptureResult.CONTROL_AF_STATE_FOCUSED_LOCKED ||
-                        st == CaptureResult.CONTROL_AF_STATE_NOT_FOCUSED_LOCKED) {
-                        performActualCapture(pendingPhotoCallback);
-                    }
-                }
-            }, backgroundHandler);
-        } catch (CameraAccessException e) {
-            performActualCapture(pendingPhotoCallback);
-        }
-    }
-
-    // METODO MANCANTE - Aggiungere questo metodo
-    private void performActualCapture(CallbackContext callbackContext) {
-        if (callbackContext == null) {
-            Log.w(TAG, "performActualCapture called with null callback");
-            return;
-        }
-        
-        try {
-            CaptureRequest.Builder captureBuilder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_STILL_CAPTURE);
-            captureBuilder.addTarget(stillReader.getSurface());
-            
-            // Configura i parametri di cattura
-            captureBuilder.set(CaptureRequest.CONTROL_AF_MODE, autofocusMode);
-            captureBuilder.set(CaptureRequest.CONTROL_AE_MODE, exposureMode);
-            captureBuilder.set(CaptureRequest.JPEG_QUALITY, (byte) 95);
-            
-            // Se è abilitato il focus manuale
-            if (manualFocusEnabled) {
-                captureBuilder.set(CaptureRequest.LENS_FOCUS_DISTANCE, focusDistance);
-            }
-            
-            // Se è abilitata l'esposizione manuale
-            if (manualExposureEnabled) {
-                if (exposureTime > 0) {
-                    captureBuilder.set(CaptureRequest.SENSOR_EXPOSURE_TIME, exposureTime);
-                }
-                if (iso > 0) {
-                    captureBuilder.set(CaptureRequest.SENSOR_SENSITIVITY, iso);
-                }
-            }
-            
-            // Imposta compensazione esposizione se specificata
-            if (exposureCompensation != 0) {
-                captureBuilder.set(CaptureRequest.CONTROL_AE_EXPOSURE_COMPENSATION, exposureCompensation);
-            }
-            
-            // Esegui la cattura
-            captureSession.capture(captureBuilder.build(), new CameraCaptureSession.CaptureCallback() {
-                @Override
-                public void onCaptureCompleted(@NonNull CameraCaptureSession session,
-                                              @NonNull CaptureRequest request,
-                                              @NonNull TotalCaptureResult result) {
-                    Log.d(TAG, "Photo capture completed successfully");
-                    // Il salvataggio dell'immagine viene gestito dall'ImageReader.OnImageAvailableListener
-                }
-                
-                @Override
-                public void onCaptureFailed(@NonNull CameraCaptureSession session,
-                                           @NonNull CaptureRequest request,
-                                           @NonNull CaptureFailure failure) {
-                    Log.e(TAG, "Photo capture failed: " + failure.getReason());
-                    callbackContext.error("Photo capture failed: " + failure.getReason());
-                }
-            }, backgroundHandler);
-            
-        } catch (CameraAccessException e) {
-            Log.e(TAG, "Error performing actual capture", e);
-            callbackContext.error("Failed to capture photo: " + e.getMessage());
-        }
-    }
-
-    // RIMUOVI IL METODO shoot() DUPLICATO - sostituito da performActualCapture
-    private void shoot() {
-        try {
-            CaptureRequest.Builder shot = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_STILL_CAPTURE);
-            shot.addTarget(stillReader.getSurface());
-            shot.set(CaptureRequest.CONTROL_AF_MODE, CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE);
-            shot.set(CaptureRequest.CONTROL_AE_MODE, CaptureRequest.CONTROL_AE_MODE_ON);
-            shot.set(CaptureRequest.JPEG_QUALITY, (byte) 95);
-            captureSession.capture(shot.build(), null, backgroundHandler);
-        } catch (CameraAccessException ignored) {}
-    }
-
-
 }
-
-
@@ -0,0 +1,161 @@
+package com.cordova.plugin;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Conversione YUV_420_888 -> NV21 che rispetta rowStride/pixelStride dei piani.
+ * Gestisce layout planari (I420/YV12), semi-planari (NV12/NV21) e righe con padding.
+ * Non e' thread-safe: usare un'istanza per stream. Dopo la prima chiamata non alloca.
+ */
+public class YuvConverter {
+
+    // Righe di appoggio per i piani planari (pixelStride == 1)
+    private byte[] uRow = new byte[0];
+    private byte[] vRow = new byte[0];
+
+    /** Dimensione in byte di un frame NV21 width x height. */
+    public static int nv21Size(int width, int height) {
+        return width * height + 2 * ((width + 1) / 2) * ((height + 1) / 2);
+    }
+
+    /**
+     * Copia i tre piani in {@code out} in formato NV21 (Y seguito da VU interleaved).
+     * Le posizioni dei buffer vengono usate come origine dei piani e ripristinate alla fine.
+     */
+    public void toNv21(ByteBuffer yBuffer, int yRowStride, int yPixelStride,
+                       ByteBuffer uBuffer, ByteBuffer vBuffer, int uvRowStride, int uvPixelStride,
+                       int width, int height, byte[] out) {
+        if (out.length < nv21Size(width, height)) {
+            throw new IllegalArgumentException("Output buffer too small: " + out.length + " < " + nv21Size(width, height));
+        }
+        copyLuma(yBuffer, yRowStride, yPixelStride, width, height, out);
+        copyChroma(uBuffer, vBuffer, uvRowStride, uvPixelStride, width, height, out, width * height);
+    }
+
+    /** Byte del piano Y di un ritaglio width x height campionato ogni {@code step} pixel. */
+    public static int lumaRegionSize(int width, int height, int step) {
+        return ((width + step - 1) / step) * ((height + step - 1) / step);
+    }
+
+    /**
+     * Copia in {@code out} (da {@code offset}) solo il piano Y del ritaglio
+     * [x, x + width) x [y, y + height), prendendo un pixel ogni {@code step} su righe e colonne.
+     * @return byte scritti
+     */
+    public int copyLumaRegion(ByteBuffer yBuffer, int rowStride, int pixelStride,
+                              int x, int y, int width, int height, int step, byte[] out, int offset) {
+        int size = lumaRegionSize(width, height, step);
+        if (out.length - offset < size) {
+            throw new IllegalArgumentException("Output buffer too small: " + (out.length - offset) + " < " + size);
+        }
+        int base = yBuffer.position();
+        int o = offset;
+        if (step == 1 && pixelStride == 1) {
+            // Righe contigue: una copia bulk per riga
+            for (int row = 0; row < height; row++) {
+                yBuffer.position(base + (y + row) * rowStride + x);
+                yBuffer.get(out, o, width);
+                o += width;
+            }
+        } else if (pixelStride == 1) {
+            // Sottocampionamento: riga letta in bulk, poi un pixel ogni step
+            ensureRowCapacity(width);
+            byte[] rowBuffer = uRow;
+            for (int row = 0; row < height; row += step) {
+                yBuffer.position(base + (y + row) * rowStride + x);
+                yBuffer.get(rowBuffer, 0, width);
+                for (int col = 0; col < width; col += step) {
+                    out[o++] = rowBuffer[col];
+                }
+            }
+        } else {
+            int colStride = step * pixelStride;
+            for (int row = 0; row < height; row += step) {
+                int index = base + (y + row) * rowStride + x * pixelStride;
+                for (int col = 0; col < width; col += step) {
+                    out[o++] = yBuffer.get(index);
+                    index += colStride;
+                }
+            }
+        }
+        yBuffer.position(base);
+        return o - offset;
+    }
+
+    private void copyLuma(ByteBuffer y, int rowStride, int pixelStride, int width, int height, byte[] out) {
+        int base = y.position();
+        if (pixelStride == 1 && rowStride == width) {
+            // Caso compatto: un'unica copia bulk
+            y.get(out, 0, width * height);
+        } else if (pixelStride == 1) {
+            // Righe con padding: copia riga per riga saltando lo stride
+            for (int row = 0; row < height; row++) {
+                y.position(base + row * rowStride);
+                y.get(out, row * width, width);
+            }
+        } else {
+            int o = 0;
+            for (int row = 0; row < height; row++) {
+                int rowStart = base + row * rowStride;
+                for (int col = 0; col < width; col++) {
+                    out[o++] = y.get(rowStart + col * pixelStride);
+                }
+            }
+        }
+        y.position(base);
+    }
+
+    private void copyChroma(ByteBuffer u, ByteBuffer v, int rowStride, int pixelStride,
+                            int width, int height, byte[] out, int offset) {
+        int chromaWidth = (width + 1) / 2;
+        int chromaHeight = (height + 1) / 2;
+        int uBase = u.position();
+        int vBase = v.position();
+        int o = offset;
+
+        if (pixelStride == 2) {
+            // Semi-planare: la riga di V e' gia' "V?V?..." -> copia bulk e sovrascrive le U
+            int rowBytes = 2 * chromaWidth - 1;
+            for (int row = 0; row < chromaHeight; row++) {
+                int rowStart = row * rowStride;
+                v.position(vBase + rowStart);
+                v.get(out, o, rowBytes);
+                for (int col = 0; col < chromaWidth; col++) {
+                    out[o + 2 * col + 1] = u.get(uBase + rowStart + 2 * col);
+                }
+                o += 2 * chromaWidth;
+            }
+        } else if (pixelStride == 1) {
+            // Planare: legge le righe U/V in bulk e le interleava
+            ensureRowCapacity(chromaWidth);
+            for (int row = 0; row < chromaHeight; row++) {
+                u.position(uBase + row * rowStride);
+                u.get(uRow, 0, chromaWidth);
+                v.position(vBase + row * rowStride);
+                v.get(vRow, 0, chromaWidth);
+                for (int col = 0; col < chromaWidth; col++) {
+                    out[o++] = vRow[col];
+                    out[o++] = uRow[col];
+                }
+            }
+        } else {
+            for (int row = 0; row < chromaHeight; row++) {
+                int rowStart = row * rowStride;
+                for (int col = 0; col < chromaWidth; col++) {
+                    int index = rowStart + col * pixelStride;
+                    out[o++] = v.get(vBase + index);
+                    out[o++] = u.get(uBase + index);
+                }
+            }
+        }
+        u.position(uBase);
+        v.position(vBase);
+    }
+
+    private void ensureRowCapacity(int size) {
+        if (uRow.length < size) {
+            uRow = new byte[size];
+            vRow = new byte[size];
+        }
+    }
+}
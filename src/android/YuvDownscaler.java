@@ -0,0 +1,129 @@
+package com.cordova.plugin;
+
+/**
+ * Riduzione NV21 -> NV21 con filtro box (media dell'area sorgente di ogni pixel).
+ *
+ * Luma e croma VU interleaved vengono ridotti separatamente, quindi il risultato
+ * e' un NV21 valido da passare all'encoder JPEG. Le tabelle delle colonne e gli
+ * accumulatori vengono allocati in {@link #configure}; {@link #downscale} non alloca.
+ * Non e' thread-safe: usare un'istanza per thread.
+ */
+public class YuvDownscaler {
+
+    private int srcWidth;
+    private int srcHeight;
+    private int dstWidth;
+    private int dstHeight;
+
+    // Prima colonna sorgente di ogni colonna di destinazione (+ sentinella finale)
+    private int[] lumaColumns = new int[0];
+    private int[] chromaColumns = new int[0];
+    private int[] accumulator = new int[0];
+
+    /**
+     * Prepara le tabelle per una riduzione srcWidth x srcHeight -> dstWidth x dstHeight.
+     * La destinazione non puo' essere piu' grande della sorgente.
+     */
+    public void configure(int srcWidth, int srcHeight, int dstWidth, int dstHeight) {
+        if (dstWidth <= 0 || dstHeight <= 0 || dstWidth > srcWidth || dstHeight > srcHeight) {
+            throw new IllegalArgumentException("Invalid downscale " + srcWidth + "x" + srcHeight
+                    + " -> " + dstWidth + "x" + dstHeight);
+        }
+        this.srcWidth = srcWidth;
+        this.srcHeight = srcHeight;
+        this.dstWidth = dstWidth;
+        this.dstHeight = dstHeight;
+        lumaColumns = columnTable(srcWidth, dstWidth);
+        chromaColumns = columnTable((srcWidth + 1) / 2, (dstWidth + 1) / 2);
+        accumulator = new int[Math.max(dstWidth, 2 * ((dstWidth + 1) / 2))];
+    }
+
+    public boolean isConfiguredFor(int srcWidth, int srcHeight, int dstWidth, int dstHeight) {
+        return this.srcWidth == srcWidth && this.srcHeight == srcHeight
+                && this.dstWidth == dstWidth && this.dstHeight == dstHeight;
+    }
+
+    public int getDstWidth() {
+        return dstWidth;
+    }
+
+    public int getDstHeight() {
+        return dstHeight;
+    }
+
+    /** Riduce {@code src} (NV21 srcWidth x srcHeight) in {@code dst} (NV21 dstWidth x dstHeight). */
+    public void downscale(byte[] src, byte[] dst) {
+        if (dst.length < YuvConverter.nv21Size(dstWidth, dstHeight)) {
+            throw new IllegalArgumentException("Output buffer too small: " + dst.length);
+        }
+        scalePlane(src, 0, srcWidth, srcHeight, dst, 0, dstWidth, dstHeight, lumaColumns, 1);
+        scalePlane(src, srcWidth * srcHeight, (srcWidth + 1) / 2, (srcHeight + 1) / 2,
+                dst, dstWidth * dstHeight, (dstWidth + 1) / 2, (dstHeight + 1) / 2, chromaColumns, 2);
+    }
+
+    // Piano con 'channels' byte interleaved per campione (1 = Y, 2 = VU)
+    private void scalePlane(byte[] src, int srcOffset, int srcW, int srcH,
+                            byte[] dst, int dstOffset, int dstW, int dstH, int[] columns, int channels) {
+        int srcStride = srcW * channels;
+        int dstStride = dstW * channels;
+        int[] acc = accumulator;
+        for (int dy = 0; dy < dstH; dy++) {
+            int y0 = (int) ((long) dy * srcH / dstH);
+            int y1 = Math.max(y0 + 1, (int) ((long) (dy + 1) * srcH / dstH));
+            for (int i = 0; i < dstStride; i++) {
+                acc[i] = 0;
+            }
+            for (int sy = y0; sy < y1; sy++) {
+                int row = srcOffset + sy * srcStride;
+                if (channels == 1) {
+                    int sx = row;
+                    for (int dx = 0; dx < dstW; dx++) {
+                        int end = row + columns[dx + 1];
+                        int sum = 0;
+                        while (sx < end) {
+                            sum += src[sx++] & 0xFF;
+                        }
+                        acc[dx] += sum;
+                    }
+                } else {
+                    int sx = row;
+                    for (int dx = 0; dx < dstW; dx++) {
+                        int end = row + 2 * columns[dx + 1];
+                        int sumV = 0;
+                        int sumU = 0;
+                        while (sx < end) {
+                            sumV += src[sx] & 0xFF;
+                            sumU += src[sx + 1] & 0xFF;
+                            sx += 2;
+                        }
+                        acc[2 * dx] += sumV;
+                        acc[2 * dx + 1] += sumU;
+                    }
+                }
+            }
+            int rows = y1 - y0;
+            int out = dstOffset + dy * dstStride;
+            for (int dx = 0; dx < dstW; dx++) {
+                int area = rows * (columns[dx + 1] - columns[dx]);
+                int half = area >> 1;
+                for (int c = 0; c < channels; c++) {
+                    dst[out + dx * channels + c] = (byte) ((acc[dx * channels + c] + half) / area);
+                }
+            }
+        }
+    }
+
+    private static int[] columnTable(int srcW, int dstW) {
+        int[] columns = new int[dstW + 1];
+        for (int dx = 0; dx <= dstW; dx++) {
+            columns[dx] = (int) ((long) dx * srcW / dstW);
+        }
+        // Ogni colonna copre almeno un campione
+        for (int dx = 1; dx <= dstW; dx++) {
+            if (columns[dx] <= columns[dx - 1]) {
+                columns[dx] = Math.min(columns[dx - 1] + 1, srcW);
+            }
+        }
+        return columns;
+    }
+}
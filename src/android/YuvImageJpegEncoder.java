@@ -0,0 +1,20 @@
+package com.cordova.plugin;
+
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.graphics.YuvImage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/** Encoder JPEG di sistema (YuvImage.compressToJpeg). */
+public class YuvImageJpegEncoder implements JpegEncoder {
+
+    @Override
+    public void encode(byte[] nv21, int width, int height, int quality, OutputStream out) throws IOException {
+        YuvImage yuvImage = new YuvImage(nv21, ImageFormat.NV21, width, height, null);
+        if (!yuvImage.compressToJpeg(new Rect(0, 0, width, height), quality, out)) {
+            throw new IOException("JPEG compression failed");
+        }
+    }
+}
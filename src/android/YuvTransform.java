@@ -0,0 +1,202 @@
+package com.cordova.plugin;
+
+/**
+ * Trasformazione NV21 -> NV21 in un solo passaggio: ritaglio, rotazione oraria di
+ * 0/90/180/270 gradi, specchiatura orizzontale/verticale (sull'immagine gia' ruotata)
+ * e riduzione con campionamento nearest o bilineare.
+ *
+ * Per ogni pixel di destinazione la posizione sorgente si ottiene da due tabelle per asse,
+ * calcolate in {@link #configure}: {@link #transform} non alloca. Con rotazione 90/270
+ * una riga di destinazione legge una colonna sorgente, quindi si procede a blocchi di
+ * TILE x TILE pixel per restare nelle stesse linee di cache.
+ * Ritaglio e destinazione vengono allineati a valori pari (croma NV21 a meta' risoluzione).
+ * Non e' thread-safe: usare un'istanza per thread.
+ */
+public class YuvTransform {
+    public static final int FILTER_NEAREST = 0;
+    public static final int FILTER_BILINEAR = 1;
+
+    private static final int TILE = 16;
+    // Pesi bilineari in virgola fissa a 8 bit
+    private static final int FRACTION_BITS = 8;
+    private static final int ONE = 1 << FRACTION_BITS;
+
+    private int srcWidth;
+    private int srcHeight;
+    private int dstWidth;
+    private int dstHeight;
+    // Con rotazione 90/270 l'asse x di destinazione percorre le righe sorgente
+    private boolean swapAxes;
+
+    // Per asse di destinazione: coordinata sorgente (assoluta nel piano) e peso del campione successivo
+    private int[] lumaXIndex = new int[0];
+    private int[] lumaXFraction = new int[0];
+    private int[] lumaYIndex = new int[0];
+    private int[] lumaYFraction = new int[0];
+    private int[] chromaXIndex = new int[0];
+    private int[] chromaXFraction = new int[0];
+    private int[] chromaYIndex = new int[0];
+    private int[] chromaYFraction = new int[0];
+
+    /** Dimensioni {larghezza, altezza} del ritaglio dopo la rotazione. */
+    public static int[] orientedSize(int cropWidth, int cropHeight, int rotation) {
+        return rotation == 90 || rotation == 270
+                ? new int[] { cropHeight, cropWidth } : new int[] { cropWidth, cropHeight };
+    }
+
+    /**
+     * @param rotation rotazione oraria: 0, 90, 180 o 270
+     * @param dstWidth larghezza finale, non piu' grande del ritaglio ruotato
+     * @param dstHeight altezza finale, non piu' grande del ritaglio ruotato
+     */
+    public void configure(int srcWidth, int srcHeight, int cropX, int cropY, int cropWidth, int cropHeight,
+                          int rotation, boolean mirrorHorizontal, boolean mirrorVertical,
+                          int dstWidth, int dstHeight, int filter) {
+        if (rotation != 0 && rotation != 90 && rotation != 180 && rotation != 270) {
+            throw new IllegalArgumentException("Invalid rotation: " + rotation);
+        }
+        cropX &= ~1;
+        cropY &= ~1;
+        cropWidth &= ~1;
+        cropHeight &= ~1;
+        dstWidth &= ~1;
+        dstHeight &= ~1;
+        if (cropX < 0 || cropY < 0 || cropWidth <= 0 || cropHeight <= 0
+                || cropX + cropWidth > srcWidth || cropY + cropHeight > srcHeight) {
+            throw new IllegalArgumentException("Invalid crop " + cropX + "," + cropY + " "
+                    + cropWidth + "x" + cropHeight + " of " + srcWidth + "x" + srcHeight);
+        }
+        int[] oriented = orientedSize(cropWidth, cropHeight, rotation);
+        if (dstWidth <= 0 || dstHeight <= 0 || dstWidth > oriented[0] || dstHeight > oriented[1]) {
+            throw new IllegalArgumentException("Invalid transform size " + dstWidth + "x" + dstHeight
+                    + " for " + oriented[0] + "x" + oriented[1]);
+        }
+        this.srcWidth = srcWidth;
+        this.srcHeight = srcHeight;
+        this.dstWidth = dstWidth;
+        this.dstHeight = dstHeight;
+        this.swapAxes = rotation == 90 || rotation == 270;
+        boolean bilinear = filter == FILTER_BILINEAR;
+
+        // Asse x di destinazione: con 0/180 legge x sorgente, con 90/270 legge y sorgente.
+        // Rotazione inversa: 90 -> sy = H-1-ox, 180 -> sx = W-1-ox, 270 -> sy = ox
+        boolean xReversed = (rotation == 90 || rotation == 180) ^ mirrorHorizontal;
+        // Asse y di destinazione: 90 -> sx = oy, 180 -> sy = H-1-oy, 270 -> sx = W-1-oy
+        boolean yReversed = (rotation == 180 || rotation == 270) ^ mirrorVertical;
+        int xOrigin = swapAxes ? cropY : cropX;
+        int yOrigin = swapAxes ? cropX : cropY;
+
+        lumaXIndex = new int[dstWidth];
+        lumaXFraction = new int[dstWidth];
+        lumaYIndex = new int[dstHeight];
+        lumaYFraction = new int[dstHeight];
+        axisTable(dstWidth, oriented[0], xOrigin, xReversed, bilinear, lumaXIndex, lumaXFraction);
+        axisTable(dstHeight, oriented[1], yOrigin, yReversed, bilinear, lumaYIndex, lumaYFraction);
+
+        chromaXIndex = new int[dstWidth / 2];
+        chromaXFraction = new int[dstWidth / 2];
+        chromaYIndex = new int[dstHeight / 2];
+        chromaYFraction = new int[dstHeight / 2];
+        axisTable(dstWidth / 2, oriented[0] / 2, xOrigin / 2, xReversed, bilinear, chromaXIndex, chromaXFraction);
+        axisTable(dstHeight / 2, oriented[1] / 2, yOrigin / 2, yReversed, bilinear, chromaYIndex, chromaYFraction);
+    }
+
+    // Posizione sorgente dei centri dei pixel di destinazione lungo un asse
+    private static void axisTable(int dstSize, int srcSize, int origin, boolean reversed, boolean bilinear,
+                                  int[] index, int[] fraction) {
+        long max = (long) (srcSize - 1) << FRACTION_BITS;
+        for (int d = 0; d < dstSize; d++) {
+            long s = ((2L * d + 1) * srcSize << FRACTION_BITS) / (2L * dstSize) - ONE / 2;
+            s = Math.max(0, Math.min(s, max));
+            if (bilinear) {
+                if (reversed) {
+                    s = max - s;
+                }
+                index[d] = origin + (int) (s >> FRACTION_BITS);
+                fraction[d] = (int) (s & (ONE - 1));
+            } else {
+                // Arrotondamento prima dell'inversione, come campionare l'immagine gia' specchiata
+                int i = (int) ((s + ONE / 2) >> FRACTION_BITS);
+                index[d] = origin + (reversed ? srcSize - 1 - i : i);
+                fraction[d] = 0;
+            }
+        }
+    }
+
+    public int getDstWidth() {
+        return dstWidth;
+    }
+
+    public int getDstHeight() {
+        return dstHeight;
+    }
+
+    /** Trasforma {@code src} (NV21 srcWidth x srcHeight) in {@code dst} (NV21 dstWidth x dstHeight). */
+    public void transform(byte[] src, byte[] dst) {
+        if (dst.length < YuvConverter.nv21Size(dstWidth, dstHeight)) {
+            throw new IllegalArgumentException("Output buffer too small: " + dst.length);
+        }
+        transformPlane(src, 0, srcWidth, 1, dst, 0, dstWidth, dstHeight,
+                lumaXIndex, lumaXFraction, lumaYIndex, lumaYFraction);
+        // Righe VU di (srcWidth + 1) / 2 campioni: con larghezza dispari lo stride non e' srcWidth
+        transformPlane(src, srcWidth * srcHeight, 2 * ((srcWidth + 1) / 2), 2,
+                dst, dstWidth * dstHeight, dstWidth / 2, dstHeight / 2,
+                chromaXIndex, chromaXFraction, chromaYIndex, chromaYFraction);
+    }
+
+    // Piano con 'channels' byte interleaved per campione (1 = Y, 2 = VU); srcStride in byte
+    private void transformPlane(byte[] src, int srcOffset, int srcStride, int channels,
+                                byte[] dst, int dstOffset, int dstW, int dstH,
+                                int[] xIndex, int[] xFraction, int[] yIndex, int[] yFraction) {
+        // Senza rotazione si procede per righe intere, con rotazione a blocchi
+        int tileW = swapAxes ? TILE : dstW;
+        int tileH = swapAxes ? TILE : dstH;
+        for (int ty = 0; ty < dstH; ty += tileH) {
+            int endY = Math.min(ty + tileH, dstH);
+            for (int tx = 0; tx < dstW; tx += tileW) {
+                int endX = Math.min(tx + tileW, dstW);
+                for (int dy = ty; dy < endY; dy++) {
+                    int out = dstOffset + (dy * dstW + tx) * channels;
+                    for (int dx = tx; dx < endX; dx++) {
+                        int sx;
+                        int fx;
+                        int sy;
+                        int fy;
+                        if (swapAxes) {
+                            sx = yIndex[dy];
+                            fx = yFraction[dy];
+                            sy = xIndex[dx];
+                            fy = xFraction[dx];
+                        } else {
+                            sx = xIndex[dx];
+                            fx = xFraction[dx];
+                            sy = yIndex[dy];
+                            fy = yFraction[dy];
+                        }
+                        int p00 = srcOffset + sy * srcStride + sx * channels;
+                        if ((fx | fy) == 0) {
+                            for (int c = 0; c < channels; c++) {
+                                dst[out++] = src[p00 + c];
+                            }
+                            continue;
+                        }
+                        // Il campione successivo esiste sempre quando il peso e' non nullo
+                        int p01 = fx != 0 ? p00 + channels : p00;
+                        int p10 = fy != 0 ? p00 + srcStride : p00;
+                        int p11 = p10 + (p01 - p00);
+                        for (int c = 0; c < channels; c++) {
+                            int a = src[p00 + c] & 0xFF;
+                            int b = src[p01 + c] & 0xFF;
+                            int top = (a << FRACTION_BITS) + (b - a) * fx;
+                            a = src[p10 + c] & 0xFF;
+                            b = src[p11 + c] & 0xFF;
+                            int bottom = (a << FRACTION_BITS) + (b - a) * fx;
+                            int value = (top << FRACTION_BITS) + (bottom - top) * fy;
+                            dst[out++] = (byte) ((value + (1 << (2 * FRACTION_BITS - 1))) >> (2 * FRACTION_BITS));
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
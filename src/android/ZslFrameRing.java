@@ -0,0 +1,149 @@
+package com.cordova.plugin;
+
+/**
+ * Anello degli ultimi N frame di anteprima in NV21 per lo scatto zero-shutter-lag.
+ *
+ * I buffer vengono allocati al primo utilizzo di ogni slot (o se la risoluzione cresce)
+ * e poi riutilizzati: la memoria resta limitata a capacita' x dimensione NV21.
+ * Lo slot in scrittura esce dall'insieme leggibile fino a {@link #commit}.
+ * La logica e' pura (verificabile sulla JVM con timestamp sintetici) e non thread-safe:
+ * scritture e selezione vanno fatte dallo stesso thread.
+ */
+public class ZslFrameRing {
+
+    /** Un frame dell'anello. */
+    public static class Frame {
+        public byte[] nv21 = new byte[0];
+        public int width;
+        public int height;
+        /** Timestamp del sensore (Image.getTimestamp()). */
+        public long timestampNanos;
+        /** System.nanoTime() all'arrivo nel plugin. */
+        public long arrivalNanos;
+        // Calcolata alla prima richiesta, -1 finche' il frame non cambia
+        long sharpness = -1;
+    }
+
+    // Passo di campionamento del gradiente: un pixel ogni 4 su righe e colonne
+    private static final int SHARPNESS_STEP = 4;
+
+    private final Frame[] frames;
+    private int next = 0;
+    private int count = 0;
+
+    public ZslFrameRing(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        frames = new Frame[capacity];
+        for (int i = 0; i < capacity; i++) {
+            frames[i] = new Frame();
+        }
+    }
+
+    public int getCapacity() {
+        return frames.length;
+    }
+
+    /** Frame leggibili. */
+    public int size() {
+        return count;
+    }
+
+    /** Slot del frame piu' vecchio da riempire (nv21 almeno width x height), poi {@link #commit}. */
+    public Frame acquireForWrite(int width, int height) {
+        if (count == frames.length) {
+            // Il piu' vecchio viene sovrascritto: non e' piu' leggibile
+            count--;
+        }
+        Frame frame = frames[next];
+        int bytes = YuvConverter.nv21Size(width, height);
+        if (frame.nv21.length < bytes) {
+            frame.nv21 = new byte[bytes];
+        }
+        frame.width = width;
+        frame.height = height;
+        frame.sharpness = -1;
+        return frame;
+    }
+
+    /** Conferma lo slot ottenuto con l'ultima {@link #acquireForWrite}. */
+    public void commit(long timestampNanos, long arrivalNanos) {
+        Frame frame = frames[next];
+        frame.timestampNanos = timestampNanos;
+        frame.arrivalNanos = arrivalNanos;
+        next = (next + 1) % frames.length;
+        count++;
+    }
+
+    /** i-esimo frame dal piu' recente (0 = ultimo). */
+    public Frame get(int i) {
+        if (i < 0 || i >= count) {
+            throw new IndexOutOfBoundsException("Frame " + i + " of " + count);
+        }
+        return frames[(next - 1 - i + 2 * frames.length) % frames.length];
+    }
+
+    /** Frame piu' recente, null se l'anello e' vuoto. */
+    public Frame latest() {
+        return count > 0 ? get(0) : null;
+    }
+
+    /** Frame con il timestamp del sensore piu' vicino a {@code timestampNanos}. */
+    public Frame closestTo(long timestampNanos) {
+        Frame best = null;
+        long bestDistance = Long.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            Frame frame = get(i);
+            long distance = Math.abs(frame.timestampNanos - timestampNanos);
+            if (distance < bestDistance) {
+                best = frame;
+                bestDistance = distance;
+            }
+        }
+        return best;
+    }
+
+    /** Frame piu' nitido tra quelli con arrivo non precedente a {@code notBeforeArrivalNanos}. */
+    public Frame sharpest(long notBeforeArrivalNanos) {
+        Frame best = null;
+        for (int i = 0; i < count; i++) {
+            Frame frame = get(i);
+            if (frame.arrivalNanos - notBeforeArrivalNanos < 0) {
+                continue;
+            }
+            if (frame.sharpness < 0) {
+                frame.sharpness = sharpness(frame.nv21, frame.width, frame.height);
+            }
+            // A parita' vince il piu' recente
+            if (best == null || frame.sharpness > best.sharpness) {
+                best = frame;
+            }
+        }
+        return best;
+    }
+
+    public void clear() {
+        count = 0;
+    }
+
+    /**
+     * Misura di nitidezza sul piano Y: somma dei gradienti orizzontali e verticali
+     * tra pixel adiacenti, al quadrato, su una griglia campionata.
+     * Confrontabile solo a parita' di risoluzione.
+     */
+    static long sharpness(byte[] nv21, int width, int height) {
+        long sum = 0;
+        for (int y = 0; y + 1 < height; y += SHARPNESS_STEP) {
+            int row = y * width;
+            int below = row + width;
+            for (int x = 0; x + 1 < width; x += SHARPNESS_STEP) {
+                int p = nv21[row + x] & 0xFF;
+                int dx = (nv21[row + x + 1] & 0xFF) - p;
+                int dy = (nv21[below + x] & 0xFF) - p;
+                sum += dx * dx + dy * dy;
+            }
+        }
+        return sum;
+    }
+}
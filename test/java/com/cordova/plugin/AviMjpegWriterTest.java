@@ -0,0 +1,210 @@
+package com.cordova.plugin;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AviMjpegWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void indexPointsAtEveryFrame() throws IOException {
+        File file = folder.newFile("frames.avi");
+        AviMjpegWriter writer = new AviMjpegWriter(file, 320, 240, 30);
+        byte[][] frames = new byte[10][];
+        for (int i = 0; i < frames.length; i++) {
+            // Lunghezze pari e dispari: i chunk dispari hanno un byte di padding
+            frames[i] = jpeg(100 + i, i);
+            writer.writeFrame(frames[i], 0, frames[i].length, i * 33_333_333L);
+        }
+        writer.close();
+
+        Avi avi = new Avi(file);
+        assertEquals(file.length() - 8, avi.riffSize);
+        assertEquals(10, avi.totalFrames);
+        assertEquals(10, avi.streamLength);
+        assertEquals(320, avi.width);
+        assertEquals(240, avi.height);
+        assertEquals(10, avi.indexEntries);
+        for (int i = 0; i < frames.length; i++) {
+            assertArrayEquals(frames[i], avi.frame(i));
+        }
+    }
+
+    @Test
+    public void frameRateComesFromTimestamps() throws IOException {
+        File file = folder.newFile("rate.avi");
+        // Nominale 30, frame reali a 25 fps
+        AviMjpegWriter writer = new AviMjpegWriter(file, 64, 48, 30);
+        byte[] frame = jpeg(64, 0);
+        for (int i = 0; i < 26; i++) {
+            writer.writeFrame(frame, 0, frame.length, 1_000_000_000L + i * 40_000_000L);
+        }
+        assertEquals(25.0, writer.getEffectiveFps(), 1e-9);
+        writer.close();
+
+        Avi avi = new Avi(file);
+        assertEquals(25000, avi.rate);
+        assertEquals(1000, avi.scale);
+        assertEquals(40000, avi.microSecPerFrame);
+    }
+
+    @Test
+    public void nominalFrameRateWithoutTimestamps() throws IOException {
+        File file = folder.newFile("nominal.avi");
+        AviMjpegWriter writer = new AviMjpegWriter(file, 64, 48, 15);
+        byte[] frame = jpeg(64, 0);
+        for (int i = 0; i < 5; i++) {
+            writer.writeFrame(frame, 0, frame.length, -1);
+        }
+        writer.close();
+        assertEquals(15000, new Avi(file).rate);
+    }
+
+    @Test
+    public void indexSpansSeveralPreallocatedChunks() throws IOException {
+        File file = folder.newFile("long.avi");
+        AviMjpegWriter writer = new AviMjpegWriter(file, 16, 16, 30);
+        int count = 10_000;
+        for (int i = 0; i < count; i++) {
+            byte[] frame = jpeg(20 + (i % 7), i);
+            writer.writeFrame(frame, 0, frame.length, i * 33_333_333L);
+        }
+        writer.close();
+
+        Avi avi = new Avi(file);
+        assertEquals(count, avi.indexEntries);
+        assertEquals(count, avi.totalFrames);
+        for (int i : new int[] { 0, 4095, 4096, 8191, 8192, count - 1 }) {
+            assertArrayEquals(jpeg(20 + (i % 7), i), avi.frame(i));
+        }
+    }
+
+    @Test
+    public void emptyRecordingIsValid() throws IOException {
+        File file = folder.newFile("empty.avi");
+        new AviMjpegWriter(file, 64, 48, 30).close();
+        Avi avi = new Avi(file);
+        assertEquals(0, avi.totalFrames);
+        assertEquals(0, avi.indexEntries);
+        assertEquals(file.length() - 8, avi.riffSize);
+    }
+
+    @Test
+    public void writeAfterCloseFails() throws IOException {
+        AviMjpegWriter writer = new AviMjpegWriter(folder.newFile("closed.avi"), 64, 48, 30);
+        writer.close();
+        try {
+            writer.writeFrame(new byte[4], 0, 4, 0);
+            fail("write after close");
+        } catch (IOException expected) {
+            // atteso
+        }
+    }
+
+    @Test
+    public void sustainsHighResolutionFrameRate() throws IOException {
+        File file = folder.newFile("throughput.avi");
+        // JPEG 1080p tipici: ~200 KB
+        byte[] frame = jpeg(200 * 1024, 3);
+        int count = 300;
+        AviMjpegWriter writer = new AviMjpegWriter(file, 1920, 1080, 30);
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            writer.writeFrame(frame, 0, frame.length, i * 33_333_333L);
+        }
+        writer.close();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        double fps = count / seconds;
+        // Soglia larga (anche su disco lento) ma ben sopra i 30 fps della cattura
+        assertTrue("only " + fps + " fps", fps > 60);
+        assertEquals(count, new Avi(file).indexEntries);
+    }
+
+    // Finto JPEG riconoscibile: SOI, contenuto dipendente da seed, EOI
+    static byte[] jpeg(int length, int seed) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (i * 31 + seed * 17);
+        }
+        data[0] = (byte) 0xFF;
+        data[1] = (byte) 0xD8;
+        data[length - 2] = (byte) 0xFF;
+        data[length - 1] = (byte) 0xD9;
+        return data;
+    }
+
+    /** Lettore minimo del layout scritto da AviMjpegWriter. */
+    static final class Avi {
+        final ByteBuffer data;
+        final long riffSize;
+        final int microSecPerFrame;
+        final int totalFrames;
+        final int width;
+        final int height;
+        final int scale;
+        final int rate;
+        final int streamLength;
+        final int indexEntries;
+        private final int moviFourcc;
+        private final int indexStart;
+
+        Avi(File file) throws IOException {
+            data = ByteBuffer.wrap(Files.readAllBytes(file.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+            assertEquals("RIFF", fourcc(0));
+            assertEquals("AVI ", fourcc(8));
+            riffSize = data.getInt(4) & 0xFFFFFFFFL;
+            assertEquals("hdrl", fourcc(20));
+            assertEquals("avih", fourcc(24));
+            microSecPerFrame = data.getInt(32);
+            totalFrames = data.getInt(48);
+            width = data.getInt(64);
+            height = data.getInt(68);
+            assertEquals("strh", fourcc(100));
+            assertEquals("vids", fourcc(108));
+            assertEquals("MJPG", fourcc(112));
+            scale = data.getInt(128);
+            rate = data.getInt(132);
+            streamLength = data.getInt(140);
+            assertEquals("strf", fourcc(164));
+            assertEquals("movi", fourcc(220));
+            moviFourcc = 220;
+            int moviSize = data.getInt(216);
+            indexStart = moviFourcc + moviSize;
+            assertEquals("idx1", fourcc(indexStart));
+            int indexBytes = data.getInt(indexStart + 4);
+            assertEquals(0, indexBytes % 16);
+            indexEntries = indexBytes / 16;
+            assertEquals(data.capacity(), indexStart + 8 + indexBytes);
+        }
+
+        byte[] frame(int index) {
+            int entry = indexStart + 8 + index * 16;
+            assertEquals("00dc", fourcc(entry));
+            int offset = moviFourcc + data.getInt(entry + 8);
+            int size = data.getInt(entry + 12);
+            assertEquals("00dc", fourcc(offset));
+            assertEquals(size, data.getInt(offset + 4));
+            return Arrays.copyOfRange(data.array(), offset + 8, offset + 8 + size);
+        }
+
+        private String fourcc(int at) {
+            return new String(data.array(), at, 4, StandardCharsets.US_ASCII);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.cordova.plugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class BurstTrackerTest {
+
+    private static final long FRAME_100MS = 100_000_000L;
+
+    @Test
+    public void completesOnTheLastShotSavedOrFailed() {
+        BurstTracker tracker = new BurstTracker(3);
+        assertFalse(tracker.onSaved(0));
+        assertFalse(tracker.onFailed());
+        assertFalse(tracker.isComplete());
+        assertTrue(tracker.onSaved(FRAME_100MS));
+        assertTrue(tracker.isComplete());
+        assertEquals(2, tracker.getSaved());
+        assertEquals(1, tracker.getFailed());
+    }
+
+    @Test
+    public void fpsComesFromSensorTimestamps() {
+        BurstTracker tracker = new BurstTracker(5);
+        // Ordine di salvataggio diverso da quello di scatto: contano primo e ultimo timestamp
+        long base = 5_000_000_000L;
+        tracker.onSaved(base + 2 * FRAME_100MS);
+        tracker.onSaved(base);
+        tracker.onSaved(base + 4 * FRAME_100MS);
+        tracker.onSaved(base + FRAME_100MS);
+        assertTrue(tracker.onSaved(base + 3 * FRAME_100MS));
+        assertEquals(10.0, tracker.getAchievedFps(), 1e-9);
+    }
+
+    @Test
+    public void failedShotsDoNotCountTowardsFps() {
+        BurstTracker tracker = new BurstTracker(3);
+        tracker.onSaved(0);
+        tracker.onFailed();
+        assertTrue(tracker.onSaved(2 * FRAME_100MS));
+        // Due foto a 200 ms l'una dall'altra
+        assertEquals(5.0, tracker.getAchievedFps(), 1e-9);
+    }
+
+    @Test
+    public void allFailedBurstCompletesWithoutFps() {
+        BurstTracker tracker = new BurstTracker(2);
+        assertFalse(tracker.onFailed());
+        assertTrue(tracker.onFailed());
+        assertTrue(tracker.isComplete());
+        assertEquals(0, tracker.getSaved());
+        assertEquals(2, tracker.getFailed());
+        assertEquals(0.0, tracker.getAchievedFps(), 0.0);
+    }
+
+    @Test
+    public void singleShotHasNoFps() {
+        BurstTracker tracker = new BurstTracker(1);
+        assertTrue(tracker.onSaved(FRAME_100MS));
+        assertEquals(0.0, tracker.getAchievedFps(), 0.0);
+        assertTrue(tracker.getDurationMillis() >= 0);
+    }
+}
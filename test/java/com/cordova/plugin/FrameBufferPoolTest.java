@@ -0,0 +1,53 @@
+package com.cordova.plugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class FrameBufferPoolTest {
+
+    @Test
+    public void sizedForNv21() {
+        assertEquals(YuvConverter.nv21Size(641, 361), FrameBufferPool.forNv21(641, 361, 2).getBufferSize());
+        assertEquals(641 * 361 + 2 * 321 * 181, YuvConverter.nv21Size(641, 361));
+    }
+
+    @Test
+    public void boundedByCapacity() {
+        FrameBufferPool pool = new FrameBufferPool(16, 2);
+        assertNotNull(pool.acquire());
+        assertNotNull(pool.acquire());
+        assertNull(pool.acquire());
+        assertEquals(0, pool.available());
+    }
+
+    @Test
+    public void recyclesReleasedBuffers() {
+        FrameBufferPool pool = new FrameBufferPool(16, 2);
+        byte[] first = pool.acquire();
+        pool.release(first);
+        assertSame(first, pool.acquire());
+        assertEquals(1, pool.available());
+    }
+
+    @Test
+    public void ignoresForeignBuffers() {
+        FrameBufferPool pool = new FrameBufferPool(16, 1);
+        byte[] own = pool.acquire();
+        pool.release(new byte[8]);
+        pool.release(null);
+        assertEquals(0, pool.available());
+        pool.release(own);
+        // Un buffer di troppo non fa crescere il pool oltre la capacita'
+        pool.release(new byte[16]);
+        assertEquals(1, pool.available());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyPool() {
+        new FrameBufferPool(16, 0);
+    }
+}
@@ -0,0 +1,77 @@
+package com.cordova.plugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class FrameFlowControllerTest {
+
+    private static final long MS = 1_000_000L;
+
+    @Test
+    public void unlimitedByDefault() {
+        FrameFlowController flow = new FrameFlowController();
+        for (int i = 0; i < 100; i++) {
+            assertTrue(flow.tryAcquire(i * MS));
+        }
+        assertEquals(100, flow.getDelivered());
+    }
+
+    @Test
+    public void capsRateFromThirtyToTen() {
+        FrameFlowController flow = new FrameFlowController();
+        flow.configure(10, 0);
+        int delivered = 0;
+        // 3 s di frame a 30 fps con jitter di +-2 ms
+        for (int i = 0; i < 90; i++) {
+            long now = i * 33_333_333L + ((i % 3) - 1) * 2 * MS;
+            if (flow.tryAcquire(now)) {
+                delivered++;
+            }
+        }
+        assertEquals(30, delivered);
+        assertEquals(60, flow.getDroppedByRate());
+    }
+
+    @Test
+    public void jitterDoesNotHalveTheRate() {
+        FrameFlowController flow = new FrameFlowController();
+        flow.configure(30, 0);
+        int delivered = 0;
+        for (int i = 0; i < 60; i++) {
+            // Frame a 30 fps che arrivano a volte 3 ms in anticipo
+            long now = i * 33_333_333L - (i % 2) * 3 * MS;
+            if (flow.tryAcquire(now)) {
+                delivered++;
+            }
+        }
+        assertEquals(60, delivered);
+    }
+
+    @Test
+    public void creditWindowBlocksUntilAck() {
+        FrameFlowController flow = new FrameFlowController();
+        flow.configure(0, 2);
+        assertTrue(flow.tryAcquire(0));
+        assertTrue(flow.tryAcquire(1));
+        assertFalse(flow.tryAcquire(2));
+        assertEquals(1, flow.getDroppedByCredit());
+        flow.ack(1);
+        assertTrue(flow.tryAcquire(3));
+        flow.ack(5);
+        assertEquals(0, flow.getInFlight());
+    }
+
+    @Test
+    public void cancelReturnsTheCredit() {
+        FrameFlowController flow = new FrameFlowController();
+        flow.configure(0, 1);
+        assertTrue(flow.tryAcquire(0));
+        flow.cancel();
+        assertEquals(0, flow.getInFlight());
+        assertEquals(0, flow.getDelivered());
+        assertTrue(flow.tryAcquire(1));
+    }
+}
@@ -0,0 +1,162 @@
+package com.cordova.plugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class FramePipelineTest {
+
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+
+    @Test
+    public void framesFlowThroughBothStages() throws Exception {
+        List<Long> delivered = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(20);
+        FramePipeline pipeline = new FramePipeline(WIDTH, HEIGHT, 2,
+                frame -> frame.jpeg.write(frame.yuv, 0, 16),
+                frame -> {
+                    assertEquals(16, frame.jpeg.size());
+                    delivered.add(frame.timestampNanos);
+                    done.countDown();
+                });
+        pipeline.start();
+        try {
+            for (int i = 0; i < 20; i++) {
+                // Produttore lento: nessun frame scartato
+                produce(pipeline, i);
+                Thread.sleep(5);
+            }
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+        } finally {
+            pipeline.stop();
+        }
+        for (int i = 0; i < 20; i++) {
+            assertEquals(Long.valueOf(i), delivered.get(i));
+        }
+        assertEquals(20, pipeline.getEncodeStats().getProcessed());
+        assertEquals(0, pipeline.getEncodeStats().getDropped());
+    }
+
+    @Test
+    public void slowEncoderDropsOldestAndKeepsLatest() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<Long> delivered = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger dropped = new AtomicInteger();
+        FramePipeline pipeline = new FramePipeline(WIDTH, HEIGHT, 2,
+                frame -> release.await(),
+                frame -> delivered.add(frame.timestampNanos));
+        pipeline.setDropListener(frame -> dropped.incrementAndGet());
+        pipeline.start();
+        try {
+            produce(pipeline, 0);
+            // Aspetta che l'encoder prenda il primo frame e si blocchi
+            waitFor(() -> pipeline.getEncodeQueueDepth() == 0);
+            for (int i = 1; i <= 10; i++) {
+                produce(pipeline, i);
+            }
+            assertEquals(2, pipeline.getEncodeQueueDepth());
+            release.countDown();
+            waitFor(() -> pipeline.getEncodeStats().getProcessed() == 3);
+            waitFor(() -> delivered.size() + pipeline.getDeliveryStats().getDropped() == 3);
+        } finally {
+            pipeline.stop();
+        }
+        // Codificati: il frame in lavorazione e gli ultimi due arrivati. La coda di consegna
+        // puo' a sua volta scartare i piu' vecchi, ma l'ultimo frame arriva sempre
+        assertEquals(8, pipeline.getEncodeStats().getDropped());
+        assertEquals(Long.valueOf(10), delivered.get(delivered.size() - 1));
+        assertEquals(8 + pipeline.getDeliveryStats().getDropped(), dropped.get());
+    }
+
+    @Test
+    public void failingStageRecyclesTheFrame() throws Exception {
+        FramePipeline pipeline = new FramePipeline(WIDTH, HEIGHT, 1,
+                frame -> {
+                    throw new IllegalStateException("encode failed");
+                },
+                frame -> { });
+        pipeline.start();
+        try {
+            for (int i = 0; i < 50; i++) {
+                produce(pipeline, i);
+                waitFor(() -> pipeline.getEncodeQueueDepth() == 0);
+            }
+            waitFor(() -> pipeline.getEncodeStats().getFailed() == 50);
+        } finally {
+            pipeline.stop();
+        }
+        assertAllBuffersFree(pipeline, 1);
+    }
+
+    @Test
+    public void bufferPoolIsBoundedAndRefilledOnStop() {
+        FramePipeline pipeline = new FramePipeline(WIDTH, HEIGHT, 2, frame -> { }, frame -> { });
+        assertAllBuffersFree(pipeline, 2);
+        pipeline.start();
+        for (int i = 0; i < 5; i++) {
+            produce(pipeline, i);
+        }
+        pipeline.stop();
+        assertAllBuffersFree(pipeline, 2);
+    }
+
+    @Test
+    public void submitWhenStoppedRecycles() {
+        FramePipeline pipeline = new FramePipeline(WIDTH, HEIGHT, 1, frame -> { }, frame -> { });
+        for (int i = 0; i < 20; i++) {
+            produce(pipeline, i);
+        }
+        assertEquals(0, pipeline.getEncodeQueueDepth());
+        assertAllBuffersFree(pipeline, 1);
+    }
+
+    // Produttore finto: stesso schema del thread camera (acquire, copia, submit)
+    private static void produce(FramePipeline pipeline, long timestamp) {
+        PipelineFrame frame = pipeline.acquireFrame();
+        assertNotNull(frame);
+        frame.yuv[0] = (byte) timestamp;
+        frame.timestampNanos = timestamp;
+        frame.deliver = true;
+        pipeline.submit(frame, 1000);
+    }
+
+    // Pool: un frame in cattura, uno per stadio, piu' le due code
+    private static void assertAllBuffersFree(FramePipeline pipeline, int queueCapacity) {
+        List<PipelineFrame> frames = new ArrayList<>();
+        for (int i = 0; i < 3 + 2 * queueCapacity; i++) {
+            PipelineFrame frame = pipeline.acquireFrame();
+            assertNotNull("buffer " + i + " leaked", frame);
+            assertEquals(YuvConverter.nv21Size(WIDTH, HEIGHT), frame.yuv.length);
+            frames.add(frame);
+        }
+        assertNull(pipeline.acquireFrame());
+        for (PipelineFrame frame : frames) {
+            pipeline.recycle(frame);
+        }
+    }
+
+    private interface Condition {
+        boolean met();
+    }
+
+    private static void waitFor(Condition condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.met()) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("condition not met in 5 s");
+            }
+            Thread.sleep(1);
+        }
+    }
+}
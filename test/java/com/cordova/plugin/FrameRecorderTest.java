@@ -0,0 +1,76 @@
+package com.cordova.plugin;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FrameRecorderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void stopWritesQueuedFrames() throws IOException {
+        File file = folder.newFile("recording.avi");
+        FrameRecorder recorder = new FrameRecorder(file, 64, 48, 30, 64);
+        for (int i = 0; i < 50; i++) {
+            byte[] frame = AviMjpegWriterTest.jpeg(300 + i, i);
+            assertTrue(recorder.offer(frame, 0, frame.length, i * 33_333_333L));
+        }
+        recorder.stop();
+        assertEquals(50, recorder.getFrameCount());
+        assertEquals(0, recorder.getDroppedFrames());
+
+        AviMjpegWriterTest.Avi avi = new AviMjpegWriterTest.Avi(file);
+        assertEquals(50, avi.indexEntries);
+        assertArrayEquals(AviMjpegWriterTest.jpeg(349, 49), avi.frame(49));
+        assertEquals(30000, avi.rate);
+    }
+
+    @Test
+    public void offerCopiesTheCallerBuffer() throws IOException {
+        File file = folder.newFile("copy.avi");
+        FrameRecorder recorder = new FrameRecorder(file, 64, 48, 30);
+        byte[] frame = AviMjpegWriterTest.jpeg(100, 1);
+        byte[] expected = frame.clone();
+        recorder.offer(frame, 0, frame.length, 0);
+        // Il chiamante riusa subito il buffer (come lo stadio encode)
+        frame[10] = 0;
+        recorder.stop();
+        assertArrayEquals(expected, new AviMjpegWriterTest.Avi(file).frame(0));
+    }
+
+    @Test
+    public void offerNeverBlocksWhenQueueIsFull() throws IOException {
+        File file = folder.newFile("burst.avi");
+        FrameRecorder recorder = new FrameRecorder(file, 64, 48, 30, 2);
+        byte[] frame = AviMjpegWriterTest.jpeg(256 * 1024, 2);
+        long start = System.nanoTime();
+        int accepted = 0;
+        for (int i = 0; i < 200; i++) {
+            if (recorder.offer(frame, 0, frame.length, i)) {
+                accepted++;
+            }
+        }
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        recorder.stop();
+        assertEquals(200, accepted + recorder.getDroppedFrames());
+        assertEquals(accepted, recorder.getFrameCount());
+        assertTrue("offer took " + elapsedMillis + " ms", elapsedMillis < 2000);
+    }
+
+    @Test
+    public void offerAfterStopIsRejected() throws IOException {
+        FrameRecorder recorder = new FrameRecorder(folder.newFile("stopped.avi"), 64, 48, 30);
+        recorder.stop();
+        assertFalse(recorder.offer(new byte[4], 0, 4, 0));
+    }
+}
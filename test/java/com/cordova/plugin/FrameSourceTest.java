@@ -0,0 +1,277 @@
+package com.cordova.plugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class FrameSourceTest {
+
+    private static final int WIDTH = 8;
+    private static final int HEIGHT = 4;
+    private static final long MS = 1_000_000L;
+
+    @Test
+    public void blockedListenerDropsFramesWithoutStallingOthers() throws Exception {
+        FrameSource source = new FrameSource("0");
+        CountDownLatch entered = new CountDownLatch(1);
+        Semaphore gate = new Semaphore(0);
+        FrameSource.Subscription slow = source.subscribe(frame -> {
+            entered.countDown();
+            gate.acquireUninterruptibly();
+        }, SharedFrame.FORMAT_NV21, 0);
+        List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+        FrameSource.Subscription fast = source.subscribe(
+                frame -> received.add(frame.getLuma().get(0) & 0xFF), SharedFrame.FORMAT_NV21, 0);
+        try {
+            publish(source, 0, 0);
+            assertTrue(entered.await(5, TimeUnit.SECONDS));
+            waitFor(() -> received.size() == 1);
+            for (int i = 1; i < 10; i++) {
+                // publish torna anche con il listener lento fermo nella callback
+                publish(source, i, i * 33 * MS);
+                int expected = i + 1;
+                waitFor(() -> received.size() == expected);
+            }
+            for (int i = 0; i < 10; i++) {
+                assertEquals(Integer.valueOf(i), received.get(i));
+            }
+            assertEquals(10, fast.getDelivered());
+            assertEquals(0, fast.getDropped());
+            // Il primo frame e' in elaborazione, l'ultimo in coda, gli altri scartati
+            assertEquals(8, slow.getDropped());
+            assertEquals(0, source.getDroppedNoBuffer());
+            assertEquals(10, source.getPublished());
+        } finally {
+            gate.release(100);
+            source.close();
+        }
+    }
+
+    @Test
+    public void maxFpsIsAppliedPerSubscriber() throws Exception {
+        FrameSource source = new FrameSource("0");
+        FrameSource.Subscription limited = source.subscribe(frame -> { }, SharedFrame.FORMAT_NV21, 10);
+        FrameSource.Subscription unlimited = source.subscribe(frame -> { }, SharedFrame.FORMAT_NV21, 0);
+        try {
+            // Un secondo di anteprima a 30 fps
+            for (int i = 0; i < 30; i++) {
+                publish(source, i, i * 1000 * MS / 30);
+            }
+            waitFor(() -> limited.getDelivered() + limited.getDropped() == 10);
+            waitFor(() -> unlimited.getDelivered() + unlimited.getDropped() == 30);
+            assertEquals(10, limited.getMaxFps());
+        } finally {
+            source.close();
+        }
+    }
+
+    @Test
+    public void lumaSubscriberRunsAlongsideNv21() throws Exception {
+        FrameSource source = new FrameSource("0");
+        List<Integer> lumaFormats = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> nv21Formats = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> lumaBytes = Collections.synchronizedList(new ArrayList<>());
+        source.subscribe(frame -> {
+            lumaFormats.add(frame.getFormat());
+            lumaBytes.add(frame.getLuma().remaining());
+        }, SharedFrame.FORMAT_LUMA, 0);
+        List<Integer> nv21Bytes = Collections.synchronizedList(new ArrayList<>());
+        source.subscribe(frame -> {
+            nv21Formats.add(frame.getFormat());
+            nv21Bytes.add(frame.getNv21().remaining());
+        }, SharedFrame.FORMAT_NV21, 10);
+        try {
+            // 100 ms: il subscriber NV21 e' in scadenza solo al primo e al quarto frame
+            int[] expected = {SharedFrame.FORMAT_NV21, SharedFrame.FORMAT_LUMA, SharedFrame.FORMAT_LUMA, SharedFrame.FORMAT_NV21};
+            for (int i = 0; i < expected.length; i++) {
+                long now = i * 34 * MS;
+                assertEquals(expected[i], source.dueFormat(now));
+                SharedFrame frame = source.acquireFrame(expected[i], WIDTH, HEIGHT);
+                frame.data[0] = (byte) i;
+                source.publish(frame, i, now, now);
+                int count = i + 1;
+                waitFor(() -> lumaFormats.size() == count);
+            }
+            waitFor(() -> nv21Formats.size() == 2);
+            assertEquals(4, lumaBytes.size());
+            for (int bytes : lumaBytes) {
+                assertEquals(WIDTH * HEIGHT, bytes);
+            }
+            assertEquals(Integer.valueOf(SharedFrame.FORMAT_NV21), nv21Formats.get(0));
+            assertEquals(Integer.valueOf(SharedFrame.FORMAT_NV21), nv21Formats.get(1));
+            for (int bytes : nv21Bytes) {
+                assertEquals(YuvConverter.nv21Size(WIDTH, HEIGHT), bytes);
+            }
+        } finally {
+            source.close();
+        }
+    }
+
+    @Test
+    public void lumaFrameHasNoNv21() {
+        FrameSource source = new FrameSource("0");
+        SharedFrame frame = source.acquireFrame(SharedFrame.FORMAT_LUMA, WIDTH, HEIGHT);
+        assertEquals(WIDTH * HEIGHT, frame.getLuma().remaining());
+        assertTrue(frame.getLuma().isReadOnly());
+        try {
+            frame.getNv21();
+            fail("luma frame must not expose NV21");
+        } catch (IllegalStateException expected) {
+            // atteso
+        }
+        frame.release();
+    }
+
+    @Test
+    public void acquireReturnsNullWhenThePoolIsExhausted() {
+        FrameSource source = new FrameSource("0");
+        FrameSource.Subscription subscription = source.subscribe(frame -> { }, SharedFrame.FORMAT_NV21, 0);
+        try {
+            // Un subscriber: due frame in circolazione + uno di scorta
+            SharedFrame a = source.acquireFrame(SharedFrame.FORMAT_NV21, WIDTH, HEIGHT);
+            SharedFrame b = source.acquireFrame(SharedFrame.FORMAT_NV21, WIDTH, HEIGHT);
+            SharedFrame c = source.acquireFrame(SharedFrame.FORMAT_NV21, WIDTH, HEIGHT);
+            assertNotNull(c);
+            assertNull(source.acquireFrame(SharedFrame.FORMAT_NV21, WIDTH, HEIGHT));
+            assertEquals(1, source.getDroppedNoBuffer());
+            b.release();
+            assertSame(b, source.acquireFrame(SharedFrame.FORMAT_NV21, WIDTH, HEIGHT));
+            a.release();
+            b.release();
+            c.release();
+        } finally {
+            subscription.close();
+        }
+    }
+
+    @Test
+    public void frameReturnsToThePoolAfterTheLastRelease() throws Exception {
+        FrameSource source = new FrameSource("0");
+        List<SharedFrame> first = Collections.synchronizedList(new ArrayList<>());
+        List<SharedFrame> second = Collections.synchronizedList(new ArrayList<>());
+        source.subscribe(frame -> first.add(frame.retain()), SharedFrame.FORMAT_NV21, 0);
+        source.subscribe(frame -> second.add(frame.retain()), SharedFrame.FORMAT_NV21, 0);
+        try {
+            SharedFrame frame = publish(source, 0, 0);
+            waitFor(() -> first.size() == 1 && second.size() == 1);
+            first.get(0).release();
+            SharedFrame other = source.acquireFrame(SharedFrame.FORMAT_NV21, WIDTH, HEIGHT);
+            assertNotSame(frame, other);
+            other.release();
+            second.get(0).release();
+            // L'ultimo rilascio (anche quello del thread del subscriber, dopo onFrame)
+            // lo rimette in testa al pool
+            waitFor(() -> {
+                SharedFrame head = source.acquireFrame(SharedFrame.FORMAT_NV21, WIDTH, HEIGHT);
+                head.release();
+                return head == frame;
+            });
+        } finally {
+            source.close();
+        }
+    }
+
+    @Test
+    public void referencesBalanceAfterUnsubscribeAndClose() throws Exception {
+        FrameSource source = new FrameSource("0");
+        CountDownLatch entered = new CountDownLatch(1);
+        Semaphore gate = new Semaphore(0);
+        FrameSource.Subscription blocked = source.subscribe(frame -> {
+            entered.countDown();
+            gate.acquireUninterruptibly();
+        }, SharedFrame.FORMAT_NV21, 0);
+        List<SharedFrame> retained = Collections.synchronizedList(new ArrayList<>());
+        source.subscribe(frame -> retained.add(frame.retain()), SharedFrame.FORMAT_NV21, 0);
+
+        publish(source, 0, 0);
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+        waitFor(() -> retained.size() == 1);
+        publish(source, 1, 33 * MS);
+        waitFor(() -> retained.size() == 2);
+        publish(source, 2, 66 * MS);
+        waitFor(() -> retained.size() == 3);
+
+        // La coda del subscriber bloccato si svuota subito, il frame in elaborazione al ritorno
+        blocked.close();
+        gate.release();
+        source.close();
+        assertEquals(0, source.getSubscriberCount());
+        for (SharedFrame frame : retained) {
+            frame.release();
+        }
+        // Tutti e tre i frame creati tornano al pool, nessuno resta trattenuto
+        waitFor(() -> freeFrames(source) == 3);
+    }
+
+    @Test
+    public void doubleReleaseThrows() {
+        FrameSource source = new FrameSource("0");
+        SharedFrame frame = source.acquireFrame(SharedFrame.FORMAT_NV21, WIDTH, HEIGHT);
+        frame.release();
+        try {
+            frame.release();
+            fail("second release must throw");
+        } catch (IllegalStateException expected) {
+            // atteso
+        }
+        try {
+            frame.retain();
+            fail("retain after release must throw");
+        } catch (IllegalStateException expected) {
+            // atteso
+        }
+    }
+
+    // Come il thread camera: frame dal pool, primo byte = indice, consegna a nowNanos
+    private static SharedFrame publish(FrameSource source, int index, long nowNanos) {
+        int format = source.dueFormat(nowNanos);
+        if (format == 0) {
+            return null;
+        }
+        SharedFrame frame = source.acquireFrame(format, WIDTH, HEIGHT);
+        assertNotNull(frame);
+        frame.data[0] = (byte) index;
+        source.publish(frame, index, nowNanos, nowNanos);
+        return frame;
+    }
+
+    // Frame liberi nel pool: senza subscriber non se ne creano di nuovi
+    private static int freeFrames(FrameSource source) {
+        List<SharedFrame> frames = new ArrayList<>();
+        SharedFrame frame;
+        while ((frame = source.acquireFrame(SharedFrame.FORMAT_NV21, WIDTH, HEIGHT)) != null) {
+            frames.add(frame);
+        }
+        for (SharedFrame free : frames) {
+            free.release();
+        }
+        return frames.size();
+    }
+
+    private interface Condition {
+        boolean met();
+    }
+
+    private static void waitFor(Condition condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.met()) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("condition not met in 5 s");
+            }
+            Thread.sleep(1);
+        }
+    }
+}
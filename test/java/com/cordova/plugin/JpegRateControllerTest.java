@@ -0,0 +1,161 @@
+package com.cordova.plugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class JpegRateControllerTest {
+
+    // 30 fps: 30 frame chiudono una finestra di 1 s
+    private static final long FRAME_NANOS = 33_333_334L;
+
+    /** Modello del costo di un frame in funzione di qualita' e scala di risoluzione. */
+    private interface Plant {
+        int bytes(int quality, float scale);
+
+        long encodeNanos(int quality, float scale);
+    }
+
+    // Byte proporzionali a qualita' e pixel; codifica 10 ms a piena risoluzione
+    private static final Plant LINEAR = new Plant() {
+        @Override
+        public int bytes(int quality, float scale) {
+            return (int) (1000 * quality * scale * scale);
+        }
+
+        @Override
+        public long encodeNanos(int quality, float scale) {
+            return (long) (10_000_000L * scale * scale);
+        }
+    };
+
+    private long now = 0;
+
+    @Test
+    public void withinBudgetNothingChanges() {
+        JpegRateController controller = new JpegRateController(40, 80);
+        controller.configure(10_000_000, 0.9f, true);
+        List<Integer> trace = run(controller, LINEAR, 10);
+        assertEquals(Arrays.asList(80, 80, 80, 80, 80, 80, 80, 80, 80, 80), trace);
+        assertEquals(0, controller.getAdjustments());
+        assertEquals(0.3, controller.getEncodeLoad(), 0.01);
+        assertEquals(2_400_000, controller.getBytesPerSecond(), 10_000);
+    }
+
+    @Test
+    public void bandwidthStepsQualityDownThenHolds() {
+        JpegRateController controller = new JpegRateController(40, 80);
+        // 30 kB/s per punto di qualita': il budget regge al massimo qualita' 66
+        controller.configure(2_000_000, 0, false);
+        List<Integer> trace = run(controller, LINEAR, 8);
+        assertEquals(Arrays.asList(75, 70, 65, 65, 65, 65, 65, 65), trace);
+        assertEquals(3, controller.getAdjustments());
+        assertEquals(0, controller.getLevel());
+    }
+
+    @Test
+    public void qualityFloorThenResolution() {
+        JpegRateController controller = new JpegRateController(40, 80);
+        // Anche a qualita' 40 servono 1.2 MB/s: si scende di risoluzione
+        controller.configure(1_000_000, 0, true);
+        List<Integer> trace = run(controller, LINEAR, 12);
+        // Al livello 1 (area 0.5625) la qualita' risale finche' resta sotto l'80% del budget:
+        // 40 -> 675 kB/s, 45 -> 759 kB/s, 50 -> 844 kB/s
+        assertEquals(Arrays.asList(75, 70, 65, 60, 55, 50, 45, 40, 40, 45, 50, 50), trace);
+        assertEquals(1, controller.getLevel());
+        assertEquals(0.75f, controller.getScale(), 0f);
+        assertEquals(11, controller.getAdjustments());
+    }
+
+    @Test
+    public void withoutAdaptiveResolutionStaysAtFullSize() {
+        JpegRateController controller = new JpegRateController(40, 80);
+        controller.configure(500_000, 0, false);
+        run(controller, LINEAR, 20);
+        assertEquals(40, controller.getQuality());
+        assertEquals(0, controller.getLevel());
+        assertEquals(1f, controller.getScale(), 0f);
+    }
+
+    @Test
+    public void encodeLoadReducesResolutionFirst() {
+        JpegRateController controller = new JpegRateController(40, 80);
+        // Codifica 30% del tempo, budget 20%: la risoluzione scende prima della qualita'
+        controller.configure(0, 0.2f, true);
+        run(controller, LINEAR, 4);
+        assertEquals(80, controller.getQuality());
+        assertEquals(1, controller.getLevel());
+        assertEquals(0.3 * 0.5625, controller.getEncodeLoad(), 0.01);
+    }
+
+    @Test
+    public void recoversWithHysteresisWhenBudgetGrows() {
+        JpegRateController controller = new JpegRateController(40, 80);
+        controller.configure(1_000_000, 0, true);
+        run(controller, LINEAR, 12);
+        assertEquals(1, controller.getLevel());
+        // Budget ampio: prima torna la risoluzione, poi la qualita', un passo per finestra
+        controller.configure(10_000_000, 0, true);
+        List<Integer> trace = run(controller, LINEAR, 12);
+        assertEquals(0, controller.getLevel());
+        assertEquals(Arrays.asList(50, 55, 60, 65, 70, 75, 80, 80, 80, 80, 80, 80), trace);
+    }
+
+    @Test
+    public void noOscillationAtTheBoundary() {
+        JpegRateController controller = new JpegRateController(40, 80);
+        // Budget appena sotto qualita' 80: scende a 75 e non risale (75 > 80% del budget)
+        controller.configure(2_350_000, 0, true);
+        List<Integer> trace = run(controller, LINEAR, 30);
+        for (int quality : trace) {
+            assertEquals(75, quality);
+        }
+        assertEquals(1, controller.getAdjustments());
+    }
+
+    @Test
+    public void shortWindowsAreIgnored() {
+        JpegRateController controller = new JpegRateController(40, 80);
+        controller.configure(1000, 0, true);
+        // 1 fps: 2 frame in 2 s non bastano per una misura
+        for (int i = 0; i < 3; i++) {
+            controller.onFrameEncoded(1_000_000, 100_000, i * 1_000_000_000L);
+        }
+        assertEquals(80, controller.getQuality());
+        assertEquals(0, controller.getAdjustments());
+    }
+
+    @Test
+    public void recordOnlyFramesCountForLoadNotBandwidth() {
+        JpegRateController controller = new JpegRateController(40, 80);
+        controller.configure(100_000, 0, true);
+        for (int i = 0; i < 100; i++) {
+            controller.onFrameEncoded(1_000_000, 0, i * FRAME_NANOS);
+        }
+        assertEquals(0, controller.getBytesPerSecond(), 0);
+        assertTrue(controller.getEncodeLoad() > 0);
+        assertEquals(80, controller.getQuality());
+    }
+
+    // Simula 'seconds' finestre a 30 fps; ritorna la qualita' alla fine di ogni finestra
+    private List<Integer> run(JpegRateController controller, Plant plant, int seconds) {
+        List<Integer> trace = new ArrayList<>();
+        // Primo frame: apre la finestra
+        controller.onFrameEncoded(0, 0, now);
+        for (int s = 0; s < seconds; s++) {
+            for (int f = 0; f < 30; f++) {
+                now += FRAME_NANOS;
+                int quality = controller.getQuality();
+                float scale = controller.getScale();
+                controller.onFrameEncoded(plant.encodeNanos(quality, scale), plant.bytes(quality, scale), now);
+            }
+            trace.add(controller.getQuality());
+        }
+        return trace;
+    }
+}
@@ -0,0 +1,116 @@
+package com.cordova.plugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    // 4 bucket esatti sotto 4us + 4 sotto-bucket per ciascun esponente 2..37
+    private static final int LAST_BUCKET = 4 + 36 * 4 - 1;
+    private static final long MS = 1_000_000L;
+
+    @Test
+    public void smallValuesHaveExactBuckets() {
+        for (int micros = 0; micros < 4; micros++) {
+            assertEquals(micros, LatencyHistogram.bucketIndex(micros));
+            assertEquals(micros + 1, LatencyHistogram.bucketUpperBound(micros));
+        }
+    }
+
+    @Test
+    public void powersOfTwoStartABucketRange() {
+        for (int exponent = 2; exponent <= 37; exponent++) {
+            long power = 1L << exponent;
+            int index = LatencyHistogram.bucketIndex(power);
+            assertEquals((exponent - 1) * 4, index);
+            // Primo sotto-bucket: largo un quarto della potenza di due
+            assertEquals(power + power / 4, LatencyHistogram.bucketUpperBound(index));
+            // Il valore precedente chiude il bucket prima, con limite esattamente power
+            assertEquals(index - 1, LatencyHistogram.bucketIndex(power - 1));
+            assertEquals(power, LatencyHistogram.bucketUpperBound(index - 1));
+            if (exponent > 2) {
+                assertEquals(index, LatencyHistogram.bucketIndex(power + 1));
+            }
+        }
+    }
+
+    @Test
+    public void everyValueFallsInsideItsBucketWithinTwentyFivePercent() {
+        for (long micros = 1; micros < 1L << 20; micros += 1 + micros / 64) {
+            int index = LatencyHistogram.bucketIndex(micros);
+            long upper = LatencyHistogram.bucketUpperBound(index);
+            long lower = index == 0 ? 0 : LatencyHistogram.bucketUpperBound(index - 1);
+            assertTrue(micros + " in [" + lower + ", " + upper + ")", lower <= micros && micros < upper);
+            assertTrue(upper - lower <= Math.max(1, lower / 4));
+        }
+    }
+
+    @Test
+    public void lastBucketEndsAtTwoToThe38AndCollectsLargerValues() {
+        assertEquals(1L << 38, LatencyHistogram.bucketUpperBound(LAST_BUCKET));
+        assertEquals(LAST_BUCKET, LatencyHistogram.bucketIndex((1L << 38) - 1));
+        assertEquals(LAST_BUCKET, LatencyHistogram.bucketIndex(1L << 38));
+        assertEquals(LAST_BUCKET, LatencyHistogram.bucketIndex(Long.MAX_VALUE / 1000));
+
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(Long.MAX_VALUE);
+        // Il percentile si ferma al limite dell'ultimo bucket, il massimo resta esatto
+        assertEquals((1L << 38) / 1000.0, histogram.getPercentileMillis(50), 1e-9);
+        assertEquals(Long.MAX_VALUE / 1000 / 1000.0, histogram.getMaxMillis(), 1.0);
+    }
+
+    @Test
+    public void percentilesReturnTheBucketUpperBound() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 90; i++) {
+            histogram.record(1 * MS);
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record(10 * MS);
+        }
+        assertEquals(100, histogram.getCount());
+        // 1000us cade in [896, 1024)
+        assertEquals(1.024, histogram.getPercentileMillis(0), 1e-9);
+        assertEquals(1.024, histogram.getPercentileMillis(50), 1e-9);
+        assertEquals(1.024, histogram.getPercentileMillis(90), 1e-9);
+        // 10000us cade in [8192, 10240): il limite si ferma al massimo registrato
+        assertEquals(10.0, histogram.getPercentileMillis(91), 1e-9);
+        assertEquals(10.0, histogram.getPercentileMillis(100), 1e-9);
+        assertEquals(1.9, histogram.getMeanMillis(), 1e-9);
+        assertEquals(10.0, histogram.getMaxMillis(), 1e-9);
+    }
+
+    @Test
+    public void percentileIsClampedToTheMaximum() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1 * MS);
+        assertEquals(1.0, histogram.getPercentileMillis(50), 1e-9);
+        assertEquals(1.0, histogram.getPercentileMillis(99), 1e-9);
+    }
+
+    @Test
+    public void negativeDurationsAreIgnored() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-1);
+        assertEquals(0, histogram.getCount());
+        assertEquals(0.0, histogram.getPercentileMillis(50), 0.0);
+    }
+
+    @Test
+    public void resetClearsEverything() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(5 * MS);
+        histogram.record(7 * MS);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0.0, histogram.getMeanMillis(), 0.0);
+        assertEquals(0.0, histogram.getMaxMillis(), 0.0);
+        assertEquals(0.0, histogram.getPercentileMillis(99), 0.0);
+
+        histogram.record(2 * MS);
+        assertEquals(1, histogram.getCount());
+        assertEquals(2.0, histogram.getPercentileMillis(99), 1e-9);
+    }
+}
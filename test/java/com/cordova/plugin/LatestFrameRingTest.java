@@ -0,0 +1,77 @@
+package com.cordova.plugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class LatestFrameRingTest {
+
+    @Test
+    public void keepsOrderBelowCapacity() {
+        LatestFrameRing<String> ring = new LatestFrameRing<>(3);
+        assertNull(ring.offer("a"));
+        assertNull(ring.offer("b"));
+        assertEquals(2, ring.size());
+        assertEquals("a", ring.poll());
+        assertEquals("b", ring.poll());
+        assertNull(ring.poll());
+    }
+
+    @Test
+    public void evictsOldestWhenFull() {
+        LatestFrameRing<String> ring = new LatestFrameRing<>(2);
+        ring.offer("a");
+        ring.offer("b");
+        assertEquals("a", ring.offer("c"));
+        assertEquals("b", ring.offer("d"));
+        assertEquals(2, ring.getEvicted());
+        assertEquals("c", ring.poll());
+        assertEquals("d", ring.poll());
+    }
+
+    @Test
+    public void wrapsAroundManyTimes() {
+        LatestFrameRing<Integer> ring = new LatestFrameRing<>(3);
+        for (int i = 0; i < 100; i++) {
+            ring.offer(i);
+            if (i % 2 == 0) {
+                ring.poll();
+            }
+        }
+        assertEquals(3, ring.size());
+        assertEquals(Integer.valueOf(97), ring.poll());
+        assertEquals(Integer.valueOf(98), ring.poll());
+        assertEquals(Integer.valueOf(99), ring.poll());
+    }
+
+    @Test
+    public void takeWaitsForProducer() throws Exception {
+        LatestFrameRing<String> ring = new LatestFrameRing<>(1);
+        AtomicReference<String> taken = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+        Thread consumer = new Thread(() -> {
+            try {
+                taken.set(ring.take());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            done.countDown();
+        });
+        consumer.start();
+        Thread.sleep(50);
+        ring.offer("frame");
+        assertEquals(true, done.await(2, TimeUnit.SECONDS));
+        assertSame("frame", taken.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsZeroCapacity() {
+        new LatestFrameRing<String>(0);
+    }
+}
@@ -0,0 +1,153 @@
+package com.cordova.plugin;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MjpegStreamServerTest {
+
+    private MjpegStreamServer server;
+    private Thread publisher;
+    private volatile boolean publishing;
+
+    @Before
+    public void startServer() throws IOException {
+        server = new MjpegStreamServer();
+        server.start();
+        // Camera finta: un frame diverso ogni 5 ms
+        publishing = true;
+        publisher = new Thread(() -> {
+            for (int i = 0; publishing; i++) {
+                byte[] frame = frame(i);
+                server.publishFrame(frame, 0, frame.length);
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+        publisher.start();
+    }
+
+    @After
+    public void stopServer() throws InterruptedException {
+        publishing = false;
+        publisher.join();
+        server.stop();
+    }
+
+    @Test
+    public void streamsMultipartFrames() throws IOException {
+        try (Socket socket = connect("/stream?token=" + server.getToken())) {
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            String headers = readHead(in);
+            assertTrue(headers, headers.startsWith("HTTP/1.1 200 OK\r\n"));
+            assertTrue(headers, headers.contains("Content-Type: multipart/x-mixed-replace; boundary=usbcamframe\r\n"));
+
+            int previous = -1;
+            for (int part = 0; part < 2; part++) {
+                // Ogni parte si apre con CRLF + delimitatore: chiude il corpo precedente
+                assertEquals("", readLine(in));
+                assertEquals("--usbcamframe", readLine(in));
+                assertEquals("Content-Type: image/jpeg", readLine(in));
+                String length = readLine(in);
+                assertTrue(length, length.startsWith("Content-Length: "));
+                assertEquals("", readLine(in));
+                byte[] body = new byte[Integer.parseInt(length.substring("Content-Length: ".length()))];
+                in.readFully(body);
+                int index = ((body[2] & 0xFF) << 8) | (body[3] & 0xFF);
+                assertArrayEquals(frame(index), body);
+                assertTrue("frame " + index + " after " + previous, index > previous);
+                previous = index;
+            }
+        }
+    }
+
+    @Test
+    public void wrongTokenIsForbidden() throws IOException {
+        String token = server.getToken();
+        String wrong = (token.charAt(0) == 'a' ? 'b' : 'a') + token.substring(1);
+        assertStatus("/stream?token=" + wrong, "HTTP/1.1 403 Forbidden");
+        assertStatus("/stream?token=" + token.substring(1), "HTTP/1.1 403 Forbidden");
+        assertStatus("/stream", "HTTP/1.1 403 Forbidden");
+    }
+
+    @Test
+    public void unknownPathIsNotFound() throws IOException {
+        assertStatus("/photo?token=" + server.getToken(), "HTTP/1.1 404 Not Found");
+    }
+
+    private void assertStatus(String path, String status) throws IOException {
+        try (Socket socket = connect(path)) {
+            String head = readHead(new DataInputStream(socket.getInputStream()));
+            assertTrue(head, head.startsWith(status + "\r\n"));
+            // Il server chiude la connessione dopo la risposta
+            assertEquals(-1, socket.getInputStream().read());
+        }
+    }
+
+    private Socket connect(String path) throws IOException {
+        Socket socket = new Socket("127.0.0.1", server.getPort());
+        socket.setSoTimeout(5000);
+        OutputStream out = socket.getOutputStream();
+        out.write(("GET " + path + " HTTP/1.1\r\nHost: 127.0.0.1\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+        return socket;
+    }
+
+    // JPEG finto: SOI, indice del frame, contenuto e lunghezza che dipendono dall'indice, EOI
+    private static byte[] frame(int index) {
+        byte[] data = new byte[1000 + (index % 7) * 300];
+        for (int i = 4; i < data.length - 2; i++) {
+            data[i] = (byte) (i * 31 + index);
+        }
+        data[0] = (byte) 0xFF;
+        data[1] = (byte) 0xD8;
+        data[2] = (byte) (index >> 8);
+        data[3] = (byte) index;
+        data[data.length - 2] = (byte) 0xFF;
+        data[data.length - 1] = (byte) 0xD9;
+        return data;
+    }
+
+    // Header HTTP fino alla riga vuota (esclusa)
+    private static String readHead(InputStream in) throws IOException {
+        StringBuilder head = new StringBuilder();
+        String line;
+        while (!(line = readLine(in)).isEmpty()) {
+            head.append(line).append("\r\n");
+        }
+        return head.toString();
+    }
+
+    // Riga terminata da CRLF, senza terminatore
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int previous = -1;
+        while (true) {
+            int b = in.read();
+            if (b < 0) {
+                throw new IOException("connection closed");
+            }
+            if (previous == '\r' && b == '\n') {
+                byte[] bytes = line.toByteArray();
+                return new String(bytes, 0, bytes.length - 1, StandardCharsets.US_ASCII);
+            }
+            line.write(b);
+            previous = b;
+        }
+    }
+}
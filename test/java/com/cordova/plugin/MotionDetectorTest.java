@@ -0,0 +1,182 @@
+package com.cordova.plugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class MotionDetectorTest {
+
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+    private static final long FRAME_NANOS = 33_333_333L;
+
+    @Test
+    public void staticNoisySceneIsSuppressed() {
+        MotionDetector detector = new MotionDetector(25, 0.01f, 0);
+        Scene scene = new Scene(WIDTH, HEIGHT, WIDTH, 1);
+        // Il primo frame inizializza lo sfondo e passa
+        assertTrue(detector.process(scene.render(0), WIDTH, 1, WIDTH, HEIGHT, 0));
+        for (int i = 1; i < 300; i++) {
+            assertFalse("frame " + i, detector.process(scene.render(i), WIDTH, 1, WIDTH, HEIGHT, i * FRAME_NANOS));
+        }
+        assertEquals(299, detector.getSuppressedFrames());
+        assertEquals(0, detector.getMotionFrames());
+        assertEquals(1, detector.getKeepAliveFrames());
+    }
+
+    @Test
+    public void movingObjectPassesWithBoundingBox() {
+        MotionDetector detector = new MotionDetector(25, 0.01f, 0);
+        Scene scene = new Scene(WIDTH, HEIGHT, WIDTH, 1);
+        detector.process(scene.render(0), WIDTH, 1, WIDTH, HEIGHT, 0);
+        scene.object(200, 100, 40, 40);
+        assertTrue(detector.process(scene.render(1), WIDTH, 1, WIDTH, HEIGHT, FRAME_NANOS));
+        assertTrue(detector.isMotion());
+        // Il riquadro, allineato alle celle della griglia (10 px), contiene l'oggetto
+        assertTrue(detector.getBoxX() <= 200 && detector.getBoxX() > 200 - 10);
+        assertTrue(detector.getBoxY() <= 100 && detector.getBoxY() > 100 - 10);
+        assertTrue(detector.getBoxX() + detector.getBoxWidth() >= 240);
+        assertTrue(detector.getBoxX() + detector.getBoxWidth() < 240 + 10);
+        assertTrue(detector.getBoxY() + detector.getBoxHeight() >= 140);
+        assertTrue(detector.getBoxY() + detector.getBoxHeight() < 140 + 10);
+        assertEquals(16f / (32 * 24), detector.getChangedFraction(), 10f / (32 * 24));
+    }
+
+    @Test
+    public void persistentChangeIsAbsorbedByTheBackground() {
+        MotionDetector detector = new MotionDetector(25, 0.01f, 0);
+        Scene scene = new Scene(WIDTH, HEIGHT, WIDTH, 1);
+        detector.process(scene.render(0), WIDTH, 1, WIDTH, HEIGHT, 0);
+        // Luce accesa: tutta la scena +60 livelli, poi ferma
+        scene.brightness(60);
+        int passed = 0;
+        for (int i = 1; i <= 120; i++) {
+            if (detector.process(scene.render(i), WIDTH, 1, WIDTH, HEIGHT, i * FRAME_NANOS)) {
+                passed++;
+            }
+        }
+        assertTrue("passed " + passed, passed > 0 && passed < 30);
+        assertFalse(detector.isMotion());
+    }
+
+    @Test
+    public void smallChangeBelowAreaThresholdIsIgnored() {
+        MotionDetector detector = new MotionDetector(25, 0.05f, 0);
+        Scene scene = new Scene(WIDTH, HEIGHT, WIDTH, 1);
+        detector.process(scene.render(0), WIDTH, 1, WIDTH, HEIGHT, 0);
+        // 4 celle su 768: sotto il 5%
+        scene.object(100, 100, 20, 20);
+        assertFalse(detector.process(scene.render(1), WIDTH, 1, WIDTH, HEIGHT, FRAME_NANOS));
+        assertTrue(detector.getChangedFraction() > 0);
+    }
+
+    @Test
+    public void keepAliveLetsAFrameThroughPeriodically() {
+        MotionDetector detector = new MotionDetector(25, 0.01f, 1000);
+        Scene scene = new Scene(WIDTH, HEIGHT, WIDTH, 1);
+        int passed = 0;
+        // 10 s a 30 fps: il primo frame e poi uno al secondo
+        for (int i = 0; i < 300; i++) {
+            if (detector.process(scene.render(i), WIDTH, 1, WIDTH, HEIGHT, i * FRAME_NANOS)) {
+                passed++;
+            }
+        }
+        assertEquals(10, passed);
+        assertEquals(10, detector.getKeepAliveFrames());
+    }
+
+    @Test
+    public void paddedAndInterleavedLumaLayouts() {
+        for (int[] layout : new int[][] { { WIDTH + 64, 1 }, { 2 * WIDTH, 2 } }) {
+            MotionDetector detector = new MotionDetector(25, 0.01f, 0);
+            Scene scene = new Scene(WIDTH, HEIGHT, layout[0], layout[1]);
+            detector.process(scene.render(0), layout[0], layout[1], WIDTH, HEIGHT, 0);
+            assertFalse(detector.process(scene.render(1), layout[0], layout[1], WIDTH, HEIGHT, FRAME_NANOS));
+            scene.object(0, 0, 64, 48);
+            assertTrue(detector.process(scene.render(2), layout[0], layout[1], WIDTH, HEIGHT, 2 * FRAME_NANOS));
+            assertEquals(0, detector.getBoxX());
+            assertEquals(0, detector.getBoxY());
+        }
+    }
+
+    @Test
+    public void resolutionChangeResetsTheBackground() {
+        MotionDetector detector = new MotionDetector(25, 0.01f, 0);
+        Scene small = new Scene(160, 120, 160, 1);
+        Scene large = new Scene(WIDTH, HEIGHT, WIDTH, 1);
+        detector.process(small.render(0), 160, 1, 160, 120, 0);
+        assertFalse(detector.process(small.render(1), 160, 1, 160, 120, FRAME_NANOS));
+        // Nuovo sfondo: passa come primo frame, non come movimento
+        assertTrue(detector.process(large.render(2), WIDTH, 1, WIDTH, HEIGHT, 2 * FRAME_NANOS));
+        assertFalse(detector.isMotion());
+    }
+
+    @Test
+    public void noAllocationPerFrame() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        MotionDetector detector = new MotionDetector(25, 0.01f, 1000);
+        ByteBuffer frame = new Scene(1280, 720, 1280, 1).render(0);
+        for (int i = 0; i < 2000; i++) {
+            detector.process(frame, 1280, 1, 1280, 720, i * FRAME_NANOS);
+        }
+        long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        for (int i = 0; i < 1000; i++) {
+            detector.process(frame, 1280, 1, 1280, 720, i * FRAME_NANOS);
+        }
+        long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+        assertTrue("allocated " + allocated + " bytes", allocated < 4096);
+    }
+
+    /** Scena sintetica: gradiente fisso, rumore del sensore, oggetto e luminosita' opzionali. */
+    private static final class Scene {
+        private final int width;
+        private final int height;
+        private final int rowStride;
+        private final int pixelStride;
+        private final byte[] data;
+        private int objectX;
+        private int objectY;
+        private int objectWidth;
+        private int objectHeight;
+        private int brightness;
+
+        Scene(int width, int height, int rowStride, int pixelStride) {
+            this.width = width;
+            this.height = height;
+            this.rowStride = rowStride;
+            this.pixelStride = pixelStride;
+            this.data = new byte[rowStride * height];
+        }
+
+        void object(int x, int y, int w, int h) {
+            objectX = x;
+            objectY = y;
+            objectWidth = w;
+            objectHeight = h;
+        }
+
+        void brightness(int delta) {
+            brightness = delta;
+        }
+
+        ByteBuffer render(long frameNumber) {
+            Random noise = new Random(frameNumber);
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    int value = 60 + (x + y) / 8 + brightness + noise.nextInt(9) - 4;
+                    if (x >= objectX && x < objectX + objectWidth && y >= objectY && y < objectY + objectHeight) {
+                        value = 230;
+                    }
+                    data[y * rowStride + x * pixelStride] = (byte) Math.max(0, Math.min(value, 255));
+                }
+            }
+            return ByteBuffer.wrap(data);
+        }
+    }
+}
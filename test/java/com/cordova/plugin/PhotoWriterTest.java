@@ -0,0 +1,114 @@
+package com.cordova.plugin;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PhotoWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<File> saved = Collections.synchronizedList(new ArrayList<>());
+    private final List<Exception> errors = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger released = new AtomicInteger();
+
+    private final PhotoWriter.Callback callback = new PhotoWriter.Callback() {
+        @Override
+        public void onSaved(File file, long latencyNanos) {
+            saved.add(file);
+        }
+
+        @Override
+        public void onError(Exception e) {
+            errors.add(e);
+        }
+    };
+
+    @Test
+    public void writesFilesAndSyncsTheDirectory() throws IOException {
+        File directory = new File(folder.getRoot(), "photos");
+        PhotoWriter writer = new PhotoWriter(directory, "IMG_", ".jpg", 8);
+        List<File> synced = Collections.synchronizedList(new ArrayList<>());
+        writer.setDirectorySync(synced::add);
+        byte[] first = { 1, 2, 3, 4 };
+        byte[] second = { 5, 6, 7 };
+        assertTrue(writer.submit(ByteBuffer.wrap(first), released::incrementAndGet, callback));
+        assertTrue(writer.submit(ByteBuffer.wrap(second), released::incrementAndGet, callback));
+        assertTrue(writer.shutdown(5000));
+
+        assertEquals(2, saved.size());
+        assertTrue(errors.isEmpty());
+        assertEquals(2, released.get());
+        // Stesso millisecondo: il secondo file riceve un suffisso invece di sovrascrivere il primo
+        assertArrayEquals(first, Files.readAllBytes(saved.get(0).toPath()));
+        assertArrayEquals(second, Files.readAllBytes(saved.get(1).toPath()));
+        assertEquals(2, synced.size());
+        assertEquals(directory, synced.get(0));
+        assertEquals(2, writer.getWritten());
+    }
+
+    @Test
+    public void directoryIsNotSyncedWithoutFsync() throws IOException {
+        PhotoWriter writer = new PhotoWriter(folder.getRoot(), "IMG_", ".jpg", 8);
+        writer.setFsync(false);
+        AtomicInteger syncs = new AtomicInteger();
+        writer.setDirectorySync(directory -> syncs.incrementAndGet());
+        assertTrue(writer.submit(ByteBuffer.wrap(new byte[] { 1 }), released::incrementAndGet, callback));
+        assertTrue(writer.shutdown(5000));
+        assertEquals(1, saved.size());
+        assertEquals(0, syncs.get());
+    }
+
+    @Test
+    public void shutdownFailsWritesThatCannotComplete() throws InterruptedException {
+        PhotoWriter writer = new PhotoWriter(folder.getRoot(), "IMG_", ".jpg", 8);
+        CountDownLatch started = new CountDownLatch(1);
+        // Disco bloccato: la prima scrittura resta ferma nella sincronizzazione
+        writer.setDirectorySync(directory -> {
+            started.countDown();
+            try {
+                new CountDownLatch(1).await();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("interrupted");
+            }
+        });
+        for (int i = 0; i < 4; i++) {
+            assertTrue(writer.submit(ByteBuffer.wrap(new byte[] { (byte) i }), released::incrementAndGet, callback));
+        }
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        assertTrue(writer.shutdown(50));
+        assertTrue(saved.isEmpty());
+        assertEquals(4, errors.size());
+        assertEquals(4, released.get());
+        assertEquals(4, writer.getFailed());
+        // Nessun file parziale
+        assertEquals(0, folder.getRoot().listFiles().length);
+    }
+
+    @Test
+    public void submitAfterShutdownIsRejected() {
+        PhotoWriter writer = new PhotoWriter(folder.getRoot(), "IMG_", ".jpg", 8);
+        assertTrue(writer.shutdown(5000));
+        assertFalse(writer.submit(ByteBuffer.wrap(new byte[] { 1 }), released::incrementAndGet, callback));
+        assertEquals(0, released.get());
+    }
+}
@@ -0,0 +1,48 @@
+package com.cordova.plugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class PixelBudgetTest {
+
+    private static final long VGA_30 = 640L * 480 * 30;
+    private static final long HD_30 = 1280L * 720 * 30;
+
+    @Test
+    public void rejectsReservationsOverTheLimit() {
+        PixelBudget budget = new PixelBudget(HD_30);
+        assertTrue(budget.reserve("0", VGA_30));
+        assertFalse(budget.reserve("1", HD_30));
+        assertEquals(VGA_30, budget.getUsed());
+        // La stessa sessione sostituisce la propria quota
+        assertTrue(budget.reserve("0", HD_30));
+        assertEquals(HD_30, budget.getUsed());
+    }
+
+    @Test
+    public void sessionsOpenedWithoutLimitCountOnceALimitIsSet() {
+        PixelBudget budget = new PixelBudget(0);
+        assertTrue(budget.reserve("0", HD_30));
+        budget.setLimit(HD_30 + VGA_30 / 2);
+        assertEquals(HD_30, budget.getUsed());
+        assertFalse(budget.reserve("1", VGA_30));
+        budget.release("0");
+        assertTrue(budget.reserve("1", VGA_30));
+        assertEquals(VGA_30, budget.getUsed());
+    }
+
+    @Test
+    public void updateKeepsAnAdmittedSession() {
+        PixelBudget budget = new PixelBudget(0);
+        assertTrue(budget.reserve("0", VGA_30));
+        budget.setLimit(VGA_30);
+        // Configurazione negoziata piu' grande della richiesta: la sessione resta attiva
+        assertTrue(budget.update("0", HD_30));
+        assertEquals(HD_30, budget.getUsed());
+        assertFalse(budget.update("1", VGA_30));
+        assertEquals(HD_30, budget.getUsed());
+    }
+}
@@ -0,0 +1,190 @@
+package com.cordova.plugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class PrecaptureStateMachineTest {
+
+    // Valori di CaptureResult.CONTROL_AF_STATE_* / CONTROL_AE_STATE_*
+    private static final Integer AF_INACTIVE = 0;
+    private static final Integer AF_ACTIVE_SCAN = 3;
+    private static final Integer AF_FOCUSED_LOCKED = 4;
+    private static final Integer AF_NOT_FOCUSED_LOCKED = 5;
+    private static final Integer AE_SEARCHING = 1;
+    private static final Integer AE_CONVERGED = 2;
+    private static final Integer AE_FLASH_REQUIRED = 4;
+    private static final Integer AE_PRECAPTURE = 5;
+
+    private static final PrecaptureStateMachine.Action NONE = PrecaptureStateMachine.Action.NONE;
+    private static final PrecaptureStateMachine.Action CAPTURE = PrecaptureStateMachine.Action.CAPTURE;
+
+    @Test
+    public void afScanLockThenAePrecaptureConverged() {
+        PrecaptureStateMachine machine = new PrecaptureStateMachine(true, true);
+        assertEquals(PrecaptureStateMachine.Action.TRIGGER_AF, machine.start());
+        assertEquals(PrecaptureStateMachine.State.WAITING_AF_LOCK, machine.getState());
+        assertTrue(machine.isAfTriggered());
+
+        assertEquals(NONE, machine.onTriggerResult(10, AF_INACTIVE, AE_CONVERGED));
+        assertEquals(NONE, machine.onResult(11, AF_ACTIVE_SCAN, AE_CONVERGED));
+        assertEquals(NONE, machine.onResult(12, AF_ACTIVE_SCAN, AE_CONVERGED));
+        assertEquals(PrecaptureStateMachine.Action.TRIGGER_AE_PRECAPTURE, machine.onResult(13, AF_FOCUSED_LOCKED, AE_CONVERGED));
+        assertEquals(PrecaptureStateMachine.State.WAITING_AE_PRECAPTURE, machine.getState());
+
+        assertEquals(NONE, machine.onTriggerResult(14, AF_FOCUSED_LOCKED, AE_PRECAPTURE));
+        assertEquals(PrecaptureStateMachine.State.WAITING_AE_CONVERGED, machine.getState());
+        assertEquals(NONE, machine.onResult(15, AF_FOCUSED_LOCKED, AE_PRECAPTURE));
+        assertEquals(NONE, machine.onResult(16, AF_FOCUSED_LOCKED, AE_SEARCHING));
+        assertEquals(CAPTURE, machine.onResult(17, AF_FOCUSED_LOCKED, AE_CONVERGED));
+        assertTrue(machine.isDone());
+        assertFalse(machine.isTimedOut());
+        // Risultati successivi non producono un secondo scatto
+        assertEquals(NONE, machine.onResult(18, AF_FOCUSED_LOCKED, AE_CONVERGED));
+    }
+
+    @Test
+    public void notFocusedLockStillMovesToExposure() {
+        PrecaptureStateMachine machine = new PrecaptureStateMachine(true, true);
+        machine.start();
+        assertEquals(PrecaptureStateMachine.Action.TRIGGER_AE_PRECAPTURE,
+                machine.onTriggerResult(5, AF_NOT_FOCUSED_LOCKED, AE_CONVERGED));
+    }
+
+    @Test
+    public void flashRequiredCountsAsConverged() {
+        PrecaptureStateMachine machine = new PrecaptureStateMachine(false, true);
+        assertEquals(PrecaptureStateMachine.Action.TRIGGER_AE_PRECAPTURE, machine.start());
+        assertEquals(NONE, machine.onTriggerResult(20, null, AE_PRECAPTURE));
+        assertEquals(CAPTURE, machine.onResult(21, null, AE_FLASH_REQUIRED));
+    }
+
+    @Test
+    public void aeConvergedWithoutPrecaptureStateFinishesAfterIdleResults() {
+        PrecaptureStateMachine machine = new PrecaptureStateMachine(false, true);
+        machine.start();
+        assertEquals(NONE, machine.onTriggerResult(1, null, AE_CONVERGED));
+        assertEquals(NONE, machine.onResult(2, null, AE_SEARCHING));
+        assertEquals(NONE, machine.onResult(3, null, AE_CONVERGED));
+        assertEquals(CAPTURE, machine.onResult(4, null, AE_CONVERGED));
+    }
+
+    @Test
+    public void fixedFocusSkipsAf() {
+        PrecaptureStateMachine machine = new PrecaptureStateMachine(false, true);
+        assertEquals(PrecaptureStateMachine.Action.TRIGGER_AE_PRECAPTURE, machine.start());
+        assertFalse(machine.isAfTriggered());
+    }
+
+    @Test
+    public void noAfNoAeCapturesImmediately() {
+        PrecaptureStateMachine machine = new PrecaptureStateMachine(false, false);
+        assertEquals(CAPTURE, machine.start());
+        assertTrue(machine.isDone());
+    }
+
+    @Test
+    public void nullStatesFromUvcHalsDoNotBlock() {
+        PrecaptureStateMachine machine = new PrecaptureStateMachine(true, true);
+        machine.start();
+        // Nessuno stato AF: si passa all'esposizione; nessuno stato AE: si scatta
+        assertEquals(PrecaptureStateMachine.Action.TRIGGER_AE_PRECAPTURE, machine.onTriggerResult(7, null, null));
+        assertEquals(CAPTURE, machine.onTriggerResult(8, null, null));
+    }
+
+    @Test
+    public void nullAeStateWhileConvergingCaptures() {
+        PrecaptureStateMachine machine = new PrecaptureStateMachine(false, true);
+        machine.start();
+        machine.onTriggerResult(1, null, AE_PRECAPTURE);
+        assertEquals(CAPTURE, machine.onResult(2, null, null));
+    }
+
+    @Test
+    public void afInactiveAfterTriggerIsTreatedAsUnsupported() {
+        PrecaptureStateMachine machine = new PrecaptureStateMachine(true, false);
+        machine.start();
+        assertEquals(NONE, machine.onTriggerResult(30, AF_INACTIVE, null));
+        assertEquals(NONE, machine.onResult(31, AF_INACTIVE, null));
+        assertEquals(CAPTURE, machine.onResult(32, AF_INACTIVE, null));
+    }
+
+    @Test
+    public void resultsBeforeTheTriggerAreIgnored() {
+        PrecaptureStateMachine machine = new PrecaptureStateMachine(true, true);
+        machine.start();
+        // Anteprima prima del risultato del trigger: fuoco bloccato da uno scatto precedente
+        assertEquals(NONE, machine.onResult(99, AF_FOCUSED_LOCKED, AE_CONVERGED));
+        assertEquals(NONE, machine.onTriggerResult(100, AF_ACTIVE_SCAN, AE_CONVERGED));
+        assertEquals(NONE, machine.onResult(98, AF_FOCUSED_LOCKED, AE_CONVERGED));
+        assertEquals(PrecaptureStateMachine.State.WAITING_AF_LOCK, machine.getState());
+
+        assertEquals(PrecaptureStateMachine.Action.TRIGGER_AE_PRECAPTURE, machine.onResult(101, AF_FOCUSED_LOCKED, AE_CONVERGED));
+        // Nuovo stadio: i frame precedenti al trigger AE non contano, anche se convergenti
+        assertEquals(NONE, machine.onResult(102, AF_FOCUSED_LOCKED, null));
+        assertEquals(NONE, machine.onTriggerResult(104, AF_FOCUSED_LOCKED, AE_PRECAPTURE));
+        assertEquals(NONE, machine.onResult(103, AF_FOCUSED_LOCKED, AE_CONVERGED));
+        assertEquals(CAPTURE, machine.onResult(105, AF_FOCUSED_LOCKED, AE_CONVERGED));
+    }
+
+    @Test
+    public void timeoutWhileWaitingForAfLock() {
+        PrecaptureStateMachine machine = new PrecaptureStateMachine(true, true);
+        machine.start();
+        machine.onTriggerResult(1, AF_ACTIVE_SCAN, AE_CONVERGED);
+        assertTimeoutCaptures(machine);
+    }
+
+    @Test
+    public void timeoutBeforeTheTriggerResult() {
+        PrecaptureStateMachine machine = new PrecaptureStateMachine(true, true);
+        machine.start();
+        assertTimeoutCaptures(machine);
+    }
+
+    @Test
+    public void timeoutWhileWaitingForAePrecapture() {
+        PrecaptureStateMachine machine = new PrecaptureStateMachine(false, true);
+        machine.start();
+        machine.onTriggerResult(1, null, AE_SEARCHING);
+        assertEquals(PrecaptureStateMachine.State.WAITING_AE_PRECAPTURE, machine.getState());
+        assertTimeoutCaptures(machine);
+    }
+
+    @Test
+    public void timeoutWhileWaitingForAeConvergence() {
+        PrecaptureStateMachine machine = new PrecaptureStateMachine(false, true);
+        machine.start();
+        machine.onTriggerResult(1, null, AE_PRECAPTURE);
+        assertEquals(PrecaptureStateMachine.State.WAITING_AE_CONVERGED, machine.getState());
+        assertTimeoutCaptures(machine);
+    }
+
+    @Test
+    public void timeoutAfterCaptureDoesNothing() {
+        PrecaptureStateMachine machine = new PrecaptureStateMachine(false, false);
+        machine.start();
+        assertEquals(NONE, machine.onTimeout());
+        assertFalse(machine.isTimedOut());
+    }
+
+    @Test
+    public void failedTriggerMovesToTheNextStage() {
+        PrecaptureStateMachine machine = new PrecaptureStateMachine(true, true);
+        machine.start();
+        assertEquals(PrecaptureStateMachine.Action.TRIGGER_AE_PRECAPTURE, machine.onTriggerFailed());
+        assertEquals(CAPTURE, machine.onTriggerFailed());
+        assertEquals(NONE, machine.onTriggerFailed());
+    }
+
+    private static void assertTimeoutCaptures(PrecaptureStateMachine machine) {
+        assertEquals(CAPTURE, machine.onTimeout());
+        assertTrue(machine.isDone());
+        assertTrue(machine.isTimedOut());
+        // Un risultato in ritardo non fa scattare di nuovo
+        assertEquals(NONE, machine.onResult(1000, AF_FOCUSED_LOCKED, AE_CONVERGED));
+        assertEquals(NONE, machine.onTimeout());
+    }
+}
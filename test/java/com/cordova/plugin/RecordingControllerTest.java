@@ -0,0 +1,121 @@
+package com.cordova.plugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RecordingControllerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void secondReservationIsRejectedUntilStopped() throws IOException {
+        RecordingController recording = new RecordingController(folder.getRoot());
+        long reservation = recording.reserve();
+        assertNotEquals(0, reservation);
+        // Richiesta ravvicinata: il file non e' ancora creato ma il posto e' preso
+        assertEquals(0, recording.reserve());
+        assertTrue(recording.isActive());
+        assertFalse(recording.isRecording());
+
+        FrameRecorder recorder = recording.start(reservation, "a.avi", 64, 48, 30);
+        assertEquals(new File(folder.getRoot(), "a.avi"), recorder.getFile());
+        assertEquals(0, recording.reserve());
+        byte[] frame = AviMjpegWriterTest.jpeg(100, 1);
+        assertTrue(recording.offer(frame, 0, frame.length, 0));
+
+        assertSame(recorder, recording.detach());
+        recorder.stop();
+        assertEquals(1, recorder.getFrameCount());
+        assertFalse(recording.isActive());
+        assertFalse(recording.offer(frame, 0, frame.length, 1));
+        assertNotEquals(0, recording.reserve());
+    }
+
+    @Test
+    public void stopDuringStartupDiscardsTheRecorder() throws IOException {
+        RecordingController recording = new RecordingController(folder.getRoot());
+        long reservation = recording.reserve();
+        // close() mentre il thread pool sta creando il file
+        assertNull(recording.detach());
+        try {
+            recording.start(reservation, "late.avi", 64, 48, 30);
+            fail("start after detach must fail");
+        } catch (IOException expected) {
+            assertEquals("Recording cancelled", expected.getMessage());
+        }
+        assertFalse(recording.isActive());
+        assertFalse(new File(folder.getRoot(), "late.avi").exists());
+    }
+
+    @Test
+    public void failedStartReleasesTheReservation() {
+        File notADirectory = new File(folder.getRoot(), "file");
+        RecordingController recording = new RecordingController(new File(notADirectory, "movies"));
+        long reservation = recording.reserve();
+        try {
+            assertTrue(notADirectory.createNewFile());
+            recording.start(reservation, null, 64, 48, 30);
+            fail("start without a directory must fail");
+        } catch (IOException expected) {
+            // atteso
+        }
+        assertFalse(recording.isActive());
+        assertNotEquals(0, recording.reserve());
+    }
+
+    @Test
+    public void defaultFileNameIsTimestamped() throws IOException {
+        RecordingController recording = new RecordingController(new File(folder.getRoot(), "Movies"));
+        FrameRecorder recorder = recording.start(recording.reserve(), null, 64, 48, 30);
+        recording.detach();
+        recorder.stop();
+        String name = recorder.getFile().getName();
+        assertTrue(name, name.matches("USB_CAM_\\d{8}_\\d{6}\\.avi"));
+    }
+
+    @Test
+    public void pathsInFileNameAreRejected() throws IOException {
+        RecordingController recording = new RecordingController(new File(folder.getRoot(), "Movies"));
+        for (String name : new String[] {"../../x.avi", "sub/x.avi", "..", "a\\b.avi"}) {
+            long reservation = recording.reserve();
+            try {
+                recording.start(reservation, name, 64, 48, 30);
+                fail("file name " + name + " must be rejected");
+            } catch (IllegalArgumentException expected) {
+                // atteso
+            }
+            assertFalse(recording.isActive());
+        }
+        assertFalse(new File(folder.getRoot(), "x.avi").exists());
+    }
+
+    @Test
+    public void existingFileIsNotTruncated() throws IOException {
+        File existing = folder.newFile("take.avi");
+        Files.write(existing.toPath(), new byte[] {1, 2, 3});
+        RecordingController recording = new RecordingController(folder.getRoot());
+        FrameRecorder first = recording.start(recording.reserve(), "take.avi", 64, 48, 30);
+        recording.detach();
+        first.stop();
+        FrameRecorder second = recording.start(recording.reserve(), "take.avi", 64, 48, 30);
+        recording.detach();
+        second.stop();
+        assertEquals(3, existing.length());
+        assertEquals(new File(folder.getRoot(), "take_1.avi"), first.getFile());
+        assertEquals(new File(folder.getRoot(), "take_2.avi"), second.getFile());
+    }
+}
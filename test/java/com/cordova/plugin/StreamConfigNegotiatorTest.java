@@ -0,0 +1,75 @@
+package com.cordova.plugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class StreamConfigNegotiatorTest {
+
+    private static final long FPS_30 = 33_333_333L;
+    private static final long FPS_5 = 200_000_000L;
+
+    // Webcam UVC tipica: MJPEG fino a 1080p a 30 fps, YUV a 30 fps solo fino a 480p
+    private static StreamConfigNegotiator.Capabilities webcam() {
+        return new StreamConfigNegotiator.Capabilities()
+                .addOutput(StreamConfigNegotiator.FORMAT_YUV_420_888, 640, 480, FPS_30, 0)
+                .addOutput(StreamConfigNegotiator.FORMAT_YUV_420_888, 1280, 720, FPS_5, 0)
+                .addOutput(StreamConfigNegotiator.FORMAT_YUV_420_888, 1920, 1080, FPS_5, 0)
+                .addOutput(StreamConfigNegotiator.FORMAT_JPEG, 640, 480, FPS_30, 0)
+                .addOutput(StreamConfigNegotiator.FORMAT_JPEG, 1280, 720, FPS_30, 0)
+                .addOutput(StreamConfigNegotiator.FORMAT_JPEG, 1920, 1080, FPS_30, 0)
+                .addFpsRange(5, 30)
+                .addFpsRange(30, 30);
+    }
+
+    @Test
+    public void passthroughTakesStillsFromTheStream() {
+        StreamConfigNegotiator.StreamConfig config =
+                StreamConfigNegotiator.negotiate(webcam(), 1280, 720, 30, true);
+        assertEquals(StreamConfigNegotiator.FORMAT_JPEG, config.format);
+        assertEquals(1280, config.width);
+        assertEquals(720, config.height);
+        // Un solo stream JPEG: niente secondo JPEG a 1080p per lo scatto
+        assertEquals(1280, config.stillWidth);
+        assertEquals(720, config.stillHeight);
+        assertTrue(config.exact);
+        assertEquals(30, config.fpsMin);
+        assertEquals(30, config.fpsMax);
+    }
+
+    @Test
+    public void yuvStreamUsesTheLargestStillWithTheSameAspect() {
+        StreamConfigNegotiator.StreamConfig config =
+                StreamConfigNegotiator.negotiate(webcam(), 1280, 720, 30, false);
+        assertEquals(StreamConfigNegotiator.FORMAT_YUV_420_888, config.format);
+        assertEquals(1920, config.stillWidth);
+        assertEquals(1080, config.stillHeight);
+    }
+
+    @Test
+    public void withoutPassthroughSizeWinsOverFps() {
+        StreamConfigNegotiator.StreamConfig config =
+                StreamConfigNegotiator.negotiate(webcam(), 1280, 720, 30, false);
+        // Nessun YUV 720p a 30 fps: si rinuncia agli fps, non alla dimensione
+        assertEquals(1280, config.width);
+        assertEquals(720, config.height);
+        // Range AE che contiene i 5 fps sostenibili
+        assertEquals(5, config.fpsMin);
+        assertEquals(30, config.fpsMax);
+        assertFalse(config.exact);
+    }
+
+    @Test
+    public void stallingJpegIsNotAPreviewStream() {
+        StreamConfigNegotiator.Capabilities caps = new StreamConfigNegotiator.Capabilities()
+                .addOutput(StreamConfigNegotiator.FORMAT_YUV_420_888, 640, 480, FPS_30, 0)
+                .addOutput(StreamConfigNegotiator.FORMAT_JPEG, 640, 480, FPS_30, 50_000_000L)
+                .addOutput(StreamConfigNegotiator.FORMAT_JPEG, 2592, 1944, FPS_5, 200_000_000L);
+        StreamConfigNegotiator.StreamConfig config = StreamConfigNegotiator.negotiate(caps, 640, 480, 30, true);
+        assertEquals(StreamConfigNegotiator.FORMAT_YUV_420_888, config.format);
+        assertEquals(2592, config.stillWidth);
+        assertEquals(1944, config.stillHeight);
+    }
+}
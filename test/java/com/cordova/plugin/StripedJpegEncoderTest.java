@@ -0,0 +1,226 @@
+package com.cordova.plugin;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.imageio.ImageIO;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class StripedJpegEncoderTest {
+
+    private static final int[][] SIZES = { { 1920, 1080 }, { 641, 361 }, { 320, 240 }, { 17, 9 }, { 1, 1 } };
+
+    private static ForkJoinPool single;
+    private static ForkJoinPool quad;
+
+    @BeforeClass
+    public static void createPools() {
+        single = new ForkJoinPool(1);
+        // Quattro worker anche su macchine con meno core: conta il numero di strisce
+        quad = new ForkJoinPool(4);
+    }
+
+    @AfterClass
+    public static void shutdownPools() {
+        single.shutdown();
+        quad.shutdown();
+    }
+
+    @Test
+    public void decodesInImageIoCloseToTheSource() throws IOException {
+        for (int[] size : SIZES) {
+            byte[] nv21 = scene(size[0], size[1]);
+            for (int quality : new int[] { 50, 90 }) {
+                BufferedImage image = decode(encode(new StripedJpegEncoder(quad), nv21, size[0], size[1], quality));
+                assertEquals(size[0], image.getWidth());
+                assertEquals(size[1], image.getHeight());
+                double error = meanError(image, nv21, size[0], size[1]);
+                String label = size[0] + "x" + size[1] + " q" + quality + " mean error " + error;
+                assertTrue(label, error < (quality >= 90 ? 2.5 : 4.5));
+            }
+        }
+    }
+
+    @Test
+    public void sharedPoolEncoderDecodes() throws IOException {
+        // Quello creato dall'opzione jpegEncoder: 'striped' di open
+        byte[] nv21 = scene(1280, 720);
+        StripedJpegEncoder encoder = new StripedJpegEncoder();
+        for (int i = 0; i < 3; i++) {
+            BufferedImage image = decode(encode(encoder, nv21, 1280, 720, 80));
+            assertTrue(meanError(image, nv21, 1280, 720) < 4.5);
+        }
+    }
+
+    @Test
+    public void stripesDecodeLikeASingleScan() throws IOException {
+        for (int[] size : SIZES) {
+            byte[] nv21 = scene(size[0], size[1]);
+            byte[] striped = encode(new StripedJpegEncoder(quad), nv21, size[0], size[1], 85);
+            byte[] whole = encode(new StripedJpegEncoder(single), nv21, size[0], size[1], 85);
+            // Le strisce cambiano solo i predittori DC: i coefficienti, e quindi i pixel, sono gli stessi
+            assertArrayEquals(size[0] + "x" + size[1], pixels(decode(whole)), pixels(decode(striped)));
+        }
+    }
+
+    @Test
+    public void stripesAreSeparatedByRestartMarkers() throws IOException {
+        byte[] nv21 = scene(1920, 1080);
+        byte[] jpeg = encode(new StripedJpegEncoder(quad), nv21, 1920, 1080, 80);
+        // 68 righe di MCU su 8 strisce (4 worker x 2): 9 righe per striscia, ultima piu' corta
+        int interval = readRestartInterval(jpeg);
+        assertEquals(120 * 9, interval);
+        int[] markers = restartMarkers(jpeg);
+        assertEquals(7, markers.length);
+        for (int i = 0; i < markers.length; i++) {
+            assertEquals(0xD0 + (i & 7), markers[i]);
+        }
+        assertEquals(0xFF, jpeg[jpeg.length - 2] & 0xFF);
+        assertEquals(0xD9, jpeg[jpeg.length - 1] & 0xFF);
+    }
+
+    @Test
+    public void smallFramesUseASingleScan() throws IOException {
+        byte[] jpeg = encode(new StripedJpegEncoder(quad), scene(160, 120), 160, 120, 80);
+        assertEquals(0, readRestartInterval(jpeg));
+        assertEquals(0, restartMarkers(jpeg).length);
+    }
+
+    @Test
+    public void reusedEncoderIsDeterministicAcrossQualityChanges() throws IOException {
+        byte[] nv21 = scene(641, 361);
+        StripedJpegEncoder reused = new StripedJpegEncoder(quad);
+        encode(reused, scene(1920, 1080), 1920, 1080, 30);
+        for (int quality : new int[] { 50, 95, 50, 1, 100 }) {
+            byte[] fresh = encode(new StripedJpegEncoder(quad), nv21, 641, 361, quality);
+            assertArrayEquals("quality " + quality, fresh, encode(reused, nv21, 641, 361, quality));
+        }
+    }
+
+    @Test
+    public void higherQualityIsLargerAndMoreAccurate() throws IOException {
+        byte[] nv21 = scene(320, 240);
+        StripedJpegEncoder encoder = new StripedJpegEncoder(single);
+        byte[] low = encode(encoder, nv21, 320, 240, 30);
+        byte[] high = encode(encoder, nv21, 320, 240, 95);
+        assertTrue(high.length > low.length);
+        assertTrue(meanError(decode(high), nv21, 320, 240) < meanError(decode(low), nv21, 320, 240));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsShortBuffers() throws IOException {
+        new StripedJpegEncoder(single).encode(new byte[100], 64, 48, 80, new ByteArrayOutputStream());
+    }
+
+    static byte[] encode(StripedJpegEncoder encoder, byte[] nv21, int width, int height, int quality) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encoder.encode(nv21, width, height, quality, out);
+        return out.toByteArray();
+    }
+
+    private static BufferedImage decode(byte[] jpeg) throws IOException {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(jpeg));
+        assertNotNull("not decodable", image);
+        return image;
+    }
+
+    private static int[] pixels(BufferedImage image) {
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+    }
+
+    /** Scena con gradienti, bordi netti e croma variabile, come un frame di camera. */
+    static byte[] scene(int width, int height) {
+        byte[] nv21 = new byte[YuvConverter.nv21Size(width, height)];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int value = 40 + 120 * x / Math.max(1, width) + 60 * y / Math.max(1, height);
+                if (((x / 64) + (y / 64)) % 5 == 0) {
+                    value += 30;
+                }
+                nv21[y * width + x] = (byte) value;
+            }
+        }
+        int chromaWidth = (width + 1) / 2;
+        int chromaHeight = (height + 1) / 2;
+        int offset = width * height;
+        for (int y = 0; y < chromaHeight; y++) {
+            for (int x = 0; x < chromaWidth; x++) {
+                nv21[offset + y * 2 * chromaWidth + 2 * x] = (byte) (128 + 40 * x / chromaWidth - 20);
+                nv21[offset + y * 2 * chromaWidth + 2 * x + 1] = (byte) (128 - 40 * y / chromaHeight + 20);
+            }
+        }
+        return nv21;
+    }
+
+    // Errore medio per canale rispetto alla conversione JFIF YCbCr -> RGB della sorgente
+    private static double meanError(BufferedImage image, byte[] nv21, int width, int height) {
+        int chromaWidth = (width + 1) / 2;
+        long sum = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int luma = nv21[y * width + x] & 0xFF;
+                int chroma = width * height + (y / 2) * 2 * chromaWidth + 2 * (x / 2);
+                int cr = (nv21[chroma] & 0xFF) - 128;
+                int cb = (nv21[chroma + 1] & 0xFF) - 128;
+                int rgb = image.getRGB(x, y);
+                sum += Math.abs(((rgb >> 16) & 0xFF) - clamp(luma + 1.402 * cr));
+                sum += Math.abs(((rgb >> 8) & 0xFF) - clamp(luma - 0.344136 * cb - 0.714136 * cr));
+                sum += Math.abs((rgb & 0xFF) - clamp(luma + 1.772 * cb));
+            }
+        }
+        return sum / (3.0 * width * height);
+    }
+
+    private static int clamp(double value) {
+        return (int) Math.max(0, Math.min(Math.round(value), 255));
+    }
+
+    // Lunghezza dell'intervallo di restart dal segmento DRI, 0 se assente
+    private static int readRestartInterval(byte[] jpeg) {
+        int i = 2;
+        while (i + 4 < jpeg.length && (jpeg[i] & 0xFF) == 0xFF) {
+            int marker = jpeg[i + 1] & 0xFF;
+            int length = ((jpeg[i + 2] & 0xFF) << 8) | (jpeg[i + 3] & 0xFF);
+            if (marker == 0xDD) {
+                return ((jpeg[i + 4] & 0xFF) << 8) | (jpeg[i + 5] & 0xFF);
+            }
+            if (marker == 0xDA) {
+                return 0;
+            }
+            i += 2 + length;
+        }
+        return 0;
+    }
+
+    // Marker RSTn nei dati entropici (dopo SOS); i byte 0xFF dei dati sono seguiti da 0x00
+    private static int[] restartMarkers(byte[] jpeg) {
+        int sos = 0;
+        for (int i = 0; i + 1 < jpeg.length; i++) {
+            if ((jpeg[i] & 0xFF) == 0xFF && (jpeg[i + 1] & 0xFF) == 0xDA) {
+                sos = i + 2 + (((jpeg[i + 2] & 0xFF) << 8) | (jpeg[i + 3] & 0xFF));
+                break;
+            }
+        }
+        int[] found = new int[jpeg.length];
+        int count = 0;
+        for (int i = sos; i + 1 < jpeg.length; i++) {
+            int next = jpeg[i + 1] & 0xFF;
+            if ((jpeg[i] & 0xFF) == 0xFF && next >= 0xD0 && next <= 0xD7) {
+                found[count++] = next;
+            }
+        }
+        return Arrays.copyOf(found, count);
+    }
+}
@@ -0,0 +1,193 @@
+package com.cordova.plugin;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class YuvConverterTest {
+
+    @Test
+    public void compactPlanarLayout() {
+        checkLayout(64, 48, 64, 1, 32, 1);
+    }
+
+    @Test
+    public void paddedPlanarLayout() {
+        checkLayout(60, 40, 64, 1, 48, 1);
+    }
+
+    @Test
+    public void semiPlanarLayout() {
+        checkLayout(64, 48, 64, 1, 64, 2);
+    }
+
+    @Test
+    public void paddedSemiPlanarLayout() {
+        checkLayout(100, 30, 128, 1, 128, 2);
+    }
+
+    @Test
+    public void oddSizeSemiPlanarLayout() {
+        checkLayout(33, 17, 40, 1, 40, 2);
+    }
+
+    @Test
+    public void pixelStrideLumaLayout() {
+        checkLayout(16, 8, 40, 2, 40, 4);
+    }
+
+    @Test
+    public void bufferPositionIsPlaneOrigin() {
+        int width = 16;
+        int height = 8;
+        Planes planes = new Planes(width, height, 16, 1, 16, 2);
+        // Piano Y preceduto da 5 byte estranei: la conversione parte dalla posizione corrente
+        ByteBuffer shifted = ByteBuffer.allocate(planes.y.capacity() + 5);
+        shifted.position(5);
+        shifted.put(planes.y.duplicate());
+        shifted.position(5);
+        byte[] out = new byte[YuvConverter.nv21Size(width, height)];
+        new YuvConverter().toNv21(shifted, 16, 1, planes.u, planes.v, 16, 2, width, height, out);
+        assertArrayEquals(expectedNv21(width, height), out);
+        assertEquals(5, shifted.position());
+        assertEquals(0, planes.u.position());
+        assertEquals(0, planes.v.position());
+    }
+
+    @Test
+    public void noAllocationOnceWarmedUp() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Planes planes = new Planes(640, 480, 704, 1, 352, 1);
+        byte[] out = new byte[YuvConverter.nv21Size(640, 480)];
+        YuvConverter converter = new YuvConverter();
+        for (int i = 0; i < 200; i++) {
+            converter.toNv21(planes.y, 704, 1, planes.u, planes.v, 352, 1, 640, 480, out);
+        }
+        long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        for (int i = 0; i < 100; i++) {
+            converter.toNv21(planes.y, 704, 1, planes.u, planes.v, 352, 1, 640, 480, out);
+        }
+        long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+        // Tolleranza per le allocazioni della misura stessa, molto sotto un frame (460 KB)
+        assertTrue("allocated " + allocated + " bytes", allocated < 4096);
+    }
+
+    @Test
+    public void lumaRegionWithCropAndStep() {
+        int width = 20;
+        int height = 12;
+        Planes planes = new Planes(width, height, 24, 1, 24, 2);
+        byte[] out = new byte[YuvConverter.lumaRegionSize(9, 7, 2) + 3];
+        int written = new YuvConverter().copyLumaRegion(planes.y, 24, 1, 3, 2, 9, 7, 2, out, 3);
+        assertEquals(YuvConverter.lumaRegionSize(9, 7, 2), written);
+        int o = 3;
+        for (int row = 2; row < 9; row += 2) {
+            for (int col = 3; col < 12; col += 2) {
+                assertEquals(Planes.luma(col, row), out[o++]);
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsSmallOutput() {
+        Planes planes = new Planes(16, 8, 16, 1, 16, 2);
+        new YuvConverter().toNv21(planes.y, 16, 1, planes.u, planes.v, 16, 2, 16, 8, new byte[10]);
+    }
+
+    private static void checkLayout(int width, int height, int yRowStride, int yPixelStride,
+                                    int uvRowStride, int uvPixelStride) {
+        Planes planes = new Planes(width, height, yRowStride, yPixelStride, uvRowStride, uvPixelStride);
+        byte[] out = new byte[YuvConverter.nv21Size(width, height)];
+        YuvConverter converter = new YuvConverter();
+        // Due conversioni con lo stesso convertitore: la seconda usa i buffer gia' allocati
+        for (int i = 0; i < 2; i++) {
+            converter.toNv21(planes.y, yRowStride, yPixelStride, planes.u, planes.v, uvRowStride, uvPixelStride,
+                    width, height, out);
+            assertArrayEquals(expectedNv21(width, height), out);
+        }
+    }
+
+    private static byte[] expectedNv21(int width, int height) {
+        byte[] nv21 = new byte[YuvConverter.nv21Size(width, height)];
+        int o = 0;
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                nv21[o++] = Planes.luma(col, row);
+            }
+        }
+        for (int row = 0; row < (height + 1) / 2; row++) {
+            for (int col = 0; col < (width + 1) / 2; col++) {
+                nv21[o++] = Planes.v(col, row);
+                nv21[o++] = Planes.u(col, row);
+            }
+        }
+        return nv21;
+    }
+
+    /**
+     * Piani YUV_420_888 sintetici come li espone android.media.Image: con pixelStride 2
+     * U e V sono viste sfalsate di un byte sullo stesso buffer (layout NV21 del sensore).
+     */
+    private static final class Planes {
+        final ByteBuffer y;
+        final ByteBuffer u;
+        final ByteBuffer v;
+
+        Planes(int width, int height, int yRowStride, int yPixelStride, int uvRowStride, int uvPixelStride) {
+            byte[] yData = new byte[yRowStride * height];
+            // Riempitivo riconoscibile nel padding: non deve finire nell'uscita
+            Arrays.fill(yData, (byte) 0xEE);
+            for (int row = 0; row < height; row++) {
+                for (int col = 0; col < width; col++) {
+                    yData[row * yRowStride + col * yPixelStride] = luma(col, row);
+                }
+            }
+            y = ByteBuffer.wrap(yData);
+            int chromaWidth = (width + 1) / 2;
+            int chromaHeight = (height + 1) / 2;
+            if (uvPixelStride == 2) {
+                byte[] vu = new byte[uvRowStride * chromaHeight + 1];
+                Arrays.fill(vu, (byte) 0xEE);
+                for (int row = 0; row < chromaHeight; row++) {
+                    for (int col = 0; col < chromaWidth; col++) {
+                        vu[row * uvRowStride + 2 * col] = v(col, row);
+                        vu[row * uvRowStride + 2 * col + 1] = u(col, row);
+                    }
+                }
+                v = ByteBuffer.wrap(vu, 0, vu.length - 1).slice();
+                u = ByteBuffer.wrap(vu, 1, vu.length - 1).slice();
+            } else {
+                byte[] uData = new byte[uvRowStride * chromaHeight];
+                byte[] vData = new byte[uvRowStride * chromaHeight];
+                Arrays.fill(uData, (byte) 0xEE);
+                Arrays.fill(vData, (byte) 0xEE);
+                for (int row = 0; row < chromaHeight; row++) {
+                    for (int col = 0; col < chromaWidth; col++) {
+                        uData[row * uvRowStride + col * uvPixelStride] = u(col, row);
+                        vData[row * uvRowStride + col * uvPixelStride] = v(col, row);
+                    }
+                }
+                u = ByteBuffer.wrap(uData);
+                v = ByteBuffer.wrap(vData);
+            }
+        }
+
+        static byte luma(int x, int y) {
+            return (byte) (x * 7 + y * 13);
+        }
+
+        static byte u(int x, int y) {
+            return (byte) (64 + x * 3 + y * 5);
+        }
+
+        static byte v(int x, int y) {
+            return (byte) (192 - x * 5 + y * 3);
+        }
+    }
+}
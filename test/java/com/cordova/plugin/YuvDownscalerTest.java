@@ -0,0 +1,139 @@
+package com.cordova.plugin;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class YuvDownscalerTest {
+
+    @Test
+    public void sameSizeIsACopy() {
+        byte[] src = randomNv21(64, 48, 1);
+        assertArrayEquals(src, downscale(src, 64, 48, 64, 48));
+    }
+
+    @Test
+    public void halvingAveragesTwoByTwoBlocks() {
+        int width = 32;
+        int height = 16;
+        byte[] src = randomNv21(width, height, 2);
+        byte[] dst = downscale(src, width, height, 16, 8);
+        for (int y = 0; y < 8; y++) {
+            for (int x = 0; x < 16; x++) {
+                int sum = (src[2 * y * width + 2 * x] & 0xFF) + (src[2 * y * width + 2 * x + 1] & 0xFF)
+                        + (src[(2 * y + 1) * width + 2 * x] & 0xFF) + (src[(2 * y + 1) * width + 2 * x + 1] & 0xFF);
+                assertEquals((sum + 2) / 4, dst[y * 16 + x] & 0xFF);
+            }
+        }
+    }
+
+    @Test
+    public void matchesReferenceForCommonRatios() {
+        int[][] cases = {
+                { 1280, 720, 640, 360 }, { 1280, 720, 320, 180 }, { 1920, 1080, 1280, 720 },
+                { 640, 480, 427, 320 }, { 641, 361, 320, 180 }, { 33, 17, 11, 5 }, { 17, 9, 1, 1 }
+        };
+        for (int[] c : cases) {
+            byte[] src = randomNv21(c[0], c[1], c[2]);
+            assertArrayEquals(c[0] + "x" + c[1] + " -> " + c[2] + "x" + c[3],
+                    reference(src, c[0], c[1], c[2], c[3]), downscale(src, c[0], c[1], c[2], c[3]));
+        }
+    }
+
+    @Test
+    public void flatImageStaysFlat() {
+        byte[] src = new byte[YuvConverter.nv21Size(100, 60)];
+        Arrays.fill(src, (byte) 173);
+        for (byte b : downscale(src, 100, 60, 37, 23)) {
+            assertEquals(173, b & 0xFF);
+        }
+    }
+
+    @Test
+    public void reportsConfiguration() {
+        YuvDownscaler downscaler = new YuvDownscaler();
+        downscaler.configure(1280, 720, 640, 360);
+        assertTrue(downscaler.isConfiguredFor(1280, 720, 640, 360));
+        assertFalse(downscaler.isConfiguredFor(1280, 720, 320, 180));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUpscale() {
+        new YuvDownscaler().configure(640, 480, 1280, 720);
+    }
+
+    @Test
+    public void fastAndAllocationFreeAt1080p() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        byte[] src = randomNv21(1920, 1080, 3);
+        byte[] dst = new byte[YuvConverter.nv21Size(640, 360)];
+        YuvDownscaler downscaler = new YuvDownscaler();
+        downscaler.configure(1920, 1080, 640, 360);
+        for (int i = 0; i < 50; i++) {
+            downscaler.downscale(src, dst);
+        }
+        long allocatedBefore = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        long start = System.nanoTime();
+        int runs = 50;
+        for (int i = 0; i < runs; i++) {
+            downscaler.downscale(src, dst);
+        }
+        double millis = (System.nanoTime() - start) / 1e6 / runs;
+        long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocatedBefore;
+        assertTrue("allocated " + allocated + " bytes", allocated < 4096);
+        // Un frame a 30 fps dura 33 ms: la riduzione deve costarne una piccola parte
+        assertTrue("downscale took " + millis + " ms", millis < 15);
+    }
+
+    private static byte[] downscale(byte[] src, int srcW, int srcH, int dstW, int dstH) {
+        YuvDownscaler downscaler = new YuvDownscaler();
+        downscaler.configure(srcW, srcH, dstW, dstH);
+        byte[] dst = new byte[YuvConverter.nv21Size(dstW, dstH)];
+        downscaler.downscale(src, dst);
+        return dst;
+    }
+
+    static byte[] randomNv21(int width, int height, long seed) {
+        byte[] data = new byte[YuvConverter.nv21Size(width, height)];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    // Filtro box ingenuo: media arrotondata dell'area sorgente [x0, x1) x [y0, y1) di ogni pixel
+    private static byte[] reference(byte[] src, int srcW, int srcH, int dstW, int dstH) {
+        byte[] dst = new byte[YuvConverter.nv21Size(dstW, dstH)];
+        referencePlane(src, 0, srcW, srcH, 1, dst, 0, dstW, dstH);
+        referencePlane(src, srcW * srcH, (srcW + 1) / 2, (srcH + 1) / 2, 2,
+                dst, dstW * dstH, (dstW + 1) / 2, (dstH + 1) / 2);
+        return dst;
+    }
+
+    private static void referencePlane(byte[] src, int srcOffset, int srcW, int srcH, int channels,
+                                       byte[] dst, int dstOffset, int dstW, int dstH) {
+        for (int dy = 0; dy < dstH; dy++) {
+            int y0 = dy * srcH / dstH;
+            int y1 = Math.max(y0 + 1, (dy + 1) * srcH / dstH);
+            for (int dx = 0; dx < dstW; dx++) {
+                int x0 = dx * srcW / dstW;
+                int x1 = (dx + 1) * srcW / dstW;
+                for (int c = 0; c < channels; c++) {
+                    int sum = 0;
+                    for (int y = y0; y < y1; y++) {
+                        for (int x = x0; x < x1; x++) {
+                            sum += src[srcOffset + (y * srcW + x) * channels + c] & 0xFF;
+                        }
+                    }
+                    int area = (y1 - y0) * (x1 - x0);
+                    dst[dstOffset + (dy * dstW + dx) * channels + c] = (byte) ((sum + area / 2) / area);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.cordova.plugin;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.Test;
+
+public class YuvTransformTest {
+
+    private static final int[] ROTATIONS = { 0, 90, 180, 270 };
+
+    @Test
+    public void identityIsACopy() {
+        byte[] src = YuvDownscalerTest.randomNv21(64, 48, 1);
+        byte[] dst = transform(src, 64, 48, 0, 0, 64, 48, 0, false, false, 64, 48, YuvTransform.FILTER_NEAREST);
+        assertArrayEquals(src, dst);
+    }
+
+    @Test
+    public void rotationOf90MovesTopLeftToTopRight() {
+        int width = 8;
+        int height = 4;
+        byte[] src = new byte[YuvConverter.nv21Size(width, height)];
+        src[0] = 100;
+        byte[] dst = transform(src, width, height, 0, 0, width, height, 90, false, false, height, width,
+                YuvTransform.FILTER_NEAREST);
+        // Dopo 90 gradi in senso orario l'immagine e' 4x8 e il pixel (0,0) finisce in (3,0)
+        assertEquals(100, dst[3]);
+        assertEquals(0, dst[0]);
+    }
+
+    @Test
+    public void nearestMatchesReferenceExactly() {
+        for (int[] size : new int[][] { { 64, 48 }, { 67, 41 }, { 641, 361 } }) {
+            for (int rotation : ROTATIONS) {
+                for (int mirror = 0; mirror < 4; mirror++) {
+                    checkAgainstReference(size[0], size[1], rotation, (mirror & 1) != 0, (mirror & 2) != 0,
+                            YuvTransform.FILTER_NEAREST, 0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void bilinearMatchesReferenceWithinRounding() {
+        for (int[] size : new int[][] { { 64, 48 }, { 67, 41 }, { 641, 361 } }) {
+            for (int rotation : ROTATIONS) {
+                for (int mirror = 0; mirror < 4; mirror++) {
+                    checkAgainstReference(size[0], size[1], rotation, (mirror & 1) != 0, (mirror & 2) != 0,
+                            YuvTransform.FILTER_BILINEAR, 1);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void oddWidthChromaIsReadFromTheRightRows() {
+        // Croma con righe diverse tra loro: uno stride sbagliato legge righe VU sfasate
+        int width = 33;
+        int height = 20;
+        byte[] src = new byte[YuvConverter.nv21Size(width, height)];
+        int chromaStride = 2 * ((width + 1) / 2);
+        for (int row = 0; row < (height + 1) / 2; row++) {
+            for (int i = 0; i < chromaStride; i++) {
+                src[width * height + row * chromaStride + i] = (byte) (row * 10 + (i & 1));
+            }
+        }
+        byte[] dst = transform(src, width, height, 0, 0, width, height, 0, false, false, 32, 20,
+                YuvTransform.FILTER_NEAREST);
+        for (int row = 0; row < 10; row++) {
+            for (int col = 0; col < 16; col++) {
+                assertEquals(row * 10, dst[32 * 20 + row * 32 + 2 * col]);
+                assertEquals(row * 10 + 1, dst[32 * 20 + row * 32 + 2 * col + 1]);
+            }
+        }
+    }
+
+    @Test
+    public void orientedSizeSwapsForQuarterTurns() {
+        assertArrayEquals(new int[] { 640, 480 }, YuvTransform.orientedSize(640, 480, 180));
+        assertArrayEquals(new int[] { 480, 640 }, YuvTransform.orientedSize(640, 480, 270));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsCropOutsideTheFrame() {
+        new YuvTransform().configure(64, 48, 32, 0, 64, 48, 0, false, false, 32, 48, YuvTransform.FILTER_NEAREST);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUpscale() {
+        new YuvTransform().configure(64, 48, 0, 0, 64, 48, 90, false, false, 64, 48, YuvTransform.FILTER_NEAREST);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOddAngles() {
+        new YuvTransform().configure(64, 48, 0, 0, 64, 48, 45, false, false, 32, 24, YuvTransform.FILTER_NEAREST);
+    }
+
+    @Test
+    public void noAllocationPerFrame() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        byte[] src = YuvDownscalerTest.randomNv21(1280, 720, 5);
+        YuvTransform transform = new YuvTransform();
+        transform.configure(1280, 720, 160, 0, 960, 720, 90, true, false, 360, 480, YuvTransform.FILTER_BILINEAR);
+        byte[] dst = new byte[YuvConverter.nv21Size(360, 480)];
+        for (int i = 0; i < 50; i++) {
+            transform.transform(src, dst);
+        }
+        long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        for (int i = 0; i < 50; i++) {
+            transform.transform(src, dst);
+        }
+        long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+        assertTrue("allocated " + allocated + " bytes", allocated < 4096);
+    }
+
+    // Ritaglio pari con bordi diversi e riduzione non intera del ritaglio ruotato
+    private static void checkAgainstReference(int width, int height, int rotation, boolean mirrorH, boolean mirrorV,
+                                              int filter, int tolerance) {
+        byte[] src = YuvDownscalerTest.randomNv21(width, height, width * 31 + rotation);
+        int cropX = 4;
+        int cropY = 2;
+        int cropW = (width - 10) & ~1;
+        int cropH = (height - 6) & ~1;
+        int[] oriented = YuvTransform.orientedSize(cropW, cropH, rotation);
+        int dstW = (oriented[0] * 2 / 3) & ~1;
+        int dstH = (oriented[1] * 3 / 4) & ~1;
+        byte[] dst = transform(src, width, height, cropX, cropY, cropW, cropH, rotation, mirrorH, mirrorV, dstW, dstH, filter);
+        byte[] expected = reference(src, width, height, cropX, cropY, cropW, cropH, rotation, mirrorH, mirrorV,
+                dstW, dstH, filter == YuvTransform.FILTER_BILINEAR);
+        String label = width + "x" + height + " rot " + rotation + " mirror " + mirrorH + "/" + mirrorV
+                + (filter == YuvTransform.FILTER_BILINEAR ? " bilinear" : " nearest");
+        for (int i = 0; i < expected.length; i++) {
+            int diff = Math.abs((expected[i] & 0xFF) - (dst[i] & 0xFF));
+            if (diff > tolerance) {
+                throw new AssertionError(label + ": byte " + i + " expected " + (expected[i] & 0xFF)
+                        + " but was " + (dst[i] & 0xFF));
+            }
+        }
+    }
+
+    private static byte[] transform(byte[] src, int width, int height, int cropX, int cropY, int cropW, int cropH,
+                                    int rotation, boolean mirrorH, boolean mirrorV, int dstW, int dstH, int filter) {
+        YuvTransform transform = new YuvTransform();
+        transform.configure(width, height, cropX, cropY, cropW, cropH, rotation, mirrorH, mirrorV, dstW, dstH, filter);
+        byte[] dst = new byte[YuvConverter.nv21Size(dstW, dstH)];
+        transform.transform(src, dst);
+        return dst;
+    }
+
+    /**
+     * Implementazione ingenua, pixel per pixel: centro del pixel di destinazione nell'immagine
+     * ruotata e specchiata, poi rotazione inversa fino alle coordinate del ritaglio.
+     */
+    private static byte[] reference(byte[] src, int width, int height, int cropX, int cropY, int cropW, int cropH,
+                                    int rotation, boolean mirrorH, boolean mirrorV, int dstW, int dstH, boolean bilinear) {
+        byte[] dst = new byte[YuvConverter.nv21Size(dstW, dstH)];
+        referencePlane(src, 0, width, 1, cropX, cropY, cropW, cropH, rotation, mirrorH, mirrorV,
+                dst, 0, dstW, dstH, bilinear);
+        referencePlane(src, width * height, 2 * ((width + 1) / 2), 2, cropX / 2, cropY / 2, cropW / 2, cropH / 2,
+                rotation, mirrorH, mirrorV, dst, dstW * dstH, dstW / 2, dstH / 2, bilinear);
+        return dst;
+    }
+
+    private static void referencePlane(byte[] src, int offset, int stride, int channels,
+                                       int cropX, int cropY, int cropW, int cropH,
+                                       int rotation, boolean mirrorH, boolean mirrorV,
+                                       byte[] dst, int dstOffset, int dstW, int dstH, boolean bilinear) {
+        int[] oriented = YuvTransform.orientedSize(cropW, cropH, rotation);
+        for (int dy = 0; dy < dstH; dy++) {
+            for (int dx = 0; dx < dstW; dx++) {
+                for (int c = 0; c < channels; c++) {
+                    double value;
+                    if (bilinear) {
+                        double ox = center(dx, dstW, oriented[0]);
+                        double oy = center(dy, dstH, oriented[1]);
+                        value = sampleBilinear(src, offset, stride, channels, c, cropX, cropY, cropW, cropH,
+                                rotation, mirrorH ? oriented[0] - 1 - ox : ox, mirrorV ? oriented[1] - 1 - oy : oy);
+                    } else {
+                        // Pixel sorgente che contiene il centro del pixel di destinazione
+                        int ox = Math.min((int) ((2L * dx + 1) * oriented[0] / (2L * dstW)), oriented[0] - 1);
+                        int oy = Math.min((int) ((2L * dy + 1) * oriented[1] / (2L * dstH)), oriented[1] - 1);
+                        value = sample(src, offset, stride, channels, c, cropX, cropY, cropW, cropH, rotation,
+                                mirrorH ? oriented[0] - 1 - ox : ox, mirrorV ? oriented[1] - 1 - oy : oy);
+                    }
+                    dst[dstOffset + (dy * dstW + dx) * channels + c] = (byte) Math.round(value);
+                }
+            }
+        }
+    }
+
+    private static double center(int d, int dstSize, int srcSize) {
+        double s = (2.0 * d + 1) * srcSize / (2.0 * dstSize) - 0.5;
+        return Math.max(0, Math.min(s, srcSize - 1));
+    }
+
+    private static double sampleBilinear(byte[] src, int offset, int stride, int channels, int c,
+                                         int cropX, int cropY, int cropW, int cropH, int rotation, double ox, double oy) {
+        int x0 = (int) Math.floor(ox);
+        int y0 = (int) Math.floor(oy);
+        double fx = ox - x0;
+        double fy = oy - y0;
+        int[] oriented = YuvTransform.orientedSize(cropW, cropH, rotation);
+        int x1 = Math.min(x0 + 1, oriented[0] - 1);
+        int y1 = Math.min(y0 + 1, oriented[1] - 1);
+        double top = sample(src, offset, stride, channels, c, cropX, cropY, cropW, cropH, rotation, x0, y0) * (1 - fx)
+                + sample(src, offset, stride, channels, c, cropX, cropY, cropW, cropH, rotation, x1, y0) * fx;
+        double bottom = sample(src, offset, stride, channels, c, cropX, cropY, cropW, cropH, rotation, x0, y1) * (1 - fx)
+                + sample(src, offset, stride, channels, c, cropX, cropY, cropW, cropH, rotation, x1, y1) * fx;
+        return top * (1 - fy) + bottom * fy;
+    }
+
+    // Campione dell'immagine ruotata in (ox, oy): rotazione oraria inversa nel ritaglio
+    private static int sample(byte[] src, int offset, int stride, int channels, int c,
+                              int cropX, int cropY, int cropW, int cropH, int rotation, int ox, int oy) {
+        int x;
+        int y;
+        switch (rotation) {
+            case 90:
+                x = oy;
+                y = cropH - 1 - ox;
+                break;
+            case 180:
+                x = cropW - 1 - ox;
+                y = cropH - 1 - oy;
+                break;
+            case 270:
+                x = cropW - 1 - oy;
+                y = ox;
+                break;
+            default:
+                x = ox;
+                y = oy;
+                break;
+        }
+        return src[offset + (cropY + y) * stride + (cropX + x) * channels + c] & 0xFF;
+    }
+}
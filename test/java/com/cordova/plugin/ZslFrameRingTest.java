@@ -0,0 +1,147 @@
+package com.cordova.plugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class ZslFrameRingTest {
+
+    private static final long FRAME_NANOS = 33_333_333L;
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+
+    @Test
+    public void keepsTheLastFramesNewestFirst() {
+        ZslFrameRing ring = new ZslFrameRing(4);
+        assertNull(ring.latest());
+        for (int i = 0; i < 10; i++) {
+            write(ring, i, false);
+        }
+        assertEquals(4, ring.size());
+        for (int i = 0; i < 4; i++) {
+            assertEquals((9 - i) * FRAME_NANOS, ring.get(i).timestampNanos);
+        }
+        assertSame(ring.get(0), ring.latest());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void getBeyondSizeFails() {
+        ZslFrameRing ring = new ZslFrameRing(4);
+        write(ring, 0, false);
+        ring.get(1);
+    }
+
+    @Test
+    public void buffersAreReusedAndBounded() {
+        ZslFrameRing ring = new ZslFrameRing(3);
+        Map<byte[], Boolean> buffers = new IdentityHashMap<>();
+        for (int i = 0; i < 100; i++) {
+            buffers.put(write(ring, i, false).nv21, Boolean.TRUE);
+        }
+        assertEquals(3, buffers.size());
+    }
+
+    @Test
+    public void largerResolutionGrowsTheSlot() {
+        ZslFrameRing ring = new ZslFrameRing(1);
+        byte[] small = ring.acquireForWrite(32, 24).nv21;
+        ring.commit(0, 0);
+        byte[] large = ring.acquireForWrite(64, 48).nv21;
+        assertNotSame(small, large);
+        assertEquals(YuvConverter.nv21Size(64, 48), large.length);
+        ring.commit(1, 1);
+        // Tornando alla risoluzione minore il buffer resta quello grande
+        assertSame(large, ring.acquireForWrite(32, 24).nv21);
+    }
+
+    @Test
+    public void slotBeingWrittenIsNotReadable() {
+        ZslFrameRing ring = new ZslFrameRing(2);
+        write(ring, 0, false);
+        write(ring, 1, false);
+        ring.acquireForWrite(WIDTH, HEIGHT);
+        // Il frame 0 sta per essere sovrascritto: resta leggibile solo il frame 1
+        assertEquals(1, ring.size());
+        assertEquals(FRAME_NANOS, ring.closestTo(0).timestampNanos);
+        ring.commit(2 * FRAME_NANOS, 2 * FRAME_NANOS);
+        assertEquals(2, ring.size());
+    }
+
+    @Test
+    public void closestToRequestTime() {
+        ZslFrameRing ring = new ZslFrameRing(8);
+        for (int i = 0; i < 8; i++) {
+            write(ring, 100 + i, false);
+        }
+        assertEquals(103 * FRAME_NANOS, ring.closestTo(103 * FRAME_NANOS + FRAME_NANOS / 3).timestampNanos);
+        assertEquals(104 * FRAME_NANOS, ring.closestTo(104 * FRAME_NANOS - FRAME_NANOS / 3).timestampNanos);
+        // Richiesta fuori dalla finestra: il frame estremo piu' vicino
+        assertEquals(107 * FRAME_NANOS, ring.closestTo(500 * FRAME_NANOS).timestampNanos);
+        assertEquals(100 * FRAME_NANOS, ring.closestTo(0).timestampNanos);
+    }
+
+    @Test
+    public void sharpestWithinTheWindow() {
+        ZslFrameRing ring = new ZslFrameRing(8);
+        // Solo il frame 2 e' nitido: vince se e' nella finestra
+        for (int i = 0; i < 8; i++) {
+            write(ring, i, i == 2);
+        }
+        assertEquals(2 * FRAME_NANOS, ring.sharpest(0).timestampNanos);
+        assertEquals(2 * FRAME_NANOS, ring.sharpest(2 * FRAME_NANOS).timestampNanos);
+        // Fuori finestra: tra i frame sfocati, a parita', il piu' recente
+        assertEquals(7 * FRAME_NANOS, ring.sharpest(3 * FRAME_NANOS).timestampNanos);
+        assertNull(ring.sharpest(100 * FRAME_NANOS));
+    }
+
+    @Test
+    public void sharpestTieGoesToTheNewest() {
+        ZslFrameRing ring = new ZslFrameRing(4);
+        for (int i = 0; i < 4; i++) {
+            write(ring, i, false);
+        }
+        assertEquals(3 * FRAME_NANOS, ring.sharpest(0).timestampNanos);
+    }
+
+    @Test
+    public void sharpnessGrowsWithDetail() {
+        byte[] flat = new byte[YuvConverter.nv21Size(WIDTH, HEIGHT)];
+        byte[] edges = flat.clone();
+        fill(edges, true);
+        assertEquals(0, ZslFrameRing.sharpness(flat, WIDTH, HEIGHT));
+        assertTrue(ZslFrameRing.sharpness(edges, WIDTH, HEIGHT) > 0);
+    }
+
+    @Test
+    public void clearEmptiesTheRing() {
+        ZslFrameRing ring = new ZslFrameRing(2);
+        write(ring, 0, false);
+        ring.clear();
+        assertEquals(0, ring.size());
+        assertNull(ring.closestTo(0));
+    }
+
+    // Frame sintetico n: timestamp sensore e arrivo sulla griglia a 30 fps
+    private static ZslFrameRing.Frame write(ZslFrameRing ring, int n, boolean sharp) {
+        ZslFrameRing.Frame frame = ring.acquireForWrite(WIDTH, HEIGHT);
+        fill(frame.nv21, sharp);
+        ring.commit(n * FRAME_NANOS, n * FRAME_NANOS);
+        return frame;
+    }
+
+    // Scacchiera (nitida) o gradiente lento (sfocato)
+    private static void fill(byte[] nv21, boolean sharp) {
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                nv21[y * WIDTH + x] = (byte) (sharp ? (((x + y) & 1) == 0 ? 0 : 255) : 100 + x / 16);
+            }
+        }
+    }
+}
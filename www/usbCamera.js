@@ -3,8 +3,45 @@ var exec = require('cordova/exec');
 var UsbCamera = {
     /**
      * Open external USB camera
-     * @param {Object} options - Camera options {width, height, fps}
-     * @param {Function} onFrame - Callback for each frame (base64 string)
+     * @param {Object} options - Camera options {width, height, fps, frameFormat, streamMode,
+     *                           maxDeliveryFps, maxFramesInFlight}
+     *                           frameFormat: 'base64' (default), 'arraybuffer' or 'luma'
+     *                           lumaCrop: {x, y, width, height} region for 'luma' frames
+     *                           lumaStep: keep one pixel every lumaStep for 'luma' frames (default 1)
+     *                           streamMode: 'bridge' (default) or 'mjpeg'
+     *                           maxDeliveryFps: cap on frames delivered per second (0 = no cap)
+     *                           maxFramesInFlight: frames sent without ackFrame (0 = auto-ack)
+     *                           jpegPassthrough: forward native camera JPEG when supported (default true)
+     *                           deliveryWidth, deliveryHeight: smaller resolution for delivered
+     *                           frames (downscaled in YUV before encoding; capture stays full size)
+     *                           crop: region {x, y, width, height} of the capture to deliver
+     *                           rotation: clockwise rotation of delivered frames, 0/90/180/270
+     *                           mirrorHorizontal, mirrorVertical: flip delivered frames (after rotation)
+     *                           transformFilter: 'bilinear' (default) or 'nearest' for the transform
+     *                           (any of these disables jpegPassthrough)
+     *                           photoDurability: 'fsync' (default) or 'async' for takePhoto writes
+     *                           zslFrames: keep the last N (max 8) preview frames so takePhoto saves
+     *                           one of them without a new capture (default 0, off; disables jpegPassthrough)
+     *                           zslSelect: 'closest' (default) frame to the takePhoto call, or 'sharpest'
+     *                           motionDetection: deliver only frames that changed (default false;
+     *                           disables jpegPassthrough); motionPixelThreshold: luma difference per
+     *                           cell (default 25); motionThreshold: fraction of changed cells (default 0.01);
+     *                           motionKeepAliveMs: deliver one frame at least this often (default 10000, 0 = never)
+     *                           jpegQuality: preview JPEG quality (default 80; maximum when adaptive)
+     *                           targetBytesPerSecond, maxEncodeLoad: budgets for the adaptive preview
+     *                           quality (0 = off; disables jpegPassthrough); adaptiveResolution: also
+     *                           step the delivery resolution down/up (default false)
+     *                           jpegEncoder: 'platform' (default) or 'striped' to encode the preview on
+     *                           all cores with a pure-Java encoder (disables jpegPassthrough)
+     *                           cameraId: camera to open (default: first USB camera); several
+     *                           cameras can be open at the same time, one session per cameraId
+     * @param {Function} onFrame - Callback for each frame (base64 string, or JPEG ArrayBuffer
+     *                             when frameFormat is 'arraybuffer'; with 'luma' an ArrayBuffer with
+     *                             a 16-byte little-endian header: int32 width, int32 height,
+     *                             int64 sensor timestamp in ns, followed by the Y plane). With streamMode 'mjpeg'
+     *                             it is called once with {type: 'stream', streamUrl, port, token}.
+     *                             With motionDetection it also receives {type: 'motion', active,
+     *                             timestamp, x, y, width, height, changed}
      * @param {Function} onError - Error callback
      */
     open: function(options, onFrame, onError) {
@@ -29,30 +66,169 @@ var UsbCamera = {
      * Stop camera preview
      * @param {Function} callback - Success callback
      * @param {Function} errorCallback - Error callback
+     * @param {string} cameraId - Session to use (optional when a single camera is open)
      */
-    stopPreview: function(callback, errorCallback) {
-        exec(callback, errorCallback, 'UsbExternalCamera', 'stopPreview', []);
+    stopPreview: function(callback, errorCallback, cameraId) {
+        exec(callback, errorCallback, 'UsbExternalCamera', 'stopPreview', [cameraId || null]);
+    },
+    
+    /**
+     * Pause preview keeping the camera device and session open, so resumePreview is fast
+     * @param {Function} callback - Success callback
+     * @param {Function} errorCallback - Error callback
+     * @param {string} cameraId - Session to use (optional when a single camera is open)
+     */
+    pausePreview: function(callback, errorCallback, cameraId) {
+        exec(callback, errorCallback, 'UsbExternalCamera', 'pausePreview', [cameraId || null]);
+    },
+    
+    /**
+     * Resume a paused preview on the existing session
+     * @param {Function} callback - Called at the first frame with {timeToFirstFrameMs, frameIntervalMs}
+     * @param {Function} errorCallback - Error callback (also if no frame arrives within 3 s)
+     * @param {string} cameraId - Session to use (optional when a single camera is open)
+     */
+    resumePreview: function(callback, errorCallback, cameraId) {
+        exec(callback, errorCallback, 'UsbExternalCamera', 'resumePreview', [cameraId || null]);
+    },
+    
+    /**
+     * Change delivery options without reopening the camera
+     * @param {Object} options - {frameFormat, lumaCrop, lumaStep, maxDeliveryFps, maxFramesInFlight,
+     *                           deliveryWidth, deliveryHeight, motionDetection, motionPixelThreshold,
+     *                           motionThreshold, motionKeepAliveMs, jpegQuality, targetBytesPerSecond,
+     *                           maxEncodeLoad, adaptiveResolution, cameraId}
+     * @param {Function} callback - Called with the stream config (as getStreamConfig)
+     * @param {Function} errorCallback - Error callback
+     */
+    reconfigure: function(options, callback, errorCallback) {
+        exec(callback, errorCallback, 'UsbExternalCamera', 'reconfigure', [options || {}]);
     },
     
     /**
      * Take a photo and save to device storage
      * @param {Function} callback - Success callback with file path
      * @param {Function} errorCallback - Error callback
+     * @param {string} cameraId - Session to use (optional when a single camera is open)
+     */
+    takePhoto: function(callback, errorCallback, cameraId) {
+        exec(callback, errorCallback, 'UsbExternalCamera', 'takePhoto', [cameraId || null]);
+    },
+    
+    /**
+     * Take a burst of photos with pipelined still requests
+     * @param {Object} options - {count: 1-30 (default 5), intervalMs: 0 = max rate, cameraId}
+     * @param {Function} callback - Called with {index, filePath, timestamp} for each saved photo,
+     *                              then with {done: true, count, saved, failed, fps, durationMs}
+     * @param {Function} errorCallback - Error callback
      */
-    takePhoto: function(callback, errorCallback) {
-        exec(callback, errorCallback, 'UsbExternalCamera', 'takePhoto', []);
+    takeBurst: function(options, callback, errorCallback) {
+        exec(callback, errorCallback, 'UsbExternalCamera', 'takeBurst', [options || {}]);
     },
     
     /**
      * Close camera and release resources
      * @param {Function} callback - Success callback
      * @param {Function} errorCallback - Error callback
+     * @param {string} cameraId - Session to use (optional when a single camera is open)
      */
-    close: function(callback, errorCallback) {
-        exec(callback, errorCallback, 'UsbExternalCamera', 'close', []);
+    close: function(callback, errorCallback, cameraId) {
+        exec(callback, errorCallback, 'UsbExternalCamera', 'close', [cameraId || null]);
     },
     listCameras: function (callback, errorCallback) {
         exec(callback, errorCallback, 'UsbExternalCamera', 'listCameras', []);
+    },
+    
+    /**
+     * Acknowledge frames handled by onFrame (needed when maxFramesInFlight > 0)
+     * @param {number} count - Number of frames handled (default 1)
+     * @param {string} cameraId - Session to use (optional when a single camera is open)
+     */
+    ackFrame: function(count, callback, errorCallback, cameraId) {
+        exec(callback, errorCallback, 'UsbExternalCamera', 'ackFrame', [count || 1, cameraId || null]);
+    },
+    
+    /**
+     * Get flow control counters
+     * @param {Function} callback - Success callback with {delivered, droppedByRate, droppedByCredit, inFlight, ...}
+     * @param {Function} errorCallback - Error callback
+     * @param {string} cameraId - Session to use (optional when a single camera is open)
+     */
+    getFlowStats: function(callback, errorCallback, cameraId) {
+        exec(callback, errorCallback, 'UsbExternalCamera', 'getFlowStats', [cameraId || null]);
+    },
+    
+    /**
+     * Start recording the preview stream to an AVI (MJPEG) file
+     * @param {Object} options - Recording options {fileName, cameraId}
+     * @param {Function} callback - Success callback with file path
+     * @param {Function} errorCallback - Error callback
+     */
+    startRecording: function(options, callback, errorCallback) {
+        exec(callback, errorCallback, 'UsbExternalCamera', 'startRecording', [options || {}]);
+    },
+    
+    /**
+     * Stop the current recording
+     * @param {Function} callback - Success callback with {filePath, frames, droppedFrames, durationMs, fps}
+     * @param {Function} errorCallback - Error callback
+     * @param {string} cameraId - Session to use (optional when a single camera is open)
+     */
+    stopRecording: function(callback, errorCallback, cameraId) {
+        exec(callback, errorCallback, 'UsbExternalCamera', 'stopRecording', [cameraId || null]);
+    },
+    
+    /**
+     * Get the stream configuration negotiated with the camera capabilities
+     * @param {Function} callback - Called with {format, width, height, deliveryWidth, deliveryHeight, fpsMin, fpsMax,
+     *                              stillWidth, stillHeight, exact, requested}
+     * @param {Function} errorCallback - Error callback
+     * @param {string} cameraId - Session to use (optional when a single camera is open)
+     */
+    getStreamConfig: function(callback, errorCallback, cameraId) {
+        exec(callback, errorCallback, 'UsbExternalCamera', 'getStreamConfig', [cameraId || null]);
+    },
+    
+    /**
+     * Get runtime statistics: counters and latency histograms
+     * (arrival, encode, send, still, focusLock, shutter, resume with count, meanMs, p50Ms, p90Ms, p99Ms, maxMs)
+     * and the startup breakdown of the last open (discoveryMs, openMs, configureMs, firstImageMs, totalMs)
+     * @param {Object} options - {intervalMs: >0 to receive stats periodically until stopStats, cameraId}
+     * @param {Function} callback - Called with the stats object
+     * @param {Function} errorCallback - Error callback
+     */
+    getStats: function(options, callback, errorCallback) {
+        exec(callback, errorCallback, 'UsbExternalCamera', 'getStats', [options || {}]);
+    },
+    
+    /**
+     * Stop the periodic stats started with getStats({intervalMs})
+     * @param {Function} callback - Success callback
+     * @param {Function} errorCallback - Error callback
+     */
+    stopStats: function(callback, errorCallback) {
+        exec(callback, errorCallback, 'UsbExternalCamera', 'stopStats', []);
+    },
+    
+    /**
+     * Reset counters and latency histograms
+     * @param {Function} callback - Success callback
+     * @param {Function} errorCallback - Error callback
+     * @param {string} cameraId - Session to use (optional when a single camera is open; resetStats without cameraId resets every session)
+     */
+    resetStats: function(callback, errorCallback, cameraId) {
+        exec(callback, errorCallback, 'UsbExternalCamera', 'resetStats', [cameraId || null]);
+    },
+    
+    /**
+     * Set the global budget of captured pixels per second shared by all open cameras
+     * (width * height * fps of each capture stream). open fails when it would exceed the budget
+     * @param {number} limit - Pixels per second, 0 = unlimited; null keeps the current limit
+     * @param {Function} callback - Called with {limit, used, sessions: {cameraId: pixelsPerSecond}}
+     * @param {Function} errorCallback - Error callback
+     */
+    setPixelBudget: function(limit, callback, errorCallback) {
+        exec(callback, errorCallback, 'UsbExternalCamera', 'setPixelBudget', [limit == null ? null : limit]);
     }
 };
 